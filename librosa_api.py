@@ -7,41 +7,69 @@ import sys
 # Suppress warnings
 warnings.filterwarnings("ignore", category=DeprecationWarning)
 
+def report_progress(percent, stage):
+    # Read by LibrosaService line by line; the final result is the only line that is not a PROGRESS marker
+    print(f"PROGRESS {percent} {stage}", flush=True)
+
 def analyze_audio(file_path):
     try:
-        y, sr = librosa.load(file_path, sr=None)
-        tempo, beats = librosa.beat.beat_track(y=y, sr=sr)
-        spectral_centroid = librosa.feature.spectral_centroid(y=y, sr=sr).mean()
-        rms = librosa.feature.rms(y=y).mean()
+        result = analyze_file(file_path, report_progress)
+        report_progress(100, "done")
+        print(json.dumps(result))  # Output JSON only
 
-        chroma_stft = librosa.feature.chroma_stft(y=y, sr=sr)
-        estimated_key = estimate_key_with_chroma(chroma_stft)
+    except Exception as e:
+        print(json.dumps({"error": str(e)}))
 
-        beats_list = beats.tolist()
-        melody = chroma_stft.mean(axis=1).tolist()
-        mfcc = librosa.feature.mfcc(y=y, sr=sr, n_mfcc=13).mean(axis=1).tolist()
-        spectral_features = {
-            'centroid': float(spectral_centroid),
-            'bandwidth': float(librosa.feature.spectral_bandwidth(y=y, sr=sr).mean()),
-            'contrast': librosa.feature.spectral_contrast(y=y, sr=sr).mean(axis=1).tolist(),
-            'rolloff': float(librosa.feature.spectral_rolloff(y=y, sr=sr, roll_percent=0.85).mean())
-        }
+def analyze_file(file_path, progress):
+    progress(5, "loading")
+    y, sr = librosa.load(file_path, sr=None)
+    return analyze_signal(y, sr, progress)
 
-        result = {
-            'tempo': float(tempo),
-            'spectral_centroid': float(spectral_centroid),
-            'rms': float(rms),
-            'key': estimated_key,
-            'beats': beats_list,
-            'melody': melody,
-            'mfcc': mfcc,
-            'spectral_features': spectral_features
-        }
+# Shared with librosa_worker.py, which also runs it once on a synthetic signal to warm up numba
+def analyze_signal(y, sr, progress):
+    progress(20, "beats")
+    tempo, beats = librosa.beat.beat_track(y=y, sr=sr)
+    progress(45, "spectral")
+    spectral_centroid = librosa.feature.spectral_centroid(y=y, sr=sr).mean()
+    rms_frames = librosa.feature.rms(y=y)[0]
+    rms = rms_frames.mean()
 
-        print(json.dumps(result))  # Output JSON only
+    progress(55, "chroma")
+    chroma_stft = librosa.feature.chroma_stft(y=y, sr=sr)
+    estimated_key = estimate_key_with_chroma(chroma_stft)
 
-    except Exception as e:
-        print(json.dumps({"error": str(e)}))
+    beats_list = beats.tolist()
+    melody = chroma_stft.mean(axis=1).tolist()
+    progress(70, "mfcc")
+    mfcc = librosa.feature.mfcc(y=y, sr=sr, n_mfcc=13).mean(axis=1).tolist()
+    progress(80, "spectral_features")
+    spectral_features = {
+        'centroid': float(spectral_centroid),
+        'bandwidth': float(librosa.feature.spectral_bandwidth(y=y, sr=sr).mean()),
+        'contrast': librosa.feature.spectral_contrast(y=y, sr=sr).mean(axis=1).tolist(),
+        'rolloff': float(librosa.feature.spectral_rolloff(y=y, sr=sr, roll_percent=0.85).mean())
+    }
+
+    return {
+        'tempo': float(tempo),
+        'sample_rate': int(sr),
+        'spectral_centroid': float(spectral_centroid),
+        'rms': float(rms),
+        'key': estimated_key,
+        'beats': beats_list,
+        'melody': melody,
+        'mfcc': mfcc,
+        'spectral_features': spectral_features,
+        'preview_start': loudest_window_start(rms_frames, sr)
+    }
+
+# Same rule as LoudestWindow.java: start in seconds of the window with the most energy (sum of squared frame RMS)
+def loudest_window_start(rms_frames, sr, hop_length=512, seconds=30.0):
+    window = max(1, int(round(seconds * sr / hop_length)))
+    if len(rms_frames) < window:
+        return 0.0
+    sums = np.convolve(rms_frames ** 2, np.ones(window), mode='valid')
+    return float(np.argmax(sums) * hop_length / sr)
 
 def estimate_key_with_chroma(chroma):
     try:
@@ -0,0 +1,87 @@
+import json
+import os
+import sys
+import traceback
+import warnings
+
+# Protocol messages are written to the real stdout, one JSON object per line.
+# Anything librosa/numba prints is pushed to stderr so it never corrupts the protocol.
+protocol = sys.stdout
+sys.stdout = sys.stderr
+
+warnings.filterwarnings("ignore")
+
+
+def send(message):
+    protocol.write(json.dumps(message) + "\n")
+    protocol.flush()
+
+
+def analyze_batch(request, request_id):
+    from librosa_api import analyze_file
+
+    files = request["files"]
+    results = []
+    for index, file_path in enumerate(files):
+        def progress(percent, stage):
+            send({"id": request_id, "event": "progress", "index": index, "stage": stage, "percent": percent})
+
+        # One bad file must not fail the rest of the batch
+        try:
+            if not os.path.isfile(file_path):
+                raise IOError("Input file does not exist: " + file_path)
+            results.append(analyze_file(file_path, progress))
+        except Exception as e:
+            traceback.print_exc()
+            results.append({"error": str(e)})
+        progress(100, "done")
+    return results
+
+
+def warm_up():
+    import numpy as np
+    from librosa_api import analyze_signal
+
+    # A few seconds of a decaying tone with clicks, so beat tracking, chroma and MFCC all run and numba
+    # compiles every kernel before the first real request arrives.
+    sr = 22050
+    t = np.arange(sr * 4) / sr
+    y = (0.5 * np.sin(2 * np.pi * 440 * t) * np.exp(-(t % 0.5) * 8)).astype(np.float32)
+    analyze_signal(y, sr, lambda percent, stage: None)
+
+
+def main():
+    sys.path.insert(0, os.path.dirname(os.path.abspath(__file__)))
+    warm_up()
+    send({"event": "ready", "pid": os.getpid()})
+
+    for line in sys.stdin:
+        line = line.strip()
+        if not line:
+            continue
+        try:
+            request = json.loads(line)
+        except ValueError:
+            send({"status": "error", "error": "Invalid JSON request"})
+            continue
+
+        request_id = request.get("id")
+        command = request.get("cmd", "analyze")
+
+        if command == "ping":
+            send({"id": request_id, "status": "pong"})
+        elif command == "shutdown":
+            send({"id": request_id, "status": "ok"})
+            break
+        elif command == "analyze":
+            try:
+                send({"id": request_id, "status": "ok", "results": analyze_batch(request, request_id)})
+            except Exception as e:
+                traceback.print_exc()
+                send({"id": request_id, "status": "error", "error": str(e)})
+        else:
+            send({"id": request_id, "status": "error", "error": "Unknown command: " + command})
+
+
+if __name__ == "__main__":
+    main()
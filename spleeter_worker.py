@@ -0,0 +1,92 @@
+import json
+import os
+import sys
+import traceback
+import warnings
+
+# Protocol messages are written to the real stdout, one JSON object per line.
+# Anything TensorFlow/Spleeter prints is pushed to stderr so it never corrupts the protocol.
+protocol = sys.stdout
+sys.stdout = sys.stderr
+
+warnings.filterwarnings("ignore")
+
+SAMPLE_RATE = 44100
+
+
+def send(message):
+    protocol.write(json.dumps(message) + "\n")
+    protocol.flush()
+
+
+def separate(separator, audio_adapter, request, request_id):
+    input_path = request["input"]
+    output_dir = request["output"]
+    if not os.path.isfile(input_path):
+        raise IOError("Input file does not exist: " + input_path)
+
+    # Same layout as the CLI: <output>/<input name>/<instrument>.wav
+    track_dir = os.path.join(output_dir, os.path.splitext(os.path.basename(input_path))[0])
+    os.makedirs(track_dir, exist_ok=True)
+
+    waveform, _ = audio_adapter.load(input_path, sample_rate=SAMPLE_RATE)
+    send({"id": request_id, "event": "stage", "stage": "loaded"})
+    prediction = separator.separate(waveform)
+    send({"id": request_id, "event": "stage", "stage": "separated"})
+
+    stems = []
+    for instrument, data in prediction.items():
+        stem_path = os.path.join(track_dir, instrument + ".wav")
+        audio_adapter.save(stem_path, data, SAMPLE_RATE, "wav", "128k")
+        stems.append(stem_path)
+        # The file is closed once save returns, so the server can start uploading it right away
+        send({"id": request_id, "event": "stem", "stem": instrument, "path": stem_path})
+    return stems
+
+
+def main():
+    model = sys.argv[1] if len(sys.argv) > 1 else "spleeter:2stems"
+
+    import numpy as np
+    from spleeter.audio.adapter import AudioAdapter
+    from spleeter.separator import Separator
+
+    separator = Separator(model, multiprocess=False)
+    audio_adapter = AudioAdapter.default()
+
+    # Run the model once on a second of silence so the graph is built and the checkpoint is loaded
+    # before the first real job arrives.
+    separator.separate(np.zeros((SAMPLE_RATE, 2), dtype=np.float32))
+    send({"event": "ready", "model": model, "pid": os.getpid()})
+
+    for line in sys.stdin:
+        line = line.strip()
+        if not line:
+            continue
+        try:
+            request = json.loads(line)
+        except ValueError:
+            send({"status": "error", "error": "Invalid JSON request"})
+            continue
+
+        request_id = request.get("id")
+        command = request.get("cmd", "separate")
+
+        if command == "ping":
+            send({"id": request_id, "status": "pong", "model": model})
+        elif command == "shutdown":
+            send({"id": request_id, "status": "ok"})
+            break
+        elif command == "separate":
+            try:
+                stems = separate(separator, audio_adapter, request, request_id)
+                send({"id": request_id, "status": "ok", "stems": stems})
+            except Exception as e:
+                traceback.print_exc()
+                send({"id": request_id, "status": "error", "error": str(e)})
+        else:
+            send({"id": request_id, "status": "error", "error": "Unknown command: " + command})
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,410 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Computes the features of librosa_api.py in-process: tempo and beats, spectral centroid, bandwidth, contrast and
+ * rolloff, RMS, 12-bin chroma and 13 MFCCs, all with librosa's defaults (2048-point centered STFT, hop 512,
+ * 128 Slaney mel bands).
+ *
+ * Mono samples are pushed in blocks of any size and framed on the fly, and every feature is a running
+ * accumulator, so memory stays at one analysis window however long the track is. The only per-frame state kept
+ * is the onset envelope (one float per 512 samples) that beat tracking needs.
+ * Per-frame work reuses the same scratch buffers. One instance analyzes one signal and is not thread-safe.
+ */
+public final class AudioFeatureExtractor {
+
+    public static final int FFT_SIZE = 2048;
+    public static final int HOP_LENGTH = 512;
+    public static final int MEL_BANDS = 128;
+    public static final int MFCC_COUNT = 13;
+    public static final int CONTRAST_BANDS = 6;
+
+    private static final double CONTRAST_FMIN = 200.0;
+    private static final double CONTRAST_QUANTILE = 0.02;
+    private static final double ROLLOFF_PERCENT = 0.85;
+    private static final double TOP_DB = 80.0;
+    private static final double AMIN = 1e-10;
+
+    // Windows and filterbanks only depend on the sample rate, so they are built once per rate and shared
+    private static final Map<Integer, Tables> TABLES = new ConcurrentHashMap<>();
+
+    private static final class Tables {
+        private final float[] window = new float[FFT_SIZE];
+        private final float[] frequencies = new float[FFT_SIZE / 2 + 1];
+        private final MelFilterbank mel;
+        private final ChromaFilterbank chroma;
+        private final Dct dct;
+        // First bin and length of the bins ranked in each contrast band, and how many bins at each end are averaged
+        private final int[] contrastStart = new int[CONTRAST_BANDS + 1];
+        private final int[] contrastLength = new int[CONTRAST_BANDS + 1];
+        private final int[] contrastQuantile = new int[CONTRAST_BANDS + 1];
+
+        Tables(int sampleRate) {
+            for (int i = 0; i < FFT_SIZE; i++) {
+                window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / FFT_SIZE));
+            }
+            for (int k = 0; k < frequencies.length; k++) {
+                frequencies[k] = (float) k * sampleRate / FFT_SIZE;
+            }
+            mel = new MelFilterbank(sampleRate, FFT_SIZE, MEL_BANDS, 0, sampleRate / 2.0);
+            chroma = new ChromaFilterbank(sampleRate, FFT_SIZE);
+            dct = new Dct(MEL_BANDS, MFCC_COUNT);
+
+            // Octave bands [0, 200], [200, 400] ... [6400, 12800], the last one running up to Nyquist
+            double low = 0;
+            double high = CONTRAST_FMIN;
+            for (int band = 0; band <= CONTRAST_BANDS; band++) {
+                int first = -1;
+                int last = -1;
+                for (int k = 0; k < frequencies.length; k++) {
+                    if (frequencies[k] >= low && frequencies[k] <= high) {
+                        if (first < 0) {
+                            first = k;
+                        }
+                        last = k;
+                    }
+                }
+                if (first < 0) {
+                    // Band above Nyquist for low sample rates; it gets a contrast of 0
+                    contrastStart[band] = 0;
+                    contrastLength[band] = 0;
+                    contrastQuantile[band] = 0;
+                } else {
+                    if (band > 0) {
+                        first--;
+                    }
+                    if (band == CONTRAST_BANDS) {
+                        last = frequencies.length - 1;
+                    }
+                    int count = last - first + 1;
+                    contrastStart[band] = first;
+                    contrastLength[band] = band < CONTRAST_BANDS ? count - 1 : count;
+                    contrastQuantile[band] = (int) Math.max(1, Math.rint(CONTRAST_QUANTILE * count));
+                }
+                low = high;
+                high *= 2;
+            }
+        }
+    }
+
+    private final int sampleRate;
+    private final Tables tables;
+    private final Fft fft = new Fft(FFT_SIZE);
+
+    // Scratch buffers, reused for every frame
+    private final float[] frame = new float[FFT_SIZE];
+    private final float[] windowed = new float[FFT_SIZE];
+    private final float[] spectrumRe = new float[FFT_SIZE / 2 + 1];
+    private final float[] spectrumIm = new float[FFT_SIZE / 2 + 1];
+    private final float[] magnitude = new float[FFT_SIZE / 2 + 1];
+    private final float[] power = new float[FFT_SIZE / 2 + 1];
+    private final float[] melFrame = new float[MEL_BANDS];
+    private final float[] chromaFrame = new float[ChromaFilterbank.CHROMA_BINS];
+    private final float[] previousMelDb = new float[MEL_BANDS];
+    private final float[] selectScratch = new float[FFT_SIZE / 2 + 1];
+
+    // Centered framing: the first frame starts half a window before the first sample
+    private int buffered = FFT_SIZE / 2;
+    private long sampleCount;
+    private int frameCount;
+
+    private double rmsSum;
+    private final LoudestWindow loudestWindow;
+    private double centroidSum;
+    private double bandwidthSum;
+    private double rolloffSum;
+    private final double[] chromaSum = new double[ChromaFilterbank.CHROMA_BINS];
+    private final ClampedMeans melMeans = new ClampedMeans(MEL_BANDS);
+    private final ClampedMeans contrastPeaks = new ClampedMeans(CONTRAST_BANDS + 1);
+    private final ClampedMeans contrastValleys = new ClampedMeans(CONTRAST_BANDS + 1);
+    private float melMaxDb = Float.NEGATIVE_INFINITY;
+    private float[] onsets = new float[1024];
+
+    public AudioFeatureExtractor(int sampleRate) {
+        this.sampleRate = sampleRate;
+        this.tables = TABLES.computeIfAbsent(sampleRate, Tables::new);
+        this.loudestWindow = new LoudestWindow(LoudestWindow.PREVIEW_SECONDS, sampleRate, HOP_LENGTH);
+    }
+
+    /**
+     * Reads a WAV file block by block, mixes it down to mono like librosa.load, and analyzes it.
+     */
+    public static AudioFeatures analyze(Path wavFile) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(wavFile), 1 << 16)) {
+            return analyze(in);
+        }
+    }
+
+    /**
+     * Same as above for a WAV stream positioned at its RIFF header, e.g. an S3 object body.
+     */
+    public static AudioFeatures analyze(InputStream in) throws IOException {
+        WavFile.Header header = WavFile.readHeader(in);
+        AudioFeatureExtractor extractor = new AudioFeatureExtractor(header.sampleRate);
+        WavFile.readMono(in, header, extractor::accept);
+        return extractor.finish();
+    }
+
+    /**
+     * Reads a WAV file and analyzes its mono mix resampled to analysisRate, which is far cheaper for high-rate
+     * files: tempo, key and MFCCs don't need more than librosa's default 22050 Hz. Feature groups in fullResolution
+     * are computed at the file's own rate in the same pass. Files at or below analysisRate (or analysisRate 0)
+     * are analyzed as they are.
+     */
+    public static AudioFeatures analyze(Path wavFile, int analysisRate, Set<AudioFeatures.Group> fullResolution) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(wavFile), 1 << 16)) {
+            return analyze(in, analysisRate, fullResolution);
+        }
+    }
+
+    public static AudioFeatures analyze(InputStream in, int analysisRate, Set<AudioFeatures.Group> fullResolution) throws IOException {
+        WavFile.Header header = WavFile.readHeader(in);
+        if (analysisRate <= 0 || header.sampleRate <= analysisRate || !Resampler.isSupported(header.sampleRate, analysisRate)) {
+            AudioFeatureExtractor extractor = new AudioFeatureExtractor(header.sampleRate);
+            WavFile.readMono(in, header, extractor::accept);
+            return extractor.finish();
+        }
+
+        AudioFeatureExtractor decimated = new AudioFeatureExtractor(analysisRate);
+        Resampler resampler = new Resampler(header.sampleRate, analysisRate, decimated::accept);
+        if (fullResolution.isEmpty()) {
+            WavFile.readMono(in, header, resampler);
+            resampler.finish();
+            return decimated.finish();
+        }
+
+        AudioFeatureExtractor full = new AudioFeatureExtractor(header.sampleRate);
+        WavFile.readMono(in, header, (samples, offset, length) -> {
+            full.accept(samples, offset, length);
+            resampler.accept(samples, offset, length);
+        });
+        resampler.finish();
+        return AudioFeatures.combine(decimated.finish(), full.finish(), fullResolution);
+    }
+
+    /**
+     * Feeds the next block of mono samples.
+     */
+    public void accept(float[] samples, int offset, int length) {
+        sampleCount += length;
+        int position = offset;
+        int end = offset + length;
+        while (position < end) {
+            int count = Math.min(FFT_SIZE - buffered, end - position);
+            System.arraycopy(samples, position, frame, buffered, count);
+            buffered += count;
+            position += count;
+            if (buffered == FFT_SIZE) {
+                processFrame();
+                advance();
+            }
+        }
+    }
+
+    /**
+     * Pads the end of the signal like a centered STFT and returns the track-level features.
+     */
+    public AudioFeatures finish() {
+        if (sampleCount == 0) {
+            throw new IllegalStateException("No audio samples to analyze.");
+        }
+        long expectedFrames = 1 + sampleCount / HOP_LENGTH;
+        while (frameCount < expectedFrames) {
+            Arrays.fill(frame, buffered, FFT_SIZE, 0f);
+            processFrame();
+            advance();
+        }
+
+        int frames = frameCount;
+        float[] mfcc = computeMfcc();
+        BeatTracker.Result beats = BeatTracker.track(onsets, frames, sampleRate, HOP_LENGTH);
+
+        float[] chroma = new float[ChromaFilterbank.CHROMA_BINS];
+        for (int c = 0; c < chroma.length; c++) {
+            chroma[c] = (float) (chromaSum[c] / frames);
+        }
+
+        return new AudioFeatures(sampleRate, beats.getTempo(), beats.getBeatFrames(), centroidSum / frames, rmsSum / frames,
+                chroma, mfcc, bandwidthSum / frames, computeContrast(), rolloffSum / frames, loudestWindow.getStartSeconds());
+    }
+
+    private void advance() {
+        System.arraycopy(frame, HOP_LENGTH, frame, 0, FFT_SIZE - HOP_LENGTH);
+        buffered = FFT_SIZE - HOP_LENGTH;
+        frameCount++;
+    }
+
+    private void processFrame() {
+        double sumSquares = 0;
+        float[] window = tables.window;
+        for (int i = 0; i < FFT_SIZE; i++) {
+            float sample = frame[i];
+            sumSquares += sample * sample;
+            windowed[i] = sample * window[i];
+        }
+        double rms = Math.sqrt(sumSquares / FFT_SIZE);
+        rmsSum += rms;
+        loudestWindow.accept(rms);
+
+        fft.forward(windowed, spectrumRe, spectrumIm);
+        double magnitudeSum = 0;
+        double weightedFrequency = 0;
+        float[] frequencies = tables.frequencies;
+        for (int k = 0; k < power.length; k++) {
+            float p = spectrumRe[k] * spectrumRe[k] + spectrumIm[k] * spectrumIm[k];
+            float m = (float) Math.sqrt(p);
+            power[k] = p;
+            magnitude[k] = m;
+            magnitudeSum += m;
+            weightedFrequency += m * frequencies[k];
+        }
+
+        // Centroid and bandwidth of the magnitude spectrum; silent frames count as 0 like in librosa
+        if (magnitudeSum > Float.MIN_NORMAL) {
+            double centroid = weightedFrequency / magnitudeSum;
+            double spread = 0;
+            for (int k = 0; k < magnitude.length; k++) {
+                double deviation = frequencies[k] - centroid;
+                spread += magnitude[k] * deviation * deviation;
+            }
+            centroidSum += centroid;
+            bandwidthSum += Math.sqrt(spread / magnitudeSum);
+        }
+
+        double threshold = ROLLOFF_PERCENT * magnitudeSum;
+        double cumulative = 0;
+        for (int k = 0; k < magnitude.length; k++) {
+            cumulative += magnitude[k];
+            if (cumulative >= threshold) {
+                rolloffSum += frequencies[k];
+                break;
+            }
+        }
+
+        tables.chroma.apply(power, chromaFrame);
+        float chromaMax = 0;
+        for (float value : chromaFrame) {
+            chromaMax = Math.max(chromaMax, Math.abs(value));
+        }
+        for (int c = 0; c < chromaFrame.length; c++) {
+            chromaSum[c] += chromaMax > Float.MIN_NORMAL ? chromaFrame[c] / chromaMax : chromaFrame[c];
+        }
+
+        tables.mel.apply(power, melFrame);
+        for (int m = 0; m < MEL_BANDS; m++) {
+            float db = (float) (10 * Math.log10(Math.max(AMIN, melFrame[m])));
+            melFrame[m] = db;
+            melMeans.add(m, db);
+            melMaxDb = Math.max(melMaxDb, db);
+        }
+        addOnset();
+
+        for (int band = 0; band <= CONTRAST_BANDS; band++) {
+            int length = tables.contrastLength[band];
+            double valley = 0;
+            double peak = 0;
+            if (length > 0) {
+                System.arraycopy(magnitude, tables.contrastStart[band], selectScratch, 0, length);
+                int quantile = Math.min(tables.contrastQuantile[band], length);
+                // Only the quantile at each end matters, so partition around those ranks instead of sorting the band
+                select(selectScratch, 0, length - 1, quantile - 1);
+                select(selectScratch, quantile, length - 1, length - quantile);
+                for (int i = 0; i < quantile; i++) {
+                    valley += selectScratch[i];
+                    peak += selectScratch[length - 1 - i];
+                }
+                valley /= quantile;
+                peak /= quantile;
+            }
+            contrastPeaks.add(band, (float) (10 * Math.log10(Math.max(AMIN, peak))));
+            contrastValleys.add(band, (float) (10 * Math.log10(Math.max(AMIN, valley))));
+        }
+    }
+
+    // Quickselect: reorders values[from..to] so that values[k] holds the value of that rank, smaller ones before it
+    // and larger ones after it
+    private static void select(float[] values, int from, int to, int k) {
+        if (k < from || k > to) {
+            return;
+        }
+        while (from < to) {
+            float pivot = values[(from + to) >>> 1];
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    float swap = values[i];
+                    values[i] = values[j];
+                    values[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                to = j;
+            } else if (k >= i) {
+                from = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    // Mean positive log-mel flux against the previous frame, stored lag + n_fft / (2 * hop) frames later like
+    // librosa.onset.onset_strength. librosa clips to 80 dB below the loudest value of the whole track; a stream only
+    // knows the loudest value so far, which differs only while the track is still getting louder.
+    private void addOnset() {
+        float floor = (float) (melMaxDb - TOP_DB);
+        if (frameCount > 0) {
+            double flux = 0;
+            for (int m = 0; m < MEL_BANDS; m++) {
+                flux += Math.max(0f, Math.max(melFrame[m], floor) - Math.max(previousMelDb[m], floor));
+            }
+            int index = frameCount + FFT_SIZE / (2 * HOP_LENGTH);
+            if (index >= onsets.length) {
+                onsets = Arrays.copyOf(onsets, onsets.length * 2);
+            }
+            onsets[index] = (float) (flux / MEL_BANDS);
+        }
+        System.arraycopy(melFrame, 0, previousMelDb, 0, MEL_BANDS);
+    }
+
+    // MFCCs are linear in the log-mel frames, so their mean is the DCT of the mean (clipped) log-mel frame
+    private float[] computeMfcc() {
+        float floor = (float) (melMaxDb - TOP_DB);
+        float[] meanMel = new float[MEL_BANDS];
+        for (int m = 0; m < MEL_BANDS; m++) {
+            meanMel[m] = (float) melMeans.mean(m, floor);
+        }
+        float[] mfcc = new float[MFCC_COUNT];
+        tables.dct.apply(meanMel, mfcc);
+        return mfcc;
+    }
+
+    private float[] computeContrast() {
+        float peakFloor = (float) (contrastPeaks.getMax() - TOP_DB);
+        float valleyFloor = (float) (contrastValleys.getMax() - TOP_DB);
+        float[] contrast = new float[CONTRAST_BANDS + 1];
+        for (int band = 0; band <= CONTRAST_BANDS; band++) {
+            if (tables.contrastLength[band] > 0) {
+                contrast[band] = (float) (contrastPeaks.mean(band, peakFloor) - contrastValleys.mean(band, valleyFloor));
+            }
+        }
+        return contrast;
+    }
+}
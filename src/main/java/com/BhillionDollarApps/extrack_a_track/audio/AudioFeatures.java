@@ -0,0 +1,140 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Track-level features, one value (or vector) per track, as computed by librosa_api.py.
+ */
+public final class AudioFeatures {
+
+    /**
+     * Features that can be computed at different sample rates, for analyses that decimate the signal but keep
+     * some features at the file's native rate.
+     */
+    public enum Group {
+        // tempo and beat frames
+        RHYTHM,
+        // mean chroma ("melody") and the key estimated from it
+        KEY,
+        MFCC,
+        // centroid, bandwidth, contrast and rolloff, which depend on how high the spectrum reaches
+        SPECTRAL,
+        RMS
+    }
+
+    private static final String[] NOTES = {"C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B"};
+
+    private final double tempo;
+    private final int[] beats;
+    private final double spectralCentroid;
+    private final double rms;
+    private final float[] chroma;
+    private final float[] mfcc;
+    private final double bandwidth;
+    private final float[] contrast;
+    private final double rolloff;
+    // Rate of the analyzed signal, which the beat frames count in hops of 512
+    private final int sampleRate;
+    // Start of the loudest LoudestWindow.PREVIEW_SECONDS of the track, from the same frame RMS
+    private final double previewStart;
+
+    AudioFeatures(int sampleRate, double tempo, int[] beats, double spectralCentroid, double rms, float[] chroma, float[] mfcc,
+                  double bandwidth, float[] contrast, double rolloff, double previewStart) {
+        this.sampleRate = sampleRate;
+        this.tempo = tempo;
+        this.beats = beats;
+        this.spectralCentroid = spectralCentroid;
+        this.rms = rms;
+        this.chroma = chroma;
+        this.mfcc = mfcc;
+        this.bandwidth = bandwidth;
+        this.contrast = contrast;
+        this.rolloff = rolloff;
+        this.previewStart = previewStart;
+    }
+
+    /**
+     * The features of the decimated analysis, with the given groups taken from the full-rate analysis instead.
+     */
+    static AudioFeatures combine(AudioFeatures decimated, AudioFeatures full, Set<Group> fromFull) {
+        AudioFeatures rhythm = fromFull.contains(Group.RHYTHM) ? full : decimated;
+        AudioFeatures key = fromFull.contains(Group.KEY) ? full : decimated;
+        AudioFeatures mfcc = fromFull.contains(Group.MFCC) ? full : decimated;
+        AudioFeatures spectral = fromFull.contains(Group.SPECTRAL) ? full : decimated;
+        AudioFeatures rms = fromFull.contains(Group.RMS) ? full : decimated;
+        return new AudioFeatures(rhythm.sampleRate, rhythm.tempo, rhythm.beats, spectral.spectralCentroid, rms.rms,
+                key.chroma, mfcc.mfcc, spectral.bandwidth, spectral.contrast, spectral.rolloff, rms.previewStart);
+    }
+
+    public int getSampleRate() { return sampleRate; }
+    public double getTempo() { return tempo; }
+    public int[] getBeats() { return beats; }
+    public double getSpectralCentroid() { return spectralCentroid; }
+    public double getRms() { return rms; }
+    public float[] getChroma() { return chroma; }
+    public float[] getMfcc() { return mfcc; }
+    public double getBandwidth() { return bandwidth; }
+    public float[] getContrast() { return contrast; }
+    public double getRolloff() { return rolloff; }
+    public double getPreviewStart() { return previewStart; }
+
+    /**
+     * Key from the mean chroma, with the same rule as estimate_key_with_chroma in librosa_api.py.
+     */
+    public String getKey() {
+        float max = 0;
+        for (float value : chroma) {
+            max = Math.max(max, value);
+        }
+        if (max <= 0) {
+            return "Unknown";
+        }
+        int tonic = 0;
+        float best = -1;
+        for (int c = 0; c < chroma.length; c++) {
+            float normalized = chroma[c] / max;
+            float filtered = normalized > 0.2f ? normalized : 0;
+            if (filtered > best) {
+                best = filtered;
+                tonic = c;
+            }
+        }
+        return NOTES[tonic % 12] + (tonic % 2 == 0 ? " major" : " minor");
+    }
+
+    /**
+     * The same JSON shape librosa_api.py prints, so callers can treat both engines alike.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> spectralFeatures = new LinkedHashMap<>();
+        spectralFeatures.put("centroid", spectralCentroid);
+        spectralFeatures.put("bandwidth", bandwidth);
+        spectralFeatures.put("contrast", toList(contrast));
+        spectralFeatures.put("rolloff", rolloff);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("tempo", tempo);
+        result.put("spectral_centroid", spectralCentroid);
+        result.put("rms", rms);
+        result.put("key", getKey());
+        result.put("sample_rate", sampleRate);
+        result.put("beats", Arrays.stream(beats).boxed().toList());
+        result.put("melody", toList(chroma));
+        result.put("mfcc", toList(mfcc));
+        result.put("spectral_features", spectralFeatures);
+        result.put("preview_start", previewStart);
+        return result;
+    }
+
+    private static List<Double> toList(float[] values) {
+        Double[] boxed = new Double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            boxed[i] = (double) values[i];
+        }
+        return List.of(boxed);
+    }
+}
@@ -0,0 +1,274 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import java.util.Arrays;
+
+/**
+ * Tempo estimation and beat tracking on an onset-strength envelope, following librosa.beat.beat_track:
+ * the tempo is the autocorrelation lag that best fits a log-normal prior around 120 BPM, and beats are picked by
+ * dynamic programming (Ellis 2007) with the default tightness of 100.
+ */
+public final class BeatTracker {
+
+    private static final double AUTOCORRELATION_SECONDS = 8.0;
+    private static final double START_BPM = 120.0;
+    private static final double MAX_BPM = 320.0;
+    private static final double TIGHTNESS = 100.0;
+    // Tempogram windows overlap by all but a few frames, so averaging every 4th one gives the same curve for a quarter of the work
+    private static final int TEMPOGRAM_STRIDE = 4;
+
+    private BeatTracker() {}
+
+    public static final class Result {
+        private final double tempo;
+        private final int[] beatFrames;
+
+        Result(double tempo, int[] beatFrames) {
+            this.tempo = tempo;
+            this.beatFrames = beatFrames;
+        }
+
+        public double getTempo() { return tempo; }
+        public int[] getBeatFrames() { return beatFrames; }
+    }
+
+    /**
+     * Estimates tempo and beat positions (in frames) from the first length values of the onset envelope.
+     */
+    public static Result track(float[] onsetEnvelope, int length, int sampleRate, int hopLength) {
+        boolean anyOnset = false;
+        for (int i = 0; i < length && !anyOnset; i++) {
+            anyOnset = onsetEnvelope[i] != 0;
+        }
+        if (!anyOnset) {
+            return new Result(0, new int[0]);
+        }
+
+        double frameRate = (double) sampleRate / hopLength;
+        int period = estimatePeriod(onsetEnvelope, length, frameRate);
+        double tempo = 60.0 * frameRate / period;
+        return new Result(tempo, trackBeats(onsetEnvelope, length, period));
+    }
+
+    // Autocorrelation lag (in frames) of the most likely tempo
+    private static int estimatePeriod(float[] onsets, int length, double frameRate) {
+        int windowLength = (int) Math.floor(AUTOCORRELATION_SECONDS * frameRate);
+        int fftSize = Integer.highestOneBit(Math.max(4, 2 * windowLength - 1) - 1) << 1;
+        Fft fft = new Fft(fftSize);
+
+        float[] window = new float[windowLength];
+        for (int i = 0; i < windowLength; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / windowLength));
+        }
+
+        int padding = windowLength / 2;
+        float[] frame = new float[fftSize];
+        float[] spectrumRe = new float[fftSize / 2 + 1];
+        float[] spectrumIm = new float[fftSize / 2 + 1];
+        float[] power = new float[fftSize];
+        double[] tempogram = new double[windowLength];
+        int frames = 0;
+
+        for (int t = 0; t < length; t += TEMPOGRAM_STRIDE) {
+            // Window of the envelope centered on frame t, linearly ramped to zero beyond either end
+            Arrays.fill(frame, 0f);
+            for (int i = 0; i < windowLength; i++) {
+                frame[i] = padded(onsets, length, t - padding + i, padding) * window[i];
+            }
+
+            // Autocorrelation = inverse FFT of the power spectrum; the power spectrum is real and even,
+            // so a forward FFT gives the same result
+            fft.forward(frame, spectrumRe, spectrumIm);
+            for (int k = 0; k <= fftSize / 2; k++) {
+                float p = spectrumRe[k] * spectrumRe[k] + spectrumIm[k] * spectrumIm[k];
+                power[k] = p;
+                if (k > 0 && k < fftSize / 2) {
+                    power[fftSize - k] = p;
+                }
+            }
+            fft.forward(power, spectrumRe, spectrumIm);
+
+            double zeroLag = spectrumRe[0];
+            if (zeroLag <= 0) {
+                frames++;
+                continue;
+            }
+            for (int lag = 0; lag < windowLength; lag++) {
+                tempogram[lag] += spectrumRe[lag] / zeroLag;
+            }
+            frames++;
+        }
+
+        int bestLag = -1;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int lag = 1; lag < windowLength; lag++) {
+            double bpm = 60.0 * frameRate / lag;
+            if (bpm >= MAX_BPM) {
+                continue;
+            }
+            double logPrior = -0.5 * Math.pow(log2(bpm) - log2(START_BPM), 2);
+            double score = Math.log1p(1e6 * tempogram[lag] / frames) + logPrior;
+            if (score > bestScore) {
+                bestScore = score;
+                bestLag = lag;
+            }
+        }
+        return Math.max(1, bestLag);
+    }
+
+    private static float padded(float[] onsets, int length, int index, int padding) {
+        if (index < 0) {
+            return onsets[0] * (padding + index) / padding;
+        }
+        if (index >= length) {
+            return onsets[length - 1] * (padding - 1 - (index - length)) / padding;
+        }
+        return onsets[index];
+    }
+
+    private static int[] trackBeats(float[] onsets, int length, int period) {
+        // Onsets normalized by their standard deviation, smoothed with a Gaussian about one period wide
+        double mean = 0;
+        for (int i = 0; i < length; i++) {
+            mean += onsets[i];
+        }
+        mean /= length;
+        double variance = 0;
+        for (int i = 0; i < length; i++) {
+            variance += (onsets[i] - mean) * (onsets[i] - mean);
+        }
+        double std = length > 1 ? Math.sqrt(variance / (length - 1)) : 0;
+        double scale = 1.0 / (std + Float.MIN_NORMAL);
+
+        double[] kernel = new double[2 * period + 1];
+        for (int d = -period; d <= period; d++) {
+            kernel[d + period] = Math.exp(-0.5 * Math.pow(d * 32.0 / period, 2));
+        }
+        double[] localScore = new double[length];
+        double maxLocalScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < length; i++) {
+            double sum = 0;
+            int from = Math.max(-period, -i);
+            int to = Math.min(period, length - 1 - i);
+            for (int d = from; d <= to; d++) {
+                sum += onsets[i + d] * kernel[d + period];
+            }
+            localScore[i] = sum * scale;
+            maxLocalScore = Math.max(maxLocalScore, localScore[i]);
+        }
+
+        // Best cumulative score ending in a beat at each frame, with a penalty for straying from the period
+        int firstOffset = -2 * period;
+        int lastOffset = (int) -Math.rint(period / 2.0);
+        int candidates = lastOffset - firstOffset + 1;
+        double[] transitionWeight = new double[candidates];
+        for (int j = 0; j < candidates; j++) {
+            transitionWeight[j] = -TIGHTNESS * Math.pow(Math.log(-(double) (firstOffset + j) / period), 2);
+        }
+
+        double[] cumulativeScore = new double[length];
+        int[] backlink = new int[length];
+        boolean firstBeat = true;
+        for (int i = 0; i < length; i++) {
+            int bestJ = 0;
+            double best = Double.NEGATIVE_INFINITY;
+            for (int j = 0; j < candidates; j++) {
+                int previous = i + firstOffset + j;
+                double candidate = transitionWeight[j] + (previous >= 0 ? cumulativeScore[previous] : 0);
+                if (candidate > best) {
+                    best = candidate;
+                    bestJ = j;
+                }
+            }
+            cumulativeScore[i] = localScore[i] + best;
+            if (firstBeat && localScore[i] < 0.01 * maxLocalScore) {
+                backlink[i] = -1;
+            } else {
+                backlink[i] = i + firstOffset + bestJ;
+                firstBeat = false;
+            }
+        }
+
+        int[] beats = backtrack(backlink, lastBeat(cumulativeScore));
+        return trim(beats, localScore);
+    }
+
+    // Last local maximum of the cumulative score that is above half the median of all local maxima
+    private static int lastBeat(double[] cumulativeScore) {
+        int length = cumulativeScore.length;
+        double[] maxima = new double[length];
+        boolean[] isMax = new boolean[length];
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            double previous = cumulativeScore[Math.max(0, i - 1)];
+            double next = cumulativeScore[Math.min(length - 1, i + 1)];
+            if (cumulativeScore[i] > previous && cumulativeScore[i] >= next) {
+                isMax[i] = true;
+                maxima[count++] = cumulativeScore[i];
+            }
+        }
+        if (count == 0) {
+            return length - 1;
+        }
+
+        Arrays.sort(maxima, 0, count);
+        double median = count % 2 == 1 ? maxima[count / 2] : (maxima[count / 2 - 1] + maxima[count / 2]) / 2;
+        for (int i = length - 1; i >= 0; i--) {
+            if (isMax[i] && cumulativeScore[i] * 2 > median) {
+                return i;
+            }
+        }
+        return length - 1;
+    }
+
+    private static int[] backtrack(int[] backlink, int tail) {
+        int count = 0;
+        for (int n = tail; n >= 0; n = backlink[n]) {
+            count++;
+        }
+        int[] beats = new int[count];
+        int index = count;
+        for (int n = tail; n >= 0; n = backlink[n]) {
+            beats[--index] = n;
+        }
+        return beats;
+    }
+
+    // Drops weak beats at the start and end, where the tracker extrapolates through silence
+    private static int[] trim(int[] beats, double[] localScore) {
+        if (beats.length == 0) {
+            return beats;
+        }
+        double[] hann = {0, 0.5, 1, 0.5, 0};
+        double[] smoothed = new double[beats.length];
+        double energy = 0;
+        for (int b = 0; b < beats.length; b++) {
+            double sum = 0;
+            for (int w = 0; w < hann.length; w++) {
+                int source = b + w - hann.length / 2;
+                if (source >= 0 && source < beats.length) {
+                    sum += localScore[beats[source]] * hann[w];
+                }
+            }
+            smoothed[b] = sum;
+            energy += sum * sum;
+        }
+        double threshold = 0.5 * Math.sqrt(energy / beats.length);
+
+        int first = -1;
+        int last = -1;
+        for (int b = 0; b < beats.length; b++) {
+            if (smoothed[b] > threshold) {
+                if (first < 0) {
+                    first = b;
+                }
+                last = b;
+            }
+        }
+        // Same half-open range as librosa, which leaves out the last strong beat
+        return first < 0 ? new int[0] : Arrays.copyOfRange(beats, first, last);
+    }
+
+    private static double log2(double value) {
+        return Math.log(value) / Math.log(2);
+    }
+}
@@ -0,0 +1,78 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+/**
+ * Maps FFT bins onto the 12 pitch classes, starting at C. Same construction as librosa.filters.chroma with its
+ * defaults: Gaussian bumps per semitone, L2-normalized per bin, weighted towards the octaves around C5.
+ */
+public final class ChromaFilterbank {
+
+    public static final int CHROMA_BINS = 12;
+    private static final double CENTER_OCTAVE = 5.0;
+    private static final double OCTAVE_WIDTH = 2.0;
+
+    private final int binCount;
+    private final float[][] weights;
+
+    public ChromaFilterbank(int sampleRate, int fftSize) {
+        this.binCount = fftSize / 2 + 1;
+
+        // Position of every bin in semitones above A0 (27.5 Hz); bin 0 (DC) is placed an octave and a half below bin 1
+        double[] semitones = new double[fftSize];
+        for (int k = 1; k < fftSize; k++) {
+            double hz = (double) k * sampleRate / fftSize;
+            semitones[k] = CHROMA_BINS * (Math.log(hz / (440.0 / 16)) / Math.log(2));
+        }
+        semitones[0] = semitones[1] - 1.5 * CHROMA_BINS;
+
+        double[] binWidths = new double[fftSize];
+        for (int k = 0; k < fftSize - 1; k++) {
+            binWidths[k] = Math.max(semitones[k + 1] - semitones[k], 1.0);
+        }
+        binWidths[fftSize - 1] = 1.0;
+
+        double[][] dense = new double[CHROMA_BINS][binCount];
+        int halfChroma = CHROMA_BINS / 2;
+        for (int k = 0; k < binCount; k++) {
+            double norm = 0;
+            for (int c = 0; c < CHROMA_BINS; c++) {
+                double distance = floorMod(semitones[k] - c + halfChroma + 10 * CHROMA_BINS, CHROMA_BINS) - halfChroma;
+                double weight = Math.exp(-0.5 * Math.pow(2 * distance / binWidths[k], 2));
+                dense[c][k] = weight;
+                norm += weight * weight;
+            }
+            norm = Math.sqrt(norm);
+            double octaveWeight = Math.exp(-0.5 * Math.pow((semitones[k] / CHROMA_BINS - CENTER_OCTAVE) / OCTAVE_WIDTH, 2));
+            for (int c = 0; c < CHROMA_BINS; c++) {
+                dense[c][k] = (norm > 0 ? dense[c][k] / norm : 0) * octaveWeight;
+            }
+        }
+
+        // Bin 0 of the construction is A; rotate so that chroma 0 is C
+        weights = new float[CHROMA_BINS][binCount];
+        for (int c = 0; c < CHROMA_BINS; c++) {
+            double[] source = dense[(c + 3) % CHROMA_BINS];
+            for (int k = 0; k < binCount; k++) {
+                weights[c][k] = (float) source[k];
+            }
+        }
+    }
+
+    /**
+     * Chroma energy of one frame of an FFT power spectrum.
+     */
+    public void apply(float[] spectrum, float[] out) {
+        for (int c = 0; c < CHROMA_BINS; c++) {
+            float[] w = weights[c];
+            double sum = 0;
+            for (int k = 0; k < binCount; k++) {
+                sum += w[k] * spectrum[k];
+            }
+            out[c] = (float) sum;
+        }
+    }
+
+    private static double floorMod(double value, double modulus) {
+        double result = value % modulus;
+        return result < 0 ? result + modulus : result;
+    }
+}
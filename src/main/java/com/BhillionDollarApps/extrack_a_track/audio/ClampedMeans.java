@@ -0,0 +1,70 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+/**
+ * Running means of several dB series where, at the end, every value is raised to a floor that is only known
+ * once the whole signal has been seen (librosa's power_to_db(top_db=80) clips to 80 dB below the global maximum).
+ * Each series keeps a histogram of count and exact sum per 0.5 dB bin instead of the values themselves, so memory
+ * does not grow with the track. Only values in the one bin straddling the floor are approximated.
+ */
+final class ClampedMeans {
+
+    private static final float MIN_DB = -100f;
+    private static final float MAX_DB = 150f;
+    private static final float BIN_DB = 0.5f;
+    private static final int BINS = (int) ((MAX_DB - MIN_DB) / BIN_DB) + 1;
+
+    private final long[] counts;
+    private final double[] sums;
+    private float max = Float.NEGATIVE_INFINITY;
+
+    ClampedMeans(int series) {
+        this.counts = new long[series * BINS];
+        this.sums = new double[series * BINS];
+    }
+
+    void add(int index, float db) {
+        int bin = index * BINS + binOf(db);
+        counts[bin]++;
+        sums[bin] += db;
+        if (db > max) {
+            max = db;
+        }
+    }
+
+    /**
+     * Largest value added to any series.
+     */
+    float getMax() {
+        return max;
+    }
+
+    /**
+     * Mean of max(value, floor) over the values of one series.
+     */
+    double mean(int index, float floor) {
+        int offset = index * BINS;
+        int floorBin = binOf(floor);
+        long count = 0;
+        double sum = 0;
+        for (int bin = 0; bin < BINS; bin++) {
+            long binCount = counts[offset + bin];
+            if (binCount == 0) {
+                continue;
+            }
+            count += binCount;
+            if (bin < floorBin) {
+                sum += binCount * (double) floor;
+            } else if (bin == floorBin) {
+                sum += Math.max(sums[offset + bin], binCount * (double) floor);
+            } else {
+                sum += sums[offset + bin];
+            }
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
+    private static int binOf(float db) {
+        int bin = (int) ((db - MIN_DB) / BIN_DB);
+        return Math.max(0, Math.min(BINS - 1, bin));
+    }
+}
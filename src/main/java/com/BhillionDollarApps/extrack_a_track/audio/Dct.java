@@ -0,0 +1,35 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+/**
+ * Orthonormal DCT-II keeping the first few coefficients, as used to turn log-mel energies into MFCCs
+ * (scipy.fftpack.dct(type=2, norm="ortho")). The cosine table is computed once.
+ */
+public final class Dct {
+
+    private final int inputSize;
+    private final int outputSize;
+    private final float[][] basis;
+
+    public Dct(int inputSize, int outputSize) {
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        basis = new float[outputSize][inputSize];
+        for (int k = 0; k < outputSize; k++) {
+            double scale = Math.sqrt((k == 0 ? 1.0 : 2.0) / inputSize);
+            for (int n = 0; n < inputSize; n++) {
+                basis[k][n] = (float) (scale * Math.cos(Math.PI * k * (2 * n + 1) / (2.0 * inputSize)));
+            }
+        }
+    }
+
+    public void apply(float[] input, float[] out) {
+        for (int k = 0; k < outputSize; k++) {
+            float[] row = basis[k];
+            double sum = 0;
+            for (int n = 0; n < inputSize; n++) {
+                sum += row[n] * input[n];
+            }
+            out[k] = (float) sum;
+        }
+    }
+}
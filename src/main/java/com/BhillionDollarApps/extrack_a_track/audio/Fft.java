@@ -0,0 +1,110 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+/**
+ * Radix-2 FFT of real input. A length-n real signal is packed into n/2 complex values, transformed at half size
+ * and split back into the n/2 + 1 non-negative frequency bins.
+ * Twiddle and bit-reversal tables are built once; transforms reuse internal scratch buffers, so an instance is
+ * not thread-safe but never allocates after construction.
+ */
+public final class Fft {
+
+    private final int size;
+    private final int half;
+    private final int[] bitReverse;
+    private final double[] cos;
+    private final double[] sin;
+    // Twiddles of the real split step, e^(-2*pi*i*k/n) for k = 0..n/2
+    private final double[] splitCos;
+    private final double[] splitSin;
+    private final double[] re;
+    private final double[] im;
+
+    public Fft(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two >= 4: " + size);
+        }
+        this.size = size;
+        this.half = size / 2;
+
+        bitReverse = new int[half];
+        int bits = Integer.numberOfTrailingZeros(half);
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+
+        cos = new double[half / 2];
+        sin = new double[half / 2];
+        for (int i = 0; i < half / 2; i++) {
+            cos[i] = Math.cos(2 * Math.PI * i / half);
+            sin[i] = -Math.sin(2 * Math.PI * i / half);
+        }
+
+        splitCos = new double[half + 1];
+        splitSin = new double[half + 1];
+        for (int k = 0; k <= half; k++) {
+            splitCos[k] = Math.cos(2 * Math.PI * k / size);
+            splitSin[k] = -Math.sin(2 * Math.PI * k / size);
+        }
+
+        re = new double[half];
+        im = new double[half];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Number of output bins, n/2 + 1.
+     */
+    public int getBinCount() {
+        return half + 1;
+    }
+
+    /**
+     * Transforms size real samples into n/2 + 1 complex bins.
+     */
+    public void forward(float[] input, float[] outRe, float[] outIm) {
+        for (int i = 0; i < half; i++) {
+            int j = bitReverse[i];
+            re[j] = input[2 * i];
+            im[j] = input[2 * i + 1];
+        }
+        transformInPlace();
+
+        // X[k] = E[k] + W^k O[k], with E and O the spectra of the even and odd samples
+        for (int k = 0; k <= half; k++) {
+            int a = k == half ? 0 : k;
+            int b = k == 0 ? 0 : half - k;
+            double evenRe = (re[a] + re[b]) * 0.5;
+            double evenIm = (im[a] - im[b]) * 0.5;
+            double oddRe = (im[a] + im[b]) * 0.5;
+            double oddIm = -(re[a] - re[b]) * 0.5;
+            double wr = splitCos[k];
+            double wi = splitSin[k];
+            outRe[k] = (float) (evenRe + wr * oddRe - wi * oddIm);
+            outIm[k] = (float) (evenIm + wr * oddIm + wi * oddRe);
+        }
+    }
+
+    private void transformInPlace() {
+        for (int length = 2; length <= half; length <<= 1) {
+            int step = half / length;
+            int halfLength = length >> 1;
+            for (int start = 0; start < half; start += length) {
+                for (int j = 0; j < halfLength; j++) {
+                    double wr = cos[j * step];
+                    double wi = sin[j * step];
+                    int even = start + j;
+                    int odd = even + halfLength;
+                    double tr = wr * re[odd] - wi * im[odd];
+                    double ti = wr * im[odd] + wi * re[odd];
+                    re[odd] = re[even] - tr;
+                    im[odd] = im[even] - ti;
+                    re[even] += tr;
+                    im[even] += ti;
+                }
+            }
+        }
+    }
+}
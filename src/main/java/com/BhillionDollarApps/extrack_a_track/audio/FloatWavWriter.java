@@ -0,0 +1,71 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Streams mono samples to a 32-bit float WAV file, e.g. the output of a Resampler; the RIFF and data sizes are
+ * patched in on close. Float samples need no clipping or dithering, and librosa reads them as they are.
+ */
+public class FloatWavWriter implements Closeable, WavFile.MonoSink {
+
+    private final Path path;
+    private final byte[] fmtChunk;
+    private final OutputStream out;
+    private final ByteBuffer scratch = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private long dataLength;
+
+    public FloatWavWriter(Path path, int sampleRate) throws IOException {
+        this.path = path;
+        this.fmtChunk = WavFile.floatFmtChunk(1, sampleRate);
+        this.out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16);
+        out.write(WavFile.riffHeader(fmtChunk, 0));
+    }
+
+    /**
+     * Appends a block of samples. As a MonoSink it cannot throw IOException, so write failures are rethrown as
+     * UncheckedIOException.
+     */
+    @Override
+    public void accept(float[] samples, int offset, int length) {
+        try {
+            for (int i = offset; i < offset + length; i++) {
+                if (scratch.remaining() < 4) {
+                    drain();
+                }
+                scratch.putFloat(samples[i]);
+            }
+            drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        dataLength += 4L * length;
+    }
+
+    public long getFramesWritten() {
+        return dataLength / 4;
+    }
+
+    private void drain() throws IOException {
+        out.write(scratch.array(), 0, scratch.position());
+        scratch.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            byte[] header = WavFile.riffHeader(fmtChunk, dataLength);
+            file.seek(0);
+            file.write(header);
+        }
+    }
+}
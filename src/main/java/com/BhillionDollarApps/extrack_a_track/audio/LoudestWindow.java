@@ -0,0 +1,86 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Finds the most energetic stretch of a fixed length in a signal from its frame RMS, fed frame by frame: the
+ * window with the largest sum of squared RMS values. The feature extractors feed it the RMS they compute anyway,
+ * so the start of a track's preview clip comes with its analysis. Only one window's worth of frames is kept.
+ */
+public final class LoudestWindow {
+
+    // Length of the preview clips the extractors look for (see PreviewService)
+    public static final double PREVIEW_SECONDS = 30.0;
+
+    // Frames of the standalone scan, which needs no overlap: energy is all it measures
+    private static final int SCAN_FRAME_SIZE = 4096;
+
+    private final double secondsPerFrame;
+    private final double[] energies;
+    private long frameCount;
+    private double sum;
+    private double bestSum = -1;
+    private long bestStart;
+
+    /**
+     * @param windowSeconds length of the window looked for
+     * @param hopLength samples between the starts of two frames
+     */
+    public LoudestWindow(double windowSeconds, int sampleRate, int hopLength) {
+        this.secondsPerFrame = (double) hopLength / sampleRate;
+        this.energies = new double[Math.max(1, (int) Math.round(windowSeconds / secondsPerFrame))];
+    }
+
+    /**
+     * Start of the loudest window of a WAV file's mono mix, for audio that was never analyzed.
+     */
+    public static double scan(Path wavFile, double windowSeconds) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(wavFile), 1 << 16)) {
+            WavFile.Header header = WavFile.readHeader(in);
+            LoudestWindow window = new LoudestWindow(windowSeconds, header.sampleRate, SCAN_FRAME_SIZE);
+            WavFile.readMono(in, header, new WavFile.MonoSink() {
+                private double sumSquares;
+                private int count;
+
+                @Override
+                public void accept(float[] samples, int offset, int length) {
+                    for (int i = offset; i < offset + length; i++) {
+                        sumSquares += samples[i] * samples[i];
+                        if (++count == SCAN_FRAME_SIZE) {
+                            window.accept(Math.sqrt(sumSquares / SCAN_FRAME_SIZE));
+                            sumSquares = 0;
+                            count = 0;
+                        }
+                    }
+                }
+            });
+            return window.getStartSeconds();
+        }
+    }
+
+    /**
+     * Feeds the RMS of the next frame.
+     */
+    public void accept(double rms) {
+        int slot = (int) (frameCount % energies.length);
+        double energy = rms * rms;
+        sum += energy - energies[slot];
+        energies[slot] = energy;
+        frameCount++;
+        if (frameCount >= energies.length && sum > bestSum) {
+            bestSum = sum;
+            bestStart = frameCount - energies.length;
+        }
+    }
+
+    /**
+     * Where the loudest window starts, in seconds; 0 for a signal shorter than the window, which is previewed whole.
+     */
+    public double getStartSeconds() {
+        return bestStart * secondsPerFrame;
+    }
+}
@@ -0,0 +1,97 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import java.util.Arrays;
+
+/**
+ * Triangular mel filters on the Slaney mel scale with area normalization, the same weights as
+ * librosa.filters.mel(htk=False, norm="slaney").
+ * Each filter only covers a few FFT bins, so weights are stored as one dense run per filter.
+ */
+public final class MelFilterbank {
+
+    private static final double F_SP = 200.0 / 3;
+    private static final double MIN_LOG_HZ = 1000.0;
+    private static final double MIN_LOG_MEL = MIN_LOG_HZ / F_SP;
+    private static final double LOG_STEP = Math.log(6.4) / 27.0;
+
+    private final int melCount;
+    private final int[] firstBin;
+    private final float[][] weights;
+
+    public MelFilterbank(int sampleRate, int fftSize, int melCount, double fMin, double fMax) {
+        this.melCount = melCount;
+        int binCount = fftSize / 2 + 1;
+
+        double[] fftFrequencies = new double[binCount];
+        for (int k = 0; k < binCount; k++) {
+            fftFrequencies[k] = (double) k * sampleRate / fftSize;
+        }
+
+        // melCount + 2 band edges, evenly spaced in mel
+        double minMel = hzToMel(fMin);
+        double maxMel = hzToMel(fMax);
+        double[] edges = new double[melCount + 2];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = melToHz(minMel + (maxMel - minMel) * i / (melCount + 1));
+        }
+
+        firstBin = new int[melCount];
+        weights = new float[melCount][];
+        float[] row = new float[binCount];
+        for (int m = 0; m < melCount; m++) {
+            double lowerWidth = edges[m + 1] - edges[m];
+            double upperWidth = edges[m + 2] - edges[m + 1];
+            double norm = 2.0 / (edges[m + 2] - edges[m]);
+
+            int first = -1;
+            int last = -1;
+            for (int k = 0; k < binCount; k++) {
+                double lower = (fftFrequencies[k] - edges[m]) / lowerWidth;
+                double upper = (edges[m + 2] - fftFrequencies[k]) / upperWidth;
+                double weight = Math.max(0, Math.min(lower, upper));
+                row[k] = (float) (weight * norm);
+                if (weight > 0) {
+                    if (first < 0) {
+                        first = k;
+                    }
+                    last = k;
+                }
+            }
+            if (first < 0) {
+                // Filter narrower than one bin; contributes nothing, like librosa's empty filters
+                firstBin[m] = 0;
+                weights[m] = new float[0];
+            } else {
+                firstBin[m] = first;
+                weights[m] = Arrays.copyOfRange(row, first, last + 1);
+            }
+        }
+    }
+
+    public int getMelCount() {
+        return melCount;
+    }
+
+    /**
+     * Applies the filters to one frame of an FFT power (or magnitude) spectrum.
+     */
+    public void apply(float[] spectrum, float[] out) {
+        for (int m = 0; m < melCount; m++) {
+            float[] w = weights[m];
+            int offset = firstBin[m];
+            double sum = 0;
+            for (int i = 0; i < w.length; i++) {
+                sum += w[i] * spectrum[offset + i];
+            }
+            out[m] = (float) sum;
+        }
+    }
+
+    static double hzToMel(double hz) {
+        return hz >= MIN_LOG_HZ ? MIN_LOG_MEL + Math.log(hz / MIN_LOG_HZ) / LOG_STEP : hz / F_SP;
+    }
+
+    static double melToHz(double mel) {
+        return mel >= MIN_LOG_MEL ? MIN_LOG_HZ * Math.exp(LOG_STEP * (mel - MIN_LOG_MEL)) : F_SP * mel;
+    }
+}
@@ -0,0 +1,238 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streaming polyphase resampler for mono blocks, by the rational ratio up/down of the two rates (e.g. 147/640 for
+ * 96 kHz to 22.05 kHz). The anti-aliasing filter is a Kaiser-windowed sinc cut off just below the lower of the two
+ * Nyquist frequencies; it is split into one short filter per output phase, so each output sample costs one dot
+ * product over the input samples around it, and nothing is computed for samples that are dropped.
+ *
+ * Sits between WavFile.readMono and any MonoSink; like librosa.resample, the output has ceil(n * up / down)
+ * samples and is aligned with the input at sample 0.
+ */
+public final class Resampler implements WavFile.MonoSink {
+
+    // Zero crossings of the sinc on each side of the center, at the output rate
+    private static final int ZERO_CROSSINGS = 16;
+    // Passband edge as a fraction of the output Nyquist
+    private static final double ROLLOFF = 0.945;
+    // About 90 dB of stopband attenuation
+    private static final double KAISER_BETA = 8.6;
+    // Above this many phases the filter table gets too large (odd rates with no common divisor)
+    private static final int MAX_PHASES = 4096;
+    private static final int BLOCK_SIZE = 8192;
+
+    // (up << 32 | down) -> filter table, shared by all resamplers with the same ratio
+    private static final Map<Long, float[][]> FILTERS = new ConcurrentHashMap<>();
+
+    private final int up;
+    private final int down;
+    private final int halfTaps;
+    private final float[][] phases;
+    private final WavFile.MonoSink sink;
+    private final float[] output = new float[BLOCK_SIZE];
+    private int outputLength;
+
+    // Input samples still needed, history[0] being input sample historyStart (negative before the signal starts)
+    private float[] history;
+    private long historyStart;
+    private int historyLength;
+    private long inputCount;
+    private long outputCount;
+
+    public Resampler(int inputRate, int outputRate, WavFile.MonoSink sink) {
+        if (!isSupported(inputRate, outputRate)) {
+            throw new IllegalArgumentException("Cannot resample from " + inputRate + " Hz to " + outputRate + " Hz");
+        }
+        int divisor = gcd(inputRate, outputRate);
+        this.up = outputRate / divisor;
+        this.down = inputRate / divisor;
+        this.phases = FILTERS.computeIfAbsent(((long) up << 32) | down, key -> designFilter(up, down));
+        this.halfTaps = phases[0].length / 2;
+        this.sink = sink;
+        // Zeros before the first sample, so the first outputs see a full window
+        this.history = new float[BLOCK_SIZE + 2 * halfTaps];
+        this.historyStart = -(halfTaps - 1);
+        this.historyLength = halfTaps - 1;
+    }
+
+    /**
+     * Whether the ratio of the two rates is small enough for a precomputed filter table.
+     */
+    public static boolean isSupported(int inputRate, int outputRate) {
+        return inputRate > 0 && outputRate > 0 && outputRate / gcd(inputRate, outputRate) <= MAX_PHASES;
+    }
+
+    /**
+     * Writes the mono mix of a WAV stream, resampled to the given rate, as a 32-bit float WAV file.
+     * Returns the number of frames written.
+     */
+    public static long writeMono(InputStream in, Path target, int sampleRate) throws IOException {
+        WavFile.Header header = WavFile.readHeader(in);
+        try (FloatWavWriter writer = new FloatWavWriter(target, sampleRate)) {
+            if (header.sampleRate == sampleRate) {
+                WavFile.readMono(in, header, writer);
+            } else {
+                Resampler resampler = new Resampler(header.sampleRate, sampleRate, writer);
+                WavFile.readMono(in, header, resampler);
+                resampler.finish();
+            }
+            return writer.getFramesWritten();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public static long writeMono(Path source, Path target, int sampleRate) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(source), 1 << 16)) {
+            return writeMono(in, target, sampleRate);
+        }
+    }
+
+    /**
+     * Feeds the next block of input samples; output is handed to the sink in blocks as it becomes available.
+     */
+    @Override
+    public void accept(float[] samples, int offset, int length) {
+        int position = offset;
+        int end = offset + length;
+        while (position < end) {
+            int count = Math.min(end - position, history.length - historyLength);
+            System.arraycopy(samples, position, history, historyLength, count);
+            historyLength += count;
+            inputCount += count;
+            position += count;
+            produce(Long.MAX_VALUE);
+            compact();
+        }
+    }
+
+    /**
+     * Pads the end of the signal with zeros, emits the remaining output samples and flushes the sink.
+     */
+    public void finish() {
+        long total = (inputCount * up + down - 1) / down;
+        while (outputCount < total) {
+            int count = Math.min(history.length - historyLength, halfTaps);
+            Arrays.fill(history, historyLength, historyLength + count, 0f);
+            historyLength += count;
+            produce(total);
+            compact();
+        }
+        flush();
+    }
+
+    public long getOutputCount() {
+        return outputCount;
+    }
+
+    // Emits every output sample whose window lies within the buffered input
+    private void produce(long limit) {
+        long available = historyStart + historyLength;
+        while (outputCount < limit) {
+            long position = outputCount * down;
+            long base = position / up;
+            if (base + halfTaps >= available) {
+                return;
+            }
+            float[] filter = phases[(int) (position - base * up)];
+            int start = (int) (base - halfTaps + 1 - historyStart);
+            float sum = 0f;
+            for (int t = 0; t < filter.length; t++) {
+                sum += filter[t] * history[start + t];
+            }
+            output[outputLength++] = sum;
+            if (outputLength == BLOCK_SIZE) {
+                flush();
+            }
+            outputCount++;
+        }
+    }
+
+    // Drops the input samples no later output needs
+    private void compact() {
+        long firstNeeded = (outputCount * down) / up - halfTaps + 1;
+        int drop = (int) Math.min(historyLength, Math.max(0, firstNeeded - historyStart));
+        if (drop > 0) {
+            System.arraycopy(history, drop, history, 0, historyLength - drop);
+            historyLength -= drop;
+            historyStart += drop;
+        }
+        if (historyLength == history.length) {
+            history = Arrays.copyOf(history, history.length * 2);
+        }
+    }
+
+    private void flush() {
+        if (outputLength > 0) {
+            sink.accept(output, 0, outputLength);
+            outputLength = 0;
+        }
+    }
+
+    // Phase p holds the taps for an output that falls p/up of an input sample after the window's center sample;
+    // tap t multiplies input sample (center - halfTaps + 1 + t)
+    private static float[][] designFilter(int up, int down) {
+        // Cutoff in cycles per input sample
+        double cutoff = 0.5 * ROLLOFF * Math.min(1.0, (double) up / down);
+        double halfWidth = ZERO_CROSSINGS / (2 * cutoff);
+        int halfTaps = (int) Math.ceil(halfWidth);
+        double windowNorm = besselI0(KAISER_BETA);
+
+        float[][] phases = new float[up][2 * halfTaps];
+        for (int p = 0; p < up; p++) {
+            double sum = 0;
+            double[] taps = new double[2 * halfTaps];
+            for (int t = 0; t < taps.length; t++) {
+                double offset = (double) p / up + (halfTaps - 1 - t);
+                double ratio = offset / halfWidth;
+                if (Math.abs(ratio) >= 1) {
+                    continue;
+                }
+                double x = 2 * cutoff * offset;
+                double sinc = x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+                double window = besselI0(KAISER_BETA * Math.sqrt(1 - ratio * ratio)) / windowNorm;
+                taps[t] = 2 * cutoff * sinc * window;
+                sum += taps[t];
+            }
+            // Unity gain at DC for every phase, so there is no ripple at the phase period
+            for (int t = 0; t < taps.length; t++) {
+                phases[p][t] = (float) (taps[t] / sum);
+            }
+        }
+        return phases;
+    }
+
+    // Modified Bessel function of the first kind, order 0 (power series)
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        double quarterSquare = x * x / 4;
+        for (int k = 1; k < 50; k++) {
+            term *= quarterSquare / ((double) k * k);
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
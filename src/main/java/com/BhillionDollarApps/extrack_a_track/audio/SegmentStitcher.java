@@ -0,0 +1,101 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Joins overlapping segments back into one WAV file, blending each overlap with a raised-cosine crossfade.
+ * Segments must be appended in order; only the overlapping tail of the previous segment is kept in memory.
+ */
+public class SegmentStitcher implements Closeable {
+
+    private final WavWriter writer;
+    private final int channels;
+    private float[][] carry;     // tail of the previous segment that overlaps the next one
+    private long position;       // absolute frame just past everything written or carried so far
+
+    public SegmentStitcher(Path output, int channels, int sampleRate) throws IOException {
+        this.writer = new WavWriter(output, channels, sampleRate);
+        this.channels = channels;
+    }
+
+    /**
+     * Adds the next segment.
+     *
+     * @param segment        de-interleaved samples of the segment
+     * @param startFrame     absolute frame where the segment starts
+     * @param nextStartFrame absolute frame where the following segment starts, or -1 for the last segment
+     */
+    public void append(float[][] segment, long startFrame, long nextStartFrame) throws IOException {
+        if (segment.length != channels) {
+            throw new IllegalArgumentException("Expected " + channels + " channels but got " + segment.length);
+        }
+        if (startFrame != position - carryLength()) {
+            throw new IllegalArgumentException("Segment starting at " + startFrame + " does not line up with the previous one.");
+        }
+
+        int length = segment[0].length;
+        int overlap = Math.min(carryLength(), length);
+
+        // Both segments hold the same separated source in the overlap, so the signals are correlated and the
+        // gains must sum to one (cos^2 + sin^2). Plain cos/sin equal-power gains would bump the overlap by 3 dB.
+        if (overlap > 0) {
+            for (int i = 0; i < overlap; i++) {
+                double theta = (i + 0.5) / overlap * (Math.PI / 2);
+                float fadeOut = (float) (Math.cos(theta) * Math.cos(theta));
+                float fadeIn = 1f - fadeOut;
+                for (int c = 0; c < channels; c++) {
+                    carry[c][i] = carry[c][i] * fadeOut + segment[c][i] * fadeIn;
+                }
+            }
+            writer.write(carry, 0, overlap);
+        }
+
+        if (nextStartFrame < 0) {
+            writer.write(segment, overlap, length);
+            position = startFrame + Math.max(length, overlap);
+            carry = null;
+            return;
+        }
+
+        int keepFrom = (int) (nextStartFrame - startFrame);
+        if (keepFrom < overlap) {
+            throw new IllegalArgumentException("Segments overlap by more than the hop between them.");
+        }
+
+        if (length <= keepFrom) {
+            // The segment ended before the next one starts: pad the gap with silence
+            writer.write(segment, overlap, length);
+            writeSilence(keepFrom - Math.max(length, overlap));
+            carry = null;
+        } else {
+            writer.write(segment, overlap, keepFrom);
+            carry = new float[channels][];
+            for (int c = 0; c < channels; c++) {
+                carry[c] = Arrays.copyOfRange(segment[c], keepFrom, length);
+            }
+        }
+        position = nextStartFrame + carryLength();
+    }
+
+    private int carryLength() {
+        return carry == null ? 0 : carry[0].length;
+    }
+
+    private void writeSilence(int frames) throws IOException {
+        if (frames > 0) {
+            writer.write(new float[channels][frames], 0, frames);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (carry != null) {
+            writer.write(carry, 0, carryLength());
+            carry = null;
+        }
+        writer.close();
+    }
+}
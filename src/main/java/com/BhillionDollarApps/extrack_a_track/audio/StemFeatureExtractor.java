@@ -0,0 +1,304 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Computes StemFeatures in one streaming pass: frame RMS, onsets picked from log-magnitude spectral flux the way
+ * librosa.onset.onset_detect does, and a pitch per frame from the autocorrelation method of Boersma (1993),
+ * where the autocorrelation of the windowed frame is divided by that of the window.
+ * Frames are 4096 samples with a hop of 1024, long enough to hold two periods of a 40 Hz bass note at 44.1 kHz.
+ * Like AudioFeatureExtractor, one instance analyzes one signal and is not thread-safe.
+ */
+public final class StemFeatureExtractor {
+
+    public static final int FRAME_SIZE = 4096;
+    public static final int HOP_LENGTH = 1024;
+
+    // Zero padding to twice the frame keeps the FFT autocorrelation from wrapping around
+    private static final int PADDED_SIZE = 2 * FRAME_SIZE;
+    // Frames quieter than -60 dBFS count as silence: no onsets, no pitch
+    private static final double SILENCE_RMS = 0.001;
+    private static final double MIN_F0 = 40.0;
+    private static final double MAX_F0 = 2000.0;
+    private static final double VOICING_THRESHOLD = 0.5;
+    // The shortest lag within this fraction of the best peak wins, so a period is not mistaken for two
+    private static final double OCTAVE_TOLERANCE = 0.9;
+    private static final int MIN_VOICED_FRAMES = 20;
+    private static final double RANGE_PERCENTILE = 0.05;
+    // librosa.util.peak_pick settings used by onset_detect, in seconds
+    private static final double PEAK_MAX_SECONDS = 0.03;
+    private static final double PEAK_AVERAGE_SECONDS = 0.10;
+    private static final double PEAK_WAIT_SECONDS = 0.03;
+    private static final double PEAK_DELTA = 0.07;
+
+    private static final float[] WINDOW = new float[FRAME_SIZE];
+    // Normalized autocorrelation of the window, up to a third of the frame
+    private static final double[] WINDOW_ACF = new double[FRAME_SIZE / 3 + 2];
+
+    static {
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            WINDOW[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / FRAME_SIZE));
+        }
+        for (int lag = 0; lag < WINDOW_ACF.length; lag++) {
+            double sum = 0;
+            for (int i = 0; i + lag < FRAME_SIZE; i++) {
+                sum += WINDOW[i] * WINDOW[i + lag];
+            }
+            WINDOW_ACF[lag] = sum;
+        }
+        double zeroLag = WINDOW_ACF[0];
+        for (int lag = 0; lag < WINDOW_ACF.length; lag++) {
+            WINDOW_ACF[lag] /= zeroLag;
+        }
+    }
+
+    private final int sampleRate;
+    private final int minLag;
+    private final int maxLag;
+    private final Fft fft = new Fft(PADDED_SIZE);
+
+    private final float[] frame = new float[FRAME_SIZE];
+    private final float[] padded = new float[PADDED_SIZE];
+    private final float[] spectrumRe = new float[PADDED_SIZE / 2 + 1];
+    private final float[] spectrumIm = new float[PADDED_SIZE / 2 + 1];
+    private final float[] power = new float[PADDED_SIZE];
+    private final float[] logMagnitude = new float[FRAME_SIZE / 2 + 1];
+    private final float[] previousLogMagnitude = new float[FRAME_SIZE / 2 + 1];
+    private final int[] pitchHistogram = new int[128];
+
+    private int buffered = FRAME_SIZE / 2;
+    private long sampleCount;
+    private int frameCount;
+    private double rmsSum;
+    private double peakRms;
+    private final LoudestWindow loudestWindow;
+    private int soundingFrames;
+    private int voicedFrames;
+    private float[] onsetEnvelope = new float[1024];
+
+    public StemFeatureExtractor(int sampleRate) {
+        this.sampleRate = sampleRate;
+        this.minLag = Math.max(2, (int) Math.floor(sampleRate / MAX_F0));
+        this.maxLag = Math.min((int) Math.ceil(sampleRate / MIN_F0), WINDOW_ACF.length - 2);
+        this.loudestWindow = new LoudestWindow(LoudestWindow.PREVIEW_SECONDS, sampleRate, HOP_LENGTH);
+    }
+
+    /**
+     * Reads a WAV file block by block, mixes it down to mono and analyzes it.
+     */
+    public static StemFeatures analyze(Path wavFile) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(wavFile), 1 << 16)) {
+            WavFile.Header header = WavFile.readHeader(in);
+            StemFeatureExtractor extractor = new StemFeatureExtractor(header.sampleRate);
+            WavFile.readMono(in, header, extractor::accept);
+            return extractor.finish();
+        }
+    }
+
+    /**
+     * Feeds the next block of mono samples.
+     */
+    public void accept(float[] samples, int offset, int length) {
+        sampleCount += length;
+        int position = offset;
+        int end = offset + length;
+        while (position < end) {
+            int count = Math.min(FRAME_SIZE - buffered, end - position);
+            System.arraycopy(samples, position, frame, buffered, count);
+            buffered += count;
+            position += count;
+            if (buffered == FRAME_SIZE) {
+                processFrame();
+                advance();
+            }
+        }
+    }
+
+    /**
+     * Pads the end of the signal like a centered STFT and returns the stem's features.
+     */
+    public StemFeatures finish() {
+        if (sampleCount == 0) {
+            throw new IllegalStateException("No audio samples to analyze.");
+        }
+        long expectedFrames = 1 + sampleCount / HOP_LENGTH;
+        while (frameCount < expectedFrames) {
+            Arrays.fill(frame, buffered, FRAME_SIZE, 0f);
+            processFrame();
+            advance();
+        }
+
+        int low = -1;
+        int high = -1;
+        if (voicedFrames >= MIN_VOICED_FRAMES) {
+            low = histogramPercentile(RANGE_PERCENTILE);
+            high = histogramPercentile(1 - RANGE_PERCENTILE);
+        }
+        return new StemFeatures((double) sampleCount / sampleRate, rmsSum / frameCount, peakRms, countOnsets(),
+                soundingFrames == 0 ? 0 : (double) voicedFrames / soundingFrames, low, high, loudestWindow.getStartSeconds());
+    }
+
+    private void advance() {
+        System.arraycopy(frame, HOP_LENGTH, frame, 0, FRAME_SIZE - HOP_LENGTH);
+        buffered = FRAME_SIZE - HOP_LENGTH;
+        frameCount++;
+    }
+
+    private void processFrame() {
+        double sumSquares = 0;
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            float sample = frame[i];
+            sumSquares += sample * sample;
+            padded[i] = sample * WINDOW[i];
+        }
+        double rms = Math.sqrt(sumSquares / FRAME_SIZE);
+        rmsSum += rms;
+        peakRms = Math.max(peakRms, rms);
+        loudestWindow.accept(rms);
+        boolean sounding = rms >= SILENCE_RMS;
+
+        // Every other bin of the zero-padded spectrum is the plain FRAME_SIZE-point spectrum
+        fft.forward(padded, spectrumRe, spectrumIm);
+        double flux = 0;
+        for (int k = 0; k < logMagnitude.length; k++) {
+            float re = spectrumRe[2 * k];
+            float im = spectrumIm[2 * k];
+            logMagnitude[k] = (float) Math.log1p(Math.sqrt(re * re + im * im));
+            flux += Math.max(0f, logMagnitude[k] - previousLogMagnitude[k]);
+        }
+        // Coming out of silence is an onset; noise inside silence is not
+        addOnset(sounding ? (float) (flux / logMagnitude.length) : 0f);
+        System.arraycopy(logMagnitude, 0, previousLogMagnitude, 0, logMagnitude.length);
+
+        if (sounding) {
+            soundingFrames++;
+            addPitch();
+        }
+    }
+
+    private void addOnset(float flux) {
+        if (frameCount >= onsetEnvelope.length) {
+            onsetEnvelope = Arrays.copyOf(onsetEnvelope, onsetEnvelope.length * 2);
+        }
+        onsetEnvelope[frameCount] = flux;
+    }
+
+    // Uses the spectrum of the current frame still held in spectrumRe / spectrumIm
+    private void addPitch() {
+        // Autocorrelation = inverse FFT of the power spectrum; the power spectrum is real and even,
+        // so a forward FFT gives the same result
+        int half = PADDED_SIZE / 2;
+        for (int k = 0; k <= half; k++) {
+            float p = spectrumRe[k] * spectrumRe[k] + spectrumIm[k] * spectrumIm[k];
+            power[k] = p;
+            if (k > 0 && k < half) {
+                power[PADDED_SIZE - k] = p;
+            }
+        }
+        fft.forward(power, spectrumRe, spectrumIm);
+        double zeroLag = spectrumRe[0];
+        if (zeroLag <= 0) {
+            return;
+        }
+
+        double best = 0;
+        for (int lag = minLag; lag <= maxLag; lag++) {
+            if (isPeak(lag)) {
+                best = Math.max(best, normalized(lag, zeroLag));
+            }
+        }
+        if (best < VOICING_THRESHOLD) {
+            return;
+        }
+        for (int lag = minLag; lag <= maxLag; lag++) {
+            double value = normalized(lag, zeroLag);
+            if (isPeak(lag) && value >= OCTAVE_TOLERANCE * best) {
+                double previous = normalized(lag - 1, zeroLag);
+                double next = normalized(lag + 1, zeroLag);
+                double curvature = previous - 2 * value + next;
+                double offset = curvature == 0 ? 0 : 0.5 * (previous - next) / curvature;
+                double f0 = sampleRate / (lag + offset);
+                int midi = (int) Math.round(69 + 12 * Math.log(f0 / 440.0) / Math.log(2));
+                pitchHistogram[Math.max(0, Math.min(pitchHistogram.length - 1, midi))]++;
+                voicedFrames++;
+                return;
+            }
+        }
+    }
+
+    private boolean isPeak(int lag) {
+        return spectrumRe[lag] / WINDOW_ACF[lag] > spectrumRe[lag - 1] / WINDOW_ACF[lag - 1]
+                && spectrumRe[lag] / WINDOW_ACF[lag] >= spectrumRe[lag + 1] / WINDOW_ACF[lag + 1];
+    }
+
+    private double normalized(int lag, double zeroLag) {
+        return spectrumRe[lag] / zeroLag / WINDOW_ACF[lag];
+    }
+
+    // Smallest MIDI note with at least the given fraction of the voiced frames at or below it
+    private int histogramPercentile(double fraction) {
+        long target = (long) Math.ceil(fraction * voicedFrames);
+        long cumulative = 0;
+        for (int midi = 0; midi < pitchHistogram.length; midi++) {
+            cumulative += pitchHistogram[midi];
+            if (cumulative >= Math.max(1, target)) {
+                return midi;
+            }
+        }
+        return pitchHistogram.length - 1;
+    }
+
+    // librosa.onset.onset_detect: normalize the envelope to [0, 1], then keep local maxima that stand out
+    // from the local mean by delta and are at least `wait` frames apart
+    private int countOnsets() {
+        int frames = frameCount;
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < frames; i++) {
+            min = Math.min(min, onsetEnvelope[i]);
+            max = Math.max(max, onsetEnvelope[i]);
+        }
+        if (max <= min) {
+            return 0;
+        }
+
+        double frameRate = (double) sampleRate / HOP_LENGTH;
+        int preMax = Math.max(1, (int) Math.round(PEAK_MAX_SECONDS * frameRate));
+        int postMax = 1;
+        int preAverage = Math.max(1, (int) Math.round(PEAK_AVERAGE_SECONDS * frameRate));
+        int postAverage = preAverage + 1;
+        int wait = (int) Math.round(PEAK_WAIT_SECONDS * frameRate);
+
+        float[] envelope = new float[frames];
+        double[] prefix = new double[frames + 1];
+        for (int i = 0; i < frames; i++) {
+            envelope[i] = (onsetEnvelope[i] - min) / (max - min);
+            prefix[i + 1] = prefix[i] + envelope[i];
+        }
+
+        int count = 0;
+        int lastOnset = -wait - 1;
+        for (int i = 0; i < frames; i++) {
+            boolean localMax = true;
+            for (int j = Math.max(0, i - preMax); j < Math.min(frames, i + postMax) && localMax; j++) {
+                localMax = envelope[i] >= envelope[j];
+            }
+            if (!localMax) {
+                continue;
+            }
+            int from = Math.max(0, i - preAverage);
+            int to = Math.min(frames, i + postAverage);
+            double mean = (prefix[to] - prefix[from]) / (to - from);
+            if (envelope[i] >= mean + PEAK_DELTA && i > lastOnset + wait) {
+                count++;
+                lastOnset = i;
+            }
+        }
+        return count;
+    }
+}
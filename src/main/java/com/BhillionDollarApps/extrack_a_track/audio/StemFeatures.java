@@ -0,0 +1,63 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+/**
+ * Summary features of one separated stem: loudness, how busy it is, and the range it plays in.
+ */
+public final class StemFeatures {
+
+    private static final String[] NOTES = {"C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B"};
+
+    private final double durationSeconds;
+    private final double rms;
+    private final double peakRms;
+    private final int onsetCount;
+    private final double voicedRatio;
+    private final int pitchLowMidi;
+    private final int pitchHighMidi;
+    private final double previewStart;
+
+    StemFeatures(double durationSeconds, double rms, double peakRms, int onsetCount, double voicedRatio,
+                 int pitchLowMidi, int pitchHighMidi, double previewStart) {
+        this.durationSeconds = durationSeconds;
+        this.rms = rms;
+        this.peakRms = peakRms;
+        this.onsetCount = onsetCount;
+        this.voicedRatio = voicedRatio;
+        this.pitchLowMidi = pitchLowMidi;
+        this.pitchHighMidi = pitchHighMidi;
+        this.previewStart = previewStart;
+    }
+
+    public double getDurationSeconds() { return durationSeconds; }
+    public double getRms() { return rms; }
+    public double getPeakRms() { return peakRms; }
+    public int getOnsetCount() { return onsetCount; }
+    public double getVoicedRatio() { return voicedRatio; }
+    // Start of the stem's loudest LoudestWindow.PREVIEW_SECONDS, in seconds
+    public double getPreviewStart() { return previewStart; }
+
+    /**
+     * Onsets per second over the whole stem.
+     */
+    public double getOnsetDensity() {
+        return durationSeconds > 0 ? onsetCount / durationSeconds : 0;
+    }
+
+    /**
+     * Whether enough frames had a clear pitch for the range to mean anything; false for drums, as a rule.
+     */
+    public boolean hasPitchRange() {
+        return pitchLowMidi >= 0;
+    }
+
+    // MIDI note numbers of the 5th and 95th percentile of the pitched frames, -1 if there is no range
+    public int getPitchLowMidi() { return pitchLowMidi; }
+    public int getPitchHighMidi() { return pitchHighMidi; }
+
+    /**
+     * Scientific pitch name of a MIDI note number, e.g. 69 -> A4.
+     */
+    public static String noteName(int midi) {
+        return NOTES[midi % 12] + (midi / 12 - 1);
+    }
+}
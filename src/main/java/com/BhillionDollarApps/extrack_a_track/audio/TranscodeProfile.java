@@ -0,0 +1,66 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The formats a track can be transcoded to: ffmpeg output options, file extension and content type of each.
+ * The id is what appears in URLs and in the rendition's S3 key.
+ *
+ * Some containers need a seekable output: ffmpeg goes back to write the MP3 VBR (Xing) header, the MP4 index
+ * and the FLAC stream info once the encode is done. Those profiles are encoded to a temp file before upload;
+ * the others go straight from ffmpeg's stdout to S3.
+ */
+public enum TranscodeProfile {
+
+    MP3_V0("mp3-v0", "MP3 V0", "mp3", "audio/mpeg", true, "-codec:a", "libmp3lame", "-q:a", "0", "-f", "mp3"),
+    MP3_320("mp3-320", "MP3 320", "mp3", "audio/mpeg", false, "-codec:a", "libmp3lame", "-b:a", "320k", "-f", "mp3"),
+    // The track's MP3 from the Convert to MP3 button
+    MP3_192("mp3-192", "MP3 192", "mp3", "audio/mpeg", false, "-codec:a", "libmp3lame", "-b:a", "192k", "-f", "mp3"),
+    AAC_256("aac-256", "AAC 256", "m4a", "audio/mp4", true, "-codec:a", "aac", "-b:a", "256k", "-movflags", "+faststart", "-f", "ipod"),
+    OPUS_128("opus-128", "Opus 128", "opus", "audio/ogg", false, "-codec:a", "libopus", "-b:a", "128k", "-f", "opus"),
+    FLAC("flac", "FLAC", "flac", "audio/flac", true, "-codec:a", "flac", "-f", "flac"),
+    // Short clips for auditioning in the browser (see PreviewService); not offered as a download
+    PREVIEW("preview", "Preview", "mp3", "audio/mpeg", false, "-codec:a", "libmp3lame", "-b:a", "96k", "-f", "mp3");
+
+    private final String id;
+    private final String label;
+    private final String extension;
+    private final String contentType;
+    private final boolean seekableOutput;
+    private final List<String> outputOptions;
+
+    TranscodeProfile(String id, String label, String extension, String contentType, boolean seekableOutput, String... codecOptions) {
+        this.id = id;
+        this.label = label;
+        this.extension = extension;
+        this.contentType = contentType;
+        this.seekableOutput = seekableOutput;
+        List<String> options = new ArrayList<>(List.of("-vn"));
+        options.addAll(Arrays.asList(codecOptions));
+        this.outputOptions = List.copyOf(options);
+    }
+
+    public static Optional<TranscodeProfile> fromId(String id) {
+        return Arrays.stream(values()).filter(profile -> profile.id.equals(id)).findFirst();
+    }
+
+    // The profiles a whole track can be downloaded in
+    public static List<TranscodeProfile> renditions() {
+        return Arrays.stream(values()).filter(TranscodeProfile::isRendition).toList();
+    }
+
+    public boolean isRendition() {
+        return this != PREVIEW;
+    }
+
+    public String getId() { return id; }
+    public String getLabel() { return label; }
+    public String getExtension() { return extension; }
+    public String getContentType() { return contentType; }
+    public boolean needsSeekableOutput() { return seekableOutput; }
+    // ffmpeg options placed between the input and the output file
+    public List<String> getOutputOptions() { return outputOptions; }
+}
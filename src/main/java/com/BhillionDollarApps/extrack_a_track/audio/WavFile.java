@@ -0,0 +1,284 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Minimal RIFF/WAVE reader and writer for PCM (8/16/24/32-bit) and IEEE float (32/64-bit) files.
+ * Samples are exposed as de-interleaved float[channel][frame] in the range [-1, 1].
+ */
+public final class WavFile {
+
+    public static final int FORMAT_PCM = 1;
+    public static final int FORMAT_IEEE_FLOAT = 3;
+    public static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private static final int MONO_BLOCK_FRAMES = 8192;
+
+    private WavFile() {}
+
+    /**
+     * Layout of a WAV file: format fields plus where the sample data lives.
+     */
+    public static final class Header {
+        public final int formatTag;
+        public final int channels;
+        public final int sampleRate;
+        public final int bitsPerSample;
+        public final int blockAlign;
+        public final byte[] fmtChunk; // raw fmt chunk body, reused when writing segments of the same file
+        public final long dataOffset;
+        public final long dataLength;
+
+        Header(int formatTag, int channels, int sampleRate, int bitsPerSample, int blockAlign,
+               byte[] fmtChunk, long dataOffset, long dataLength) {
+            this.formatTag = formatTag;
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+            this.bitsPerSample = bitsPerSample;
+            this.blockAlign = blockAlign;
+            this.fmtChunk = fmtChunk;
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+        }
+
+        public long getFrameCount() {
+            return dataLength / blockAlign;
+        }
+
+        public double getDurationSeconds() {
+            return (double) getFrameCount() / sampleRate;
+        }
+
+        public boolean isFloat() {
+            return formatTag == FORMAT_IEEE_FLOAT;
+        }
+    }
+
+    /**
+     * Reads the header of a file; the file size resolves a data size that streaming writers left open.
+     */
+    public static Header readHeader(Path path) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            return fromProbe(WavProbe.probe(in, Files.size(path)));
+        }
+    }
+
+    /**
+     * Reads chunks up to the start of the data chunk. The stream is left positioned at the first sample.
+     * The header is parsed by WavProbe, so whatever an upload was accepted with can be read here: RF64/BW64,
+     * WAVE_FORMAT_EXTENSIBLE, and float samples. An open data size means the samples run to the end of the stream.
+     */
+    public static Header readHeader(InputStream in) throws IOException {
+        return fromProbe(WavProbe.probe(in, -1));
+    }
+
+    private static Header fromProbe(WavProbe.Info info) {
+        return new Header(info.getFormatTag(), info.getChannels(), info.getSampleRate(), info.getBitsPerSample(),
+                info.getBlockAlign(), info.getFmtChunk(), info.getDataOffset(), info.getDataLength());
+    }
+
+    /**
+     * Decodes the whole file into float[channel][frame].
+     */
+    public static float[][] readSamples(Path path) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+            Header header = fromProbe(WavProbe.probe(in, Files.size(path)));
+            return readFrames(in, header, (int) header.getFrameCount());
+        }
+    }
+
+    /**
+     * Decodes up to frameCount frames from a stream positioned inside the data chunk.
+     * Returns fewer frames if the stream ends early.
+     */
+    public static float[][] readFrames(InputStream in, Header header, int frameCount) throws IOException {
+        byte[] bytes = new byte[frameCount * header.blockAlign];
+        int read = in.readNBytes(bytes, 0, bytes.length);
+        int frames = read / header.blockAlign;
+        float[][] samples = new float[header.channels][frames];
+        decode(bytes, header, frames, samples, 0);
+        return samples;
+    }
+
+    /**
+     * Receives blocks of mono samples from readMono.
+     */
+    public interface MonoSink {
+        void accept(float[] samples, int offset, int length);
+    }
+
+    /**
+     * Reads the data chunk of a stream positioned after its header block by block, mixes each block down to mono
+     * like librosa.load and hands it to the sink. The block buffer is reused between calls.
+     */
+    public static void readMono(InputStream in, Header header, MonoSink sink) throws IOException {
+        byte[] bytes = new byte[MONO_BLOCK_FRAMES * header.blockAlign];
+        float[][] samples = new float[header.channels][MONO_BLOCK_FRAMES];
+        float[] mono = new float[MONO_BLOCK_FRAMES];
+        long remaining = header.dataLength;
+        while (remaining > 0) {
+            int toRead = (int) Math.min(bytes.length, remaining - remaining % header.blockAlign);
+            if (toRead == 0) {
+                break;
+            }
+            int read = in.readNBytes(bytes, 0, toRead);
+            int frames = read / header.blockAlign;
+            if (frames == 0) {
+                break;
+            }
+            remaining -= read;
+
+            decode(bytes, header, frames, samples, 0);
+            mixDown(samples, frames, mono);
+            sink.accept(mono, 0, frames);
+        }
+    }
+
+    private static void mixDown(float[][] samples, int frames, float[] mono) {
+        int channels = samples.length;
+        if (channels == 1) {
+            System.arraycopy(samples[0], 0, mono, 0, frames);
+            return;
+        }
+        for (int i = 0; i < frames; i++) {
+            float sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += samples[c][i];
+            }
+            mono[i] = sum / channels;
+        }
+    }
+
+    /**
+     * Decodes frames from raw little-endian bytes into samples starting at the given frame offset.
+     */
+    public static void decode(byte[] bytes, Header header, int frames, float[][] samples, int offset) {
+        int bytesPerSample = header.bitsPerSample / 8;
+        int index = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            for (int channel = 0; channel < header.channels; channel++) {
+                samples[channel][offset + frame] = decodeSample(bytes, index, bytesPerSample, header.isFloat());
+                index += bytesPerSample;
+            }
+            index += header.blockAlign - bytesPerSample * header.channels;
+        }
+    }
+
+    private static float decodeSample(byte[] b, int i, int bytesPerSample, boolean isFloat) {
+        switch (bytesPerSample) {
+            case 1:
+                return ((b[i] & 0xFF) - 128) / 128f;
+            case 2:
+                return (short) ((b[i] & 0xFF) | (b[i + 1] << 8)) / 32768f;
+            case 3:
+                return ((b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | (b[i + 2] << 16)) / 8388608f;
+            case 4:
+                int bits = (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | ((b[i + 2] & 0xFF) << 16) | (b[i + 3] << 24);
+                return isFloat ? Float.intBitsToFloat(bits) : bits / 2147483648f;
+            case 8:
+                if (isFloat) {
+                    long wideBits = 0;
+                    for (int k = 7; k >= 0; k--) {
+                        wideBits = (wideBits << 8) | (b[i + k] & 0xFF);
+                    }
+                    return (float) Double.longBitsToDouble(wideBits);
+                }
+                throw new IllegalArgumentException("Unsupported sample size: 8 bytes of PCM");
+            default:
+                throw new IllegalArgumentException("Unsupported sample size: " + bytesPerSample + " bytes");
+        }
+    }
+
+    /**
+     * Copies a frame range of a WAV file into a new WAV file without decoding the samples.
+     */
+    public static void copyFrames(Path source, Header header, long startFrame, long frameCount, Path target) throws IOException {
+        long length = Math.min(frameCount, header.getFrameCount() - startFrame) * header.blockAlign;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.wrap(riffHeader(header.fmtChunk, length)));
+            long position = header.dataOffset + startFrame * header.blockAlign;
+            long copied = 0;
+            while (copied < length) {
+                copied += in.transferTo(position + copied, length - copied, out);
+            }
+        }
+    }
+
+    /**
+     * RIFF/WAVE header for a file with the given fmt chunk and data length.
+     */
+    static byte[] riffHeader(byte[] fmtChunk, long dataLength) {
+        ByteBuffer header = ByteBuffer.allocate(20 + fmtChunk.length + 8).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes(StandardCharsets.US_ASCII));
+        header.putInt((int) (4 + 8 + fmtChunk.length + 8 + dataLength));
+        header.put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        header.put("fmt ".getBytes(StandardCharsets.US_ASCII));
+        header.putInt(fmtChunk.length);
+        header.put(fmtChunk);
+        header.put("data".getBytes(StandardCharsets.US_ASCII));
+        header.putInt((int) dataLength);
+        return header.array();
+    }
+
+    /**
+     * fmt chunk body for 16-bit PCM.
+     */
+    static byte[] pcm16FmtChunk(int channels, int sampleRate) {
+        ByteBuffer fmt = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        fmt.putShort((short) FORMAT_PCM);
+        fmt.putShort((short) channels);
+        fmt.putInt(sampleRate);
+        fmt.putInt(sampleRate * channels * 2);
+        fmt.putShort((short) (channels * 2));
+        fmt.putShort((short) 16);
+        return fmt.array();
+    }
+
+    /**
+     * fmt chunk body for 32-bit IEEE float, with the empty extension size non-PCM formats carry.
+     */
+    static byte[] floatFmtChunk(int channels, int sampleRate) {
+        ByteBuffer fmt = ByteBuffer.allocate(18).order(ByteOrder.LITTLE_ENDIAN);
+        fmt.putShort((short) FORMAT_IEEE_FLOAT);
+        fmt.putShort((short) channels);
+        fmt.putInt(sampleRate);
+        fmt.putInt(sampleRate * channels * 4);
+        fmt.putShort((short) (channels * 4));
+        fmt.putShort((short) 32);
+        fmt.putShort((short) 0);
+        return fmt.array();
+    }
+
+    /**
+     * Encodes frames as interleaved 16-bit PCM with clipping.
+     */
+    static void writePcm16(OutputStream out, float[][] samples, int from, int to, byte[] scratch) throws IOException {
+        int channels = samples.length;
+        int index = 0;
+        for (int frame = from; frame < to; frame++) {
+            for (int channel = 0; channel < channels; channel++) {
+                float value = Math.max(-1f, Math.min(1f, samples[channel][frame]));
+                int pcm = Math.round(value * 32767f);
+                scratch[index++] = (byte) pcm;
+                scratch[index++] = (byte) (pcm >> 8);
+                if (index == scratch.length) {
+                    out.write(scratch, 0, index);
+                    index = 0;
+                }
+            }
+        }
+        out.write(scratch, 0, index);
+    }
+}
@@ -0,0 +1,299 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks that a stream is a usable WAV file by reading its header chunks only: the RIFF/RF64 header, ds64, fmt
+ * (including WAVE_FORMAT_EXTENSIBLE) and the Broadcast Wave bext chunk, up to the start of the sample data.
+ * Chunks in between (LIST, JUNK, iXML...) are skipped without being buffered, so probing costs a few KB of
+ * reading whatever the file size. Every problem is an IOException whose message can be shown to the user.
+ */
+public final class WavProbe {
+
+    // fmt and ds64 are all far smaller; a bigger one means the sizes are garbage
+    private static final int MAX_HEADER_CHUNK_BYTES = 64 * 1024;
+    // Fixed part of a bext chunk: description 256, originator 32, reference 32, date 10, time 8, time reference 8.
+    // The version, UMID, loudness fields and coding history after it are skipped.
+    private static final int BEXT_FIELDS_BYTES = 346;
+    // Metadata chunks before the samples rarely exceed a few hundred KB
+    private static final long MAX_DATA_OFFSET = 16L * 1024 * 1024;
+    private static final int MAX_CHANNELS = 64;
+    private static final int MIN_SAMPLE_RATE = 1000;
+    private static final int MAX_SAMPLE_RATE = 768000;
+    // Size fields an RF64 file sets to this value and keeps the real 64-bit size in ds64
+    private static final long RF64_PLACEHOLDER = 0xFFFFFFFFL;
+    // Data length of a stream of unknown size whose header leaves the size open: the samples run to its end
+    public static final long UNTIL_END = Long.MAX_VALUE;
+    // Bytes 2-15 of every WAVE_FORMAT_EXTENSIBLE sub-format GUID; bytes 0-1 are the format tag
+    private static final byte[] SUBFORMAT_GUID_TAIL = {
+            0x00, 0x00, 0x00, 0x00, 0x10, 0x00, (byte) 0x80, 0x00, 0x00, (byte) 0xAA, 0x00, 0x38, (byte) 0x9B, 0x71};
+
+    private WavProbe() {}
+
+    /**
+     * What the header says about the audio.
+     */
+    public static final class Info {
+        private final int formatTag;
+        private final boolean extensible;
+        private final boolean rf64;
+        private final int channels;
+        private final int sampleRate;
+        private final int bitsPerSample;
+        private final int blockAlign;
+        private final long dataOffset;
+        private final long dataLength;
+        private final Bext bext;
+        private final byte[] fmtChunk;
+
+        Info(int formatTag, boolean extensible, boolean rf64, int channels, int sampleRate, int bitsPerSample,
+             int blockAlign, long dataOffset, long dataLength, Bext bext, byte[] fmtChunk) {
+            this.formatTag = formatTag;
+            this.extensible = extensible;
+            this.rf64 = rf64;
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+            this.bitsPerSample = bitsPerSample;
+            this.blockAlign = blockAlign;
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+            this.bext = bext;
+            this.fmtChunk = fmtChunk;
+        }
+
+        // FORMAT_PCM or FORMAT_IEEE_FLOAT; for an extensible file, the format of its sub-format GUID
+        public int getFormatTag() { return formatTag; }
+        public boolean isExtensible() { return extensible; }
+        public boolean isRf64() { return rf64; }
+        public int getChannels() { return channels; }
+        public int getSampleRate() { return sampleRate; }
+        public int getBitsPerSample() { return bitsPerSample; }
+        public int getBlockAlign() { return blockAlign; }
+        public long getDataOffset() { return dataOffset; }
+        public long getDataLength() { return dataLength; }
+        // Null unless the file is a Broadcast Wave file
+        public Bext getBext() { return bext; }
+        // Raw fmt chunk body, which WavFile reuses when writing segments of the file
+        byte[] getFmtChunk() { return fmtChunk; }
+
+        public long getFrameCount() {
+            return dataLength / blockAlign;
+        }
+
+        public double getDurationSeconds() {
+            return (double) getFrameCount() / sampleRate;
+        }
+    }
+
+    /**
+     * Broadcast Wave (EBU Tech 3285) description of the recording.
+     */
+    public static final class Bext {
+        private final String description;
+        private final String originator;
+        private final String originatorReference;
+        private final String originationDate;
+        private final String originationTime;
+        private final long timeReference;
+
+        Bext(String description, String originator, String originatorReference, String originationDate,
+             String originationTime, long timeReference) {
+            this.description = description;
+            this.originator = originator;
+            this.originatorReference = originatorReference;
+            this.originationDate = originationDate;
+            this.originationTime = originationTime;
+            this.timeReference = timeReference;
+        }
+
+        public String getDescription() { return description; }
+        public String getOriginator() { return originator; }
+        public String getOriginatorReference() { return originatorReference; }
+        // yyyy-mm-dd and hh:mm:ss as written by the recorder
+        public String getOriginationDate() { return originationDate; }
+        public String getOriginationTime() { return originationTime; }
+        // First sample's position in samples since midnight
+        public long getTimeReference() { return timeReference; }
+    }
+
+    /**
+     * Reads the header from the start of the stream, which is left at the first sample. totalLength is the size
+     * of the whole file, or -1 if unknown; it fills in the data size left open by streaming writers and catches
+     * truncated uploads. Without it, such a size comes back as UNTIL_END.
+     */
+    public static Info probe(InputStream in, long totalLength) throws IOException {
+        byte[] scratch = new byte[MAX_HEADER_CHUNK_BYTES];
+        ByteBuffer buffer = ByteBuffer.wrap(scratch).order(ByteOrder.LITTLE_ENDIAN);
+
+        readFully(in, scratch, 12, "RIFF header");
+        String riffId = fourCc(scratch, 0);
+        boolean rf64 = "RF64".equals(riffId) || "BW64".equals(riffId);
+        if (!"RIFF".equals(riffId) && !rf64) {
+            throw new IOException("Not a WAV file (no RIFF header).");
+        }
+        if (!"WAVE".equals(fourCc(scratch, 8))) {
+            throw new IOException("Not a WAV file (RIFF type is not WAVE).");
+        }
+
+        long position = 12;
+        long ds64DataLength = -1;
+        Info format = null;
+        Bext bext = null;
+        while (true) {
+            readFully(in, scratch, 8, "chunk header (no data chunk found)");
+            String chunkId = fourCc(scratch, 0);
+            long size = buffer.getInt(4) & 0xFFFFFFFFL;
+            position += 8;
+
+            if ("data".equals(chunkId)) {
+                if (format == null) {
+                    throw new IOException("WAV data chunk comes before the fmt chunk.");
+                }
+                long dataLength = dataLength(size, rf64, ds64DataLength, position, totalLength, format.blockAlign);
+                return new Info(format.formatTag, format.extensible, rf64, format.channels, format.sampleRate,
+                        format.bitsPerSample, format.blockAlign, position, dataLength, bext, format.fmtChunk);
+            }
+
+            boolean headerChunk = "fmt ".equals(chunkId) || "ds64".equals(chunkId);
+            if (headerChunk && size > MAX_HEADER_CHUNK_BYTES) {
+                throw new IOException("WAV " + chunkId.trim() + " chunk is implausibly large (" + size + " bytes).");
+            }
+            if (position + size > MAX_DATA_OFFSET) {
+                throw new IOException("No WAV data chunk in the first " + MAX_DATA_OFFSET / (1024 * 1024) + " MB.");
+            }
+
+            if (headerChunk) {
+                readFully(in, scratch, (int) size, chunkId.trim() + " chunk");
+                if ("fmt ".equals(chunkId)) {
+                    format = parseFormat(buffer, (int) size);
+                } else {
+                    if (!rf64 || size < 24) {
+                        throw new IOException("Unexpected or short ds64 chunk.");
+                    }
+                    ds64DataLength = buffer.getLong(8);
+                }
+                skip(in, size & 1);
+            } else if ("bext".equals(chunkId) && size >= BEXT_FIELDS_BYTES) {
+                readFully(in, scratch, BEXT_FIELDS_BYTES, "bext chunk");
+                bext = parseBext(buffer);
+                skip(in, size - BEXT_FIELDS_BYTES + (size & 1));
+            } else {
+                skip(in, size + (size & 1));
+            }
+            position += size + (size & 1);
+        }
+    }
+
+    // The format fields only; the data chunk fills in the rest
+    private static Info parseFormat(ByteBuffer fmt, int size) throws IOException {
+        if (size < 16) {
+            throw new IOException("WAV fmt chunk is too short.");
+        }
+        int formatTag = fmt.getShort(0) & 0xFFFF;
+        int channels = fmt.getShort(2) & 0xFFFF;
+        int sampleRate = fmt.getInt(4);
+        int blockAlign = fmt.getShort(12) & 0xFFFF;
+        int bitsPerSample = fmt.getShort(14) & 0xFFFF;
+
+        boolean extensible = formatTag == WavFile.FORMAT_EXTENSIBLE;
+        if (extensible) {
+            // cbSize 22: valid bits, channel mask, then the sub-format GUID
+            if (size < 40 || (fmt.getShort(16) & 0xFFFF) < 22) {
+                throw new IOException("WAVE_FORMAT_EXTENSIBLE fmt chunk is too short.");
+            }
+            for (int i = 0; i < SUBFORMAT_GUID_TAIL.length; i++) {
+                if (fmt.get(26 + i) != SUBFORMAT_GUID_TAIL[i]) {
+                    throw new IOException("Unknown WAVE_FORMAT_EXTENSIBLE sub-format.");
+                }
+            }
+            formatTag = fmt.getShort(24) & 0xFFFF;
+        }
+
+        if (formatTag == WavFile.FORMAT_PCM) {
+            if (bitsPerSample != 8 && bitsPerSample != 16 && bitsPerSample != 24 && bitsPerSample != 32) {
+                throw new IOException("Unsupported PCM bit depth: " + bitsPerSample + ".");
+            }
+        } else if (formatTag == WavFile.FORMAT_IEEE_FLOAT) {
+            if (bitsPerSample != 32 && bitsPerSample != 64) {
+                throw new IOException("Unsupported float bit depth: " + bitsPerSample + ".");
+            }
+        } else {
+            throw new IOException("Unsupported WAV encoding (format tag " + formatTag + "); only PCM and float are accepted.");
+        }
+        if (channels < 1 || channels > MAX_CHANNELS) {
+            throw new IOException("Invalid channel count: " + channels + ".");
+        }
+        if (sampleRate < MIN_SAMPLE_RATE || sampleRate > MAX_SAMPLE_RATE) {
+            throw new IOException("Invalid sample rate: " + sampleRate + " Hz.");
+        }
+        if (blockAlign != channels * bitsPerSample / 8) {
+            throw new IOException("WAV block align " + blockAlign + " does not match " + channels + " channels of "
+                    + bitsPerSample + " bits.");
+        }
+        byte[] fmtChunk = new byte[size];
+        fmt.get(0, fmtChunk);
+        return new Info(formatTag, extensible, false, channels, sampleRate, bitsPerSample, blockAlign, -1, 0, null, fmtChunk);
+    }
+
+    private static Bext parseBext(ByteBuffer bext) {
+        return new Bext(text(bext, 0, 256), text(bext, 256, 32), text(bext, 288, 32), text(bext, 320, 10),
+                text(bext, 330, 8), bext.getLong(338));
+    }
+
+    private static long dataLength(long declared, boolean rf64, long ds64DataLength, long dataOffset, long totalLength,
+                                   int blockAlign) throws IOException {
+        long length = declared;
+        if (rf64 && declared == RF64_PLACEHOLDER) {
+            if (ds64DataLength < 0) {
+                throw new IOException("RF64 file has no ds64 chunk.");
+            }
+            length = ds64DataLength;
+        }
+        // Streaming writers leave the size at 0 or all ones; what is left of the file is the data
+        boolean open = length == 0 || length == RF64_PLACEHOLDER;
+        if (totalLength >= 0) {
+            long available = totalLength - dataOffset;
+            if (open || length > available) {
+                length = available;
+            }
+        } else if (open) {
+            return UNTIL_END;
+        }
+        if (length < blockAlign) {
+            throw new IOException("WAV file has no audio data.");
+        }
+        return length;
+    }
+
+    private static String text(ByteBuffer buffer, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && buffer.get(end) != 0) {
+            end++;
+        }
+        return new String(buffer.array(), offset, end - offset, StandardCharsets.ISO_8859_1).trim();
+    }
+
+    private static String fourCc(byte[] bytes, int offset) {
+        return new String(bytes, offset, 4, StandardCharsets.US_ASCII);
+    }
+
+    private static void readFully(InputStream in, byte[] bytes, int length, String what) throws IOException {
+        int read = in.readNBytes(bytes, 0, length);
+        if (read < length) {
+            throw new IOException("WAV file ends inside its " + what + ".");
+        }
+    }
+
+    private static void skip(InputStream in, long count) throws IOException {
+        try {
+            in.skipNBytes(count);
+        } catch (EOFException e) {
+            throw new IOException("WAV file ends before its data chunk.");
+        }
+    }
+}
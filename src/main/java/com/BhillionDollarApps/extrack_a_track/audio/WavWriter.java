@@ -0,0 +1,56 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Streams 16-bit PCM frames to a WAV file; the RIFF and data sizes are patched in on close.
+ */
+public class WavWriter implements Closeable {
+
+    private final Path path;
+    private final int channels;
+    private final byte[] fmtChunk;
+    private final OutputStream out;
+    private final byte[] scratch = new byte[1 << 16];
+    private long dataLength;
+
+    public WavWriter(Path path, int channels, int sampleRate) throws IOException {
+        this.path = path;
+        this.channels = channels;
+        this.fmtChunk = WavFile.pcm16FmtChunk(channels, sampleRate);
+        this.out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16);
+        out.write(WavFile.riffHeader(fmtChunk, 0));
+    }
+
+// Appends frames [from, to) of the de-interleaved samples
+    public void write(float[][] samples, int from, int to) throws IOException {
+        if (samples.length != channels) {
+            throw new IllegalArgumentException("Expected " + channels + " channels but got " + samples.length);
+        }
+        if (to <= from) {
+            return;
+        }
+        WavFile.writePcm16(out, samples, from, to, scratch);
+        dataLength += (long) (to - from) * channels * 2;
+    }
+
+    public long getFramesWritten() {
+        return dataLength / (channels * 2L);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            byte[] header = WavFile.riffHeader(fmtChunk, dataLength);
+            file.seek(0);
+            file.write(header);
+        }
+    }
+}
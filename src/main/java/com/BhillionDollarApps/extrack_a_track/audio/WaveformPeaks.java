@@ -0,0 +1,173 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Min/max peak pairs of a signal at several zoom levels, built in one streaming pass. The finest level is taken
+ * from the samples; every coarser level is folded from finished buckets of the finest, so each sample is only
+ * looked at once.
+ *
+ * Binary layout, little-endian:
+ * <pre>
+ *   0  "WPKS"
+ *   4  int   version (1)
+ *   8  int   sample rate
+ *  12  long  frame count
+ *  20  int   level count
+ *  24  level table, 12 bytes per level: int samples per bucket, int bucket count, int data offset
+ *      data: per level, one (min, max) pair of signed bytes per bucket, samples scaled by 127
+ * </pre>
+ * The header and level table come first, so a client can read them with one small range request and then fetch
+ * only the level it draws.
+ */
+public final class WaveformPeaks {
+
+    public static final int VERSION = 1;
+    private static final byte[] MAGIC = {'W', 'P', 'K', 'S'};
+    private static final int HEADER_BYTES = 24;
+    private static final int LEVEL_BYTES = 12;
+
+    private final int sampleRate;
+    private final int[] samplesPerBucket;
+    // How many finest buckets make one bucket of each level
+    private final int[] fold;
+    private final ByteArrayOutputStream[] levels;
+    private final float[] levelMin;
+    private final float[] levelMax;
+    private final int[] levelCount;
+    private float min = Float.POSITIVE_INFINITY;
+    private float max = Float.NEGATIVE_INFINITY;
+    private int count;
+    private long frameCount;
+
+    /**
+     * @param samplesPerBucket bucket sizes from finest to coarsest; each a multiple of the finest
+     */
+    public WaveformPeaks(int sampleRate, int... samplesPerBucket) {
+        if (samplesPerBucket.length == 0) {
+            throw new IllegalArgumentException("At least one zoom level is required.");
+        }
+        this.sampleRate = sampleRate;
+        this.samplesPerBucket = samplesPerBucket.clone();
+        this.fold = new int[samplesPerBucket.length];
+        this.levels = new ByteArrayOutputStream[samplesPerBucket.length];
+        this.levelMin = new float[samplesPerBucket.length];
+        this.levelMax = new float[samplesPerBucket.length];
+        this.levelCount = new int[samplesPerBucket.length];
+        for (int l = 0; l < samplesPerBucket.length; l++) {
+            if (samplesPerBucket[l] % samplesPerBucket[0] != 0) {
+                throw new IllegalArgumentException("Bucket size " + samplesPerBucket[l] + " is not a multiple of " + samplesPerBucket[0]);
+            }
+            fold[l] = samplesPerBucket[l] / samplesPerBucket[0];
+            levels[l] = new ByteArrayOutputStream();
+            levelMin[l] = Float.POSITIVE_INFINITY;
+            levelMax[l] = Float.NEGATIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Reads a WAV stream positioned at its RIFF header and builds the peaks of its mono mix.
+     */
+    public static WaveformPeaks build(InputStream in, int... samplesPerBucket) throws IOException {
+        WavFile.Header header = WavFile.readHeader(in);
+        WaveformPeaks peaks = new WaveformPeaks(header.sampleRate, samplesPerBucket);
+        WavFile.readMono(in, header, peaks::accept);
+        peaks.finish();
+        return peaks;
+    }
+
+    /**
+     * Feeds the next block of mono samples.
+     */
+    public void accept(float[] samples, int offset, int length) {
+        int bucketSize = samplesPerBucket[0];
+        for (int i = offset; i < offset + length; i++) {
+            float sample = samples[i];
+            if (sample < min) {
+                min = sample;
+            }
+            if (sample > max) {
+                max = sample;
+            }
+            if (++count == bucketSize) {
+                closeBucket();
+            }
+        }
+        frameCount += length;
+    }
+
+    /**
+     * Closes the partial buckets at the end of the signal.
+     */
+    public void finish() {
+        if (count > 0) {
+            closeBucket();
+        }
+        for (int l = 0; l < levels.length; l++) {
+            if (levelCount[l] > 0) {
+                writeBucket(l);
+            }
+        }
+    }
+
+    private void closeBucket() {
+        for (int l = 0; l < levels.length; l++) {
+            levelMin[l] = Math.min(levelMin[l], min);
+            levelMax[l] = Math.max(levelMax[l], max);
+            if (++levelCount[l] == fold[l]) {
+                writeBucket(l);
+            }
+        }
+        min = Float.POSITIVE_INFINITY;
+        max = Float.NEGATIVE_INFINITY;
+        count = 0;
+    }
+
+    private void writeBucket(int level) {
+        levels[level].write(quantize(levelMin[level]));
+        levels[level].write(quantize(levelMax[level]));
+        levelMin[level] = Float.POSITIVE_INFINITY;
+        levelMax[level] = Float.NEGATIVE_INFINITY;
+        levelCount[level] = 0;
+    }
+
+    private static int quantize(float value) {
+        return Math.max(-127, Math.min(127, Math.round(value * 127)));
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Serializes the pyramid in the layout described above. Call finish() first.
+     */
+    public byte[] toBytes() {
+        int dataOffset = HEADER_BYTES + LEVEL_BYTES * levels.length;
+        int size = dataOffset;
+        for (ByteArrayOutputStream level : levels) {
+            size += level.size();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(sampleRate);
+        buffer.putLong(frameCount);
+        buffer.putInt(levels.length);
+        for (int l = 0; l < levels.length; l++) {
+            buffer.putInt(samplesPerBucket[l]);
+            buffer.putInt(levels[l].size() / 2);
+            buffer.putInt(dataOffset);
+            dataOffset += levels[l].size();
+        }
+        for (ByteArrayOutputStream level : levels) {
+            buffer.put(level.toByteArray());
+        }
+        return buffer.array();
+    }
+}
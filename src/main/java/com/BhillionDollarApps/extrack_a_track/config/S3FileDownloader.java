@@ -3,6 +3,7 @@ package com.BhillionDollarApps.extrack_a_track.config;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
@@ -71,6 +72,19 @@ public class S3FileDownloader {
         }
     }
 
+    // Method to open an S3 object as a stream, for callers that process it while it downloads
+    public ResponseInputStream<GetObjectResponse> openStream(String bucketName, String s3Key) throws IOException {
+        try {
+            return s3Client.getObject(GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(s3Key)
+                    .build());
+        } catch (SdkClientException e) {
+            logger.severe("Error opening S3 object stream: " + e.getMessage());
+            throw new IOException("Error opening S3 object stream", e);
+        }
+    }
+
     // Method to List the files in the S3
     public List<String> listFiles(String bucketName, String prefix) {
         ListObjectsV2Request listRequest = ListObjectsV2Request.builder()
@@ -1,21 +1,28 @@
 package com.BhillionDollarApps.extrack_a_track.controllers;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 
-import com.BhillionDollarApps.extrack_a_track.config.S3FileDownloader;
 import com.BhillionDollarApps.extrack_a_track.models.Tracks;
 import com.BhillionDollarApps.extrack_a_track.repositories.TracksRepository;
 import com.BhillionDollarApps.extrack_a_track.services.LibrosaService;
+import com.BhillionDollarApps.extrack_a_track.services.LibraryAnalysisService;
+import com.BhillionDollarApps.extrack_a_track.services.ProgressEventBus;
+
+import jakarta.servlet.http.HttpSession;
 
 @Controller
 @RequestMapping("/librosa")
@@ -28,7 +35,11 @@ public class LibrosaController {
     @Autowired
     private LibrosaService librosaService;
     @Autowired
-    private S3FileDownloader s3FileDownloader;
+    private LibraryAnalysisService libraryAnalysisService;
+    @Autowired
+    private ProgressEventBus progressEventBus;
+    @Autowired
+    private HttpSession session;
 
     //Route to send the user uploaded track to Librosa
     @PostMapping("/analyzeTrack/{trackId}")
@@ -40,38 +51,55 @@ public class LibrosaController {
             throw new IllegalArgumentException("No S3 key found for track with id: " + trackId);
         }
 
-        try {
-            String fileName = track.getTitle().replaceAll("\\s+", "_") + ".wav";
-            Path tempFilePath = Files.createTempFile(fileName, ".wav");
+        // Progress is streamed at /progress/analysis-{trackId} while this request runs
+        String progressChannel = "analysis-" + trackId;
+        progressEventBus.open(progressChannel, (Long) session.getAttribute("userId"));
 
+        try {
             String bucketName = "extract-a-trackbucket";
-            logger.info("Starting download of track for analysis with Librosa.");
-            s3FileDownloader.downloadFile(bucketName, track.getS3Key(), tempFilePath.toString());
-
-            logger.info("Track downloaded, starting Librosa analysis.");
-            track = librosaService.analyzeTrackWithLibrosa(tempFilePath.toString(), track);
-
-            logger.info("Formatting analysis results for track.");
-            String formattedBeats = librosaService.formatBeats(librosaService.parseBeats(track.getBeats()));
-            String formattedMelody = librosaService.formatMelody(librosaService.parseMelody(track.getMelody()));
-            String formattedMFCCs = librosaService.formatMFCCs(librosaService.parseMFCCs(track.getMfcc()));
-
-            track.setBeats(formattedBeats);
-            track.setMelody(formattedMelody);
-            track.setMfcc(formattedMFCCs);
+            logger.info("Starting Librosa analysis of track streamed from S3.");
+            track = librosaService.analyzeTrackFromS3(bucketName, track.getS3Key(), track,
+                    (stage, percent) -> progressEventBus.publish(progressChannel, stage, 5 + percent * 90 / 100, null));
 
             tracksRepository.save(track);
 
-            Files.deleteIfExists(tempFilePath);
-            logger.info("Temporary file deleted after analysis.");
-
             model.addAttribute("track", track);
+            progressEventBus.complete(progressChannel, "Analysis complete.");
 
-        } catch (IOException e) {
-            logger.severe("Error handling WAV file for analysis: " + e.getMessage());
-            throw new RuntimeException("Error handling WAV file for analysis", e);
+        } catch (RuntimeException e) {
+            progressEventBus.fail(progressChannel, "Analysis failed.");
+            throw e;
         }
 
         return "redirect:/tracks/" + trackId;
     }
+
+    /**
+     * Analyzes the given tracks of the user, or all of their tracks that have no analysis yet, in the background.
+     * Returns 202 Accepted with the run id; aggregate progress is streamed at progressUrl.
+     */
+    @PostMapping("/analyzeLibrary")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> analyzeLibrary(@RequestParam(value = "trackIds", required = false) List<Long> trackIds) {
+        Long userId = (Long) session.getAttribute("userId");
+        Map<String, Object> response = new HashMap<>();
+        if (userId == null) {
+            response.put("error", "User not logged in.");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
+        }
+
+        try {
+            LibraryAnalysisService.Run run = libraryAnalysisService.start(userId, trackIds);
+            response.put("runId", run.getId());
+            response.put("tracks", run.getTotal());
+            response.put("progressUrl", "/progress/" + run.getProgressChannel());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        } catch (IllegalArgumentException e) {
+            response.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        } catch (IllegalStateException e) {
+            response.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        }
+    }
 }
@@ -0,0 +1,45 @@
+package com.BhillionDollarApps.extrack_a_track.controllers;
+
+import com.BhillionDollarApps.extrack_a_track.services.MediaJobService;
+import com.BhillionDollarApps.extrack_a_track.services.ProcessGovernor;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/metrics")
+public class MetricsController {
+
+    @Autowired
+    private ProcessGovernor processGovernor;
+
+    @Autowired
+    private MediaJobService mediaJobService;
+
+    @Autowired
+    private HttpSession session;
+
+    //Route to see subprocess capacity, queue waits and run times per tool
+    @GetMapping("/processes")
+    public ResponseEntity<Map<String, Object>> getProcessMetrics() {
+        if (session.getAttribute("userId") == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(processGovernor.getMetrics());
+    }
+
+    //Route to see the media job queue: depth, busy workers, rejections and wait/run times
+    @GetMapping("/media-jobs")
+    public ResponseEntity<Map<String, Object>> getMediaJobMetrics() {
+        if (session.getAttribute("userId") == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(mediaJobService.getMetrics());
+    }
+}
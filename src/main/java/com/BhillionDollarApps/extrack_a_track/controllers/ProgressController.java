@@ -0,0 +1,49 @@
+package com.BhillionDollarApps.extrack_a_track.controllers;
+
+import com.BhillionDollarApps.extrack_a_track.services.ProgressEventBus;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Map;
+
+@Controller
+@RequestMapping("/progress")
+public class ProgressController {
+
+    @Autowired
+    private ProgressEventBus progressEventBus;
+
+    @Autowired
+    private HttpSession session;
+
+    /**
+     * Server-Sent Events stream of a progress channel, e.g. /progress/separation-12.
+     */
+    @GetMapping(value = "/{channelId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamProgress(@PathVariable String channelId) {
+        Long userId = (Long) session.getAttribute("userId");
+        return progressEventBus.subscribe(channelId, userId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Last progress event of a channel, for clients without EventSource support.
+     */
+    @GetMapping("/{channelId}/status")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> getProgress(@PathVariable String channelId) {
+        Long userId = (Long) session.getAttribute("userId");
+        return progressEventBus.getLastEvent(channelId, userId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
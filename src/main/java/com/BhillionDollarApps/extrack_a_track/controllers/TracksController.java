@@ -11,30 +11,50 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.CacheControl;
 import com.BhillionDollarApps.extrack_a_track.config.S3FileDownloader;
 import com.BhillionDollarApps.extrack_a_track.config.S3FileUploader;
+import com.BhillionDollarApps.extrack_a_track.audio.TranscodeProfile;
+import com.BhillionDollarApps.extrack_a_track.models.PipelineStage;
 import com.BhillionDollarApps.extrack_a_track.models.Tracks;
 import com.BhillionDollarApps.extrack_a_track.models.User;
+import com.BhillionDollarApps.extrack_a_track.repositories.TrackAnalysisRepository;
 import com.BhillionDollarApps.extrack_a_track.repositories.TracksRepository;
 import com.BhillionDollarApps.extrack_a_track.services.FileService;
 import com.BhillionDollarApps.extrack_a_track.services.TracksService;
 import com.BhillionDollarApps.extrack_a_track.services.UserService;
 import com.BhillionDollarApps.extrack_a_track.services.LibrosaService;
+import com.BhillionDollarApps.extrack_a_track.services.StemCacheService;
+import com.BhillionDollarApps.extrack_a_track.services.StemAnalysisService;
+import com.BhillionDollarApps.extrack_a_track.services.SimilarityIndex;
+import com.BhillionDollarApps.extrack_a_track.services.WaveformService;
+import com.BhillionDollarApps.extrack_a_track.services.StreamingTranscoder;
+import com.BhillionDollarApps.extrack_a_track.services.RenditionService;
+import com.BhillionDollarApps.extrack_a_track.services.MediaJobService;
+import com.BhillionDollarApps.extrack_a_track.services.UploadPipelineService;
+import com.BhillionDollarApps.extrack_a_track.services.PreviewService;
+import com.BhillionDollarApps.extrack_a_track.services.StemArchiveService;
+import com.BhillionDollarApps.extrack_a_track.services.ProgressEventBus;
 import java.util.Map;
 import java.util.HashMap;
 import org.springframework.http.MediaType;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -43,6 +63,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.model.S3Object;
 
@@ -59,12 +80,36 @@ public class TracksController {
     @Autowired
     private TracksRepository tracksRepository;
     @Autowired
+    private TrackAnalysisRepository trackAnalysisRepository;
+    @Autowired
     private UserService userService;
     @Autowired
     private FileService fileService;
     @Autowired
     private LibrosaService librosaService;
     @Autowired
+    private StemCacheService stemCacheService;
+    @Autowired
+    private StemAnalysisService stemAnalysisService;
+    @Autowired
+    private WaveformService waveformService;
+    @Autowired
+    private SimilarityIndex similarityIndex;
+    @Autowired
+    private StreamingTranscoder streamingTranscoder;
+    @Autowired
+    private RenditionService renditionService;
+    @Autowired
+    private MediaJobService mediaJobService;
+    @Autowired
+    private UploadPipelineService uploadPipelineService;
+    @Autowired
+    private PreviewService previewService;
+    @Autowired
+    private StemArchiveService stemArchiveService;
+    @Autowired
+    private ProgressEventBus progressEventBus;
+    @Autowired
     private HttpSession session;
     @Autowired
     private S3FileDownloader S3FileDownloader;
@@ -115,6 +160,22 @@ public class TracksController {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
             }
 
+            // Read the WAV header before anything is stored: broken or non-WAV files stop here, and the track
+            // gets its sample rate, channels, bit depth and duration
+            try {
+                tracksService.probeWav(track, file);
+            } catch (IOException e) {
+                logger.warning("Rejected upload " + file.getOriginalFilename() + ": " + e.getMessage());
+                response.put("status", "error");
+                response.put("message", "Not a usable WAV file: " + e.getMessage());
+                return ResponseEntity.badRequest().body(response);
+            }
+            if (!tracksService.isWithinAudioQuota(userId, null, track.getDurationSeconds())) {
+                response.put("status", "error");
+                response.put("message", "Audio limit exceeded. Please delete some tracks to free up space.");
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
+            }
+
             // Calculate current storage usage
             long currentStorage = userService.calculateUserStorage(user.getEmail());
             long fileSize = file.getSize();
@@ -141,15 +202,19 @@ public class TracksController {
             logger.info("S3 Key for upload: " + s3Key);
 
             // Upload the file to S3
-            tracksService.uploadTrackToS3(s3Key, file);
+            String contentHash = tracksService.uploadTrackToS3(s3Key, file);
 
             // Update track metadata with S3 details and mark as completed
             track.setS3Key(s3Key);
+            track.setContentHash(contentHash);
             track.setStatus("COMPLETED");
 
             // Save updated track metadata with the S3 key
             tracksRepository.save(track);
 
+            // Waveform, MP3 and analysis are built in the background from the upload, without fetching it back from S3
+            uploadPipelineService.startFromUpload(track.getId(), userId, file);
+
             logger.info("Track uploaded successfully for user: " + userId);
 
             // Return a JSON response indicating success and a redirect URL
@@ -190,56 +255,51 @@ public class TracksController {
         }
     }
 
-//Route to convert the user's uploaded WAV file to MP3 and upload the MP3 to S3 and update the track metadata
+//Route to queue the conversion of the user's uploaded WAV file to MP3. Returns 202 Accepted with the job id at once;
+//the job streams the WAV from S3 through ffmpeg into S3 and records the MP3 on the track when it is done.
     @PostMapping("/{id}/convert-to-mp3-async")
-    public String convertToMp3Async(@PathVariable("id") Long trackId, RedirectAttributes redirectAttributes) {
-        String bucketName = "extract-a-trackbucket";
-
-        try {
-            // Fetch the track details
-            Tracks track = tracksService.findTrackById(trackId).orElse(null);
-            if (track == null) {
-                logger.warning("Track with ID " + trackId + " not found.");
-                redirectAttributes.addFlashAttribute("error", "Track not found.");
-                return "redirect:/tracks/" + trackId;
-            }
-
-            // Define temp S3 and local paths
-            String tempWavS3Key = "temp/" + track.getUser().getId() + "/" + track.getFileName(); // Temp WAV path in S3
-            String tempLocalFilePath = "/home/ubuntu/temp/" + track.getUser().getId() + "/" + track.getFileName(); // Local temp WAV file
-
-            // Correct the MP3 location
-            String originalS3Key = track.getS3Key();
-            String baseFolder = originalS3Key.substring(0, originalS3Key.lastIndexOf("/original/"));
-            String mp3S3Key = baseFolder + "/mp3/" + track.getFileName().replace(".wav", ".mp3");
-
-            // Download WAV file from S3
-            logger.info("Downloading WAV file from S3: " + originalS3Key);
-            S3FileDownloader.downloadFile(bucketName, originalS3Key, tempLocalFilePath);
-
-            // Convert WAV to MP3 locally
-            String tempMp3FilePath = tempLocalFilePath.replace(".wav", ".mp3");
-            String ffmpegCommand = String.format("ffmpeg -i \"%s\" -codec:a libmp3lame -qscale:a 2 \"%s\"", tempLocalFilePath, tempMp3FilePath);
-            executeCommand(ffmpegCommand);
-
-            // Upload MP3 to S3
-            logger.info("Uploading MP3 to S3: " + mp3S3Key);
-            S3FileUploader.uploadFile(bucketName, mp3S3Key, tempMp3FilePath);
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> convertToMp3Async(@PathVariable("id") Long trackId) {
+        Long userId = (Long) session.getAttribute("userId");
+        Map<String, Object> response = new HashMap<>();
+        if (userId == null) {
+            response.put("error", "User not logged in.");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
+        }
 
-            // Update track metadata
-            track.setMp3S3Key(mp3S3Key);
-            tracksService.saveTrack(track);
+        Optional<Tracks> trackOpt = tracksService.findTrackById(trackId);
+        if (trackOpt.isEmpty() || trackOpt.get().getS3Key() == null || !userId.equals(trackOpt.get().getUser().getId())) {
+            logger.warning("Track with ID " + trackId + " not found.");
+            response.put("error", "Track not found.");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
 
-            // Clean up local temp files
-            deleteLocalTempFiles(tempLocalFilePath, tempMp3FilePath);
+        // Correct the MP3 location
+        Tracks track = trackOpt.get();
+        String originalS3Key = track.getS3Key();
+        String baseFolder = originalS3Key.substring(0, originalS3Key.lastIndexOf("/original/"));
+        String mp3S3Key = baseFolder + "/mp3/" + track.getFileName().replace(".wav", ".mp3");
 
-            redirectAttributes.addFlashAttribute("message", "MP3 conversion completed successfully.");
-            return "redirect:/tracks/" + trackId;
+        try {
+            MediaJobService.Job job = mediaJobService.submit("mp3", "mp3-" + trackId, userId, progressListener -> {
+                streamingTranscoder.transcode(BUCKET_NAME, originalS3Key, mp3S3Key, TranscodeProfile.MP3_192, progressListener);
 
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error during MP3 conversion for track ID " + trackId, e);
-            redirectAttributes.addFlashAttribute("error", "Failed to convert track to MP3.");
-            return "redirect:/tracks/" + trackId;
+                // Only the MP3 column, so edits and analysis results saved while the job ran are kept
+                if (tracksRepository.updateMp3S3Key(trackId, mp3S3Key) == 0) {
+                    throw new IllegalStateException("Track " + trackId + " was deleted during conversion.");
+                }
+                return "MP3 conversion completed successfully.";
+            });
+            response.put("jobId", job.getId());
+            response.put("trackId", trackId);
+            response.put("status", "QUEUED");
+            response.put("progress", 0);
+            response.put("progressUrl", "/progress/" + job.getProgressChannel());
+            response.put("statusUrl", "/progress/" + job.getProgressChannel() + "/status");
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        } catch (RejectedExecutionException e) {
+            response.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
         }
     }
 
@@ -302,6 +362,34 @@ public class TracksController {
 	    }
 	}
 
+//Route to download the track in another format. The rendition is transcoded into S3 on the first request
+//(concurrent requests for it share that transcode) and served from S3 after that.
+	@GetMapping("/{id}/renditions/{profile}")
+	public ResponseEntity<InputStreamResource> downloadRendition(@PathVariable("id") Long id,
+	                                                             @PathVariable("profile") String profileId) {
+	    Long userId = (Long) session.getAttribute("userId");
+	    Optional<Tracks> trackOpt = tracksService.findTrackById(id);
+	    Optional<TranscodeProfile> profile = TranscodeProfile.fromId(profileId).filter(TranscodeProfile::isRendition);
+	    if (userId == null || trackOpt.isEmpty() || trackOpt.get().getS3Key() == null
+	            || !userId.equals(trackOpt.get().getUser().getId()) || profile.isEmpty()) {
+	        return ResponseEntity.notFound().build();
+	    }
+
+	    Tracks track = trackOpt.get();
+	    try {
+	        long size = renditionService.ensureRendition(track, profile.get(), percent -> {});
+	        String fileName = track.getTitle().replaceAll("[^a-zA-Z0-9-_\\.]", "_") + "." + profile.get().getExtension();
+	        return ResponseEntity.ok()
+	                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+	                .contentType(MediaType.parseMediaType(profile.get().getContentType()))
+	                .contentLength(size)
+	                .body(new InputStreamResource(renditionService.openRendition(track, profile.get())));
+	    } catch (Exception e) {
+	        logger.log(Level.SEVERE, "Error producing the " + profileId + " rendition of track ID: " + id, e);
+	        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+	    }
+	}
+
 //Edit an existing track
 	@GetMapping("/{id}/edit")
 	public String editTrackForm(@PathVariable("id") Long id, Model model) {
@@ -325,7 +413,7 @@ public class TracksController {
     }
 
     try {
-        // Step 1: Find the existing track and delete its S3 folder
+        // Step 1: Find the existing track, check the new file, and delete the track's S3 folder
         Optional<Tracks> trackOpt = tracksRepository.findById(id);
         if (trackOpt.isEmpty()) {
             redirectAttributes.addFlashAttribute("errorMessage", "Track not found.");
@@ -333,6 +421,20 @@ public class TracksController {
         }
 
         Tracks existingTrack = trackOpt.get();
+        Tracks probed = new Tracks();
+        try {
+            tracksService.probeWav(probed, file);
+        } catch (IOException e) {
+            logger.warning("Rejected replacement file for track ID " + id + ": " + e.getMessage());
+            redirectAttributes.addFlashAttribute("errorMessage", "Not a usable WAV file: " + e.getMessage());
+            return "redirect:/tracks/" + id + "/edit";
+        }
+        if (existingTrack.getUser() != null
+                && !tracksService.isWithinAudioQuota(existingTrack.getUser().getId(), id, probed.getDurationSeconds())) {
+            redirectAttributes.addFlashAttribute("errorMessage", "Audio limit exceeded. Please delete some tracks to free up space.");
+            return "redirect:/tracks/" + id + "/edit";
+        }
+
         String folderPrefix = existingTrack.getS3Key();
         if (folderPrefix != null && folderPrefix.contains("/original/")) {
             folderPrefix = folderPrefix.substring(0, folderPrefix.lastIndexOf("/original/")) + "/";
@@ -341,6 +443,7 @@ public class TracksController {
             return "redirect:/welcome";
         }
 
+        stemCacheService.evictFolder(folderPrefix);
         boolean deleted = fileService.deleteFolderFromS3(BUCKET_NAME, folderPrefix);
         if (!deleted) {
             redirectAttributes.addFlashAttribute("errorMessage", "Failed to delete folder from S3.");
@@ -363,6 +466,12 @@ public class TracksController {
         existingTrack.setGenre(track.getGenre());
         existingTrack.setLyrics(track.getLyrics());
         existingTrack.setFileName(file.getOriginalFilename());
+        existingTrack.setSampleRate(probed.getSampleRate());
+        existingTrack.setChannels(probed.getChannels());
+        existingTrack.setBitDepth(probed.getBitDepth());
+        existingTrack.setDurationSeconds(probed.getDurationSeconds());
+        // Belongs to the old audio; the analysis of the new one sets it again
+        existingTrack.setPreviewStartSeconds(null);
         existingTrack.setStatus("PROCESSING");
 
         // Define the S3 folder path for the new track
@@ -374,19 +483,25 @@ public class TracksController {
 
         // Upload the new file to S3
         String tempFilePath = tracksService.storeFileTemporarily(file);
+        String contentHash;
         try {
-            tracksService.uploadTrackToS3(BUCKET_NAME, s3Key, tempFilePath);
-        } finally {
+            contentHash = tracksService.uploadTrackToS3(BUCKET_NAME, s3Key, tempFilePath);
+        } catch (RuntimeException e) {
             tracksService.deleteTempFile(tempFilePath);
+            throw e;
         }
 
         // Update the S3 key and status
         existingTrack.setS3Key(s3Key);
+        existingTrack.setContentHash(contentHash);
         existingTrack.setStatus("COMPLETED");
 
         // Save the updated track metadata with the same ID
         tracksRepository.save(existingTrack);
 
+        // The temp file feeds the post-upload pipeline, which deletes it when done
+        uploadPipelineService.start(existingTrack.getId(), userId, Paths.get(tempFilePath));
+
         redirectAttributes.addFlashAttribute("successMessage", "Track updated successfully!");
         return "redirect:/tracks/" + existingTrack.getId();
 
@@ -409,6 +524,11 @@ public class TracksController {
 	    if (trackOpt.isPresent()) {
 	        Tracks track = trackOpt.get();
 	        model.addAttribute("track", track);
+	        model.addAttribute("analysis", librosaService.summarizeAnalysis(track));
+	        model.addAttribute("stemAnalyses", stemAnalysisService.findByTrackId(id));
+	        model.addAttribute("previewStems", stemArchiveService.getStemKeys(track).keySet());
+	        model.addAttribute("renditionProfiles", TranscodeProfile.renditions());
+	        model.addAttribute("pipelineStages", uploadPipelineService.getStages(id));
 	        model.addAttribute("userId", userId); // Add userId to the model for ownership check
 	        return "showTrack";
 	    }
@@ -416,6 +536,112 @@ public class TracksController {
 	    return "redirect:/welcome"; // Redirect if the track is not found
 	}
   
+//Route to serve a track's waveform peaks. They only change with the audio, which the page puts in the URL,
+//so browsers may keep them for a year; Range requests are answered with 206 so a client can fetch one zoom level.
+	@GetMapping("/{id}/waveform")
+	public ResponseEntity<Resource> getWaveform(@PathVariable("id") Long id, HttpSession session) {
+	    Long userId = (Long) session.getAttribute("userId");
+	    Optional<Tracks> trackOpt = tracksService.findTrackById(id);
+	    if (userId == null || trackOpt.isEmpty() || trackOpt.get().getS3Key() == null
+	            || !userId.equals(trackOpt.get().getUser().getId())) {
+	        return ResponseEntity.notFound().build();
+	    }
+
+	    Tracks track = trackOpt.get();
+	    try {
+	        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+	                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+	                .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate());
+	        if (track.getContentHash() != null) {
+	            response.eTag(track.getContentHash());
+	        }
+	        return response.body(new ByteArrayResource(waveformService.getPeaks(track)));
+	    } catch (Exception e) {
+	        logger.log(Level.SEVERE, "Error loading waveform for track ID: " + id, e);
+	        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+	    }
+	}
+
+//Route to play a 30-second preview of the track ("original") or of one of its stems, cut on the first request if the
+//pipeline or the separation did not already. The ETag lets browsers revalidate a cached preview with a 304, and
+//Range requests are answered with 206 so players can seek.
+	@GetMapping("/{id}/previews/{source}")
+	public ResponseEntity<Resource> getPreview(@PathVariable("id") Long id, @PathVariable("source") String source,
+	                                           HttpSession session, WebRequest webRequest) {
+	    Long userId = (Long) session.getAttribute("userId");
+	    Optional<Tracks> trackOpt = tracksService.findTrackById(id);
+	    if (userId == null || trackOpt.isEmpty() || trackOpt.get().getS3Key() == null
+	            || !userId.equals(trackOpt.get().getUser().getId())
+	            || previewService.getSourceKey(trackOpt.get(), source) == null) {
+	        return ResponseEntity.notFound().build();
+	    }
+
+	    Tracks track = trackOpt.get();
+	    try {
+	        HeadObjectResponse preview = previewService.ensurePreview(track, source);
+	        if (webRequest.checkNotModified(preview.eTag())) {
+	            return null;
+	        }
+	        return ResponseEntity.ok()
+	                .contentType(MediaType.parseMediaType(TranscodeProfile.PREVIEW.getContentType()))
+	                .cacheControl(CacheControl.maxAge(1, TimeUnit.DAYS).cachePrivate())
+	                .eTag(preview.eTag())
+	                .body(new ByteArrayResource(previewService.readPreview(track, source)));
+	    } catch (Exception e) {
+	        logger.log(Level.SEVERE, "Error producing the " + source + " preview of track ID: " + id, e);
+	        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+	    }
+	}
+
+//Route reporting the post-upload pipeline of a track: the status of each stage, as JSON for the track page
+	@GetMapping("/{id}/pipeline")
+	@ResponseBody
+	public ResponseEntity<List<Map<String, Object>>> getPipelineStatus(@PathVariable("id") Long id, HttpSession session) {
+	    Long userId = (Long) session.getAttribute("userId");
+	    Optional<Tracks> trackOpt = tracksService.findTrackById(id);
+	    if (userId == null || trackOpt.isEmpty() || !userId.equals(trackOpt.get().getUser().getId())) {
+	        return ResponseEntity.notFound().build();
+	    }
+
+	    List<Map<String, Object>> stages = new ArrayList<>();
+	    for (PipelineStage stage : uploadPipelineService.getStages(id)) {
+	        Map<String, Object> result = new HashMap<>();
+	        result.put("stage", stage.getStage());
+	        result.put("status", stage.getStatus());
+	        result.put("error", stage.getError());
+	        result.put("durationSeconds", stage.getDurationSeconds());
+	        stages.add(result);
+	    }
+	    return ResponseEntity.ok(stages);
+	}
+
+//Route listing the tracks of the owner's library that sound most like this one, as JSON for the track page
+	@GetMapping("/{id}/similar")
+	@ResponseBody
+	public ResponseEntity<List<Map<String, Object>>> getSimilarTracks(@PathVariable("id") Long id,
+	                                                                  @RequestParam(value = "limit", defaultValue = "5") int limit,
+	                                                                  HttpSession session) {
+	    Long userId = (Long) session.getAttribute("userId");
+	    Optional<Tracks> trackOpt = tracksService.findTrackById(id);
+	    if (userId == null || trackOpt.isEmpty() || !userId.equals(trackOpt.get().getUser().getId())) {
+	        return ResponseEntity.notFound().build();
+	    }
+
+	    List<Map<String, Object>> results = new ArrayList<>();
+	    for (SimilarityIndex.SimilarTrack similar : similarityIndex.findSimilar(trackOpt.get(), Math.max(1, Math.min(limit, 50)))) {
+	        Tracks track = similar.getTrack();
+	        Map<String, Object> result = new HashMap<>();
+	        result.put("id", track.getId());
+	        result.put("title", track.getTitle());
+	        result.put("artist", track.getArtist());
+	        result.put("songKey", track.getSongKey());
+	        result.put("tempo", track.getTempo());
+	        result.put("similarity", similar.getSimilarity());
+	        results.add(result);
+	    }
+	    return ResponseEntity.ok(results);
+	}
+
 //Route to delete the WAV file, MP3 file, and stems from Spleeter, if available and all metadata in the RDS
 	@PostMapping("/delete/{id}")
 	public String deleteTrack(@PathVariable("id") Long id, RedirectAttributes redirectAttributes) {
@@ -438,14 +664,19 @@ public class TracksController {
 	            return "redirect:/welcome";
 	        }
 
-	        // Step 3: Delete the folder from S3
+	        // Step 3: Delete the folder from S3, forgetting any cached stems stored in it
+	        stemCacheService.evictFolder(folderPrefix);
 	        boolean deleted = fileService.deleteFolderFromS3(BUCKET_NAME, folderPrefix);
 	        if (!deleted) {
 	            redirectAttributes.addFlashAttribute("errorMessage", "Failed to delete folder from S3.");
 	            return "redirect:/welcome";
 	        }
 
-	        // Step 4: Delete the track from the database
+	        // Step 4: Delete the track and its analysis from the database
+	        trackAnalysisRepository.deleteById(id);
+	        stemAnalysisService.deleteByTrackId(id);
+	        uploadPipelineService.deleteStages(id);
+	        similarityIndex.remove(id);
 	        tracksRepository.deleteById(id);
 	        redirectAttributes.addFlashAttribute("successMessage", "Track deleted successfully.");
 
@@ -506,6 +737,35 @@ public class TracksController {
     }
 }
 
+//Route to download all of a track's stems as one ZIP, streamed from S3 without touching the disk
+    @GetMapping("/{id}/download-stems-zip")
+    public ResponseEntity<StreamingResponseBody> downloadStemsZip(@PathVariable Long id) {
+        Optional<Tracks> trackOpt = tracksRepository.findById(id);
+        if (trackOpt.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+
+        Tracks track = trackOpt.get();
+        if (stemArchiveService.getStemKeys(track).isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+
+        String baseName = track.getTitle().replaceAll("[^a-zA-Z0-9-_\\.]", "_");
+        StreamingResponseBody body = outputStream -> {
+            try {
+                stemArchiveService.writeStemsZip(track, baseName, outputStream);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Stem ZIP download for track ID " + id + " ended early: " + e.getMessage());
+                throw e;
+            }
+        };
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + baseName + "-stems.zip\"")
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .body(body);
+    }
+
 //Route to send the user's uploaded track to Librosa for analysis and updates the track's metadata in the RDS
     @GetMapping("/downloadAndAnalyze/{trackId}")
     public String downloadAndAnalyze(@PathVariable Long trackId) {
@@ -516,23 +776,13 @@ public class TracksController {
             Tracks track = tracksService.findTrackById(trackId)
                     .orElseThrow(() -> new RuntimeException("Track not found with ID: " + trackId));
 
-            // Define temp S3 and local paths
-            String tempS3Key = "temp/" + track.getUser().getId() + "/" + track.getFileName();
-            String localTempFile = "/home/ubuntu/temp/" + track.getUser().getId() + "/" + track.getFileName();
-
-            // Download WAV file from S3
-            logger.info("Downloading WAV file from S3: " + track.getS3Key());
-            S3FileDownloader.downloadFile(bucketName, track.getS3Key(), localTempFile);
-
-            // Analyze with Librosa
-            librosaService.analyzeTrackWithLibrosa(localTempFile, track);
+            // Analyze the WAV as it streams from S3
+            logger.info("Analyzing WAV file from S3: " + track.getS3Key());
+            librosaService.analyzeTrackFromS3(bucketName, track.getS3Key(), track, (stage, percent) -> {});
 
             // Update track metadata
             tracksService.saveTrack(track);
 
-            // Delete temp files
-            deleteLocalTempFiles(localTempFile);
-
             logger.info("Analysis completed for track ID: " + trackId);
             return "redirect:/dashboard";
 
@@ -541,52 +791,5 @@ public class TracksController {
             return "redirect:/errorPage";
         }
     }
-    
-    /**
-     * Helper method to delete temporary files.
-     */
-    private void deleteLocalTempFiles(String... tempFilePaths) {
-        for (String filePath : tempFilePaths) {
-            try {
-                File file = new File(filePath);
-                if (file.exists() && file.delete()) {
-                    logger.info("Deleted temp file: " + filePath);
-                } else {
-                    logger.warning("Failed to delete temp file: " + filePath);
-                }
-            } catch (Exception e) {
-                logger.log(Level.SEVERE, "Error deleting temp file: " + filePath, e);
-            }
-        }
-
-    }
-    
-    /**
-     * Executes a shell command.
-     * @param command The command to execute.
-     * @throws IOException If an I/O error occurs.
-     */
-    private void executeCommand(String command) throws IOException, InterruptedException {
-        logger.info("Executing command: " + command);
-
-        // Create a ProcessBuilder to execute the command
-        ProcessBuilder processBuilder = new ProcessBuilder("bash", "-c", command);
-        processBuilder.redirectErrorStream(true); // Redirect error stream to standard output
-        Process process = processBuilder.start();
-
-        // Log the output of the process
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                logger.info(line); // Log each line of output
-            }
-        }
-
-        // Wait for the process to complete and check its exit code
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            throw new IOException("Command failed with exit code: " + exitCode);
-        }
-    }
 
 }
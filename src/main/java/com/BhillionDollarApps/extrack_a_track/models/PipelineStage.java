@@ -0,0 +1,104 @@
+package com.BhillionDollarApps.extrack_a_track.models;
+
+import java.util.Date;
+
+import jakarta.persistence.*;
+
+/**
+ * Status of one stage of a track's post-upload processing (see UploadPipelineService). One row per track and
+ * stage; a new upload of the track replaces them.
+ */
+@Entity
+@Table(name = "pipeline_stages",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"track_id", "stage"}),
+       indexes = @Index(name = "idx_pipeline_stages_track", columnList = "track_id"))
+public class PipelineStage {
+
+    public static final String PENDING = "PENDING";
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+    // Not run because a stage it depends on failed
+    public static final String SKIPPED = "SKIPPED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "track_id", nullable = false)
+    private Long trackId;
+
+    @Column(nullable = false, length = 32)
+    private String stage;
+
+    private String status;
+
+    @Column(length = 1000)
+    private String error;
+
+    private Date startedAt;
+
+    private Date finishedAt;
+
+    public PipelineStage() {}
+
+    public PipelineStage(Long trackId, String stage) {
+        this.trackId = trackId;
+        this.stage = stage;
+        this.status = PENDING;
+    }
+
+    // Seconds the stage ran, or null while it has not finished
+    public Double getDurationSeconds() {
+        if (startedAt == null || finishedAt == null) {
+            return null;
+        }
+        return (finishedAt.getTime() - startedAt.getTime()) / 1000.0;
+    }
+
+    // Getters and Setters
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getTrackId() {
+        return trackId;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public Date getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(Date startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Date getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(Date finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+}
@@ -0,0 +1,160 @@
+package com.BhillionDollarApps.extrack_a_track.models;
+
+import java.util.Date;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+import jakarta.persistence.*;
+
+@Entity
+@Table(name = "separation_jobs")
+public class SeparationJob {
+
+    public static final String QUEUED = "QUEUED";
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+    public static final String CANCELLED = "CANCELLED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "track_id", nullable = false)
+    private Long trackId;
+
+    @Column(name = "user_id")
+    private Long userId;
+
+    private int stems;
+
+    private String status;
+
+    private int progress; // 0-100
+
+    // JSON map of stem name -> S3 key, filled in when the job completes
+    @Lob
+    @Column(name = "stem_keys", columnDefinition = "TEXT")
+    private String stemKeys;
+
+    @Column(length = 1000)
+    private String error;
+
+    @Column(updatable = false)
+    @DateTimeFormat(pattern = "yyyy-MM-dd")
+    private Date createdAt;
+
+    private Date startedAt;
+
+    private Date finishedAt;
+
+    public SeparationJob() {
+        this.status = QUEUED;
+    }
+
+    public SeparationJob(Long trackId, Long userId, int stems) {
+        this();
+        this.trackId = trackId;
+        this.userId = userId;
+        this.stems = stems;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = new Date();
+    }
+
+    public boolean isFinished() {
+        return COMPLETED.equals(status) || FAILED.equals(status) || CANCELLED.equals(status);
+    }
+
+    // Getters and Setters
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getTrackId() {
+        return trackId;
+    }
+
+    public void setTrackId(Long trackId) {
+        this.trackId = trackId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public int getStems() {
+        return stems;
+    }
+
+    public void setStems(int stems) {
+        this.stems = stems;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public int getProgress() {
+        return progress;
+    }
+
+    public void setProgress(int progress) {
+        this.progress = progress;
+    }
+
+    public String getStemKeys() {
+        return stemKeys;
+    }
+
+    public void setStemKeys(String stemKeys) {
+        this.stemKeys = stemKeys;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Date getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(Date startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Date getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(Date finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+}
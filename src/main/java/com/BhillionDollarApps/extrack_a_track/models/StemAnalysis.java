@@ -0,0 +1,153 @@
+package com.BhillionDollarApps.extrack_a_track.models;
+
+import java.util.Date;
+
+import com.BhillionDollarApps.extrack_a_track.audio.StemFeatures;
+
+import jakarta.persistence.*;
+
+@Entity
+@Table(name = "stem_analysis",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"track_id", "stem_name"}),
+       indexes = @Index(name = "idx_stem_analysis_track", columnList = "track_id"))
+public class StemAnalysis {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "track_id", nullable = false)
+    private Long trackId;
+
+    @Column(name = "stem_name", nullable = false)
+    private String stemName;
+
+    private double durationSeconds;
+
+    // Mean and loudest frame RMS, linear full scale
+    private double rms;
+    private double peakRms;
+
+    private int onsetCount;
+
+    // Onsets per second
+    private double onsetDensity;
+
+    // Share of the non-silent frames that had a clear pitch
+    private double voicedRatio;
+
+    // MIDI note numbers; null when the stem has no pitch range (drums, silence)
+    private Integer pitchLowMidi;
+    private Integer pitchHighMidi;
+
+    // Start of the loudest 30 seconds, where the stem's preview clip is cut
+    private Double previewStartSeconds;
+
+    @Column(updatable = false)
+    private Date createdAt;
+
+    public StemAnalysis() {}
+
+    public StemAnalysis(Long trackId, String stemName, StemFeatures features) {
+        this.trackId = trackId;
+        this.stemName = stemName;
+        this.durationSeconds = features.getDurationSeconds();
+        this.rms = features.getRms();
+        this.peakRms = features.getPeakRms();
+        this.onsetCount = features.getOnsetCount();
+        this.onsetDensity = features.getOnsetDensity();
+        this.voicedRatio = features.getVoicedRatio();
+        this.previewStartSeconds = features.getPreviewStart();
+        if (features.hasPitchRange()) {
+            this.pitchLowMidi = features.getPitchLowMidi();
+            this.pitchHighMidi = features.getPitchHighMidi();
+        }
+    }
+
+    // The analysis of the same stem file, for another track
+    public StemAnalysis(Long trackId, StemAnalysis source) {
+        this.trackId = trackId;
+        this.stemName = source.stemName;
+        this.durationSeconds = source.durationSeconds;
+        this.rms = source.rms;
+        this.peakRms = source.peakRms;
+        this.onsetCount = source.onsetCount;
+        this.onsetDensity = source.onsetDensity;
+        this.voicedRatio = source.voicedRatio;
+        this.pitchLowMidi = source.pitchLowMidi;
+        this.pitchHighMidi = source.pitchHighMidi;
+        this.previewStartSeconds = source.previewStartSeconds;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = new Date();
+    }
+
+    // Pitch range as note names, e.g. "E1 - A2", or null if there is none
+    public String getPitchRange() {
+        if (pitchLowMidi == null || pitchHighMidi == null) {
+            return null;
+        }
+        return StemFeatures.noteName(pitchLowMidi) + " - " + StemFeatures.noteName(pitchHighMidi);
+    }
+
+    // Mean RMS in dBFS
+    public double getRmsDb() {
+        return 20 * Math.log10(Math.max(rms, 1e-10));
+    }
+
+    // Getters and Setters
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getTrackId() {
+        return trackId;
+    }
+
+    public String getStemName() {
+        return stemName;
+    }
+
+    public double getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public double getRms() {
+        return rms;
+    }
+
+    public double getPeakRms() {
+        return peakRms;
+    }
+
+    public int getOnsetCount() {
+        return onsetCount;
+    }
+
+    public double getOnsetDensity() {
+        return onsetDensity;
+    }
+
+    public double getVoicedRatio() {
+        return voicedRatio;
+    }
+
+    public Integer getPitchLowMidi() {
+        return pitchLowMidi;
+    }
+
+    public Integer getPitchHighMidi() {
+        return pitchHighMidi;
+    }
+
+    public Double getPreviewStartSeconds() {
+        return previewStartSeconds;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+}
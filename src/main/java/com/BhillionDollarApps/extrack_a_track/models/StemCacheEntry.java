@@ -0,0 +1,109 @@
+package com.BhillionDollarApps.extrack_a_track.models;
+
+import java.util.Date;
+
+import jakarta.persistence.*;
+
+@Entity
+@Table(name = "stem_cache",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"content_hash", "stems", "stem_name"}),
+       indexes = @Index(name = "idx_stem_cache_hash", columnList = "content_hash, stems"))
+public class StemCacheEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "content_hash", length = 64, nullable = false)
+    private String contentHash;
+
+    // Spleeter model the stems came from (2, 4 or 5 stems)
+    @Column(nullable = false)
+    private int stems;
+
+    @Column(name = "stem_name", nullable = false)
+    private String stemName;
+
+    @Column(name = "s3_key", nullable = false)
+    private String s3Key;
+
+    // Track the stems were separated from, whose stem analysis describes them; null for older entries
+    @Column(name = "source_track_id")
+    private Long sourceTrackId;
+
+    @Column(updatable = false)
+    private Date createdAt;
+
+    public StemCacheEntry() {}
+
+    public StemCacheEntry(String contentHash, int stems, String stemName, String s3Key, Long sourceTrackId) {
+        this.contentHash = contentHash;
+        this.stems = stems;
+        this.stemName = stemName;
+        this.s3Key = s3Key;
+        this.sourceTrackId = sourceTrackId;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = new Date();
+    }
+
+    // Getters and Setters
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public int getStems() {
+        return stems;
+    }
+
+    public void setStems(int stems) {
+        this.stems = stems;
+    }
+
+    public String getStemName() {
+        return stemName;
+    }
+
+    public void setStemName(String stemName) {
+        this.stemName = stemName;
+    }
+
+    public String getS3Key() {
+        return s3Key;
+    }
+
+    public void setS3Key(String s3Key) {
+        this.s3Key = s3Key;
+    }
+
+    public Long getSourceTrackId() {
+        return sourceTrackId;
+    }
+
+    public void setSourceTrackId(Long sourceTrackId) {
+        this.sourceTrackId = sourceTrackId;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,174 @@
+package com.BhillionDollarApps.extrack_a_track.models;
+
+import java.nio.FloatBuffer;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.domain.DomainEvents;
+
+import com.BhillionDollarApps.extrack_a_track.utils.AnalysisCodec;
+
+import jakarta.persistence.*;
+
+// Array-valued analysis results, kept out of the tracks table so listing tracks never loads them.
+// The blobs are AnalysisCodec encodings: float32 little-endian vectors and varint beat frames.
+@Entity
+@Table(name = "track_analysis")
+public class TrackAnalysis {
+
+    // Same id as the track; there is no foreign key, so the row is removed alongside the track
+    @Id
+    @Column(name = "track_id")
+    private Long trackId;
+
+    @Lob
+    @Column(name = "beat_frames")
+    private byte[] beatFrames;
+
+    // Sample rate the audio was analyzed at; beat frames are hops of 512 samples at this rate
+    @Column(name = "sample_rate")
+    private Integer sampleRate;
+
+    // Mean chroma per pitch class, what librosa_api.py reports as "melody"
+    @Lob
+    @Column(name = "melody")
+    private byte[] melody;
+
+    @Lob
+    @Column(name = "mfcc")
+    private byte[] mfcc;
+
+    @Lob
+    @Column(name = "spectral_contrast")
+    private byte[] spectralContrast;
+
+    @Column(name = "spectral_bandwidth")
+    private Double spectralBandwidth;
+
+    @Column(name = "spectral_rolloff")
+    private Double spectralRolloff;
+
+    private Date updatedAt;
+
+    public TrackAnalysis() {}
+
+    public TrackAnalysis(Long trackId) {
+        this.trackId = trackId;
+    }
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        this.updatedAt = new Date();
+    }
+
+    /**
+     * Published by TrackAnalysisRepository after every save and saveAll of the row, so listeners such as the
+     * similarity index see each new analysis whichever service stored it.
+     */
+    public static final class SavedEvent {
+        private final TrackAnalysis analysis;
+
+        public SavedEvent(TrackAnalysis analysis) {
+            this.analysis = analysis;
+        }
+
+        public TrackAnalysis getAnalysis() {
+            return analysis;
+        }
+    }
+
+    @DomainEvents
+    Collection<Object> domainEvents() {
+        return List.of(new SavedEvent(this));
+    }
+
+    // Decoded views
+
+    public int[] decodeBeatFrames() {
+        return AnalysisCodec.decodeBeatFrames(beatFrames);
+    }
+
+    public FloatBuffer melodyView() {
+        return AnalysisCodec.floatView(melody);
+    }
+
+    public FloatBuffer mfccView() {
+        return AnalysisCodec.floatView(mfcc);
+    }
+
+    public FloatBuffer spectralContrastView() {
+        return AnalysisCodec.floatView(spectralContrast);
+    }
+
+    // Getters and Setters
+
+    public Long getTrackId() {
+        return trackId;
+    }
+
+    public void setTrackId(Long trackId) {
+        this.trackId = trackId;
+    }
+
+    public byte[] getBeatFrames() {
+        return beatFrames;
+    }
+
+    public void setBeatFrames(byte[] beatFrames) {
+        this.beatFrames = beatFrames;
+    }
+
+    public Integer getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(Integer sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public byte[] getMelody() {
+        return melody;
+    }
+
+    public void setMelody(byte[] melody) {
+        this.melody = melody;
+    }
+
+    public byte[] getMfcc() {
+        return mfcc;
+    }
+
+    public void setMfcc(byte[] mfcc) {
+        this.mfcc = mfcc;
+    }
+
+    public byte[] getSpectralContrast() {
+        return spectralContrast;
+    }
+
+    public void setSpectralContrast(byte[] spectralContrast) {
+        this.spectralContrast = spectralContrast;
+    }
+
+    public Double getSpectralBandwidth() {
+        return spectralBandwidth;
+    }
+
+    public void setSpectralBandwidth(Double spectralBandwidth) {
+        this.spectralBandwidth = spectralBandwidth;
+    }
+
+    public Double getSpectralRolloff() {
+        return spectralRolloff;
+    }
+
+    public void setSpectralRolloff(Double spectralRolloff) {
+        this.spectralRolloff = spectralRolloff;
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -69,21 +69,7 @@ public class Tracks {
  // Fields for analysis and metadata
     private String songKey;
     
-    @Lob
-    @Column(name = "beats", columnDefinition = "TEXT")
-    private String beats;
-
-    @Lob
-    @Column(name = "melody", columnDefinition = "TEXT")
-    private String melody;
-
-    @Lob
-    @Column(name = "mfcc", columnDefinition = "TEXT")
-    private String mfcc;
-
-    @Lob
-    @Column(name = "spectral_features", columnDefinition = "TEXT")
-    private String spectralFeatures;
+    // Beats, melody, MFCCs and spectral features are stored in track_analysis (see TrackAnalysis)
 
     // Fields for file metadata
     @Column(name = "file_name")
@@ -111,6 +97,27 @@ public class Tracks {
     @Column(name = "piano")
     private String piano;
 
+    // SHA-256 of the uploaded WAV, used to reuse stems for identical audio
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // Format of the uploaded WAV, read from its header at upload time (null for tracks uploaded before that)
+    @Column(name = "sample_rate")
+    private Integer sampleRate;
+
+    @Column(name = "channels")
+    private Integer channels;
+
+    @Column(name = "bit_depth")
+    private Integer bitDepth;
+
+    @Column(name = "duration_seconds")
+    private Double durationSeconds;
+
+    // Start of the loudest 30 seconds, where the preview clip is cut; set by the analysis
+    @Column(name = "preview_start_seconds")
+    private Double previewStartSeconds;
+
 	@Column(updatable = false)
     @DateTimeFormat(pattern = "yyyy-MM-dd")
     private Date createdAt;
@@ -128,8 +135,8 @@ public class Tracks {
 			@NotEmpty(message = "Artist is required!") @Size(min = 1, max = 30, message = "Artist must be between 1 and 30 characters!") String artist,
 			@NotEmpty(message = "Genre is required!") @Size(min = 1, max = 30, message = "Genre must be between 1 and 30 characters!") String genre,
 			@NotBlank(message = "Lyrics are required!") String lyrics, byte[] originalWav, byte[] convertedMp3,
-			Float tempo, Float spectralCentroid, Float rms, String s3Key, String status, String songKey, String beats,
-			String melody, String mfcc, String spectralFeatures, String fileName, String mp3s3Key, String vocals,
+			Float tempo, Float spectralCentroid, Float rms, String s3Key, String status, String songKey,
+			String fileName, String mp3s3Key, String vocals,
 			String bass, String drums, String other, String accompaniment, String piano, Date createdAt, Date updatedAt,
 			User user) {
 		super();
@@ -147,10 +154,6 @@ public class Tracks {
 		this.s3Key = s3Key;
 		this.status = status;
 		this.songKey = songKey;
-		this.beats = beats;
-		this.melody = melody;
-		this.mfcc = mfcc;
-		this.spectralFeatures = spectralFeatures;
 		this.fileName = fileName;
 		Mp3S3Key = mp3s3Key;
 		this.vocals = vocals;
@@ -324,38 +327,6 @@ public class Tracks {
 		this.songKey = songKey;
 	}
 
-	public String getBeats() {
-		return beats;
-	}
-
-	public void setBeats(String beats) {
-		this.beats = beats;
-	}
-
-	public String getMelody() {
-		return melody;
-	}
-
-	public void setMelody(String melody) {
-		this.melody = melody;
-	}
-
-	public String getMfcc() {
-		return mfcc;
-	}
-
-	public void setMfcc(String mfcc) {
-		this.mfcc = mfcc;
-	}
-
-	public String getSpectralFeatures() {
-		return spectralFeatures;
-	}
-
-	public void setSpectralFeatures(String spectralFeatures) {
-		this.spectralFeatures = spectralFeatures;
-	}
-
 	public String getFileName() {
 		return fileName;
 	}
@@ -419,6 +390,54 @@ public class Tracks {
 	public void setPiano(String piano) {
 		this.piano = piano;
 	}
+
+	public String getContentHash() {
+		return contentHash;
+	}
+
+	public void setContentHash(String contentHash) {
+		this.contentHash = contentHash;
+	}
+
+	public Integer getSampleRate() {
+		return sampleRate;
+	}
+
+	public void setSampleRate(Integer sampleRate) {
+		this.sampleRate = sampleRate;
+	}
+
+	public Integer getChannels() {
+		return channels;
+	}
+
+	public void setChannels(Integer channels) {
+		this.channels = channels;
+	}
+
+	public Integer getBitDepth() {
+		return bitDepth;
+	}
+
+	public void setBitDepth(Integer bitDepth) {
+		this.bitDepth = bitDepth;
+	}
+
+	public Double getDurationSeconds() {
+		return durationSeconds;
+	}
+
+	public void setDurationSeconds(Double durationSeconds) {
+		this.durationSeconds = durationSeconds;
+	}
+
+	public Double getPreviewStartSeconds() {
+		return previewStartSeconds;
+	}
+
+	public void setPreviewStartSeconds(Double previewStartSeconds) {
+		this.previewStartSeconds = previewStartSeconds;
+	}
     
     
 	public String getFieldValue(String fieldName) {
@@ -0,0 +1,13 @@
+package com.BhillionDollarApps.extrack_a_track.repositories;
+
+import com.BhillionDollarApps.extrack_a_track.models.PipelineStage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.List;
+
+public interface PipelineStageRepository extends JpaRepository<PipelineStage, Long> {
+    List<PipelineStage> findByTrackIdOrderById(Long trackId);
+
+    @Transactional
+    void deleteByTrackId(Long trackId);
+}
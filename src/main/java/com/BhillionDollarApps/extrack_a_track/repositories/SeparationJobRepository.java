@@ -0,0 +1,12 @@
+package com.BhillionDollarApps.extrack_a_track.repositories;
+
+import com.BhillionDollarApps.extrack_a_track.models.SeparationJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface SeparationJobRepository extends JpaRepository<SeparationJob, Long> {
+    List<SeparationJob> findByStatusIn(Collection<String> statuses);
+    Optional<SeparationJob> findFirstByTrackIdAndStatusIn(Long trackId, Collection<String> statuses);
+}
@@ -0,0 +1,13 @@
+package com.BhillionDollarApps.extrack_a_track.repositories;
+
+import com.BhillionDollarApps.extrack_a_track.models.StemAnalysis;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.List;
+
+public interface StemAnalysisRepository extends JpaRepository<StemAnalysis, Long> {
+    List<StemAnalysis> findByTrackIdOrderByStemName(Long trackId);
+
+    @Transactional
+    void deleteByTrackId(Long trackId);
+}
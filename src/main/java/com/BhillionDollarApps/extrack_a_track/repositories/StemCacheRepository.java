@@ -0,0 +1,16 @@
+package com.BhillionDollarApps.extrack_a_track.repositories;
+
+import com.BhillionDollarApps.extrack_a_track.models.StemCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.List;
+
+public interface StemCacheRepository extends JpaRepository<StemCacheEntry, Long> {
+    List<StemCacheEntry> findByContentHashAndStems(String contentHash, int stems);
+
+    @Transactional
+    void deleteByContentHashAndStems(String contentHash, int stems);
+
+    @Transactional
+    void deleteByS3KeyStartingWith(String prefix);
+}
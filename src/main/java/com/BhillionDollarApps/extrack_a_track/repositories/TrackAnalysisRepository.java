@@ -0,0 +1,22 @@
+package com.BhillionDollarApps.extrack_a_track.repositories;
+
+import com.BhillionDollarApps.extrack_a_track.models.TrackAnalysis;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+public interface TrackAnalysisRepository extends JpaRepository<TrackAnalysis, Long> {
+
+    // What the similarity index is built from, without loading the beat frame blobs
+    interface FeatureVectorSource {
+        Long getTrackId();
+        Long getUserId();
+        byte[] getMfcc();
+        byte[] getMelody();
+    }
+
+    @Query("select a.trackId as trackId, t.user.id as userId, a.mfcc as mfcc, a.melody as melody "
+            + "from TrackAnalysis a, Tracks t where t.id = a.trackId order by a.trackId")
+    Slice<FeatureVectorSource> findFeatureVectors(Pageable pageable);
+}
@@ -2,8 +2,47 @@ package com.BhillionDollarApps.extrack_a_track.repositories;
 
 import com.BhillionDollarApps.extrack_a_track.models.Tracks;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 
 public interface TracksRepository extends JpaRepository<Tracks, Long> {
     List<Tracks> findByUserId(Long userId); // Assuming each track belongs to a user
+
+    // Seconds of audio the user has stored, leaving out one track (e.g. the one being replaced); tracks without
+    // a recorded duration count as 0
+    @Query("select coalesce(sum(t.durationSeconds), 0) from Tracks t where t.user.id = :userId and t.id <> :excludedTrackId")
+    double sumDurationSecondsByUserIdExcluding(@Param("userId") Long userId, @Param("excludedTrackId") Long excludedTrackId);
+
+    // Sets only the status, for background jobs that hold an older copy of the track; saving that copy would
+    // put back columns other requests changed meanwhile
+    @Transactional
+    @Modifying
+    @Query("update Tracks t set t.status = :status, t.updatedAt = current_timestamp where t.id = :id")
+    int updateStatus(@Param("id") Long id, @Param("status") String status);
+
+    // Sets only the analysis results, for analyses that ran on an older copy of the track (see updateStatus)
+    @Transactional
+    @Modifying
+    @Query("update Tracks t set t.tempo = :tempo, t.spectralCentroid = :spectralCentroid, t.rms = :rms, "
+            + "t.songKey = :songKey, t.previewStartSeconds = :previewStartSeconds, t.updatedAt = current_timestamp "
+            + "where t.id = :id")
+    int updateAnalysis(@Param("id") Long id, @Param("tempo") Float tempo, @Param("spectralCentroid") Float spectralCentroid,
+            @Param("rms") Float rms, @Param("songKey") String songKey, @Param("previewStartSeconds") Double previewStartSeconds);
+
+    // Sets only the MP3 key, for the upload pipeline (see updateStatus)
+    @Transactional
+    @Modifying
+    @Query("update Tracks t set t.Mp3S3Key = :mp3S3Key, t.updatedAt = current_timestamp where t.id = :id")
+    int updateMp3S3Key(@Param("id") Long id, @Param("mp3S3Key") String mp3S3Key);
+
+    // Sets only the stem keys, which a separation owns; the others are left as they are (see updateStatus)
+    @Transactional
+    @Modifying
+    @Query("update Tracks t set t.vocals = :vocals, t.accompaniment = :accompaniment, t.piano = :piano, t.bass = :bass, "
+            + "t.drums = :drums, t.other = :other, t.updatedAt = current_timestamp where t.id = :id")
+    int updateStems(@Param("id") Long id, @Param("vocals") String vocals, @Param("accompaniment") String accompaniment,
+            @Param("piano") String piano, @Param("bass") String bass, @Param("drums") String drums, @Param("other") String other);
 }
@@ -0,0 +1,214 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Short-lived stem results of the free Spleeter form, kept on local disk.
+ * Each result lives in its own folder under an unguessable job id and is indexed in memory, so a download
+ * is a map lookup. Results expire after a TTL, and the least recently used ones are evicted whenever the
+ * total size goes over the disk budget.
+ */
+@Service
+public class EphemeralResultStore {
+
+    private static final Logger logger = Logger.getLogger(EphemeralResultStore.class.getName());
+
+    @Value("${spleeter.results.dir:/home/ubuntu/stems_output}")
+    private String resultsDir;
+
+    @Value("${spleeter.results.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    @Value("${spleeter.results.max-disk-mb:2048}")
+    private long maxDiskMb;
+
+    // Access-ordered, so iteration starts at the least recently used result
+    private final LinkedHashMap<String, Result> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private ScheduledExecutorService sweeper;
+
+    /**
+     * Stem files of one job, keyed by file name.
+     */
+    public static final class Result {
+        private final String jobId;
+        private final Path directory;
+        private final Map<String, Path> files;
+        private final long sizeBytes;
+        private final long expiresAt;
+
+        Result(String jobId, Path directory, Map<String, Path> files, long sizeBytes, long expiresAt) {
+            this.jobId = jobId;
+            this.directory = directory;
+            this.files = files;
+            this.sizeBytes = sizeBytes;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getJobId() { return jobId; }
+        public Map<String, Path> getFiles() { return files; }
+        public long getSizeBytes() { return sizeBytes; }
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        // The index does not survive a restart, so whatever is left on disk can never be downloaded again
+        Path root = Paths.get(resultsDir);
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> children = Files.list(root)) {
+                children.forEach(this::deleteRecursively);
+            }
+        }
+        Files.createDirectories(root);
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "result-store-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::evictExpired, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * A new random job id, used as the name of the job's working folder.
+     */
+    public String newJobId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Working folder of a job. Files written here only become downloadable once registered.
+     */
+    public Path getJobDirectory(String jobId) throws IOException {
+        Path directory = Paths.get(resultsDir, jobId);
+        Files.createDirectories(directory);
+        return directory;
+    }
+
+    /**
+     * Makes the job's stem files downloadable, evicting older results if the disk budget is exceeded.
+     */
+    public Result register(String jobId, List<Path> stemFiles) throws IOException {
+        Map<String, Path> files = new LinkedHashMap<>();
+        long sizeBytes = 0;
+        for (Path stemFile : stemFiles) {
+            files.put(stemFile.getFileName().toString(), stemFile);
+            sizeBytes += Files.size(stemFile);
+        }
+
+        Result result = new Result(jobId, Paths.get(resultsDir, jobId), Collections.unmodifiableMap(files), sizeBytes,
+                System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(ttlMinutes));
+
+        List<Result> evicted = new ArrayList<>();
+        synchronized (this) {
+            results.put(jobId, result);
+            totalBytes += sizeBytes;
+
+            long budget = maxDiskMb * 1024 * 1024;
+            Iterator<Result> lru = results.values().iterator();
+            while (totalBytes > budget && lru.hasNext()) {
+                Result candidate = lru.next();
+                if (candidate != result) {
+                    lru.remove();
+                    totalBytes -= candidate.sizeBytes;
+                    evicted.add(candidate);
+                }
+            }
+        }
+
+        evicted.forEach(old -> {
+            logger.info("Evicted result " + old.jobId + " (" + old.sizeBytes + " bytes) to stay within the disk budget.");
+            deleteRecursively(old.directory);
+        });
+        return result;
+    }
+
+    /**
+     * A stem file of a job, if the job is still stored. Counts as a use for LRU eviction.
+     */
+    public synchronized Optional<Path> find(String jobId, String fileName) {
+        Result result = results.get(jobId);
+        if (result == null || result.expiresAt < System.currentTimeMillis()) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(result.files.get(fileName));
+    }
+
+    /**
+     * Drops a job's folder, registered or not (e.g. after a failed separation).
+     */
+    public void discard(String jobId) {
+        synchronized (this) {
+            Result result = results.remove(jobId);
+            if (result != null) {
+                totalBytes -= result.sizeBytes;
+            }
+        }
+        deleteRecursively(Paths.get(resultsDir, jobId));
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        List<Result> expired = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Result> iterator = results.values().iterator();
+            while (iterator.hasNext()) {
+                Result result = iterator.next();
+                if (result.expiresAt < now) {
+                    iterator.remove();
+                    totalBytes -= result.sizeBytes;
+                    expired.add(result);
+                }
+            }
+        }
+        expired.forEach(result -> deleteRecursively(result.directory));
+        if (!expired.isEmpty()) {
+            logger.info("Expired " + expired.size() + " Spleeter results.");
+        }
+    }
+
+    private void deleteRecursively(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    logger.warning("Failed to delete: " + file);
+                }
+            });
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error deleting " + path, e);
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package com.BhillionDollarApps.extrack_a_track.services;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
@@ -12,12 +10,10 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 @Service
-@EnableAsync
 public class FileService {
 
     private static final Logger logger = Logger.getLogger(FileService.class.getName());
@@ -29,73 +25,6 @@ public class FileService {
         this.s3Client = s3Client;
     }
 
-//Helper method to ensure the file download from S3 during the Convert to MP3 process is a valid WAV file
-    @Async
-    public CompletableFuture<byte[]> convertWavToMp3Async(byte[] wavData) {
-        // Validate input
-        if (wavData == null || wavData.length == 0) {
-            logger.warning("Invalid WAV data provided for MP3 conversion.");
-            throw new IllegalArgumentException("WAV data cannot be null or empty.");
-        }
-
-        try {
-            logger.info("Starting WAV to MP3 conversion asynchronously.");
-            byte[] mp3Data = convertWavToMp3UsingFFmpeg(wavData);
-            logger.info("WAV to MP3 conversion completed successfully.");
-            return CompletableFuture.completedFuture(mp3Data);
-
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error during WAV to MP3 conversion: " + e.getMessage(), e);
-            throw new RuntimeException("MP3 conversion failed.", e);
-        }
-    }
-
-//Method to convert the WAV file to MP3 in bytes
-    private byte[] convertWavToMp3UsingFFmpeg(byte[] wavData) throws IOException, InterruptedException {
-        // Create temporary files for WAV and MP3
-        File tempWavFile = File.createTempFile("temp_audio", ".wav");
-        File tempMp3File = File.createTempFile("temp_audio_converted", ".mp3");
-
-        try {
-            // Write WAV data to temporary WAV file
-            Files.write(tempWavFile.toPath(), wavData);
-
-            // Construct FFmpeg command
-            String[] command = {
-                    "ffmpeg", "-y", "-i", tempWavFile.getAbsolutePath(),
-                    "-codec:a", "libmp3lame", "-b:a", "192k", tempMp3File.getAbsolutePath()
-            };
-
-            // Execute the command
-            Process process = new ProcessBuilder(command)
-                    .redirectErrorStream(true)
-                    .start();
-
-            // Capture the output and wait for the process to complete
-            int exitCode = process.waitFor();
-
-            // Log errors if FFmpeg fails
-            if (exitCode != 0) {
-                throw new RuntimeException("FFmpeg conversion failed. Exit code: " + exitCode);
-            }
-
-            // Read the MP3 file into a byte array
-            byte[] mp3Data = Files.readAllBytes(tempMp3File.toPath());
-
-            // Return the converted MP3 data
-            return mp3Data;
-
-        } finally {
-            // Clean up temporary files
-            if (tempWavFile.exists() && !tempWavFile.delete()) {
-                logger.warning("Failed to delete temporary WAV file: " + tempWavFile.getAbsolutePath());
-            }
-            if (tempMp3File.exists() && !tempMp3File.delete()) {
-                logger.warning("Failed to delete temporary MP3 file: " + tempMp3File.getAbsolutePath());
-            }
-        }
-    }
-
 //Method to upload the MP3 file directly and correctly to S3
     public String uploadFileToS3(Path filePath, String bucketName, String s3Key) {
         // Validate inputs
@@ -0,0 +1,150 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.BhillionDollarApps.extrack_a_track.models.TrackAnalysis;
+import com.BhillionDollarApps.extrack_a_track.repositories.TrackAnalysisRepository;
+import com.BhillionDollarApps.extrack_a_track.utils.AnalysisCodec;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Moves analyses stored before track_analysis existed into it. They are still in the tracks table, as the JSON
+ * librosa_api.py printed, in the beats, melody, mfcc and spectral_features TEXT columns, which Tracks no longer
+ * maps. Runs once after startup on its own thread: only tracks without a track_analysis row are read, so a track
+ * that was backfilled or analyzed again is never touched twice, and the legacy columns are left as they were.
+ * Values that are not JSON (summary strings the track page used to write back) are skipped.
+ */
+@Service
+public class LegacyAnalysisBackfill {
+
+    private static final Logger logger = Logger.getLogger(LegacyAnalysisBackfill.class.getName());
+    private static final int PAGE_SIZE = 100;
+    private static final String PAGE_QUERY = "select t.id, t.sample_rate, t.beats, t.melody, t.mfcc, t.spectral_features "
+            + "from tracks t where t.id > ? "
+            + "and (t.beats is not null or t.melody is not null or t.mfcc is not null or t.spectral_features is not null) "
+            + "and not exists (select 1 from track_analysis a where a.track_id = t.id) "
+            + "order by t.id limit " + PAGE_SIZE;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TrackAnalysisRepository trackAnalysisRepository;
+
+    @Value("${analysis.legacy-backfill.enabled:true}")
+    private boolean enabled;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        Thread thread = new Thread(this::run, "legacy-analysis-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Backfills every track still waiting for it and returns how many got a track_analysis row.
+     */
+    public int run() {
+        List<Map<String, Object>> page;
+        try {
+            page = jdbcTemplate.queryForList(PAGE_QUERY, 0L);
+        } catch (DataAccessException e) {
+            // Databases created after the change never had the legacy columns
+            logger.info("No legacy analysis columns to backfill: " + e.getMostSpecificCause().getMessage());
+            return 0;
+        }
+
+        int migrated = 0;
+        int skipped = 0;
+        while (!page.isEmpty()) {
+            long lastId = 0;
+            for (Map<String, Object> row : page) {
+                lastId = ((Number) row.get("id")).longValue();
+                try {
+                    TrackAnalysis analysis = decode(lastId, row);
+                    if (analysis == null) {
+                        skipped++;
+                        continue;
+                    }
+                    trackAnalysisRepository.save(analysis);
+                    migrated++;
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Could not store the legacy analysis of track ID " + lastId, e);
+                    skipped++;
+                }
+            }
+            page = jdbcTemplate.queryForList(PAGE_QUERY, lastId);
+        }
+        if (migrated > 0 || skipped > 0) {
+            logger.info("Legacy analysis backfill: " + migrated + " tracks moved to track_analysis, " + skipped
+                    + " left without one (nothing readable).");
+        }
+        return migrated;
+    }
+
+    // A track_analysis row from the legacy columns, or null if none of them could be read
+    TrackAnalysis decode(long trackId, Map<String, Object> row) {
+        int[] beats = readJson(trackId, "beats", row.get("beats"), new TypeReference<int[]>() {});
+        float[] melody = readJson(trackId, "melody", row.get("melody"), new TypeReference<float[]>() {});
+        float[] mfcc = readJson(trackId, "mfcc", row.get("mfcc"), new TypeReference<float[]>() {});
+        Map<String, Object> spectralFeatures = readJson(trackId, "spectral_features", row.get("spectral_features"),
+                new TypeReference<Map<String, Object>>() {});
+        if (beats == null && melody == null && mfcc == null && spectralFeatures == null) {
+            return null;
+        }
+
+        TrackAnalysis analysis = new TrackAnalysis(trackId);
+        // librosa_api.py analyzed at the file's own rate, which the upload recorded for newer tracks
+        analysis.setSampleRate(row.get("sample_rate") instanceof Number rate ? rate.intValue() : null);
+        analysis.setBeatFrames(AnalysisCodec.encodeBeatFrames(beats != null ? beats : new int[0]));
+        analysis.setMelody(AnalysisCodec.encodeFloats(melody != null ? melody : new float[0]));
+        analysis.setMfcc(AnalysisCodec.encodeFloats(mfcc != null ? mfcc : new float[0]));
+        if (spectralFeatures != null) {
+            float[] contrast = objectMapper.convertValue(spectralFeatures.getOrDefault("contrast", List.of()), float[].class);
+            analysis.setSpectralContrast(AnalysisCodec.encodeFloats(contrast));
+            analysis.setSpectralBandwidth(toDouble(spectralFeatures.get("bandwidth")));
+            analysis.setSpectralRolloff(toDouble(spectralFeatures.get("rolloff")));
+        } else {
+            analysis.setSpectralContrast(AnalysisCodec.encodeFloats(new float[0]));
+        }
+        return analysis;
+    }
+
+    private <T> T readJson(long trackId, String column, Object value, TypeReference<T> type) {
+        if (value == null) {
+            return null;
+        }
+        String json = value instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : value.toString();
+        if (json.isBlank()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (Exception e) {
+            logger.fine("Legacy " + column + " of track ID " + trackId + " is not JSON, skipping it.");
+            return null;
+        }
+    }
+
+    private static Double toDouble(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : null;
+    }
+}
@@ -0,0 +1,316 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.BhillionDollarApps.extrack_a_track.config.S3FileDownloader;
+import com.BhillionDollarApps.extrack_a_track.models.TrackAnalysis;
+import com.BhillionDollarApps.extrack_a_track.models.Tracks;
+import com.BhillionDollarApps.extrack_a_track.repositories.TrackAnalysisRepository;
+import com.BhillionDollarApps.extrack_a_track.repositories.TracksRepository;
+
+/**
+ * Analyzes many of a user's tracks in the background as a three-stage pipeline:
+ * one thread downloads tracks from S3 to temp files, a few threads analyze them, and the run's own thread writes
+ * the results in batches. Bounded queues between the stages let the next downloads overlap the current analysis
+ * while keeping at most prefetch-depth downloaded files waiting on disk.
+ * One run per user at a time; progress across the whole run is published on its progress channel.
+ */
+@Service
+public class LibraryAnalysisService {
+
+    private static final Logger logger = Logger.getLogger(LibraryAnalysisService.class.getName());
+    private static final String BUCKET_NAME = "extract-a-trackbucket";
+    // TracksRepository.updateAnalysis as one JDBC batch per write
+    private static final String UPDATE_ANALYSIS = "update tracks set tempo = ?, spectral_centroid = ?, rms = ?, song_key = ?, "
+            + "preview_start_seconds = ?, updated_at = current_timestamp where id = ?";
+
+    @Autowired
+    private TracksRepository tracksRepository;
+
+    @Autowired
+    private TrackAnalysisRepository trackAnalysisRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private S3FileDownloader s3FileDownloader;
+
+    @Autowired
+    private LibrosaService librosaService;
+
+    @Autowired
+    private ProgressEventBus progressEventBus;
+
+    @Value("${librosa.bulk.prefetch-depth:2}")
+    private int prefetchDepth;
+
+    @Value("${librosa.bulk.analysis-threads:2}")
+    private int analysisThreads;
+
+    @Value("${librosa.bulk.write-batch-size:20}")
+    private int writeBatchSize;
+
+    // userId -> id of the run in progress
+    private final Map<Long, String> runningRuns = new ConcurrentHashMap<>();
+
+    /**
+     * A started run: its id, how many tracks it covers, and where its progress is published.
+     */
+    public static final class Run {
+        private final String id;
+        private final int total;
+
+        Run(String id, int total) {
+            this.id = id;
+            this.total = total;
+        }
+
+        public String getId() { return id; }
+        public int getTotal() { return total; }
+        public String getProgressChannel() { return "library-analysis-" + id; }
+    }
+
+    // A track handed from one stage to the next: file is set from download to analysis, analysis after that
+    // (null when the track failed). END tells the next stage that one of its producers is done.
+    private static final class Item {
+        private static final Item END = new Item(null, null, null);
+
+        private final Tracks track;
+        private final Path file;
+        private final TrackAnalysis analysis;
+
+        Item(Tracks track, Path file, TrackAnalysis analysis) {
+            this.track = track;
+            this.file = file;
+            this.analysis = analysis;
+        }
+    }
+
+    /**
+     * Starts analyzing the given tracks of the user, or every track of theirs without an analysis when trackIds
+     * is empty. Tracks that are not the user's or have no WAV in S3 are skipped.
+     */
+    public Run start(Long userId, List<Long> trackIds) {
+        List<Tracks> tracks = selectTracks(userId, trackIds);
+        if (tracks.isEmpty()) {
+            throw new IllegalArgumentException("No tracks to analyze.");
+        }
+        String runId = UUID.randomUUID().toString();
+        if (runningRuns.putIfAbsent(userId, runId) != null) {
+            throw new IllegalStateException("A library analysis is already running.");
+        }
+
+        Run run = new Run(runId, tracks.size());
+        progressEventBus.open(run.getProgressChannel(), userId);
+        Thread thread = new Thread(() -> {
+            try {
+                execute(run, tracks);
+            } finally {
+                runningRuns.remove(userId);
+            }
+        }, "library-analysis-" + userId);
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Started library analysis " + runId + " of " + tracks.size() + " tracks for user ID " + userId);
+        return run;
+    }
+
+    private List<Tracks> selectTracks(Long userId, List<Long> trackIds) {
+        if (trackIds == null || trackIds.isEmpty()) {
+            List<Tracks> tracks = tracksRepository.findByUserId(userId);
+            Set<Long> analyzed = trackAnalysisRepository.findAllById(
+                    tracks.stream().map(Tracks::getId).collect(Collectors.toList())).stream()
+                    .map(TrackAnalysis::getTrackId)
+                    .collect(Collectors.toSet());
+            return tracks.stream()
+                    .filter(track -> !analyzed.contains(track.getId()))
+                    .filter(this::hasWav)
+                    .collect(Collectors.toList());
+        }
+        return tracksRepository.findAllById(trackIds).stream()
+                .filter(track -> track.getUser() != null && Objects.equals(track.getUser().getId(), userId))
+                .filter(this::hasWav)
+                .collect(Collectors.toList());
+    }
+
+    private boolean hasWav(Tracks track) {
+        return track.getS3Key() != null && !track.getS3Key().isEmpty();
+    }
+
+    private void execute(Run run, List<Tracks> tracks) {
+        BlockingQueue<Item> downloaded = new ArrayBlockingQueue<>(Math.max(1, prefetchDepth));
+        BlockingQueue<Item> analyzed = new ArrayBlockingQueue<>(Math.max(1, writeBatchSize) * 2);
+        int analyzers = Math.max(1, analysisThreads);
+
+        List<Thread> stages = new ArrayList<>();
+        stages.add(stageThread(() -> prefetch(tracks, downloaded, analyzed, analyzers), "library-prefetch-" + run.getId()));
+        for (int i = 0; i < analyzers; i++) {
+            stages.add(stageThread(() -> analyze(downloaded, analyzed), "library-analyze-" + run.getId() + "-" + i));
+        }
+        stages.forEach(Thread::start);
+
+        int succeeded = 0;
+        int failed = 0;
+        try {
+            List<Item> batch = new ArrayList<>();
+            int finishedAnalyzers = 0;
+            while (finishedAnalyzers < analyzers) {
+                Item item = analyzed.poll(1, TimeUnit.SECONDS);
+                if (item == Item.END) {
+                    finishedAnalyzers++;
+                } else if (item != null) {
+                    if (item.analysis == null) {
+                        failed++;
+                    } else {
+                        batch.add(item);
+                    }
+                }
+                // Write when the batch is full, or whenever the pipeline has nothing else ready
+                if (batch.size() >= writeBatchSize || (!batch.isEmpty() && (item == null || finishedAnalyzers == analyzers))) {
+                    succeeded += write(batch);
+                    batch.clear();
+                }
+                if (item != null && item != Item.END) {
+                    int done = succeeded + batch.size() + failed;
+                    progressEventBus.publish(run.getProgressChannel(), "analyzing", done * 100 / run.getTotal(),
+                            done + " of " + run.getTotal() + " tracks analyzed" + (failed > 0 ? ", " + failed + " failed" : ""));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stages.forEach(Thread::interrupt);
+            progressEventBus.fail(run.getProgressChannel(), "Library analysis was interrupted.");
+            return;
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Library analysis " + run.getId() + " failed while saving results", e);
+            stages.forEach(Thread::interrupt);
+            progressEventBus.fail(run.getProgressChannel(), "Failed to save analysis results.");
+            return;
+        }
+
+        String message = succeeded + " of " + run.getTotal() + " tracks analyzed" + (failed > 0 ? ", " + failed + " failed." : ".");
+        logger.info("Library analysis " + run.getId() + ": " + message);
+        if (succeeded == 0) {
+            progressEventBus.fail(run.getProgressChannel(), message);
+        } else {
+            progressEventBus.complete(run.getProgressChannel(), message);
+        }
+    }
+
+    private Thread stageThread(Runnable stage, String name) {
+        Thread thread = new Thread(stage, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    // Stage 1: download each track to a temp file; blocks while prefetch-depth files are already waiting
+    private void prefetch(List<Tracks> tracks, BlockingQueue<Item> downloaded, BlockingQueue<Item> analyzed, int analyzers) {
+        try {
+            for (Tracks track : tracks) {
+                Path file = null;
+                try {
+                    file = Files.createTempFile("library-analysis-" + track.getId() + "-", ".wav");
+                    s3FileDownloader.downloadFile(BUCKET_NAME, track.getS3Key(), file.toString());
+                } catch (IOException | RuntimeException e) {
+                    logger.log(Level.WARNING, "Failed to download track ID " + track.getId() + " for analysis", e);
+                    deleteQuietly(file);
+                    analyzed.put(new Item(track, null, null));
+                    continue;
+                }
+                try {
+                    downloaded.put(new Item(track, file, null));
+                } catch (InterruptedException e) {
+                    deleteQuietly(file);
+                    throw e;
+                }
+            }
+            for (int i = 0; i < analyzers; i++) {
+                downloaded.put(Item.END);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            drain(downloaded);
+        }
+    }
+
+    // Stage 2: analyze downloaded files with the configured engine, deleting each file when done
+    private void analyze(BlockingQueue<Item> downloaded, BlockingQueue<Item> analyzed) {
+        try {
+            while (true) {
+                Item item = downloaded.take();
+                if (item == Item.END) {
+                    analyzed.put(Item.END);
+                    return;
+                }
+                TrackAnalysis analysis = null;
+                try {
+                    analysis = librosaService.analyzeLocalFile(item.file.toString(), item.track, (stage, percent) -> {});
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Failed to analyze track ID " + item.track.getId(), e);
+                } finally {
+                    deleteQuietly(item.file);
+                }
+                analyzed.put(new Item(item.track, null, analysis));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            drain(downloaded);
+        }
+    }
+
+    // Stage 3: the tracks' scalar results as one batch of targeted updates, since the tracks were loaded when the run
+    // started and may have been edited since; their arrays in one saveAll
+    private int write(List<Item> batch) {
+        List<Object[]> updates = new ArrayList<>(batch.size());
+        List<TrackAnalysis> analyses = new ArrayList<>(batch.size());
+        for (Item item : batch) {
+            Tracks track = item.track;
+            updates.add(new Object[] {track.getTempo(), track.getSpectralCentroid(), track.getRms(), track.getSongKey(),
+                    track.getPreviewStartSeconds(), track.getId()});
+            analyses.add(item.analysis);
+        }
+        jdbcTemplate.batchUpdate(UPDATE_ANALYSIS, updates);
+        trackAnalysisRepository.saveAll(analyses);
+        return batch.size();
+    }
+
+    // Removes the temp files of downloads that will never be analyzed
+    private void drain(BlockingQueue<Item> downloaded) {
+        Item item;
+        while ((item = downloaded.poll()) != null) {
+            deleteQuietly(item.file);
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warning("Failed to delete temp file: " + file);
+        }
+    }
+}
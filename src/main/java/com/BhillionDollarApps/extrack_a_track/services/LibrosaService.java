@@ -4,23 +4,55 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.HashMap;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 import java.util.logging.Level;
+import com.BhillionDollarApps.extrack_a_track.audio.AudioFeatureExtractor;
+import com.BhillionDollarApps.extrack_a_track.audio.AudioFeatures;
+import com.BhillionDollarApps.extrack_a_track.audio.Resampler;
+import com.BhillionDollarApps.extrack_a_track.audio.WavFile;
 import com.BhillionDollarApps.extrack_a_track.config.S3FileDownloader;
+import com.BhillionDollarApps.extrack_a_track.models.TrackAnalysis;
 import com.BhillionDollarApps.extrack_a_track.models.Tracks;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.BhillionDollarApps.extrack_a_track.repositories.TrackAnalysisRepository;
+import com.BhillionDollarApps.extrack_a_track.utils.AnalysisCodec;
+import com.BhillionDollarApps.extrack_a_track.utils.ProcessTree;
+import com.BhillionDollarApps.extrack_a_track.utils.ReadAheadInputStream;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 
 @Service
 public class LibrosaService {
     
     private static final Logger logger = Logger.getLogger(LibrosaService.class.getName());
+    private static final String ENGINE_JAVA = "java";
+    private static final String ENGINE_SHADOW = "shadow";
+    private static final int STREAM_CHUNK_BYTES = 256 * 1024;
+    private static final int STREAM_CHUNKS = 16;
+    // Shadow comparisons waiting for the comparison thread; more are skipped
+    private static final int SHADOW_QUEUE_CAPACITY = 4;
     private final String virtualEnvPath = "/home/ubuntu/librosa_env/bin/activate";
     private final String pythonPath = "/home/ubuntu/librosa_env/bin/python3";
     private final String scriptPath = "/home/ubuntu/librosa_env/librosa_api.py";
@@ -28,10 +60,71 @@ public class LibrosaService {
     @Autowired
     private S3FileDownloader s3FileDownloader;
 
+    @Autowired
+    private ProcessGovernor processGovernor;
+
+    @Autowired
+    private LibrosaWorkerPool librosaWorkerPool;
+
+    @Autowired
+    private TrackAnalysisRepository trackAnalysisRepository;
+
+    // java: in-process feature engine; python: librosa; shadow: librosa, with the Java results logged next to it
+    @Value("${librosa.engine:shadow}")
+    private String engine;
+
+    // Share of the shadow engine's analyses that are also run through the Java engine and compared
+    @Value("${librosa.shadow.sample-fraction:0.1}")
+    private double shadowSampleFraction;
+
+    // Rate tracks are downmixed and resampled to before analysis (librosa's default); 0 analyzes at the native rate
+    @Value("${librosa.analysis.sample-rate:22050}")
+    private int analysisSampleRate;
+
+    // Comma-separated feature groups kept at the native rate: rhythm, key, mfcc, spectral, rms
+    @Value("${librosa.analysis.full-resolution-features:}")
+    private String fullResolutionFeatures;
+
+    private Set<AudioFeatures.Group> fullResolution;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private ThreadPoolExecutor shadowExecutor;
+
+    @PostConstruct
+    public void init() {
+        fullResolution = EnumSet.noneOf(AudioFeatures.Group.class);
+        for (String feature : fullResolutionFeatures.split(",")) {
+            if (!feature.isBlank()) {
+                fullResolution.add(AudioFeatures.Group.valueOf(feature.trim().toUpperCase()));
+            }
+        }
+        shadowExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(SHADOW_QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "librosa-shadow");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shadowExecutor.shutdownNow();
+    }
 
 //Method to send a file through Librosa for processing and updates the tracks metadata
     public Tracks analyzeTrackWithLibrosa(String filePath, Tracks track) {
+        return analyzeTrackWithLibrosa(filePath, track, (stage, percent) -> {});
+    }
+
+//Same as above, reporting the script's PROGRESS markers (stage, percent) as they are printed
+    public Tracks analyzeTrackWithLibrosa(String filePath, Tracks track, BiConsumer<String, Integer> progressListener) {
+        trackAnalysisRepository.save(analyzeLocalFile(filePath, track, progressListener));
+        return track;
+    }
+
+//Analyzes a local WAV file and copies the scalar results onto the track. The returned array analysis is not saved,
+//so a caller can write many of them at once.
+    public TrackAnalysis analyzeLocalFile(String filePath, Tracks track, BiConsumer<String, Integer> progressListener) {
         // Validate inputs
         if (filePath == null || filePath.trim().isEmpty()) {
             throw new IllegalArgumentException("File path cannot be null or empty.");
@@ -44,49 +137,25 @@ public class LibrosaService {
         try {
             logger.info("Starting analysis with Librosa on file: " + filePath);
 
-            // Build and execute the Python script command
-            ProcessBuilder processBuilder = new ProcessBuilder("bash", "-c",
-                "source " + virtualEnvPath + " && " + pythonPath + " " + scriptPath + " " + filePath);
-            processBuilder.redirectErrorStream(true);
-            Process process = processBuilder.start();
-
-            // Capture the script's output
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            StringBuilder output = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line);
+            Map<String, Object> analysisResults;
+            if (ENGINE_JAVA.equals(engine)) {
+                analysisResults = runJavaEngine(filePath, progressListener);
+            } else if (ENGINE_SHADOW.equals(engine)) {
+                // librosa stays the source of truth; the Java results are only compared against it, off this thread
+                analysisResults = runPython(filePath, progressListener);
+                scheduleComparison(filePath, analysisResults);
+            } else {
+                analysisResults = runPython(filePath, progressListener);
             }
-
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                logger.severe("Librosa script failed with exit code: " + exitCode + ". Output: " + output);
-                throw new RuntimeException("Python script execution failed. Exit code: " + exitCode);
-            }
-
-            logger.info("Librosa script executed successfully. Processing results...");
-
-            // Parse and process the analysis results
-            Map<String, Object> analysisResults = objectMapper.readValue(output.toString(), Map.class);
             if (analysisResults.containsKey("error")) {
                 String error = (String) analysisResults.get("error");
                 logger.severe("Error reported by Python script: " + error);
                 throw new RuntimeException("Error from Python script: " + error);
             }
 
-            // Update the track object with analysis results
-            track.setTempo(((Double) analysisResults.get("tempo")).floatValue());
-            track.setSpectralCentroid(((Double) analysisResults.get("spectral_centroid")).floatValue());
-            track.setRms(((Double) analysisResults.get("rms")).floatValue());
-            track.setSongKey(analysisResults.getOrDefault("key", "Unknown").toString());
-
-            track.setBeats(objectMapper.writeValueAsString(analysisResults.getOrDefault("beats", new int[0])));
-            track.setMelody(objectMapper.writeValueAsString(analysisResults.getOrDefault("melody", new float[0])));
-            track.setMfcc(objectMapper.writeValueAsString(analysisResults.getOrDefault("mfcc", new float[0])));
-            track.setSpectralFeatures(objectMapper.writeValueAsString(analysisResults.getOrDefault("spectral_features", new HashMap<>())));
-
+            TrackAnalysis analysis = applyResults(track, analysisResults);
             logger.info("Analysis completed successfully for file: " + filePath);
-            return track;
+            return analysis;
 
         } catch (IOException e) {
             logger.log(Level.SEVERE, "I/O error during Librosa analysis: " + e.getMessage(), e);
@@ -101,82 +170,340 @@ public class LibrosaService {
         }
     }
 
-//Helper method to format the Beats from Librosa processing in a readable way
-    public String formatBeats(List<Integer> beatsList) {
-        // Validate input
-        if (beatsList == null) {
-            logger.warning("Beats list is null. Returning empty beats information.");
-            return "Beats: 0 (No beats available)";
+//Analyzes a track straight off its S3 object stream, without a temp file. Only the Java engine can consume
+//a stream; with the Python engines the object is downloaded to a temp file first.
+    public Tracks analyzeTrackFromS3(String bucketName, String s3Key, Tracks track, BiConsumer<String, Integer> progressListener) {
+        if (!ENGINE_JAVA.equals(engine)) {
+            return analyzeDownloadedCopy(bucketName, s3Key, track, progressListener);
         }
 
+        try (ProcessGovernor.Permit permit = processGovernor.acquire(ProcessGovernor.LIBROSA)) {
+            logger.info("Starting streaming analysis of s3://" + bucketName + "/" + s3Key);
+            ResponseInputStream<GetObjectResponse> s3Object = s3FileDownloader.openStream(bucketName, s3Key);
+            long size = Math.max(1, s3Object.response().contentLength());
+
+            // The download runs ahead on its own thread, so analysis finishes about when the transfer does
+            ReadAheadInputStream in = new ReadAheadInputStream(s3Object, STREAM_CHUNK_BYTES, STREAM_CHUNKS,
+                    "analysis-read-ahead-" + track.getId(),
+                    bytes -> progressListener.accept("analyzing", (int) (bytes * 95 / size)));
+            AudioFeatures features;
+            try {
+                features = AudioFeatureExtractor.analyze(in, analysisSampleRate, fullResolution);
+            } catch (IOException | RuntimeException e) {
+                // Don't drain the rest of the object just to close the connection
+                s3Object.abort();
+                throw e;
+            } finally {
+                in.close();
+            }
+
+            trackAnalysisRepository.save(applyResults(track, features.toMap()));
+            progressListener.accept("done", 100);
+            logger.info("Streaming analysis completed for s3://" + bucketName + "/" + s3Key);
+            return track;
+
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "I/O error during streaming analysis of " + s3Key, e);
+            throw new RuntimeException("I/O error during Librosa analysis.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Librosa analysis was interrupted.", e);
+        }
+    }
+
+//Downloads the object to a temp file, analyzes it and deletes the file
+    private Tracks analyzeDownloadedCopy(String bucketName, String s3Key, Tracks track, BiConsumer<String, Integer> progressListener) {
+        Path tempFile = null;
         try {
-            int totalBeats = beatsList.size();
-            String firstFiveBeats = beatsList.subList(0, Math.min(5, totalBeats)).toString();
-            logger.info("Formatted beats: Total = " + totalBeats + ", First 5 = " + firstFiveBeats);
-            return "Beats: " + totalBeats + " (First 5: " + firstFiveBeats + ")";
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error formatting beats list: " + e.getMessage(), e);
-            return "Error formatting beats information.";
+            tempFile = Files.createTempFile("analysis-", ".wav");
+            progressListener.accept("downloading", 2);
+            s3FileDownloader.downloadFile(bucketName, s3Key, tempFile.toString());
+            return analyzeTrackWithLibrosa(tempFile.toString(), track,
+                    (stage, percent) -> progressListener.accept(stage, 10 + percent * 90 / 100));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error downloading " + s3Key + " for analysis", e);
+            throw new RuntimeException("Error handling WAV file for analysis", e);
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e) {
+                    logger.warning("Failed to delete temp file: " + tempFile);
+                }
+            }
         }
     }
 
-//Helper method for the Melody from Librosa processing to be readable
-    public String formatMelody(List<Float> melodyList) {
-        // Validate input
-        if (melodyList == null) {
-            logger.warning("Melody list is null. Returning default melody information.");
-            return "Melody (average): 0.000";
+//Copies the analysis results (librosa_api.py's JSON shape) onto the track, and the arrays into an unsaved track_analysis row
+    private TrackAnalysis applyResults(Tracks track, Map<String, Object> analysisResults) {
+        track.setTempo(((Number) analysisResults.get("tempo")).floatValue());
+        track.setSpectralCentroid(((Number) analysisResults.get("spectral_centroid")).floatValue());
+        track.setRms(((Number) analysisResults.get("rms")).floatValue());
+        track.setSongKey(analysisResults.getOrDefault("key", "Unknown").toString());
+        track.setPreviewStartSeconds(toDouble(analysisResults.get("preview_start")));
+
+        Map<?, ?> spectralFeatures = (Map<?, ?>) analysisResults.getOrDefault("spectral_features", Map.of());
+        TrackAnalysis analysis = new TrackAnalysis(track.getId());
+        analysis.setBeatFrames(AnalysisCodec.encodeBeatFrames(toIntArray(analysisResults.get("beats"))));
+        analysis.setSampleRate(analysisResults.get("sample_rate") instanceof Number rate ? rate.intValue() : null);
+        analysis.setMelody(AnalysisCodec.encodeFloats(toFloatArray(analysisResults.get("melody"))));
+        analysis.setMfcc(AnalysisCodec.encodeFloats(toFloatArray(analysisResults.get("mfcc"))));
+        analysis.setSpectralContrast(AnalysisCodec.encodeFloats(toFloatArray(spectralFeatures.get("contrast"))));
+        analysis.setSpectralBandwidth(toDouble(spectralFeatures.get("bandwidth")));
+        analysis.setSpectralRolloff(toDouble(spectralFeatures.get("rolloff")));
+        return analysis;
+    }
+
+    private static int[] toIntArray(Object values) {
+        List<?> list = values instanceof List<?> ? (List<?>) values : List.of();
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((Number) list.get(i)).intValue();
         }
+        return result;
+    }
 
+    private static float[] toFloatArray(Object values) {
+        List<?> list = values instanceof List<?> ? (List<?>) values : List.of();
+        float[] result = new float[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((Number) list.get(i)).floatValue();
+        }
+        return result;
+    }
+
+    private static Double toDouble(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : null;
+    }
+
+//Computes the same features in-process with the pure-Java engine
+    private Map<String, Object> runJavaEngine(String filePath, BiConsumer<String, Integer> progressListener)
+            throws IOException, InterruptedException {
+        try (ProcessGovernor.Permit permit = processGovernor.acquire(ProcessGovernor.LIBROSA)) {
+            progressListener.accept("analyzing", 10);
+            AudioFeatures features = AudioFeatureExtractor.analyze(Paths.get(filePath), analysisSampleRate, fullResolution);
+            progressListener.accept("done", 100);
+            return features.toMap();
+        }
+    }
+
+//Runs librosa on a warm worker, or the one-shot script until a worker is up. librosa gets the decimated copy
+//of the file when there is one, so it loads a fraction of the samples.
+    private Map<String, Object> runPython(String filePath, BiConsumer<String, Integer> progressListener)
+            throws IOException, InterruptedException {
+        Path analysisCopy = writeAnalysisCopy(filePath);
+        String analyzedPath = analysisCopy != null ? analysisCopy.toString() : filePath;
         try {
-            double averageMelody = melodyList.stream()
-                                             .mapToDouble(Float::doubleValue)
-                                             .average()
-                                             .orElse(0.0);
-            logger.info("Calculated average melody: " + averageMelody);
-            return "Melody (average): " + String.format("%.3f", averageMelody);
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error formatting melody list: " + e.getMessage(), e);
-            return "Error calculating melody information.";
+            return librosaWorkerPool.isAvailable()
+                    ? librosaWorkerPool.analyze(analyzedPath, progressListener)
+                    : runLibrosaScript(analyzedPath, progressListener);
+        } finally {
+            if (analysisCopy != null) {
+                Files.deleteIfExists(analysisCopy);
+            }
         }
     }
 
-//Helper method to format the MFCCs from Librosa processing in a readable way
-    public String formatMFCCs(List<Float> mfccList) {
-        // Validate input
-        if (mfccList == null) {
-            logger.warning("MFCC list is null. Returning default MFCC information.");
-            return "MFCCs: [] (Total: 0)";
+//Writes the mono mix of the file at the analysis rate as a 32-bit float WAV temp file, or returns null when
+//librosa should read the original: it is already at or below that rate, or some feature needs the native rate
+//(librosa computes every feature from the one signal it loads)
+    private Path writeAnalysisCopy(String filePath) throws IOException {
+        if (analysisSampleRate <= 0 || !fullResolution.isEmpty()) {
+            return null;
+        }
+        int sampleRate = WavFile.readHeader(Paths.get(filePath)).sampleRate;
+        if (sampleRate <= analysisSampleRate || !Resampler.isSupported(sampleRate, analysisSampleRate)) {
+            return null;
         }
+        Path copy = Files.createTempFile("analysis-" + analysisSampleRate + "-", ".wav");
+        try {
+            Resampler.writeMono(Paths.get(filePath), copy, analysisSampleRate);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(copy);
+            throw e;
+        }
+        logger.info("Resampled " + filePath + " from " + sampleRate + " Hz to " + analysisSampleRate + " Hz mono for librosa");
+        return copy;
+    }
 
+//Queues a comparison with the Java engine for a sampled share of the shadow analyses, so the check neither delays
+//the caller nor runs for every track. The comparison works on its own link to (or copy of) the file, since callers
+//delete theirs once the analysis returns; it is skipped when the queue is full.
+    private void scheduleComparison(String filePath, Map<String, Object> librosaResults) {
+        if (librosaResults.containsKey("error") || ThreadLocalRandom.current().nextDouble() >= shadowSampleFraction) {
+            return;
+        }
+        Path copy;
         try {
-            String firstFiveMFCCs = mfccList.subList(0, Math.min(5, mfccList.size()))
-                                            .stream()
-                                            .map(val -> String.format("%.2f", val))
-                                            .collect(Collectors.joining(", "));
-            logger.info("Formatted MFCCs: First 5 = [" + firstFiveMFCCs + "], Total = " + mfccList.size());
-            return "MFCCs: [" + firstFiveMFCCs + "] (Total: " + mfccList.size() + ")";
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error formatting MFCC list: " + e.getMessage(), e);
-            return "Error formatting MFCC information.";
+            copy = keepCopy(Paths.get(filePath));
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not keep " + filePath + " for the engine comparison.", e);
+            return;
+        }
+        try {
+            shadowExecutor.execute(() -> {
+                try {
+                    compareWithJavaEngine(copy, filePath, librosaResults);
+                } finally {
+                    deleteQuietly(copy);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.fine("Engine comparison queue is full, skipping " + filePath);
+            deleteQuietly(copy);
         }
     }
 
-//Helper method to format the Spectral Features from Librosa processing in a readable way
-    public String formatSpectralFeatures(float spectralCentroid, float rms) {
+//A hard link to the file in the temp folder, or a copy where the two are on different file systems
+    private Path keepCopy(Path source) throws IOException {
+        Path copy = Files.createTempFile("shadow-", ".wav");
+        Files.delete(copy);
         try {
-            String formattedSpectralCentroid = String.format("%.2f", spectralCentroid);
-            String formattedRMS = String.format("%.2f", rms);
-            String result = "Spectral Features:\n- Centroid: " + formattedSpectralCentroid + "\n- RMS: " + formattedRMS;
+            return Files.createLink(copy, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            return Files.copy(source, copy);
+        }
+    }
 
-            logger.info("Formatted spectral features. Centroid: " + formattedSpectralCentroid + ", RMS: " + formattedRMS);
-            return result;
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warning("Failed to delete temp file: " + file);
+        }
+    }
 
+//Logs how far the Java engine's scalar features are from librosa's for the same file. Holds a LIBROSA permit
+//like runJavaEngine, so the extra analysis counts against the governor's limit.
+    private void compareWithJavaEngine(Path wavFile, String filePath, Map<String, Object> librosaResults) {
+        try (ProcessGovernor.Permit permit = processGovernor.acquire(ProcessGovernor.LIBROSA)) {
+            AudioFeatures features = AudioFeatureExtractor.analyze(wavFile, analysisSampleRate, fullResolution);
+            Map<String, Object> javaResults = features.toMap();
+            StringBuilder report = new StringBuilder("Engine comparison for " + filePath + ":");
+            for (String feature : List.of("tempo", "spectral_centroid", "rms")) {
+                double expected = ((Number) librosaResults.get(feature)).doubleValue();
+                double actual = ((Number) javaResults.get(feature)).doubleValue();
+                report.append(String.format(" %s librosa=%.4f java=%.4f (%.2f%%);", feature, expected, actual,
+                        expected == 0 ? 0 : 100 * Math.abs(actual - expected) / Math.abs(expected)));
+            }
+            report.append(" key librosa=").append(librosaResults.get("key")).append(" java=").append(javaResults.get("key"));
+            report.append("; beats librosa=").append(((List<?>) librosaResults.getOrDefault("beats", List.of())).size())
+                    .append(" java=").append(features.getBeats().length);
+            logger.info(report.toString());
+        } catch (InterruptedException e) {
+            // Shutting down
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error formatting spectral features. Centroid: " + spectralCentroid + ", RMS: " + rms, e);
-            return "Error formatting spectral features.";
+            logger.log(Level.WARNING, "Java engine failed on " + filePath + " during comparison.", e);
         }
     }
+
+//Runs librosa_api.py in a new Python process and parses the JSON it prints
+    private Map<String, Object> runLibrosaScript(String filePath, BiConsumer<String, Integer> progressListener)
+            throws IOException, InterruptedException {
+        try (ProcessGovernor.Permit permit = processGovernor.acquire(ProcessGovernor.LIBROSA)) {
+            // Build and execute the Python script command
+            ProcessBuilder processBuilder = new ProcessBuilder(processGovernor.wrapCommand(ProcessGovernor.LIBROSA, List.of("bash", "-c",
+                "source " + virtualEnvPath + " && " + pythonPath + " " + scriptPath + " " + filePath)));
+            processBuilder.redirectErrorStream(true);
+            Process process = processBuilder.start();
+
+            // Capture the script's output; the watchdog kills bash and Python if the analysis hangs
+            StringBuilder output = new StringBuilder();
+            int exitCode;
+            try (ProcessTree.Watchdog watchdog = ProcessTree.watch(process, processGovernor.getTimeout(ProcessGovernor.LIBROSA));
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("PROGRESS ")) {
+                        reportProgress(line, progressListener);
+                    } else {
+                        output.append(line);
+                    }
+                }
+                exitCode = ProcessTree.waitFor(process, processGovernor.getTimeout(ProcessGovernor.LIBROSA));
+                watchdog.checkDeadline();
+            }
+
+            if (exitCode != 0) {
+                logger.severe("Librosa script failed with exit code: " + exitCode + ". Output: " + output);
+                throw new RuntimeException("Python script execution failed. Exit code: " + exitCode);
+            }
+
+            logger.info("Librosa script executed successfully. Processing results...");
+            return objectMapper.readValue(output.toString(), Map.class);
+        }
+    }
+
+// Parses a "PROGRESS <percent> <stage>" marker line
+    private void reportProgress(String line, BiConsumer<String, Integer> progressListener) {
+        String[] parts = line.split(" ", 3);
+        try {
+            progressListener.accept(parts.length > 2 ? parts[2] : "analyzing", Integer.parseInt(parts[1]));
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            logger.fine("Ignoring malformed progress line: " + line);
+        }
+    }
+
+//Builds the readable analysis lines for the track details page, or an empty map if the track was never analyzed
+    public Map<String, String> summarizeAnalysis(Tracks track) {
+        Map<String, String> summary = new LinkedHashMap<>();
+        Optional<TrackAnalysis> analysisOpt = trackAnalysisRepository.findById(track.getId());
+        if (analysisOpt.isEmpty()) {
+            return summary;
+        }
+        TrackAnalysis analysis = analysisOpt.get();
+        if (track.getSpectralCentroid() != null && track.getRms() != null) {
+            summary.put("spectralFeatures", formatSpectralFeatures(track.getSpectralCentroid(), track.getRms(), analysis));
+        }
+        summary.put("beats", formatBeats(analysis.decodeBeatFrames()));
+        summary.put("melody", formatMelody(analysis.melodyView()));
+        summary.put("mfcc", formatMFCCs(analysis.mfccView()));
+        return summary;
+    }
+
+//Helper method to format the Beats from Librosa processing in a readable way
+    public String formatBeats(int[] beatFrames) {
+        int totalBeats = beatFrames.length;
+        String firstFiveBeats = Arrays.toString(Arrays.copyOf(beatFrames, Math.min(5, totalBeats)));
+        return "Beats: " + totalBeats + " (First 5: " + firstFiveBeats + ")";
+    }
+
+//Helper method for the Melody from Librosa processing to be readable
+    public String formatMelody(FloatBuffer melody) {
+        double sum = 0;
+        for (int i = 0; i < melody.limit(); i++) {
+            sum += melody.get(i);
+        }
+        double averageMelody = melody.limit() == 0 ? 0.0 : sum / melody.limit();
+        return "Melody (average): " + String.format("%.3f", averageMelody);
+    }
+
+//Helper method to format the MFCCs from Librosa processing in a readable way
+    public String formatMFCCs(FloatBuffer mfcc) {
+        StringBuilder firstFiveMFCCs = new StringBuilder();
+        for (int i = 0; i < Math.min(5, mfcc.limit()); i++) {
+            if (i > 0) {
+                firstFiveMFCCs.append(", ");
+            }
+            firstFiveMFCCs.append(String.format("%.2f", mfcc.get(i)));
+        }
+        return "MFCCs: [" + firstFiveMFCCs + "] (Total: " + mfcc.limit() + ")";
+    }
+
+//Helper method to format the Spectral Features from Librosa processing in a readable way
+    public String formatSpectralFeatures(float spectralCentroid, float rms, TrackAnalysis analysis) {
+        StringBuilder result = new StringBuilder("Spectral Features:")
+                .append("\n- Centroid: ").append(String.format("%.2f", spectralCentroid))
+                .append("\n- RMS: ").append(String.format("%.2f", rms));
+        if (analysis.getSpectralBandwidth() != null) {
+            result.append("\n- Bandwidth: ").append(String.format("%.2f", analysis.getSpectralBandwidth()));
+        }
+        if (analysis.getSpectralRolloff() != null) {
+            result.append("\n- Rolloff: ").append(String.format("%.2f", analysis.getSpectralRolloff()));
+        }
+        return result.toString();
+    }
  
 //Method to download the user's WAV file from S3 into a temporary folder
     public String analyzeTrack(String bucketName, String keyName) throws IOException {
@@ -207,19 +534,4 @@ public class LibrosaService {
             throw new RuntimeException("Unexpected error during track analysis preparation.", e);
         }
     }
-
-//Helper method to format the Beats from Librosa processing in a readable way
-    public List<Integer> parseBeats(String beatsJson) throws IOException {
-        return objectMapper.readValue(beatsJson, new TypeReference<List<Integer>>() {});
-    }
-
-//Helper method for the Melody from Librosa processing to be readable
-    public List<Float> parseMelody(String melodyJson) throws IOException {
-        return objectMapper.readValue(melodyJson, new TypeReference<List<Float>>() {});
-    }
-
-//Helper method to format the MFCCs from Librosa processing in a readable way    
-    public List<Float> parseMFCCs(String mfccJson) throws IOException {
-        return objectMapper.readValue(mfccJson, new TypeReference<List<Float>>() {});
-    }
 }
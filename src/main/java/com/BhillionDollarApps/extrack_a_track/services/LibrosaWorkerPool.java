@@ -0,0 +1,254 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import com.BhillionDollarApps.extrack_a_track.utils.PythonWorkerProcess;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps warm librosa workers so an analysis only pays for the feature extraction, not for starting Python,
+ * importing numpy/librosa and JIT-compiling numba kernels.
+ * Requests that arrive within a short window of each other are sent to a worker as one batch.
+ */
+@Service
+public class LibrosaWorkerPool {
+
+    private static final Logger logger = Logger.getLogger(LibrosaWorkerPool.class.getName());
+
+    @Value("${librosa.workers.enabled:true}")
+    private boolean enabled;
+
+    // The Java engine doesn't need Python at all
+    @Value("${librosa.engine:shadow}")
+    private String engine;
+
+    @Value("${librosa.env.path:/home/ubuntu/librosa_env}")
+    private String librosaEnvPath;
+
+    @Value("${librosa.workers.script:/home/ubuntu/librosa_env/librosa_worker.py}")
+    private String workerScriptPath;
+
+    @Value("${librosa.workers.pool-size:1}")
+    private int poolSize;
+
+    @Value("${librosa.workers.startup-timeout-seconds:180}")
+    private long startupTimeoutSeconds;
+
+    @Value("${librosa.workers.batch-window-millis:50}")
+    private long batchWindowMillis;
+
+    @Value("${librosa.workers.max-batch-size:8}")
+    private int maxBatchSize;
+
+    @Value("${librosa.workers.health-check-interval-seconds:60}")
+    private long healthCheckIntervalSeconds;
+
+    @Autowired
+    private ProcessGovernor processGovernor;
+
+    private final BlockingQueue<PendingAnalysis> pending = new LinkedBlockingQueue<>();
+    private final AtomicInteger workerCounter = new AtomicInteger();
+    private final AtomicInteger readyWorkers = new AtomicInteger();
+    private ExecutorService dispatchers;
+    private volatile boolean shuttingDown;
+
+    // One file waiting to be analyzed, completed by whichever worker picks it up
+    private static final class PendingAnalysis {
+        private final String filePath;
+        private final BiConsumer<String, Integer> progressListener;
+        private final CompletableFuture<Map<String, Object>> result = new CompletableFuture<>();
+
+        PendingAnalysis(String filePath, BiConsumer<String, Integer> progressListener) {
+            this.filePath = filePath;
+            this.progressListener = progressListener;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        enabled = enabled && !"java".equals(engine);
+        if (!enabled) {
+            logger.info("Librosa workers not started (engine: " + engine + ").");
+            return;
+        }
+
+        // Each dispatcher owns one worker: it starts it, feeds it batches and restarts it when it dies
+        AtomicInteger threadCounter = new AtomicInteger();
+        dispatchers = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "librosa-dispatcher-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < poolSize; i++) {
+            dispatchers.submit(this::dispatch);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        if (dispatchers != null) {
+            dispatchers.shutdownNow();
+        }
+        List<PendingAnalysis> abandoned = new ArrayList<>();
+        pending.drainTo(abandoned);
+        abandoned.forEach(analysis -> analysis.result.completeExceptionally(new IOException("Librosa workers are shutting down.")));
+    }
+
+    /**
+     * Whether at least one warm worker is up. While none is, callers should fall back to the one-shot script.
+     */
+    public boolean isAvailable() {
+        return enabled && readyWorkers.get() > 0;
+    }
+
+    /**
+     * Analyzes a WAV file on a warm worker and returns the same JSON object librosa_api.py prints.
+     */
+    public Map<String, Object> analyze(String filePath, BiConsumer<String, Integer> progressListener)
+            throws IOException, InterruptedException {
+        PendingAnalysis analysis = new PendingAnalysis(Paths.get(filePath).toAbsolutePath().toString(), progressListener);
+        pending.put(analysis);
+        try {
+            return analysis.result.get();
+        } catch (InterruptedException e) {
+            // Not sent yet: drop it. Already in a batch: the worker finishes it and the result is ignored.
+            pending.remove(analysis);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Librosa analysis failed.", e.getCause());
+        }
+    }
+
+    private void dispatch() {
+        PythonWorkerProcess worker = null;
+        try {
+            while (!shuttingDown) {
+                if (worker == null || !worker.isAlive()) {
+                    worker = startWorker(worker);
+                    if (worker == null) {
+                        Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+                        continue;
+                    }
+                }
+
+                PendingAnalysis first = pending.poll(healthCheckIntervalSeconds, TimeUnit.SECONDS);
+                if (first == null) {
+                    if (!worker.ping(Duration.ofSeconds(10))) {
+                        logger.warning("Worker " + worker.getName() + " failed its health check, restarting.");
+                        worker = stopWorker(worker);
+                    }
+                    continue;
+                }
+
+                List<PendingAnalysis> batch = collectBatch(first);
+                runBatch(worker, batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopWorker(worker);
+        }
+    }
+
+// Waits up to the batch window for more requests to send along with the first one
+    private List<PendingAnalysis> collectBatch(PendingAnalysis first) throws InterruptedException {
+        List<PendingAnalysis> batch = new ArrayList<>();
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWindowMillis);
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            PendingAnalysis next = remaining > 0 ? pending.poll(remaining, TimeUnit.NANOSECONDS) : pending.poll();
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void runBatch(PythonWorkerProcess worker, List<PendingAnalysis> batch) throws InterruptedException {
+        List<String> files = new ArrayList<>();
+        batch.forEach(analysis -> files.add(analysis.filePath));
+
+        // The batch runs one file after another in the worker, so it counts as a single librosa run
+        try (ProcessGovernor.Permit permit = processGovernor.acquire(ProcessGovernor.LIBROSA)) {
+            Duration timeout = processGovernor.getTimeout(ProcessGovernor.LIBROSA).multipliedBy(batch.size());
+            Map<String, Object> response = worker.request(Map.of("cmd", "analyze", "files", files),
+                    event -> forwardProgress(batch, event), timeout);
+
+            List<?> results = (List<?>) response.get("results");
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete((Map<String, Object>) results.get(i));
+            }
+            if (batch.size() > 1) {
+                logger.info("Worker " + worker.getName() + " analyzed a batch of " + batch.size() + " files.");
+            }
+        } catch (InterruptedException e) {
+            batch.forEach(analysis -> analysis.result.completeExceptionally(new IOException("Librosa workers are shutting down.")));
+            throw e;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Worker " + worker.getName() + " failed a batch of " + batch.size() + " files.", e);
+            IOException failure = e instanceof IOException ioException ? ioException : new IOException(e.getMessage(), e);
+            batch.forEach(analysis -> analysis.result.completeExceptionally(failure));
+        }
+    }
+
+    private void forwardProgress(List<PendingAnalysis> batch, Map<String, Object> event) {
+        if (!"progress".equals(event.get("event")) || !(event.get("index") instanceof Integer index)
+                || index < 0 || index >= batch.size()) {
+            return;
+        }
+        batch.get(index).progressListener.accept(String.valueOf(event.get("stage")), ((Number) event.get("percent")).intValue());
+    }
+
+    private PythonWorkerProcess startWorker(PythonWorkerProcess previous) throws InterruptedException {
+        stopWorker(previous);
+        String name = "librosa-" + workerCounter.incrementAndGet();
+        PythonWorkerProcess worker = new PythonWorkerProcess(name, List.of(
+                librosaEnvPath + "/bin/python3", workerScriptPath
+        ), new File(workerScriptPath).getParentFile());
+
+        try {
+            worker.start(Duration.ofSeconds(startupTimeoutSeconds));
+            readyWorkers.incrementAndGet();
+            return worker;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to start librosa worker " + name + ", retrying in 30s.", e);
+            worker.destroy();
+            return null;
+        }
+    }
+
+    private PythonWorkerProcess stopWorker(PythonWorkerProcess worker) {
+        if (worker != null) {
+            readyWorkers.decrementAndGet();
+            worker.destroy();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,171 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs short media jobs (transcodes and the like) off the request thread, on a fixed number of workers behind a
+ * bounded queue. A submitted job gets an id and a progress channel; the web tier returns right away and clients
+ * follow the channel. A job submitted again while the same work is queued or running is not run twice.
+ */
+@Service
+public class MediaJobService {
+
+    private static final Logger logger = Logger.getLogger(MediaJobService.class.getName());
+
+    @Autowired
+    private ProgressEventBus progressEventBus;
+
+    @Value("${media.jobs.workers:2}")
+    private int workerCount;
+
+    @Value("${media.jobs.queue-capacity:20}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    // Work key -> the job queued or running for it
+    private final Map<String, Job> activeJobs = new ConcurrentHashMap<>();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+    private final AtomicLong totalRunMillis = new AtomicLong();
+    private final AtomicLong maxRunMillis = new AtomicLong();
+
+    /**
+     * The work of a job. Reports progress from 0 to 100 and returns the message shown when it completes.
+     */
+    @FunctionalInterface
+    public interface Task {
+        String run(IntConsumer progressListener) throws Exception;
+    }
+
+    /**
+     * A submitted job: its id, the kind of work, and where its progress is published.
+     */
+    public static final class Job {
+        private final String id;
+        private final String kind;
+
+        Job(String id, String kind) {
+            this.id = id;
+            this.kind = kind;
+        }
+
+        public String getId() { return id; }
+        public String getKind() { return kind; }
+        public String getProgressChannel() { return kind + "-" + id; }
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "media-job-" + threadCounter.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues a job for the user. workKey names the work (e.g. "mp3-42"); if a job for it is already queued or
+     * running, that job is returned instead.
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public Job submit(String kind, String workKey, Long userId, Task task) {
+        Job job = new Job(UUID.randomUUID().toString(), kind);
+        Job active = activeJobs.putIfAbsent(workKey, job);
+        if (active != null) {
+            logger.info("Media job " + active.getId() + " is already queued or running for " + workKey);
+            return active;
+        }
+
+        progressEventBus.open(job.getProgressChannel(), userId);
+        long queuedAt = System.currentTimeMillis();
+        try {
+            executor.execute(() -> run(job, workKey, task, queuedAt));
+        } catch (RejectedExecutionException e) {
+            activeJobs.remove(workKey, job);
+            rejected.incrementAndGet();
+            logger.warning("Media job queue is full, rejecting " + kind + " job for " + workKey);
+            progressEventBus.fail(job.getProgressChannel(), "Media job queue is full.");
+            throw new RejectedExecutionException("Too many conversions are waiting, please try again later.", e);
+        }
+        submitted.incrementAndGet();
+        logger.info("Queued " + kind + " job " + job.getId() + " for " + workKey);
+        return job;
+    }
+
+    /**
+     * Queue depth, worker use, outcomes and wait/run times since startup.
+     */
+    public Map<String, Object> getMetrics() {
+        long finished = completed.get() + failed.get();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("workers", workerCount);
+        snapshot.put("activeWorkers", executor.getActiveCount());
+        snapshot.put("queueCapacity", queueCapacity);
+        snapshot.put("queued", executor.getQueue().size());
+        snapshot.put("submitted", submitted.get());
+        snapshot.put("rejected", rejected.get());
+        snapshot.put("completed", completed.get());
+        snapshot.put("failed", failed.get());
+        snapshot.put("avgWaitMillis", finished == 0 ? 0 : totalWaitMillis.get() / finished);
+        snapshot.put("maxWaitMillis", maxWaitMillis.get());
+        snapshot.put("avgRunMillis", finished == 0 ? 0 : totalRunMillis.get() / finished);
+        snapshot.put("maxRunMillis", maxRunMillis.get());
+        return snapshot;
+    }
+
+    private void run(Job job, String workKey, Task task, long queuedAt) {
+        long startedAt = System.currentTimeMillis();
+        record(totalWaitMillis, maxWaitMillis, startedAt - queuedAt);
+        String channel = job.getProgressChannel();
+        try {
+            progressEventBus.publish(channel, job.getKind(), 0, null);
+            String message = task.run(percent -> progressEventBus.publish(channel, job.getKind(), percent, null));
+            completed.incrementAndGet();
+            progressEventBus.complete(channel, message);
+            logger.info("Media job " + job.getId() + " for " + workKey + " completed.");
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            logger.log(Level.SEVERE, "Media job " + job.getId() + " for " + workKey + " failed", e);
+            progressEventBus.fail(channel, "The " + job.getKind() + " job failed.");
+        } finally {
+            // Clear an interrupt from the task so this pool thread starts its next job clean
+            Thread.interrupted();
+            record(totalRunMillis, maxRunMillis, System.currentTimeMillis() - startedAt);
+            activeJobs.remove(workKey, job);
+        }
+    }
+
+    private void record(AtomicLong total, AtomicLong max, long millis) {
+        total.addAndGet(millis);
+        max.accumulateAndGet(millis, Math::max);
+    }
+}
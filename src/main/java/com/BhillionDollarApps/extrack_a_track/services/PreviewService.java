@@ -0,0 +1,235 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.BhillionDollarApps.extrack_a_track.audio.LoudestWindow;
+import com.BhillionDollarApps.extrack_a_track.audio.TranscodeProfile;
+import com.BhillionDollarApps.extrack_a_track.config.S3FileDownloader;
+import com.BhillionDollarApps.extrack_a_track.models.StemAnalysis;
+import com.BhillionDollarApps.extrack_a_track.models.Tracks;
+
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+/**
+ * 30-second, 96 kbps MP3 previews of a track and of each of its stems, so auditioning one in the browser costs
+ * a few hundred KB instead of the whole WAV. Each clip is cut from the loudest stretch of its audio, which the
+ * analysis finds from the frame RMS it computes anyway (previewStartSeconds on Tracks and StemAnalysis); audio
+ * that was never analyzed is scanned for it first.
+ *
+ * Previews live in the track folder under previews/, named after their source ("original" or the stem name).
+ * They are cut from local files where the audio is still on disk (the upload pipeline, separation), and
+ * otherwise on the first request, from a download of the source, the way RenditionService makes renditions.
+ */
+@Service
+public class PreviewService {
+
+    private static final Logger logger = Logger.getLogger(PreviewService.class.getName());
+    private static final String BUCKET_NAME = "extract-a-trackbucket";
+
+    // Preview of the uploaded WAV; the stems use their own names
+    public static final String ORIGINAL = "original";
+    private static final List<String> STEM_NAMES = List.of("vocals", "accompaniment", "bass", "drums", "piano", "other");
+
+    @Autowired
+    private S3Client s3Client;
+
+    @Autowired
+    private S3FileDownloader s3FileDownloader;
+
+    @Autowired
+    private StreamingTranscoder streamingTranscoder;
+
+    @Autowired
+    private StemAnalysisService stemAnalysisService;
+
+    @Autowired
+    private StemArchiveService stemArchiveService;
+
+    // Previews being cut on request, by S3 key
+    private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    public String getPreviewKey(Tracks track, String source) {
+        String s3Key = track.getS3Key();
+        return s3Key.substring(0, s3Key.lastIndexOf("/original/")) + "/previews/" + source + "."
+                + TranscodeProfile.PREVIEW.getExtension();
+    }
+
+    /**
+     * S3 key of the audio a preview is cut from, or null if the track has no such audio (e.g. a stem it was not
+     * separated into).
+     */
+    public String getSourceKey(Tracks track, String source) {
+        return ORIGINAL.equals(source) ? track.getS3Key() : stemArchiveService.getStemKeys(track).get(source);
+    }
+
+    /**
+     * Cuts the preview of source from a local copy of its audio and stores it, replacing an older one.
+     * startSeconds is where the loudest stretch starts, or null to scan the file for it.
+     */
+    public long generate(Tracks track, String source, Path wavFile, Double startSeconds) throws IOException, InterruptedException {
+        double start = startSeconds != null ? startSeconds : LoudestWindow.scan(wavFile, LoudestWindow.PREVIEW_SECONDS);
+        String previewKey = getPreviewKey(track, source);
+        long size = streamingTranscoder.clip(wavFile, start, LoudestWindow.PREVIEW_SECONDS, BUCKET_NAME, previewKey,
+                TranscodeProfile.PREVIEW);
+        logger.info("Stored the " + source + " preview of track ID " + track.getId() + " from " + String.format("%.1f", start) + " s");
+        return size;
+    }
+
+    /**
+     * Previews of freshly separated stems that are still on local disk. A stem whose preview fails is logged and
+     * gets its preview on the first request instead.
+     */
+    public void generateStemPreviews(Tracks track, List<Path> stemFiles, List<StemAnalysis> analyses) throws InterruptedException {
+        Map<String, Double> startSeconds = new HashMap<>();
+        analyses.forEach(analysis -> startSeconds.put(analysis.getStemName(), analysis.getPreviewStartSeconds()));
+        for (Path stemFile : stemFiles) {
+            String fileName = stemFile.getFileName().toString();
+            if (!fileName.endsWith(".wav")) {
+                continue;
+            }
+            String stemName = fileName.replace(".wav", "").toLowerCase();
+            try {
+                generate(track, stemName, stemFile, startSeconds.get(stemName));
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.WARNING, "Failed to cut the " + stemName + " preview of track ID " + track.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Removes the stem previews, for stems that were replaced without local files to cut new previews from
+     * (copied from the stem cache); they are cut again on request.
+     */
+    public void deleteStemPreviews(Tracks track) {
+        List<ObjectIdentifier> keys = STEM_NAMES.stream()
+                .map(stemName -> ObjectIdentifier.builder().key(getPreviewKey(track, stemName)).build())
+                .toList();
+        s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                .bucket(BUCKET_NAME)
+                .delete(Delete.builder().objects(keys).build())
+                .build());
+    }
+
+    /**
+     * Makes sure the preview exists in S3, cutting it from the source audio if needed, and returns its metadata
+     * (size, ETag). Callers asking for a preview that is being cut wait for it instead of cutting their own.
+     */
+    public HeadObjectResponse ensurePreview(Tracks track, String source) throws IOException, InterruptedException {
+        String previewKey = getPreviewKey(track, source);
+        HeadObjectResponse stored = head(previewKey);
+        if (stored != null) {
+            return stored;
+        }
+
+        CompletableFuture<Void> generation = new CompletableFuture<>();
+        CompletableFuture<Void> running = inFlight.putIfAbsent(previewKey, generation);
+        if (running != null) {
+            logger.info("Waiting for the preview " + previewKey + " already being cut.");
+            await(running, previewKey);
+        } else {
+            try {
+                // A preview may have been stored between the check above and taking the slot
+                if (head(previewKey) == null) {
+                    generateFromS3(track, source);
+                }
+                generation.complete(null);
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                generation.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(previewKey, generation);
+            }
+        }
+
+        stored = head(previewKey);
+        if (stored == null) {
+            throw new IOException("Preview " + previewKey + " was not stored.");
+        }
+        return stored;
+    }
+
+    // Reads a preview made by ensurePreview; at a few hundred KB it is served from memory, which lets the
+    // controller answer the Range requests audio players make when seeking
+    public byte[] readPreview(Tracks track, String source) {
+        return s3Client.getObjectAsBytes(GetObjectRequest.builder()
+                .bucket(BUCKET_NAME)
+                .key(getPreviewKey(track, source))
+                .build()).asByteArray();
+    }
+
+    // ffmpeg has to seek in its input, so the source is downloaded to a temp file first
+    private void generateFromS3(Tracks track, String source) throws IOException, InterruptedException {
+        String sourceKey = getSourceKey(track, source);
+        if (sourceKey == null) {
+            throw new IOException("Track ID " + track.getId() + " has no " + source + " audio.");
+        }
+        Path wavFile = Files.createTempFile("preview-", ".wav");
+        try {
+            s3FileDownloader.downloadFile(BUCKET_NAME, sourceKey, wavFile.toString());
+            generate(track, source, wavFile, getStoredStart(track, source));
+        } finally {
+            Files.deleteIfExists(wavFile);
+        }
+    }
+
+    // Where the analysis found the loudest stretch, or null if the audio was not analyzed
+    private Double getStoredStart(Tracks track, String source) {
+        if (ORIGINAL.equals(source)) {
+            return track.getPreviewStartSeconds();
+        }
+        return stemAnalysisService.findByTrackId(track.getId()).stream()
+                .filter(analysis -> source.equals(analysis.getStemName()))
+                .map(StemAnalysis::getPreviewStartSeconds)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
+    }
+
+    // Metadata of the stored preview, or null if there is none
+    private HeadObjectResponse head(String previewKey) {
+        try {
+            return s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(BUCKET_NAME)
+                    .key(previewKey)
+                    .build());
+        } catch (NoSuchKeyException e) {
+            return null;
+        } catch (S3Exception e) {
+            // HEAD responses have no body, so a missing key usually arrives as a bare 404
+            if (e.statusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private void await(CompletableFuture<Void> running, String previewKey) throws IOException, InterruptedException {
+        try {
+            running.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Cutting " + previewKey + " failed", e.getCause());
+        }
+    }
+}
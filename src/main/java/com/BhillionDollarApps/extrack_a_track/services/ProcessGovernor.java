@@ -0,0 +1,213 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Caps how much heavy subprocess work (Spleeter, ffmpeg, librosa) runs at once.
+ * The machine's capacity is a pool of permits sized from its cores and memory; each tool takes a weight
+ * of permits per run, so one Spleeter separation counts as much as several ffmpeg encodes.
+ * Callers wait in a fair queue instead of all running at once and thrashing.
+ */
+@Service
+public class ProcessGovernor {
+
+    private static final Logger logger = Logger.getLogger(ProcessGovernor.class.getName());
+
+    public static final String SPLEETER = "spleeter";
+    public static final String FFMPEG = "ffmpeg";
+    public static final String LIBROSA = "librosa";
+
+    // 0 means size from the machine
+    @Value("${process.governor.permits:0}")
+    private int configuredPermits;
+
+    @Value("${process.governor.memory-per-permit-mb:1024}")
+    private long memoryPerPermitMb;
+
+    @Value("#{${process.governor.weights:{spleeter:4, ffmpeg:1, librosa:2}}}")
+    private Map<String, Integer> weights;
+
+    // nice level per tool, e.g. {ffmpeg:10}; tools without an entry run at normal priority
+    @Value("#{${process.governor.nice:{}}}")
+    private Map<String, Integer> niceLevels;
+
+    // CPU list for taskset per tool, e.g. {spleeter:'0-3'}
+    @Value("#{${process.governor.cpus:{}}}")
+    private Map<String, String> cpuSets;
+
+    // Wall-clock limit per run in seconds; a run that exceeds it is killed with its whole process tree
+    @Value("#{${process.governor.timeouts:{spleeter:3600, ffmpeg:1800, librosa:1800}}}")
+    private Map<String, Integer> timeoutSeconds;
+
+    private int totalPermits;
+    private Semaphore permits;
+    private final Map<String, ToolMetrics> metrics = new ConcurrentHashMap<>();
+
+    private static final class ToolMetrics {
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong totalWaitMillis = new AtomicLong();
+        private final AtomicLong maxWaitMillis = new AtomicLong();
+        private final AtomicLong totalRunMillis = new AtomicLong();
+        private final AtomicLong maxRunMillis = new AtomicLong();
+    }
+
+    /**
+     * Permits held for one run of a tool; closing it releases them.
+     */
+    public final class Permit implements AutoCloseable {
+        private final String tool;
+        private final int weight;
+        private final long startedAt = System.currentTimeMillis();
+        private boolean released;
+
+        private Permit(String tool, int weight) {
+            this.tool = tool;
+            this.weight = weight;
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            permits.release(weight);
+
+            long runMillis = System.currentTimeMillis() - startedAt;
+            ToolMetrics toolMetrics = metricsFor(tool);
+            toolMetrics.running.decrementAndGet();
+            toolMetrics.completed.incrementAndGet();
+            toolMetrics.totalRunMillis.addAndGet(runMillis);
+            toolMetrics.maxRunMillis.accumulateAndGet(runMillis, Math::max);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        long memoryMb = totalMemoryMb();
+        if (configuredPermits > 0) {
+            totalPermits = configuredPermits;
+        } else {
+            long byMemory = memoryMb > 0 ? Math.max(1, memoryMb / memoryPerPermitMb) : cores;
+            totalPermits = (int) Math.max(1, Math.min(cores, byMemory));
+        }
+        permits = new Semaphore(totalPermits, true);
+        logger.info("Process governor: " + totalPermits + " permits (" + cores + " cores, " + memoryMb + " MB), weights " + weights);
+    }
+
+    /**
+     * Blocks until the tool's weight of permits is free. Use with try-with-resources around the process run.
+     */
+    public Permit acquire(String tool) throws InterruptedException {
+        int weight = weightOf(tool);
+        ToolMetrics toolMetrics = metricsFor(tool);
+
+        long queuedAt = System.currentTimeMillis();
+        toolMetrics.waiting.incrementAndGet();
+        try {
+            permits.acquire(weight);
+        } finally {
+            toolMetrics.waiting.decrementAndGet();
+        }
+
+        long waitMillis = System.currentTimeMillis() - queuedAt;
+        toolMetrics.totalWaitMillis.addAndGet(waitMillis);
+        toolMetrics.maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+        toolMetrics.running.incrementAndGet();
+        if (waitMillis > 1000) {
+            logger.info("Waited " + waitMillis + " ms for " + weight + " permits to run " + tool);
+        }
+        return new Permit(tool, weight);
+    }
+
+    /**
+     * Prefixes a command with the tool's configured nice level and CPU affinity, if any.
+     */
+    public List<String> wrapCommand(String tool, List<String> command) {
+        List<String> wrapped = new ArrayList<>();
+        Integer nice = niceLevels.get(tool);
+        if (nice != null) {
+            wrapped.addAll(List.of("nice", "-n", String.valueOf(nice)));
+        }
+        String cpus = cpuSets.get(tool);
+        if (cpus != null && !cpus.isBlank()) {
+            wrapped.addAll(List.of("taskset", "-c", cpus));
+        }
+        wrapped.addAll(command);
+        return wrapped;
+    }
+
+    /**
+     * Deadline for one run of the tool.
+     */
+    public Duration getTimeout(String tool) {
+        return Duration.ofSeconds(timeoutSeconds.getOrDefault(tool, 1800));
+    }
+
+    /**
+     * How many runs of the tool fit in the permits at once, at least one.
+     */
+    public int getConcurrentRuns(String tool) {
+        return Math.max(1, totalPermits / weightOf(tool));
+    }
+
+    /**
+     * Capacity, current usage and per-tool queue-wait and run-time figures.
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("totalPermits", totalPermits);
+        snapshot.put("availablePermits", permits.availablePermits());
+        snapshot.put("queueLength", permits.getQueueLength());
+
+        Map<String, Object> tools = new LinkedHashMap<>();
+        metrics.forEach((tool, toolMetrics) -> {
+            long completed = toolMetrics.completed.get();
+            Map<String, Object> toolSnapshot = new LinkedHashMap<>();
+            toolSnapshot.put("weight", weightOf(tool));
+            toolSnapshot.put("waiting", toolMetrics.waiting.get());
+            toolSnapshot.put("running", toolMetrics.running.get());
+            toolSnapshot.put("completed", completed);
+            toolSnapshot.put("avgWaitMillis", completed == 0 ? 0 : toolMetrics.totalWaitMillis.get() / completed);
+            toolSnapshot.put("maxWaitMillis", toolMetrics.maxWaitMillis.get());
+            toolSnapshot.put("avgRunMillis", completed == 0 ? 0 : toolMetrics.totalRunMillis.get() / completed);
+            toolSnapshot.put("maxRunMillis", toolMetrics.maxRunMillis.get());
+            tools.put(tool, toolSnapshot);
+        });
+        snapshot.put("tools", tools);
+        return snapshot;
+    }
+
+    private int weightOf(String tool) {
+        // A weight above the total would never be granted
+        return Math.max(1, Math.min(totalPermits, weights.getOrDefault(tool, 1)));
+    }
+
+    private ToolMetrics metricsFor(String tool) {
+        return metrics.computeIfAbsent(tool, name -> new ToolMetrics());
+    }
+
+    private long totalMemoryMb() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getTotalMemorySize() / (1024 * 1024);
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,221 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Pushes progress of long-running operations (separation, MP3 conversion, analysis) to browsers over
+ * Server-Sent Events. Each operation publishes on its own channel, e.g. "separation-12" or "mp3-5".
+ * The last event of a channel is kept, so a client that subscribes late still gets the current state.
+ */
+@Service
+public class ProgressEventBus {
+
+    private static final Logger logger = Logger.getLogger(ProgressEventBus.class.getName());
+
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+    public static final String CANCELLED = "CANCELLED";
+
+    @Value("${progress.sse.timeout-minutes:30}")
+    private long sseTimeoutMinutes;
+
+    @Value("${progress.retention-minutes:10}")
+    private long retentionMinutes;
+
+    @Value("${progress.idle-minutes:60}")
+    private long idleMinutes;
+
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sweeper;
+
+    private static final class Channel {
+        private volatile Long ownerId;
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        private volatile Map<String, Object> lastEvent;
+        private volatile long finishedAt;
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        Channel(Long ownerId) {
+            this.ownerId = ownerId;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::dropStaleChannels, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        channels.values().forEach(channel -> channel.emitters.forEach(SseEmitter::complete));
+    }
+
+    /**
+     * Opens a channel for an operation started by the given user. Only that user can subscribe to it.
+     * A channel that is still running is kept as it is, with its subscribers; a finished one is started over.
+     */
+    public void open(String channelId, Long ownerId) {
+        Channel channel = channels.computeIfAbsent(channelId, id -> new Channel(ownerId));
+        synchronized (channel) {
+            channel.lastActivity = System.currentTimeMillis();
+            if (channel.lastEvent != null && channel.finishedAt == 0) {
+                return;
+            }
+            channel.ownerId = ownerId;
+            channel.lastEvent = null;
+            channel.finishedAt = 0;
+        }
+        publish(channelId, "queued", 0, null);
+    }
+
+    /**
+     * Publishes a progress update. Updates for unknown channels are ignored.
+     */
+    public void publish(String channelId, String stage, int percent, String message) {
+        send(channelId, event(RUNNING, stage, percent, message), false);
+    }
+
+    public void complete(String channelId, String message) {
+        send(channelId, event(COMPLETED, "done", 100, message), true);
+    }
+
+    public void fail(String channelId, String message) {
+        send(channelId, event(FAILED, "failed", 100, message), true);
+    }
+
+    public void cancel(String channelId, String message) {
+        send(channelId, event(CANCELLED, "cancelled", 100, message), true);
+    }
+
+    /**
+     * Subscribes to a channel. The last event is replayed immediately; the stream ends when the operation does.
+     */
+    public Optional<SseEmitter> subscribe(String channelId, Long userId) {
+        Channel channel = channels.get(channelId);
+        if (channel == null || !Objects.equals(channel.ownerId, userId)) {
+            return Optional.empty();
+        }
+
+        SseEmitter emitter = new SseEmitter(TimeUnit.MINUTES.toMillis(sseTimeoutMinutes));
+        emitter.onCompletion(() -> channel.emitters.remove(emitter));
+        emitter.onTimeout(() -> channel.emitters.remove(emitter));
+        emitter.onError(error -> channel.emitters.remove(emitter));
+        synchronized (channel) {
+            channel.lastActivity = System.currentTimeMillis();
+            channel.emitters.add(emitter);
+            if (channel.lastEvent != null) {
+                deliver(channel, emitter, channel.lastEvent);
+            }
+            if (channel.finishedAt > 0) {
+                emitter.complete();
+            }
+        }
+        return Optional.of(emitter);
+    }
+
+    /**
+     * Last event of a channel, for clients that poll instead of streaming.
+     */
+    public Optional<Map<String, Object>> getLastEvent(String channelId, Long userId) {
+        Channel channel = channels.get(channelId);
+        if (channel == null || !Objects.equals(channel.ownerId, userId)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(channel.lastEvent);
+    }
+
+    private void send(String channelId, Map<String, Object> event, boolean last) {
+        Channel channel = channels.get(channelId);
+        if (channel == null) {
+            return;
+        }
+
+        synchronized (channel) {
+            // Progress only moves forward while running; repeated percentages are not worth a push
+            Map<String, Object> previous = channel.lastEvent;
+            if (previous != null && !RUNNING.equals(previous.get("status"))) {
+                return;
+            }
+            if (!last && previous != null && Objects.equals(previous.get("stage"), event.get("stage"))
+                    && (int) event.get("percent") <= (int) previous.get("percent")) {
+                return;
+            }
+
+            channel.lastEvent = event;
+            channel.lastActivity = System.currentTimeMillis();
+            if (last) {
+                channel.finishedAt = System.currentTimeMillis();
+            }
+            for (SseEmitter emitter : channel.emitters) {
+                deliver(channel, emitter, event);
+                if (last) {
+                    emitter.complete();
+                }
+            }
+        }
+    }
+
+    private void deliver(Channel channel, SseEmitter emitter, Map<String, Object> event) {
+        try {
+            emitter.send(SseEmitter.event().name("progress").data(event));
+        } catch (IOException | IllegalStateException e) {
+            // The browser went away; drop the emitter, the operation carries on
+            channel.emitters.remove(emitter);
+        }
+    }
+
+    private Map<String, Object> event(String status, String stage, int percent, String message) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("status", status);
+        event.put("stage", stage);
+        event.put("percent", Math.max(0, Math.min(100, percent)));
+        if (message != null) {
+            event.put("message", message);
+        }
+        event.put("timestamp", System.currentTimeMillis());
+        return event;
+    }
+
+    // Drops finished channels after the retention time, and channels that have had no event or new subscriber for
+    // the idle time (their operation died without reporting its end); their remaining streams are closed
+    private void dropStaleChannels() {
+        long now = System.currentTimeMillis();
+        long finishedCutoff = now - TimeUnit.MINUTES.toMillis(retentionMinutes);
+        long idleCutoff = now - TimeUnit.MINUTES.toMillis(idleMinutes);
+        channels.forEach((channelId, channel) -> {
+            synchronized (channel) {
+                boolean expired = channel.finishedAt > 0 ? channel.finishedAt < finishedCutoff
+                        : channel.lastActivity < idleCutoff;
+                if (expired && channels.remove(channelId, channel)) {
+                    channel.emitters.forEach(SseEmitter::complete);
+                    channel.emitters.clear();
+                }
+            }
+        });
+        logger.fine("Progress channels open: " + channels.size());
+    }
+}
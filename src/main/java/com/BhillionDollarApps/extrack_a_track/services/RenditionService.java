@@ -0,0 +1,117 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.BhillionDollarApps.extrack_a_track.audio.TranscodeProfile;
+import com.BhillionDollarApps.extrack_a_track.models.Tracks;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+/**
+ * Renditions of a track in the other formats of TranscodeProfile, made on first request: the first caller
+ * transcodes the WAV into the track's renditions/ folder, callers asking for the same rendition meanwhile wait
+ * for that transcode instead of starting their own, and later callers find the object already in S3.
+ * Updating or deleting a track removes its whole folder, renditions included, so they never outlive the audio.
+ */
+@Service
+public class RenditionService {
+
+    private static final Logger logger = Logger.getLogger(RenditionService.class.getName());
+    private static final String BUCKET_NAME = "extract-a-trackbucket";
+
+    @Autowired
+    private S3Client s3Client;
+
+    @Autowired
+    private StreamingTranscoder streamingTranscoder;
+
+    // Renditions being transcoded, by S3 key
+    private final Map<String, CompletableFuture<Long>> inFlight = new ConcurrentHashMap<>();
+
+    public String getRenditionKey(String wavS3Key, TranscodeProfile profile) {
+        return wavS3Key.substring(0, wavS3Key.lastIndexOf("/original/")) + "/renditions/" + profile.getId() + "." + profile.getExtension();
+    }
+
+    /**
+     * Makes sure the rendition exists in S3, transcoding it if needed, and returns its size in bytes. Progress
+     * (0-100) is only reported to the caller that runs the transcode.
+     */
+    public long ensureRendition(Tracks track, TranscodeProfile profile, IntConsumer progressListener)
+            throws IOException, InterruptedException {
+        String renditionKey = getRenditionKey(track.getS3Key(), profile);
+        Long storedSize = storedSize(renditionKey);
+        if (storedSize != null) {
+            return storedSize;
+        }
+
+        CompletableFuture<Long> transcode = new CompletableFuture<>();
+        CompletableFuture<Long> running = inFlight.putIfAbsent(renditionKey, transcode);
+        if (running != null) {
+            logger.info("Waiting for the rendition " + renditionKey + " already being transcoded.");
+            return await(running, renditionKey);
+        }
+
+        try {
+            // A transcode may have finished between the check above and taking the slot
+            storedSize = storedSize(renditionKey);
+            long size = storedSize != null ? storedSize
+                    : streamingTranscoder.transcode(BUCKET_NAME, track.getS3Key(), renditionKey, profile, progressListener);
+            transcode.complete(size);
+            return size;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            transcode.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(renditionKey, transcode);
+        }
+    }
+
+    // Opens a rendition made by ensureRendition; the caller closes the stream
+    public ResponseInputStream<GetObjectResponse> openRendition(Tracks track, TranscodeProfile profile) {
+        return s3Client.getObject(GetObjectRequest.builder()
+                .bucket(BUCKET_NAME)
+                .key(getRenditionKey(track.getS3Key(), profile))
+                .build());
+    }
+
+    // Size of the stored rendition, or null if there is none
+    private Long storedSize(String renditionKey) {
+        try {
+            return s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(BUCKET_NAME)
+                    .key(renditionKey)
+                    .build()).contentLength();
+        } catch (NoSuchKeyException e) {
+            return null;
+        } catch (S3Exception e) {
+            // HEAD responses have no body, so a missing key usually arrives as a bare 404
+            if (e.statusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private long await(CompletableFuture<Long> running, String renditionKey) throws IOException, InterruptedException {
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Transcoding " + renditionKey + " failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import com.BhillionDollarApps.extrack_a_track.models.SeparationJob;
+import com.BhillionDollarApps.extrack_a_track.models.Tracks;
+import com.BhillionDollarApps.extrack_a_track.repositories.SeparationJobRepository;
+import com.BhillionDollarApps.extrack_a_track.repositories.TracksRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs separation jobs off the request thread on a fixed number of workers behind a bounded queue.
+ * The web tier only creates the job row and returns; clients poll the job for state and progress.
+ */
+@Service
+public class SeparationJobService {
+
+    private static final Logger logger = Logger.getLogger(SeparationJobService.class.getName());
+    private static final List<String> ACTIVE_STATUSES = List.of(SeparationJob.QUEUED, SeparationJob.RUNNING);
+    private static final int SUBMIT_LOCK_STRIPES = 64;
+    // Spleeter's pretrained models
+    private static final List<Integer> STEM_COUNTS = List.of(2, 4, 5);
+
+    @Autowired
+    private SeparationJobRepository separationJobRepository;
+
+    @Autowired
+    private TracksRepository tracksRepository;
+
+    @Autowired
+    private SpleeterService spleeterService;
+
+    @Autowired
+    private ProgressEventBus progressEventBus;
+
+    @Value("${spleeter.jobs.workers:2}")
+    private int workerCount;
+
+    @Value("${spleeter.jobs.queue-capacity:20}")
+    private int queueCapacity;
+
+    @Value("${spleeter.jobs.timeout-minutes:60}")
+    private long timeoutMinutes;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ThreadPoolExecutor executor;
+    private ScheduledExecutorService deadlineScheduler;
+
+    // Queued or running jobs, so they can be cancelled, and why a job was stopped early
+    private final Map<Long, Future<?>> activeJobs = new ConcurrentHashMap<>();
+    private final Map<Long, String> stopReasons = new ConcurrentHashMap<>();
+
+    // Two submits for the same track take the same lock, so only one of them finds no active job and creates one
+    private final Object[] submitLocks = new Object[SUBMIT_LOCK_STRIPES];
+    {
+        for (int i = 0; i < submitLocks.length; i++) {
+            submitLocks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "separation-job-" + threadCounter.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+        deadlineScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "separation-job-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Jobs that were queued or running when the app stopped will never finish on their own
+        for (SeparationJob orphan : separationJobRepository.findByStatusIn(ACTIVE_STATUSES)) {
+            orphan.setStatus(SeparationJob.FAILED);
+            orphan.setError("Interrupted by a server restart.");
+            orphan.setFinishedAt(new Date());
+            separationJobRepository.save(orphan);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        deadlineScheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queue a separation for the track. If the track already has a queued or running job, that job is returned.
+     * @throws IllegalArgumentException if stems is not a supported stem count (see isSupportedStemCount)
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public SeparationJob submit(Long trackId, Long userId, int stems) {
+        if (!isSupportedStemCount(stems)) {
+            throw new IllegalArgumentException("Stems must be one of " + STEM_COUNTS + ", not " + stems + ".");
+        }
+        synchronized (submitLocks[Math.floorMod(trackId.hashCode(), SUBMIT_LOCK_STRIPES)]) {
+            return submitLocked(trackId, userId, stems);
+        }
+    }
+
+    public static boolean isSupportedStemCount(int stems) {
+        return STEM_COUNTS.contains(stems);
+    }
+
+    private SeparationJob submitLocked(Long trackId, Long userId, int stems) {
+        Tracks track = tracksRepository.findById(trackId)
+                .orElseThrow(() -> new IllegalArgumentException("Track not found with ID: " + trackId));
+
+        Optional<SeparationJob> activeJob = separationJobRepository.findFirstByTrackIdAndStatusIn(trackId, ACTIVE_STATUSES);
+        if (activeJob.isPresent()) {
+            logger.info("Track ID " + trackId + " already has active separation job " + activeJob.get().getId());
+            return activeJob.get();
+        }
+
+        SeparationJob job = separationJobRepository.save(new SeparationJob(trackId, userId, stems));
+        progressEventBus.open(getProgressChannel(job), userId);
+        String previousStatus = track.getStatus();
+        tracksRepository.updateStatus(trackId, "PROCESSING");
+
+        try {
+            // Registered before the job can start, so runJob always finds its own entry
+            synchronized (activeJobs) {
+                activeJobs.put(job.getId(), executor.submit(() -> runJob(job.getId())));
+            }
+        } catch (RejectedExecutionException e) {
+            logger.warning("Separation queue is full, rejecting job " + job.getId());
+            job.setStatus(SeparationJob.FAILED);
+            job.setError("Separation queue is full.");
+            job.setFinishedAt(new Date());
+            separationJobRepository.save(job);
+            tracksRepository.updateStatus(trackId, previousStatus);
+            progressEventBus.fail(getProgressChannel(job), job.getError());
+            throw new RejectedExecutionException("Separation queue is full, please try again later.", e);
+        }
+
+        logger.info("Queued separation job " + job.getId() + " for track ID " + trackId);
+        return job;
+    }
+
+    /**
+     * Progress channel of a job on the event bus, streamed at /progress/{channel}.
+     */
+    public String getProgressChannel(SeparationJob job) {
+        return "separation-" + job.getId();
+    }
+
+    /**
+     * Stops a queued or running job. A running job is interrupted, which kills its Spleeter process and cleans up
+     * its scratch folder; the job and its track end up CANCELLED. Finished jobs are returned unchanged.
+     */
+    public Optional<SeparationJob> cancel(Long jobId) {
+        Optional<SeparationJob> job = separationJobRepository.findById(jobId);
+        if (job.isEmpty() || job.get().isFinished()) {
+            return job;
+        }
+
+        // Same lock as the QUEUED -> RUNNING transition, so a job is either cancelled in the queue or interrupted
+        synchronized (activeJobs) {
+            Future<?> future = activeJobs.get(jobId);
+            if (future == null) {
+                return job;
+            }
+            stopReasons.putIfAbsent(jobId, SeparationJob.CANCELLED);
+
+            SeparationJob current = separationJobRepository.findById(jobId).orElse(job.get());
+            if (SeparationJob.QUEUED.equals(current.getStatus())) {
+                // Recorded right away; the queued task sees the stop reason and exits when its turn comes
+                finishStopped(current);
+            } else {
+                future.cancel(true);
+            }
+        }
+        logger.info("Cancellation requested for separation job " + jobId);
+        return separationJobRepository.findById(jobId);
+    }
+
+    public Optional<SeparationJob> findJob(Long jobId) {
+        return separationJobRepository.findById(jobId);
+    }
+
+    /**
+     * Stem name -> S3 key recorded on a completed job.
+     */
+    public Map<String, String> getStemKeys(SeparationJob job) {
+        if (job.getStemKeys() == null) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(job.getStemKeys(), Map.class);
+        } catch (Exception e) {
+            logger.warning("Could not parse stem keys for job " + job.getId() + ": " + e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private void runJob(Long jobId) {
+        try {
+            executeJob(jobId);
+        } finally {
+            synchronized (activeJobs) {
+                activeJobs.remove(jobId);
+            }
+            stopReasons.remove(jobId);
+        }
+    }
+
+    private void executeJob(Long jobId) {
+        SeparationJob job = separationJobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            logger.warning("Separation job " + jobId + " disappeared before it could run.");
+            return;
+        }
+
+        Tracks track = tracksRepository.findById(job.getTrackId()).orElse(null);
+        if (track == null) {
+            job.setStatus(SeparationJob.FAILED);
+            job.setError("Track no longer exists.");
+            job.setFinishedAt(new Date());
+            separationJobRepository.save(job);
+            progressEventBus.fail(getProgressChannel(job), job.getError());
+            return;
+        }
+
+        synchronized (activeJobs) {
+            if (stopReasons.containsKey(jobId)) {
+                return; // Cancelled while queued, already recorded by cancel()
+            }
+            job.setStatus(SeparationJob.RUNNING);
+            job.setStartedAt(new Date());
+            separationJobRepository.save(job);
+        }
+
+        // Past the deadline the job is interrupted just like a user cancellation, but recorded as a failure
+        Thread jobThread = Thread.currentThread();
+        AtomicBoolean stopped = new AtomicBoolean();
+        ScheduledFuture<?> deadline = deadlineScheduler.schedule(() -> {
+            synchronized (stopped) {
+                if (!stopped.get()) {
+                    stopReasons.putIfAbsent(jobId, SeparationJob.FAILED);
+                    jobThread.interrupt();
+                }
+            }
+        }, timeoutMinutes, TimeUnit.MINUTES);
+
+        // The separation keeps its stem columns up to date on track; the status is written on its own at the end
+        String trackStatus = null;
+        try {
+            Map<String, String> stemKeys = spleeterService.separateTrackToS3(track, job.getStems(), job.getUserId(),
+                    percent -> updateProgress(job, percent));
+            job.setStemKeys(objectMapper.writeValueAsString(stemKeys));
+            job.setProgress(100);
+            job.setStatus(SeparationJob.COMPLETED);
+            trackStatus = "COMPLETED";
+            progressEventBus.complete(getProgressChannel(job), stemKeys.size() + " stems ready.");
+            logger.info("Separation job " + jobId + " completed with " + stemKeys.size() + " stems.");
+        } catch (Exception e) {
+            if (stopReasons.containsKey(jobId)) {
+                stopDeadline(deadline, stopped);
+                finishStopped(job);
+                return;
+            }
+            logger.log(Level.SEVERE, "Separation job " + jobId + " failed for track ID " + track.getId(), e);
+            job.setStatus(SeparationJob.FAILED);
+            job.setError(truncate(e.getMessage()));
+            trackStatus = "FAILED";
+            progressEventBus.fail(getProgressChannel(job), job.getError());
+        } finally {
+            stopDeadline(deadline, stopped);
+            if (job.getFinishedAt() == null) {
+                job.setFinishedAt(new Date());
+                separationJobRepository.save(job);
+                tracksRepository.updateStatus(track.getId(), trackStatus);
+            }
+        }
+    }
+
+    // Cancels the deadline, then clears the interrupt it or a cancellation left behind, so the final database
+    // writes go through; this thread goes back to the pool. Once stopped is set the deadline can no longer fire.
+    private void stopDeadline(ScheduledFuture<?> deadline, AtomicBoolean stopped) {
+        synchronized (stopped) {
+            stopped.set(true);
+        }
+        deadline.cancel(false);
+        Thread.interrupted();
+    }
+
+    // Records a job stopped by cancellation (CANCELLED) or by its deadline (FAILED)
+    private void finishStopped(SeparationJob job) {
+        boolean timedOut = SeparationJob.FAILED.equals(stopReasons.get(job.getId()));
+        String message = timedOut ? "Timed out after " + timeoutMinutes + " minutes." : "Cancelled by user.";
+        job.setStatus(timedOut ? SeparationJob.FAILED : SeparationJob.CANCELLED);
+        job.setError(message);
+        job.setFinishedAt(new Date());
+        separationJobRepository.save(job);
+        tracksRepository.updateStatus(job.getTrackId(), timedOut ? "FAILED" : "CANCELLED");
+        if (timedOut) {
+            progressEventBus.fail(getProgressChannel(job), message);
+        } else {
+            progressEventBus.cancel(getProgressChannel(job), message);
+        }
+        logger.info("Separation job " + job.getId() + ": " + message);
+    }
+
+    private void updateProgress(SeparationJob job, int percent) {
+        progressEventBus.publish(getProgressChannel(job), stageFor(percent), percent, null);
+        if (percent > job.getProgress()) {
+            job.setProgress(percent);
+            separationJobRepository.save(job);
+        }
+    }
+
+// Maps the job's overall percentage onto the stage it is in (see SpleeterService.separateTrackToS3)
+    private String stageFor(int percent) {
+        if (percent < 25) {
+            return "downloading";
+        }
+        return percent < 80 ? "separating" : "uploading";
+    }
+
+    private String truncate(String message) {
+        if (message == null) {
+            return "Separation failed.";
+        }
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+}
@@ -0,0 +1,221 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Service;
+
+import com.BhillionDollarApps.extrack_a_track.models.TrackAnalysis;
+import com.BhillionDollarApps.extrack_a_track.models.Tracks;
+import com.BhillionDollarApps.extrack_a_track.repositories.TrackAnalysisRepository;
+import com.BhillionDollarApps.extrack_a_track.repositories.TracksRepository;
+import com.BhillionDollarApps.extrack_a_track.utils.AnalysisCodec;
+import com.BhillionDollarApps.extrack_a_track.utils.VectorIndex;
+
+/**
+ * "Sounds like" search: every analyzed track is a point in one VectorIndex, built from its mean MFCCs (timbre)
+ * and mean chroma (harmony). The index is loaded from track_analysis on first use and then kept current from
+ * TrackAnalysis.SavedEvent, which the repository publishes on every save.
+ */
+@Service
+public class SimilarityIndex {
+
+    private static final Logger logger = Logger.getLogger(SimilarityIndex.class.getName());
+    private static final int MFCC_COUNT = 13;
+    private static final int CHROMA_COUNT = 12;
+    // MFCCs 1-12 and the 12 chroma bins; c0 is overall loudness, not timbre
+    static final int DIMENSION = (MFCC_COUNT - 1) + CHROMA_COUNT;
+    private static final int LOAD_PAGE_SIZE = 500;
+
+    @Autowired
+    private TrackAnalysisRepository trackAnalysisRepository;
+
+    @Autowired
+    private TracksRepository tracksRepository;
+
+    // Number of tracks from which queries walk an HNSW graph instead of comparing against every track
+    @Value("${similarity.graph-threshold:2000}")
+    private int graphThreshold;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile VectorIndex index;
+
+    /**
+     * A track and its cosine similarity (up to 1) to the track that was searched for.
+     */
+    public static final class SimilarTrack {
+        private final Tracks track;
+        private final float similarity;
+
+        SimilarTrack(Tracks track, float similarity) {
+            this.track = track;
+            this.similarity = similarity;
+        }
+
+        public Tracks getTrack() { return track; }
+        public float getSimilarity() { return similarity; }
+    }
+
+    /**
+     * The tracks of the same owner that sound most like the given one, best first. Empty when the track has
+     * not been analyzed.
+     */
+    public List<SimilarTrack> findSimilar(Tracks track, int limit) {
+        Long ownerId = track.getUser() != null ? track.getUser().getId() : null;
+        if (ownerId == null) {
+            return List.of();
+        }
+        VectorIndex current = loadedIndex();
+        List<VectorIndex.Match> matches;
+        lock.readLock().lock();
+        try {
+            float[] query = current.getVector(track.getId());
+            if (query == null) {
+                return List.of();
+            }
+            matches = current.search(query, limit, ownerId, track.getId());
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Map<Long, Tracks> tracks = tracksRepository.findAllById(matches.stream().map(VectorIndex.Match::getId).toList())
+                .stream()
+                .collect(Collectors.toMap(Tracks::getId, Function.identity()));
+        List<SimilarTrack> results = new ArrayList<>(matches.size());
+        for (VectorIndex.Match match : matches) {
+            Tracks similar = tracks.get(match.getId());
+            if (similar != null) {
+                results.add(new SimilarTrack(similar, match.getScore()));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Adds or replaces a track's point when its analysis is saved. Before the first query there is nothing to
+     * update: loading reads the saved row anyway.
+     */
+    @EventListener
+    public void onAnalysisSaved(TrackAnalysis.SavedEvent event) {
+        VectorIndex current = index;
+        if (current == null) {
+            return;
+        }
+        TrackAnalysis analysis = event.getAnalysis();
+        float[] vector = toVector(analysis.mfccView(), analysis.melodyView());
+        Long ownerId = tracksRepository.findById(analysis.getTrackId())
+                .map(Tracks::getUser)
+                .map(user -> user.getId())
+                .orElse(null);
+
+        lock.writeLock().lock();
+        try {
+            if (vector == null || ownerId == null) {
+                current.remove(analysis.getTrackId());
+            } else {
+                current.put(analysis.getTrackId(), ownerId, vector);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long trackId) {
+        VectorIndex current = index;
+        if (current == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            current.remove(trackId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private VectorIndex loadedIndex() {
+        VectorIndex current = index;
+        if (current != null) {
+            return current;
+        }
+        lock.writeLock().lock();
+        try {
+            if (index == null) {
+                index = load();
+            }
+            return index;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Reads every analysis page by page; only the MFCC and chroma blobs are fetched
+    private VectorIndex load() {
+        long start = System.currentTimeMillis();
+        VectorIndex loaded = new VectorIndex(DIMENSION, graphThreshold);
+        Pageable page = PageRequest.of(0, LOAD_PAGE_SIZE);
+        Slice<TrackAnalysisRepository.FeatureVectorSource> slice;
+        do {
+            slice = trackAnalysisRepository.findFeatureVectors(page);
+            for (TrackAnalysisRepository.FeatureVectorSource source : slice) {
+                float[] vector = toVector(AnalysisCodec.floatView(source.getMfcc()), AnalysisCodec.floatView(source.getMelody()));
+                if (vector != null && source.getUserId() != null) {
+                    loaded.put(source.getTrackId(), source.getUserId(), vector);
+                }
+            }
+            page = slice.nextPageable();
+        } while (slice.hasNext());
+        logger.info("Loaded " + loaded.size() + " tracks into the similarity index in " + (System.currentTimeMillis() - start)
+                + " ms" + (loaded.hasGraph() ? " (HNSW graph)" : ""));
+        return loaded;
+    }
+
+    /**
+     * The unit vector of a track, or null when its analysis lacks the features (or is silent). MFCC i is
+     * liftered by i, which evens out the fast decay of the higher coefficients, and each half of the vector is
+     * normalized to length 1/sqrt(2), so timbre and harmony weigh the same.
+     */
+    static float[] toVector(FloatBuffer mfcc, FloatBuffer chroma) {
+        if (mfcc.remaining() < MFCC_COUNT || chroma.remaining() < CHROMA_COUNT) {
+            return null;
+        }
+        float[] vector = new float[DIMENSION];
+        for (int i = 1; i < MFCC_COUNT; i++) {
+            vector[i - 1] = mfcc.get(mfcc.position() + i) * i;
+        }
+        for (int c = 0; c < CHROMA_COUNT; c++) {
+            vector[MFCC_COUNT - 1 + c] = chroma.get(chroma.position() + c);
+        }
+        if (!normalize(vector, 0, MFCC_COUNT - 1) || !normalize(vector, MFCC_COUNT - 1, DIMENSION)) {
+            return null;
+        }
+        return vector;
+    }
+
+    private static boolean normalize(float[] vector, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += vector[i] * vector[i];
+        }
+        if (sum == 0 || !Double.isFinite(sum)) {
+            return false;
+        }
+        float scale = (float) (Math.sqrt(0.5) / Math.sqrt(sum));
+        for (int i = from; i < to; i++) {
+            vector[i] *= scale;
+        }
+        return true;
+    }
+}
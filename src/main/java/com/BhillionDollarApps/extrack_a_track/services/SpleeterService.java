@@ -1,16 +1,30 @@
 package com.BhillionDollarApps.extrack_a_track.services;
 
+import com.BhillionDollarApps.extrack_a_track.audio.SegmentStitcher;
+import com.BhillionDollarApps.extrack_a_track.audio.WavFile;
 import com.BhillionDollarApps.extrack_a_track.config.S3FileDownloader;
 import com.BhillionDollarApps.extrack_a_track.config.S3FileUploader;
+import com.BhillionDollarApps.extrack_a_track.models.StemAnalysis;
 import com.BhillionDollarApps.extrack_a_track.models.Tracks;
 import com.BhillionDollarApps.extrack_a_track.repositories.TracksRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -36,8 +50,52 @@ public class SpleeterService {
     @Autowired
     private S3TempFileService s3TempFileService;
 
+    @Autowired
+    private SpleeterWorkerPool spleeterWorkerPool;
+
+    @Autowired
+    private StemCacheService stemCacheService;
+
+    @Autowired
+    private StemAnalysisService stemAnalysisService;
+
+    @Autowired
+    private PreviewService previewService;
+
+    @Value("${spleeter.segments.enabled:true}")
+    private boolean segmentsEnabled;
+
+    @Value("${spleeter.segments.min-duration-seconds:240}")
+    private double segmentMinDurationSeconds;
+
+    @Value("${spleeter.segments.window-seconds:60}")
+    private double segmentWindowSeconds;
+
+    @Value("${spleeter.segments.overlap-seconds:2}")
+    private double segmentOverlapSeconds;
+
+    @Value("${spleeter.uploads.threads:4}")
+    private int uploadThreads;
+
+    private ExecutorService stemUploadExecutor;
+
     private static final Logger logger = Logger.getLogger(SpleeterService.class.getName());
 
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        stemUploadExecutor = Executors.newFixedThreadPool(uploadThreads, runnable -> {
+            Thread thread = new Thread(runnable, "stem-upload-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stemUploadExecutor.shutdownNow();
+    }
+
     /**
      * Process the given track entity with Spleeter to separate it into stems.
      */
@@ -69,36 +127,249 @@ public class SpleeterService {
     }
 
     /**
-     * Process a track file with Spleeter.
+     * Download a track from S3, separate it on a Spleeter worker and upload the stems next to the original.
+     * Runs on a separation job thread, so it must not touch the HTTP request or session.
      */
-    private Map<String, Object> processWithSpleeter(String inputFilePath, String outputDirPath, int stemCount) throws Exception {
-        String spleeterCommand = String.format(
-                "spleeter separate -i \"%s\" -o \"%s\" -p spleeter:%dstems",
-                inputFilePath, outputDirPath, stemCount
-        );
+    public Map<String, String> separateTrackToS3(Tracks track, int stemCount, Long userId, IntConsumer progressListener) throws Exception {
+        String s3StemsBasePath = getStemsBasePath(track);
+
+        // Identical audio has been separated before: copy those stems instead of running Spleeter again
+        Optional<Map<String, String>> cachedStems = copyCachedStems(track, stemCount, s3StemsBasePath, progressListener);
+        if (cachedStems.isPresent()) {
+            return cachedStems.get();
+        }
+
+        // Each track gets its own scratch folder so concurrent jobs for one user never share files
+        String jobFolder = getJobFolder(track, userId);
+        String tempWavFilePath = jobFolder + sanitizeTitle(track.getTitle()) + ".wav";
+
+        try {
+            Files.createDirectories(Paths.get(jobFolder));
+            progressListener.accept(5);
+
+            logger.info("Downloading file from S3: " + track.getS3Key());
+            s3FileDownloader.downloadFile("extract-a-trackbucket", track.getS3Key(), tempWavFilePath);
+            progressListener.accept(25);
 
-        logger.info("Executing Spleeter command: " + spleeterCommand);
+            return separateAndUpload(track, stemCount, tempWavFilePath, jobFolder, s3StemsBasePath,
+                    percent -> progressListener.accept(25 + percent * 75 / 100));
+        } finally {
+            deleteLocalStemsOutput(jobFolder);
+        }
+    }
 
-        Process process = new ProcessBuilder("bash", "-c", spleeterCommand).redirectErrorStream(true).start();
-        logProcessOutput(process);
+    /**
+     * Same as above from a local copy of the track's WAV, which is left in place. Stem columns are saved on the
+     * given track instance while holding its lock, so other writers of the same instance should lock it too.
+     */
+    public Map<String, String> separateLocalCopyToS3(Tracks track, int stemCount, Long userId, Path wavFile,
+                                                     IntConsumer progressListener) throws Exception {
+        String s3StemsBasePath = getStemsBasePath(track);
+        Optional<Map<String, String>> cachedStems = copyCachedStems(track, stemCount, s3StemsBasePath, progressListener);
+        if (cachedStems.isPresent()) {
+            return cachedStems.get();
+        }
 
-        if (process.waitFor() != 0) {
-            throw new IOException("Spleeter process failed. Check logs for details.");
+        String jobFolder = getJobFolder(track, userId);
+        try {
+            Files.createDirectories(Paths.get(jobFolder));
+            return separateAndUpload(track, stemCount, wavFile.toString(), jobFolder, s3StemsBasePath, progressListener);
+        } finally {
+            deleteLocalStemsOutput(jobFolder);
         }
+    }
 
-        return readStemsData(Paths.get(outputDirPath));
+    private String getStemsBasePath(Tracks track) throws IOException {
+        String s3Key = track.getS3Key();
+        if (s3Key == null || s3Key.isEmpty() || !s3Key.contains("/original/")) {
+            throw new IOException("No valid S3 key found for track ID: " + track.getId());
+        }
+        return s3Key.substring(0, s3Key.lastIndexOf("/original/")) + "/stems/";
+    }
+
+    private String getJobFolder(Tracks track, Long userId) {
+        return "/home/ubuntu/temp/" + userId + "/separation-" + track.getId() + "/";
+    }
+
+    private Optional<Map<String, String>> copyCachedStems(Tracks track, int stemCount, String s3StemsBasePath,
+                                                         IntConsumer progressListener) {
+        Optional<Map<String, String>> cachedStems = stemCacheService.copyCachedStems(track.getContentHash(), stemCount,
+                track.getId(), s3StemsBasePath);
+        if (cachedStems.isPresent()) {
+            synchronized (track) {
+                cachedStems.get().forEach((stemName, stemKey) -> updateTrackStemFields(track, stemName, stemKey));
+                saveStemFields(track);
+            }
+            deleteStemPreviews(track);
+            progressListener.accept(100);
+        }
+        return cachedStems;
+    }
+
+    // Separates a local WAV into jobFolder/stems/, uploading and analyzing each stem as it is written (progress 0-100)
+    private Map<String, String> separateAndUpload(Tracks track, int stemCount, String wavFilePath, String jobFolder,
+                                                  String s3StemsBasePath, IntConsumer progressListener) throws Exception {
+        String outputDirPath = jobFolder + "stems/";
+        Files.createDirectories(Paths.get(outputDirPath));
+
+        // Each stem starts uploading as soon as its file is closed, while the rest are still being produced
+        logger.info("Separating " + wavFilePath + " into " + stemCount + " stems.");
+        StemUploadBatch uploads = new StemUploadBatch(track, s3StemsBasePath);
+        Map<String, String> stemKeys;
+        try {
+            List<Path> stemFiles = separateLocalFile(wavFilePath, outputDirPath, jobFolder + "segments/", stemCount,
+                    percent -> progressListener.accept(percent * 73 / 100), uploads::submit);
+            progressListener.accept(73);
+
+            // Catches stems whose completion event was missed
+            stemFiles.forEach(uploads::submit);
+
+            // The stems are still on local disk: analyze them on every core and cut their previews while the uploads run
+            List<StemAnalysis> analyses = analyzeStems(track, stemFiles);
+            previewService.generateStemPreviews(track, stemFiles, analyses);
+            stemKeys = uploads.awaitAll();
+        } finally {
+            uploads.cancel();
+        }
+        progressListener.accept(100);
+
+        stemCacheService.record(track.getContentHash(), stemCount, track.getId(), stemKeys);
+        return stemKeys;
     }
 
     /**
-     * Log Spleeter process output.
+     * Separate a local WAV on the worker pool. Long files are split into overlapping segments that are
+     * separated in parallel and stitched back together, so wall-clock time scales with the number of workers.
+     * With only one separation able to run at a time the file goes through in one pass, as segments would only add work.
+     * Output follows the Spleeter layout: outputDirPath/<input name>/<stem>.wav.
+     * stemListener is called with each final stem file as soon as it is complete on disk.
      */
-    private void logProcessOutput(Process process) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                logger.info("Spleeter output: " + line);
+    public List<Path> separateLocalFile(String inputFilePath, String outputDirPath, String scratchDirPath, int stemCount,
+                                        IntConsumer progressListener, Consumer<Path> stemListener) throws Exception {
+        WavFile.Header header;
+        try {
+            header = WavFile.readHeader(Paths.get(inputFilePath));
+        } catch (IOException e) {
+            logger.warning("Could not read WAV header of " + inputFilePath + ", separating in one pass: " + e.getMessage());
+            header = null;
+        }
+
+        int parallelism = spleeterWorkerPool.getParallelism();
+        if (!segmentsEnabled || parallelism < 2 || header == null
+                || header.getDurationSeconds() < segmentMinDurationSeconds) {
+            // The worker reports its stages: the model pass is most of the work, then one event per written stem
+            AtomicInteger writtenStems = new AtomicInteger();
+            List<Path> stemFiles = spleeterWorkerPool.separate(inputFilePath, outputDirPath, stemCount, event -> {
+                if ("stage".equals(event.get("event"))) {
+                    if ("loaded".equals(event.get("stage"))) {
+                        progressListener.accept(10);
+                    } else if ("separated".equals(event.get("stage"))) {
+                        progressListener.accept(70);
+                    }
+                } else if ("stem".equals(event.get("event")) && event.get("path") != null) {
+                    progressListener.accept(70 + 30 * writtenStems.incrementAndGet() / stemCount);
+                    stemListener.accept(Paths.get(event.get("path").toString()));
+                }
+            });
+            progressListener.accept(100);
+            return stemFiles;
+        }
+
+        long totalFrames = header.getFrameCount();
+        long windowFrames = (long) (segmentWindowSeconds * header.sampleRate);
+        long overlapFrames = (long) (segmentOverlapSeconds * header.sampleRate);
+        long hopFrames = windowFrames - overlapFrames;
+        if (hopFrames < overlapFrames) {
+            throw new IllegalStateException("spleeter.segments.window-seconds must be at least twice the overlap.");
+        }
+        int segmentCount = (int) Math.max(1, (totalFrames - overlapFrames + hopFrames - 1) / hopFrames);
+
+        Path scratchDir = Paths.get(scratchDirPath);
+        Files.createDirectories(scratchDir);
+        List<Path> segmentFiles = new ArrayList<>();
+        for (int k = 0; k < segmentCount; k++) {
+            Path segmentFile = scratchDir.resolve("segment-" + k + ".wav");
+            WavFile.copyFrames(Paths.get(inputFilePath), header, k * hopFrames, windowFrames, segmentFile);
+            segmentFiles.add(segmentFile);
+        }
+        logger.info("Separating " + inputFilePath + " as " + segmentCount + " segments of " + segmentWindowSeconds + "s.");
+
+        // Fan the segments out across the worker pool, reporting progress as each one finishes
+        ExecutorService segmentExecutor = Executors.newFixedThreadPool(Math.min(segmentCount, parallelism));
+        AtomicInteger finishedSegments = new AtomicInteger();
+        List<Future<Map<String, Path>>> futures = new ArrayList<>();
+        try {
+            for (int k = 0; k < segmentCount; k++) {
+                Path segmentFile = segmentFiles.get(k);
+                String segmentOutput = scratchDir.resolve("output-" + k).toString();
+                futures.add(segmentExecutor.submit(() -> {
+                    Map<String, Path> stems = new TreeMap<>();
+                    for (Path stem : spleeterWorkerPool.separate(segmentFile.toString(), segmentOutput, stemCount)) {
+                        stems.put(stem.getFileName().toString(), stem);
+                    }
+                    int finished;
+                    synchronized (progressListener) {
+                        finished = finishedSegments.incrementAndGet();
+                        progressListener.accept(finished * 90 / segmentCount);
+                    }
+                    logger.info("Segment " + finished + "/" + segmentCount + " separated for " + inputFilePath);
+                    return stems;
+                }));
+            }
+
+            List<Map<String, Path>> segmentStems = new ArrayList<>();
+            for (Future<Map<String, Path>> future : futures) {
+                segmentStems.add(future.get());
+            }
+
+            List<Path> stemFiles = stitchSegments(segmentStems, header, hopFrames, outputDirPath, inputFilePath, stemListener);
+            progressListener.accept(100);
+            return stemFiles;
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+            segmentExecutor.shutdownNow();
+        }
+    }
+
+// Stitches every stem back into one file, placing segment k at k * hop converted to the stem sample rate
+    private List<Path> stitchSegments(List<Map<String, Path>> segmentStems, WavFile.Header inputHeader, long hopFrames,
+                                      String outputDirPath, String inputFilePath, Consumer<Path> stemListener) throws IOException {
+        String trackName = Paths.get(inputFilePath).getFileName().toString().replaceFirst("\\.[^.]+$", "");
+        Path trackOutputDir = Paths.get(outputDirPath, trackName);
+        Files.createDirectories(trackOutputDir);
+
+        List<Path> stemFiles = new ArrayList<>();
+        for (String stemFile : segmentStems.get(0).keySet()) {
+            WavFile.Header stemHeader = WavFile.readHeader(segmentStems.get(0).get(stemFile));
+            double rateRatio = (double) stemHeader.sampleRate / inputHeader.sampleRate;
+
+            try (SegmentStitcher stitcher = new SegmentStitcher(trackOutputDir.resolve(stemFile),
+                    stemHeader.channels, stemHeader.sampleRate)) {
+                for (int k = 0; k < segmentStems.size(); k++) {
+                    Path segmentStem = segmentStems.get(k).get(stemFile);
+                    if (segmentStem == null) {
+                        throw new IOException("Segment " + k + " is missing stem " + stemFile);
+                    }
+                    long start = Math.round(k * hopFrames * rateRatio);
+                    long next = k + 1 < segmentStems.size() ? Math.round((k + 1) * hopFrames * rateRatio) : -1;
+                    stitcher.append(WavFile.readSamples(segmentStem), start, next);
+                }
             }
+            logger.info("Stitched stem " + stemFile + " from " + segmentStems.size() + " segments.");
+            stemFiles.add(trackOutputDir.resolve(stemFile));
+            stemListener.accept(trackOutputDir.resolve(stemFile));
         }
+        return stemFiles;
+    }
+
+    /**
+     * Process a track file with Spleeter.
+     */
+    private Map<String, Object> processWithSpleeter(String inputFilePath, String outputDirPath, int stemCount) throws Exception {
+        logger.info("Separating " + inputFilePath + " into " + stemCount + " stems.");
+        spleeterWorkerPool.separate(inputFilePath, outputDirPath, stemCount);
+
+        return readStemsData(Paths.get(outputDirPath));
     }
 
     /**
@@ -126,44 +397,88 @@ public class SpleeterService {
     }
 
     /**
-     * Upload separated stems to S3.
+     * Per-stem analysis is a bonus on top of the separation, so a failure is logged rather than failing the job.
      */
-    public void uploadSeparatedStemsToS3(String outputDirPath, Tracks track, String s3StemsBasePath) throws IOException {
-        Path outputDir = Paths.get(outputDirPath);
+    private List<StemAnalysis> analyzeStems(Tracks track, List<Path> stemFiles) throws InterruptedException {
+        try {
+            return stemAnalysisService.analyzeStems(track.getId(), stemFiles);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Stem analysis failed for track ID: " + track.getId(), e);
+            return List.of();
+        }
+    }
 
-        if (!Files.isDirectory(outputDir)) {
-            throw new IOException("Invalid output directory: " + outputDirPath);
+    // The old stem previews would play the stems these replaced; they are cut again on request
+    private void deleteStemPreviews(Tracks track) {
+        try {
+            previewService.deleteStemPreviews(track);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Failed to delete the stem previews of track ID: " + track.getId(), e);
         }
+    }
 
-        logger.info("Uploading stems to S3 at: " + s3StemsBasePath);
-        try (Stream<Path> files = Files.walk(outputDir)) {
-            files.filter(Files::isRegularFile)
-                 .filter(path -> path.toString().endsWith(".wav"))
-                 .forEach(path -> {
-                     String stemName = path.getFileName().toString().replace(".wav", "").toLowerCase();
-                     String s3StemKey = s3StemsBasePath + stemName + ".wav";
+    /**
+     * Uploads the stems of one separation concurrently as they are handed in, on the shared upload threads.
+     * Each stem column on the track is saved as soon as its upload lands, so finished stems are usable
+     * before the rest of the job is done.
+     */
+    private class StemUploadBatch {
+        private final Tracks track;
+        private final String s3StemsBasePath;
+        private final Map<String, Future<String>> uploads = new ConcurrentHashMap<>();
+
+        StemUploadBatch(Tracks track, String s3StemsBasePath) {
+            this.track = track;
+            this.s3StemsBasePath = s3StemsBasePath;
+        }
 
-                     try {
-                         // Handle the actual upload
-                         s3FileUploader.uploadFile("extract-a-trackbucket", s3StemKey, path.toString());
-                         updateTrackStemFields(track, stemName, s3StemKey);
-                         logger.info("Uploaded stem: " + s3StemKey);
-                     } catch (Exception e) {
-                         logger.log(Level.SEVERE, "Failed to upload stem: " + path.getFileName(), e);
-                         // Log the exception, but do not rethrow it, so the rest of the stems can still upload
-                     }
-                 });
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Error while walking the output directory: " + outputDirPath, e);
-            throw e; // Rethrow if walking the directory fails
+        // Starts uploading a finished stem file; a stem that is already uploading is ignored
+        void submit(Path stemFile) {
+            String fileName = stemFile.getFileName().toString();
+            if (!fileName.endsWith(".wav")) {
+                return;
+            }
+            String stemName = fileName.replace(".wav", "").toLowerCase();
+            uploads.computeIfAbsent(stemName, name -> stemUploadExecutor.submit(() -> upload(name, stemFile)));
         }
 
-        // Save the updated track metadata
-        tracksRepository.save(track);
-        logger.info("Track metadata updated for track ID: " + track.getId());
+        private String upload(String stemName, Path stemFile) {
+            String s3StemKey = s3StemsBasePath + stemName + ".wav";
+            s3FileUploader.uploadFile("extract-a-trackbucket", s3StemKey, stemFile.toString());
 
-        // Clean up local stems_output directory
-        deleteLocalStemsOutput(outputDirPath);
+            // Uploads finish on different threads; save one column at a time so none is lost
+            synchronized (track) {
+                updateTrackStemFields(track, stemName, s3StemKey);
+                saveStemFields(track);
+            }
+            logger.info("Uploaded stem: " + s3StemKey);
+            return s3StemKey;
+        }
+
+        /**
+         * Waits for every submitted upload. Returns stem name -> S3 key for the stems that were uploaded;
+         * a failed stem is logged and skipped so the others are still kept.
+         */
+        Map<String, String> awaitAll() throws IOException, InterruptedException {
+            Map<String, String> uploadedStems = new TreeMap<>();
+            for (Map.Entry<String, Future<String>> upload : uploads.entrySet()) {
+                try {
+                    uploadedStems.put(upload.getKey(), upload.getValue().get());
+                } catch (ExecutionException e) {
+                    logger.log(Level.SEVERE, "Failed to upload stem: " + upload.getKey(), e.getCause());
+                }
+            }
+            if (uploadedStems.isEmpty()) {
+                throw new IOException("No stems were uploaded to " + s3StemsBasePath);
+            }
+            logger.info("Uploaded " + uploadedStems.size() + " stems for track ID: " + track.getId());
+            return uploadedStems;
+        }
+
+        // Stops uploads that have not finished, e.g. when separation failed half way
+        void cancel() {
+            uploads.values().forEach(upload -> upload.cancel(true));
+        }
     }
 
     /**
@@ -186,11 +501,21 @@ public class SpleeterService {
             case "drums":
                 track.setDrums(s3StemKey);
                 break;
+            case "other":
+                track.setOther(s3StemKey);
+                break;
             default:
                 logger.warning("Unrecognized stem name: " + stemName);
         }
     }
 
+    // Writes only the stem columns: the instance was loaded when the separation started, and saving it whole
+    // would put back whatever else changed since
+    private void saveStemFields(Tracks track) {
+        tracksRepository.updateStems(track.getId(), track.getVocals(), track.getAccompaniment(), track.getPiano(),
+                track.getBass(), track.getDrums(), track.getOther());
+    }
+
     /**
      * Sanitize string for safe file paths.
      */
@@ -0,0 +1,238 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import com.BhillionDollarApps.extrack_a_track.utils.PythonWorkerProcess;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a pool of warm Spleeter workers per model (2/4/5 stems) so a separation job only pays for inference,
+ * not for starting Python, importing TensorFlow and loading the checkpoint.
+ */
+@Service
+public class SpleeterWorkerPool {
+
+    private static final Logger logger = Logger.getLogger(SpleeterWorkerPool.class.getName());
+
+    @Value("${spleeter.env.path}")
+    private String spleeterEnvPath;
+
+    @Value("${spleeter.workers.script:/home/ubuntu/spleeter_env/spleeter_worker.py}")
+    private String workerScriptPath;
+
+    @Value("${spleeter.workers.working-dir:/home/ubuntu/spleeter_env}")
+    private String workingDirectory;
+
+    @Value("${spleeter.workers.models:2,4,5}")
+    private String configuredModels;
+
+    // 0 means as many workers per model as the governor lets Spleeter run at once
+    @Value("${spleeter.workers.pool-size:0}")
+    private int poolSize;
+
+    @Value("${spleeter.workers.startup-timeout-seconds:300}")
+    private long startupTimeoutSeconds;
+
+    @Value("${spleeter.workers.job-timeout-seconds:1800}")
+    private long jobTimeoutSeconds;
+
+    @Value("${spleeter.workers.acquire-timeout-seconds:600}")
+    private long acquireTimeoutSeconds;
+
+    @Value("${spleeter.workers.health-check-interval-seconds:60}")
+    private long healthCheckIntervalSeconds;
+
+    @Autowired
+    private ProcessGovernor processGovernor;
+
+    private final Map<Integer, BlockingQueue<PythonWorkerProcess>> idleWorkers = new ConcurrentHashMap<>();
+    private final List<PythonWorkerProcess> allWorkers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger workerCounter = new AtomicInteger();
+    private ScheduledExecutorService scheduler;
+    private volatile boolean shuttingDown;
+
+    @PostConstruct
+    public void init() {
+        List<Integer> models = parseModels(configuredModels);
+        if (poolSize <= 0) {
+            poolSize = processGovernor.getConcurrentRuns(ProcessGovernor.SPLEETER);
+        }
+        logger.info("Starting " + poolSize + " Spleeter workers per model for " + models + " stems.");
+
+        // One supervisor thread per worker so slow model loads can run side by side, plus one for health checks
+        scheduler = Executors.newScheduledThreadPool(models.size() * poolSize + 1, runnable -> {
+            Thread thread = new Thread(runnable, "spleeter-pool-supervisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Workers take a while to load their models, so start them in the background and let the app come up.
+        for (int stems : models) {
+            idleWorkers.put(stems, new LinkedBlockingQueue<>());
+            for (int i = 0; i < poolSize; i++) {
+                scheduleStart(stems, 0);
+            }
+        }
+
+        scheduler.scheduleWithFixedDelay(this::checkIdleWorkers,
+                healthCheckIntervalSeconds, healthCheckIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        scheduler.shutdownNow();
+        allWorkers.forEach(PythonWorkerProcess::destroy);
+        allWorkers.clear();
+    }
+
+    /**
+     * Separate a WAV file into stems on a warm worker.
+     * Output follows the Spleeter CLI layout: outputDirPath/<input name>/<stem>.wav.
+     */
+    public List<Path> separate(String inputFilePath, String outputDirPath, int stems) throws IOException, InterruptedException {
+        return separate(inputFilePath, outputDirPath, stems, null);
+    }
+
+    public List<Path> separate(String inputFilePath, String outputDirPath, int stems,
+                               Consumer<Map<String, Object>> eventListener) throws IOException, InterruptedException {
+        BlockingQueue<PythonWorkerProcess> queue = idleWorkers.get(stems);
+        if (queue == null) {
+            throw new IllegalArgumentException("No Spleeter workers configured for " + stems + " stems.");
+        }
+
+        // Warm workers sit idle cheaply; only the inference itself counts against the machine's capacity
+        try (ProcessGovernor.Permit permit = processGovernor.acquire(ProcessGovernor.SPLEETER)) {
+            return separateOnWorker(queue, inputFilePath, outputDirPath, stems, eventListener);
+        }
+    }
+
+    private List<Path> separateOnWorker(BlockingQueue<PythonWorkerProcess> queue, String inputFilePath, String outputDirPath,
+                                        int stems, Consumer<Map<String, Object>> eventListener) throws IOException, InterruptedException {
+        PythonWorkerProcess worker = queue.poll(acquireTimeoutSeconds, TimeUnit.SECONDS);
+        if (worker == null) {
+            throw new IOException("No Spleeter worker available for " + stems + " stems after " + acquireTimeoutSeconds + "s.");
+        }
+
+        try {
+            Map<String, Object> response = worker.request(Map.of(
+                    "cmd", "separate",
+                    "input", Paths.get(inputFilePath).toAbsolutePath().toString(),
+                    "output", Paths.get(outputDirPath).toAbsolutePath().toString()
+            ), eventListener, Duration.ofSeconds(jobTimeoutSeconds));
+
+            List<Path> stemPaths = new ArrayList<>();
+            for (Object stemPath : (List<?>) response.get("stems")) {
+                stemPaths.add(Paths.get(stemPath.toString()));
+            }
+            logger.info("Worker " + worker.getName() + " produced " + stemPaths.size() + " stems for " + inputFilePath);
+            return stemPaths;
+        } finally {
+            release(stems, worker);
+        }
+    }
+
+    /**
+     * Number of workers per model, used by callers that want to size their own parallelism.
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * How many separations for one model can actually run side by side: its workers, capped by the governor.
+     */
+    public int getParallelism() {
+        return Math.max(1, Math.min(poolSize, processGovernor.getConcurrentRuns(ProcessGovernor.SPLEETER)));
+    }
+
+    private void release(int stems, PythonWorkerProcess worker) {
+        if (worker.isAlive()) {
+            idleWorkers.get(stems).offer(worker);
+        } else {
+            logger.warning("Worker " + worker.getName() + " died, starting a replacement.");
+            replace(stems, worker);
+        }
+    }
+
+    private void replace(int stems, PythonWorkerProcess worker) {
+        worker.destroy();
+        allWorkers.remove(worker);
+        scheduleStart(stems, 5);
+    }
+
+    private void scheduleStart(int stems, long delaySeconds) {
+        if (shuttingDown) {
+            return;
+        }
+        scheduler.schedule(() -> startWorker(stems), delaySeconds, TimeUnit.SECONDS);
+    }
+
+    private void startWorker(int stems) {
+        String name = "spleeter-" + stems + "stems-" + workerCounter.incrementAndGet();
+        PythonWorkerProcess worker = new PythonWorkerProcess(name, List.of(
+                spleeterEnvPath + "/bin/python3", workerScriptPath, "spleeter:" + stems + "stems"
+        ), new File(workingDirectory));
+
+        try {
+            worker.start(Duration.ofSeconds(startupTimeoutSeconds));
+            allWorkers.add(worker);
+            idleWorkers.get(stems).offer(worker);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            worker.destroy();
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Failed to start Spleeter worker " + name + ", retrying in 30s.", e);
+            worker.destroy();
+            scheduleStart(stems, 30);
+        }
+    }
+
+// Pings every idle worker; dead or unresponsive ones are replaced
+    private void checkIdleWorkers() {
+        idleWorkers.forEach((stems, queue) -> {
+            List<PythonWorkerProcess> idle = new ArrayList<>();
+            queue.drainTo(idle);
+            for (PythonWorkerProcess worker : idle) {
+                if (worker.isAlive() && worker.ping(Duration.ofSeconds(10))) {
+                    queue.offer(worker);
+                } else {
+                    logger.warning("Worker " + worker.getName() + " failed its health check, restarting.");
+                    replace(stems, worker);
+                }
+            }
+        });
+    }
+
+    private List<Integer> parseModels(String models) {
+        List<Integer> stems = new ArrayList<>();
+        for (String model : models.split(",")) {
+            if (!model.isBlank()) {
+                stems.add(Integer.parseInt(model.trim()));
+            }
+        }
+        return stems;
+    }
+}
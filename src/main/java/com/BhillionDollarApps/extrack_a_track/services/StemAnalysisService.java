@@ -0,0 +1,127 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.BhillionDollarApps.extrack_a_track.audio.StemFeatureExtractor;
+import com.BhillionDollarApps.extrack_a_track.models.StemAnalysis;
+import com.BhillionDollarApps.extrack_a_track.repositories.StemAnalysisRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Analyzes the stems of a finished separation while they are still on local disk: each stem is one task on a
+ * shared ForkJoinPool sized to the cores, and the results are joined into one StemAnalysis row per stem.
+ */
+@Service
+public class StemAnalysisService {
+
+    private static final Logger logger = Logger.getLogger(StemAnalysisService.class.getName());
+
+    @Autowired
+    private StemAnalysisRepository stemAnalysisRepository;
+
+    // Number of stems analyzed at once across all jobs; 0 uses one thread per core
+    @Value("${stems.analysis.parallelism:0}")
+    private int parallelism;
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    public void init() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(threads, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("stem-analysis-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Analyzes the given stem files in parallel and replaces the track's stem analysis with the results.
+     * A stem that fails is logged and left out; an interrupt (job cancelled) stops the remaining stems.
+     */
+    public List<StemAnalysis> analyzeStems(Long trackId, List<Path> stemFiles) throws InterruptedException {
+        Map<String, ForkJoinTask<StemAnalysis>> tasks = new LinkedHashMap<>();
+        for (Path stemFile : stemFiles) {
+            String fileName = stemFile.getFileName().toString();
+            if (!fileName.endsWith(".wav")) {
+                continue;
+            }
+            String stemName = fileName.replace(".wav", "").toLowerCase();
+            tasks.putIfAbsent(stemName, pool.submit(() -> new StemAnalysis(trackId, stemName, StemFeatureExtractor.analyze(stemFile))));
+        }
+
+        List<StemAnalysis> results = new ArrayList<>();
+        try {
+            for (Map.Entry<String, ForkJoinTask<StemAnalysis>> task : tasks.entrySet()) {
+                try {
+                    results.add(task.getValue().get());
+                } catch (ExecutionException e) {
+                    logger.log(Level.WARNING, "Failed to analyze stem " + task.getKey() + " of track ID " + trackId, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            tasks.values().forEach(task -> task.cancel(true));
+            throw e;
+        }
+
+        if (!results.isEmpty()) {
+            stemAnalysisRepository.deleteByTrackId(trackId);
+            stemAnalysisRepository.saveAll(results);
+        }
+        logger.info("Analyzed " + results.size() + " of " + tasks.size() + " stems for track ID " + trackId);
+        return results;
+    }
+
+    /**
+     * Gives a track the stem analysis of the track its cached stems were separated from: the same audio and model,
+     * so the same stem files. The source rows are used only if they cover exactly these stems, since separating
+     * the source again with another model replaces them; otherwise the track is left without stem analysis.
+     */
+    public List<StemAnalysis> copyAnalyses(Long sourceTrackId, Long targetTrackId, Set<String> stemNames) {
+        List<StemAnalysis> source = sourceTrackId != null ? findByTrackId(sourceTrackId) : List.of();
+        Set<String> analyzedStems = source.stream().map(StemAnalysis::getStemName).collect(Collectors.toSet());
+        if (!analyzedStems.equals(stemNames)) {
+            // The track's old rows, if any, describe the stems these replaced
+            stemAnalysisRepository.deleteByTrackId(targetTrackId);
+            logger.info("No stem analysis to copy to track ID " + targetTrackId + " from track ID " + sourceTrackId);
+            return List.of();
+        }
+        if (sourceTrackId.equals(targetTrackId)) {
+            return source;
+        }
+        List<StemAnalysis> copies = source.stream().map(analysis -> new StemAnalysis(targetTrackId, analysis)).toList();
+        stemAnalysisRepository.deleteByTrackId(targetTrackId);
+        return stemAnalysisRepository.saveAll(copies);
+    }
+
+    public List<StemAnalysis> findByTrackId(Long trackId) {
+        return stemAnalysisRepository.findByTrackIdOrderByStemName(trackId);
+    }
+
+    public void deleteByTrackId(Long trackId) {
+        stemAnalysisRepository.deleteByTrackId(trackId);
+    }
+}
@@ -0,0 +1,150 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import com.BhillionDollarApps.extrack_a_track.models.Tracks;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams all stems of a track as one ZIP straight from S3 to the client.
+ * Nothing is written to disk and only a copy buffer is held in memory, whatever the size of the stems.
+ */
+@Service
+public class StemArchiveService {
+
+    private static final Logger logger = Logger.getLogger(StemArchiveService.class.getName());
+    private static final String BUCKET_NAME = "extract-a-trackbucket";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private S3Client s3Client;
+
+    // Opens the next stem's S3 stream while the current one is being copied
+    private final ExecutorService prefetchExecutor;
+
+    public StemArchiveService() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        prefetchExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "stem-archive-prefetch-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * Stem name -> S3 key for every stem the track has, in a fixed order.
+     */
+    public Map<String, String> getStemKeys(Tracks track) {
+        Map<String, String> stemKeys = new LinkedHashMap<>();
+        putIfPresent(stemKeys, "vocals", track.getVocals());
+        putIfPresent(stemKeys, "bass", track.getBass());
+        putIfPresent(stemKeys, "drums", track.getDrums());
+        putIfPresent(stemKeys, "piano", track.getPiano());
+        putIfPresent(stemKeys, "other", track.getOther());
+        putIfPresent(stemKeys, "accompaniment", track.getAccompaniment());
+        return stemKeys;
+    }
+
+    /**
+     * Writes a ZIP with one WAV entry per stem to the output stream.
+     * Entries use deflate level 0: WAV barely compresses, and unlike STORED entries the CRC and size
+     * can follow the data, so nothing has to be read twice or buffered.
+     */
+    public void writeStemsZip(Tracks track, String baseName, OutputStream out) throws IOException {
+        Map<String, String> stemKeys = getStemKeys(track);
+        if (stemKeys.isEmpty()) {
+            throw new IOException("Track ID " + track.getId() + " has no stems.");
+        }
+
+        String[] stemNames = stemKeys.keySet().toArray(new String[0]);
+        ZipOutputStream zip = new ZipOutputStream(out);
+        zip.setMethod(ZipOutputStream.DEFLATED);
+        zip.setLevel(Deflater.NO_COMPRESSION);
+
+        CompletableFuture<ResponseInputStream<GetObjectResponse>> next = open(stemKeys.get(stemNames[0]));
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            for (int i = 0; i < stemNames.length; i++) {
+                ResponseInputStream<GetObjectResponse> current = await(next);
+                next = i + 1 < stemNames.length ? open(stemKeys.get(stemNames[i + 1])) : null;
+
+                try {
+                    zip.putNextEntry(new ZipEntry(baseName + "-" + stemNames[i] + ".wav"));
+                    int read;
+                    while ((read = current.read(buffer)) != -1) {
+                        zip.write(buffer, 0, read);
+                    }
+                    zip.closeEntry();
+                } catch (IOException e) {
+                    // Closing normally would drain the rest of the object; drop the connection instead
+                    abort(current);
+                    throw e;
+                }
+                current.close();
+                logger.info("Streamed stem " + stemNames[i] + " of track ID " + track.getId() + " into ZIP.");
+            }
+            zip.finish();
+            zip.flush();
+        } finally {
+            // The client may have disconnected half way: don't leave a prefetched S3 connection open
+            if (next != null) {
+                next.thenAccept(this::abort);
+            }
+        }
+    }
+
+    private CompletableFuture<ResponseInputStream<GetObjectResponse>> open(String s3Key) {
+        return CompletableFuture.supplyAsync(() -> s3Client.getObject(GetObjectRequest.builder()
+                .bucket(BUCKET_NAME)
+                .key(s3Key)
+                .build()), prefetchExecutor);
+    }
+
+    private ResponseInputStream<GetObjectResponse> await(CompletableFuture<ResponseInputStream<GetObjectResponse>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while opening stem from S3.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to open stem from S3.", e.getCause());
+        }
+    }
+
+    private void abort(ResponseInputStream<GetObjectResponse> stream) {
+        stream.abort();
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void putIfPresent(Map<String, String> stemKeys, String stemName, String s3Key) {
+        if (s3Key != null && !s3Key.isEmpty()) {
+            stemKeys.put(stemName, s3Key);
+        }
+    }
+}
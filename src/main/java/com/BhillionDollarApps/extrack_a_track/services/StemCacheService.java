@@ -0,0 +1,108 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import com.BhillionDollarApps.extrack_a_track.models.StemCacheEntry;
+import com.BhillionDollarApps.extrack_a_track.repositories.StemCacheRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Content-addressed cache of separated stems: (content hash, model) -> stem S3 keys.
+ * A hit is served with server-side S3 copies, so identical audio is never separated twice; the stem analysis of
+ * the track the stems came from is copied along with them.
+ */
+@Service
+public class StemCacheService {
+
+    private static final Logger logger = Logger.getLogger(StemCacheService.class.getName());
+    private static final String BUCKET_NAME = "extract-a-trackbucket";
+
+    @Autowired
+    private StemCacheRepository stemCacheRepository;
+
+    @Autowired
+    private S3Client s3Client;
+
+    @Autowired
+    private StemAnalysisService stemAnalysisService;
+
+// Copies cached stems for the content hash into the target track's stems folder; empty if there is no usable entry
+    public Optional<Map<String, String>> copyCachedStems(String contentHash, int stems, Long targetTrackId,
+                                                         String targetStemsBasePath) {
+        if (contentHash == null) {
+            return Optional.empty();
+        }
+
+        List<StemCacheEntry> entries = stemCacheRepository.findByContentHashAndStems(contentHash, stems);
+        if (entries.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Map<String, String> stemKeys = new LinkedHashMap<>();
+        try {
+            for (StemCacheEntry entry : entries) {
+                String targetKey = targetStemsBasePath + entry.getStemName() + ".wav";
+                if (!targetKey.equals(entry.getS3Key())) {
+                    s3Client.copyObject(CopyObjectRequest.builder()
+                            .sourceBucket(BUCKET_NAME)
+                            .sourceKey(entry.getS3Key())
+                            .destinationBucket(BUCKET_NAME)
+                            .destinationKey(targetKey)
+                            .build());
+                }
+                stemKeys.put(entry.getStemName(), targetKey);
+            }
+        } catch (NoSuchKeyException e) {
+            // The track the stems were cached from has been deleted since; forget the entry and separate again
+            logger.warning("Cached stems for hash " + contentHash + " are gone from S3, evicting the entry.");
+            stemCacheRepository.deleteByContentHashAndStems(contentHash, stems);
+            return Optional.empty();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Could not copy cached stems for hash " + contentHash, e);
+            return Optional.empty();
+        }
+
+        logger.info("Stem cache hit for hash " + contentHash + " (" + stems + " stems), copied " + stemKeys.size() + " stems.");
+        copyStemAnalysis(entries.get(0).getSourceTrackId(), targetTrackId, stemKeys.keySet());
+        return Optional.of(stemKeys);
+    }
+
+    // The stems are usable without their analysis, so a failure here does not undo the hit
+    private void copyStemAnalysis(Long sourceTrackId, Long targetTrackId, Set<String> stemNames) {
+        try {
+            stemAnalysisService.copyAnalyses(sourceTrackId, targetTrackId, stemNames);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Could not copy the stem analysis of track ID " + sourceTrackId
+                    + " to track ID " + targetTrackId, e);
+        }
+    }
+
+// Records freshly separated stems of a track so later uploads of the same audio can reuse them
+    public void record(String contentHash, int stems, Long sourceTrackId, Map<String, String> stemKeys) {
+        if (contentHash == null || stemKeys.isEmpty()) {
+            return;
+        }
+        try {
+            stemCacheRepository.deleteByContentHashAndStems(contentHash, stems);
+            stemKeys.forEach((stemName, s3Key) ->
+                    stemCacheRepository.save(new StemCacheEntry(contentHash, stems, stemName, s3Key, sourceTrackId)));
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Could not record stems in the cache for hash " + contentHash, e);
+        }
+    }
+
+// Drops cache entries pointing into an S3 folder that is about to be deleted
+    public void evictFolder(String folderPrefix) {
+        stemCacheRepository.deleteByS3KeyStartingWith(folderPrefix);
+    }
+}
@@ -0,0 +1,266 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.BhillionDollarApps.extrack_a_track.audio.TranscodeProfile;
+import com.BhillionDollarApps.extrack_a_track.config.S3FileDownloader;
+import com.BhillionDollarApps.extrack_a_track.utils.ProcessTree;
+import com.BhillionDollarApps.extrack_a_track.utils.S3MultipartOutputStream;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+/**
+ * Transcodes one S3 object into another with ffmpeg and no local files: the source object's body is written to
+ * ffmpeg's stdin on a feeder thread, and ffmpeg's stdout goes straight into an S3 multipart upload. Download,
+ * encode and upload overlap, and memory is bounded by a few upload parts whatever the file size.
+ * Profiles whose container needs a seekable output are encoded to a temp file first and uploaded from there.
+ * Clips of a local file are the exception on the input side: ffmpeg reads the file itself, so it can seek to the
+ * start of the clip instead of being fed everything before it.
+ */
+@Service
+public class StreamingTranscoder {
+
+    private static final Logger logger = Logger.getLogger(StreamingTranscoder.class.getName());
+    private static final int FEED_BUFFER_BYTES = 64 * 1024;
+    // Tail of ffmpeg's stderr kept for the error message
+    private static final int STDERR_TAIL_CHARS = 2000;
+    private static final List<String> PIPE_INPUT = List.of("-i", "pipe:0");
+
+    @Autowired
+    private S3Client s3Client;
+
+    @Autowired
+    private S3FileDownloader s3FileDownloader;
+
+    @Autowired
+    private ProcessGovernor processGovernor;
+
+    // Size of each multipart upload part, at least 5 MB; parts-in-flight of them are uploaded while the next fills
+    @Value("${transcode.part-size-mb:8}")
+    private int partSizeMb;
+
+    @Value("${transcode.parts-in-flight:2}")
+    private int partsInFlight;
+
+    @Value("${transcode.upload-threads:4}")
+    private int uploadThreads;
+
+    private ExecutorService partUploadExecutor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        partUploadExecutor = Executors.newFixedThreadPool(Math.max(1, uploadThreads), runnable -> {
+            Thread thread = new Thread(runnable, "transcode-upload-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        partUploadExecutor.shutdownNow();
+    }
+
+    /**
+     * Transcodes s3://bucket/sourceKey with the profile and stores the result at targetKey. Progress is the share
+     * of the source fed to ffmpeg, 0-100. Returns the size of the stored object. On failure nothing is stored
+     * under targetKey.
+     */
+    public long transcode(String bucket, String sourceKey, String targetKey, TranscodeProfile profile,
+                          IntConsumer progressListener) throws IOException, InterruptedException {
+        try (ProcessGovernor.Permit permit = processGovernor.acquire(ProcessGovernor.FFMPEG)) {
+            ResponseInputStream<GetObjectResponse> source = s3FileDownloader.openStream(bucket, sourceKey);
+            return run(PIPE_INPUT, source, source.response().contentLength(), source::abort,
+                    "s3://" + bucket + "/" + sourceKey, bucket, targetKey, profile, progressListener);
+        }
+    }
+
+    /**
+     * Same as above from a local copy of the source, e.g. an upload that is still on disk.
+     */
+    public long transcode(Path sourceFile, String bucket, String targetKey, TranscodeProfile profile,
+                          IntConsumer progressListener) throws IOException, InterruptedException {
+        try (ProcessGovernor.Permit permit = processGovernor.acquire(ProcessGovernor.FFMPEG)) {
+            long size = Files.size(sourceFile);
+            InputStream source = Files.newInputStream(sourceFile);
+            return run(PIPE_INPUT, source, size, () -> closeQuietly(source), sourceFile.toString(),
+                    bucket, targetKey, profile, progressListener);
+        }
+    }
+
+    /**
+     * Transcodes lengthSeconds of a local file from startSeconds on, e.g. a preview clip. A clip running past the
+     * end of the file is cut short there.
+     */
+    public long clip(Path sourceFile, double startSeconds, double lengthSeconds, String bucket, String targetKey,
+                     TranscodeProfile profile) throws IOException, InterruptedException {
+        try (ProcessGovernor.Permit permit = processGovernor.acquire(ProcessGovernor.FFMPEG)) {
+            // -ss before -i seeks in the input, which for PCM is an exact jump to the sample
+            List<String> input = List.of("-ss", String.format(Locale.ROOT, "%.3f", startSeconds),
+                    "-t", String.format(Locale.ROOT, "%.3f", lengthSeconds), "-i", sourceFile.toString());
+            return run(input, null, 0, () -> {}, sourceFile.toString(), bucket, targetKey, profile, percent -> {});
+        }
+    }
+
+    // Runs one ffmpeg process over the source fed to its stdin, which is closed (or aborted) whatever happens. With no
+    // source, ffmpeg reads the input named in the input options itself.
+    private long run(List<String> input, InputStream source, long sourceSize, Runnable abortSource, String sourceName,
+                     String bucket, String targetKey, TranscodeProfile profile, IntConsumer progressListener)
+            throws IOException, InterruptedException {
+        Path outputFile;
+        try {
+            outputFile = profile.needsSeekableOutput() ? Files.createTempFile("transcode-", "." + profile.getExtension()) : null;
+        } catch (IOException e) {
+            abortSource.run();
+            throw e;
+        }
+        try {
+            List<String> command = new ArrayList<>(List.of("ffmpeg", "-hide_banner", "-nostats", "-loglevel", "error", "-y"));
+            command.addAll(input);
+            command.addAll(profile.getOutputOptions());
+            command.add(outputFile != null ? outputFile.toString() : "pipe:1");
+            logger.info("Transcoding " + sourceName + " to " + targetKey + ": " + String.join(" ", command));
+
+            long sourceLength = Math.max(1, sourceSize);
+            Process process;
+            try {
+                process = new ProcessBuilder(processGovernor.wrapCommand(ProcessGovernor.FFMPEG, command)).start();
+            } catch (IOException e) {
+                abortSource.run();
+                throw e;
+            }
+
+            AtomicReference<IOException> feedError = new AtomicReference<>();
+            Thread feeder = null;
+            if (source != null) {
+                feeder = daemon(() -> feed(source, process.getOutputStream(), sourceLength, progressListener, feedError),
+                        "transcode-feed-" + process.pid());
+                feeder.start();
+            } else {
+                closeQuietly(process.getOutputStream());
+            }
+            StringBuilder stderrTail = new StringBuilder();
+            Thread stderrReader = daemon(() -> collectTail(process.getErrorStream(), stderrTail), "transcode-stderr-" + process.pid());
+            stderrReader.start();
+
+            S3MultipartOutputStream target = null;
+            try (ProcessTree.Watchdog watchdog = ProcessTree.watch(process, processGovernor.getTimeout(ProcessGovernor.FFMPEG))) {
+                target = new S3MultipartOutputStream(s3Client, bucket, targetKey, profile.getContentType(),
+                        Math.max(S3MultipartOutputStream.MIN_PART_SIZE, partSizeMb * 1024 * 1024), Math.max(1, partsInFlight),
+                        partUploadExecutor);
+                try (InputStream encoded = process.getInputStream()) {
+                    encoded.transferTo(outputFile != null ? OutputStream.nullOutputStream() : target);
+                }
+                int exitCode = ProcessTree.waitFor(process, processGovernor.getTimeout(ProcessGovernor.FFMPEG));
+                watchdog.checkDeadline();
+                if (feeder != null) {
+                    feeder.join();
+                }
+                stderrReader.join();
+                if (exitCode != 0) {
+                    throw new IOException("ffmpeg failed with exit code " + exitCode + ": " + stderrTail.toString().trim());
+                }
+                if (feedError.get() != null) {
+                    throw feedError.get();
+                }
+                if (outputFile != null) {
+                    Files.copy(outputFile, target);
+                }
+                target.close();
+                progressListener.accept(100);
+                logger.info("Stored " + target.getBytesWritten() + " bytes at " + targetKey);
+                return target.getBytesWritten();
+
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                if (target != null) {
+                    target.abort();
+                }
+                ProcessTree.destroy(process);
+                abortSource.run();
+                throw e;
+            }
+        } finally {
+            if (outputFile != null) {
+                Files.deleteIfExists(outputFile);
+            }
+        }
+    }
+
+    // Copies the source into ffmpeg's stdin, then closes it so ffmpeg sees the end of the input
+    private void feed(InputStream source, OutputStream stdin, long sourceLength, IntConsumer progressListener,
+                      AtomicReference<IOException> feedError) {
+        byte[] buffer = new byte[FEED_BUFFER_BYTES];
+        long fed = 0;
+        int lastPercent = -1;
+        try (InputStream in = source; OutputStream out = stdin) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                fed += read;
+                int percent = (int) Math.min(99, fed * 100 / sourceLength);
+                if (percent != lastPercent) {
+                    progressListener.accept(percent);
+                    lastPercent = percent;
+                }
+            }
+        } catch (IOException e) {
+            // Also what happens when ffmpeg exits early; its exit code is reported first
+            feedError.set(e);
+        }
+    }
+
+    private void collectTail(InputStream stderr, StringBuilder tail) {
+        try (InputStream in = stderr) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                synchronized (tail) {
+                    tail.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+                    if (tail.length() > STDERR_TAIL_CHARS) {
+                        tail.delete(0, tail.length() - STDERR_TAIL_CHARS);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // The process is gone
+        }
+    }
+
+    private void closeQuietly(Closeable stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // Nothing was written through it
+        }
+    }
+
+    private Thread daemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -1,11 +1,16 @@
 package com.BhillionDollarApps.extrack_a_track.services;
 
+import com.BhillionDollarApps.extrack_a_track.audio.WavFile;
+import com.BhillionDollarApps.extrack_a_track.audio.WavProbe;
 import com.BhillionDollarApps.extrack_a_track.config.S3FileDownloader;
 import com.BhillionDollarApps.extrack_a_track.models.Tracks;
+import com.BhillionDollarApps.extrack_a_track.repositories.TrackAnalysisRepository;
 import com.BhillionDollarApps.extrack_a_track.repositories.TracksRepository;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -23,12 +28,20 @@ import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.S3Object;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,6 +55,12 @@ public class TracksService {
     @Autowired
     private TracksRepository tracksRepository;
     @Autowired
+    private TrackAnalysisRepository trackAnalysisRepository;
+    @Autowired
+    private StemAnalysisService stemAnalysisService;
+    @Autowired
+    private SimilarityIndex similarityIndex;
+    @Autowired
     private FileService fileService;
     @Autowired
     private S3Client s3Client; // Use S3Client for AWS SDK v2
@@ -51,8 +70,41 @@ public class TracksService {
 
     private final String BUCKET_NAME = "extract-a-trackbucket"; // Set your bucket name
 
-// Method to upload a file to S3
-    public void uploadTrackToS3(String s3Key, MultipartFile file) {
+    // Audio a user may store in total, counted from the durations recorded at upload; 0 means no limit
+    @Value("${uploads.max-audio-minutes:0}")
+    private long maxAudioMinutes;
+
+// Reads the header of an uploaded WAV and records its format on the track. Throws IOException, with a message
+// fit for the user, when the file is not a usable WAV; only the first few KB are read either way.
+    public WavProbe.Info probeWav(Tracks track, MultipartFile file) throws IOException {
+        WavProbe.Info info;
+        try (InputStream in = file.getInputStream()) {
+            info = WavProbe.probe(in, file.getSize());
+        }
+        track.setSampleRate(info.getSampleRate());
+        track.setChannels(info.getChannels());
+        track.setBitDepth(info.getBitsPerSample());
+        track.setDurationSeconds(info.getDurationSeconds());
+
+        logger.info("WAV upload " + file.getOriginalFilename() + ": " + info.getChannels() + " ch, " + info.getSampleRate()
+                + " Hz, " + info.getBitsPerSample() + " bit" + (info.getFormatTag() == WavFile.FORMAT_IEEE_FLOAT ? " float" : "")
+                + (info.isRf64() ? ", RF64" : "") + ", " + String.format("%.1f", info.getDurationSeconds()) + " s"
+                + (info.getBext() != null ? ", BWF from " + info.getBext().getOriginator() : ""));
+        return info;
+    }
+
+// Whether the user can store addedSeconds more audio; replacedTrackId is the track being replaced, if any
+    public boolean isWithinAudioQuota(Long userId, Long replacedTrackId, double addedSeconds) {
+        if (maxAudioMinutes <= 0) {
+            return true;
+        }
+        double storedSeconds = tracksRepository.sumDurationSecondsByUserIdExcluding(userId,
+                replacedTrackId != null ? replacedTrackId : -1L);
+        return storedSeconds + addedSeconds <= maxAudioMinutes * 60.0;
+    }
+
+// Method to upload a file to S3, returns the SHA-256 of the uploaded content
+    public String uploadTrackToS3(String s3Key, MultipartFile file) {
         // Validate input
         if (s3Key == null || s3Key.trim().isEmpty()) {
             throw new IllegalArgumentException("S3 key cannot be null or empty.");
@@ -60,23 +112,20 @@ public class TracksService {
         if (file == null || file.isEmpty()) {
             throw new IllegalArgumentException("File cannot be null or empty.");
         }
-        if (!"audio/wav".equalsIgnoreCase(file.getContentType())) {
-            throw new IllegalArgumentException("Only WAV files are allowed for upload.");
-        }
-
         try {
             // Prepare the S3 upload request
             PutObjectRequest request = PutObjectRequest.builder()
                     .bucket(BUCKET_NAME)
                     .key(s3Key)
-                    .contentType(file.getContentType())
+                    .contentType("audio/wav")
                     .build();
 
-            // Perform the upload
-            s3Client.putObject(request, RequestBody.fromBytes(file.getBytes()));
+            // Stream the upload, fingerprinting the content on the way through
+            String contentHash = putObjectWithSha256(request, file::getInputStream, file.getSize());
 
             // Log the successful upload
-            logger.info("File uploaded successfully to S3. Key: " + s3Key);
+            logger.info("File uploaded successfully to S3. Key: " + s3Key + ", SHA-256: " + contentHash);
+            return contentHash;
 
         } catch (Exception e) {
             // Log the error and rethrow as a runtime exception
@@ -85,23 +134,43 @@ public class TracksService {
         }
     }
     
-// Method to upload a file to S3
-    public void uploadTrackToS3(String bucketName, String s3Key, String filePath) {
+// Method to upload a file to S3, returns the SHA-256 of the uploaded content
+    public String uploadTrackToS3(String bucketName, String s3Key, String filePath) {
     	try {
     		File file = new File(filePath);
-    		s3Client.putObject(PutObjectRequest.builder()
+    		String contentHash = putObjectWithSha256(PutObjectRequest.builder()
     				.bucket(bucketName)
     				.key(s3Key)
     				.build(),
-    				RequestBody.fromFile(file));
+    				() -> new FileInputStream(file), file.length());
     		
     		System.out.println("File uploaded to S3 with key: " + s3Key);
+    		return contentHash;
     	} catch (Exception e) {
     		System.err.println("Failed to upload file to S3: " + e.getMessage());
     		throw new RuntimeException("S3 upload failed", e);
     	}
     }
 
+// Streams content to S3 while computing its SHA-256, so the fingerprint costs no extra pass over the file
+    private String putObjectWithSha256(PutObjectRequest request, Callable<InputStream> content, long contentLength) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (CountingInputStream in = new CountingInputStream(new DigestInputStream(content.call(), digest))) {
+            s3Client.putObject(request, RequestBody.fromInputStream(in, contentLength));
+
+            // A retried request re-reads the stream, which would corrupt the digest; hash again in that case
+            if (in.getByteCount() == contentLength) {
+                return HexFormat.of().formatHex(digest.digest());
+            }
+        }
+        logger.info("Upload stream was re-read for " + request.key() + ", recomputing the content hash.");
+        digest.reset();
+        try (InputStream in = new DigestInputStream(content.call(), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
 // Save a new track with metadata
     public Tracks saveTrack(Tracks track) {
         // Validate track fields
@@ -350,7 +419,10 @@ public class TracksService {
                 // Delete the S3 folder
                 deleteS3Folder(BUCKET_NAME, folderPrefix);
 
-                // Delete the track record from the database
+                // Delete the track record and its analysis from the database
+                trackAnalysisRepository.deleteById(id);
+                stemAnalysisService.deleteByTrackId(id);
+                similarityIndex.remove(id);
                 tracksRepository.deleteById(id);
                 logger.info("Track deleted successfully with ID: " + id);
             } else {
@@ -0,0 +1,329 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.BhillionDollarApps.extrack_a_track.audio.TranscodeProfile;
+import com.BhillionDollarApps.extrack_a_track.audio.WavProbe;
+import com.BhillionDollarApps.extrack_a_track.models.PipelineStage;
+import com.BhillionDollarApps.extrack_a_track.models.TrackAnalysis;
+import com.BhillionDollarApps.extrack_a_track.models.Tracks;
+import com.BhillionDollarApps.extrack_a_track.repositories.PipelineStageRepository;
+import com.BhillionDollarApps.extrack_a_track.repositories.TrackAnalysisRepository;
+import com.BhillionDollarApps.extrack_a_track.repositories.TracksRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Builds everything derived from an upload (waveform, MP3, analysis, preview, stems) in the background, right after the
+ * WAV reaches S3, from the local copy the upload left behind, so the audio is transferred once.
+ * The stages form a small DAG (see Stage): each one starts when the stages it depends on have completed, so the
+ * independent ones run side by side and the whole run takes about as long as its slowest stage. Each stage's
+ * status is kept in pipeline_stages.
+ *
+ * The stages share one Tracks instance, loaded by PROBE, and change it while holding its lock. They write back
+ * only the columns they own (the MP3 key, the analysis results, the stem keys) with targeted updates, since the
+ * instance is minutes old by the time a stage finishes.
+ */
+@Service
+public class UploadPipelineService {
+
+    private static final Logger logger = Logger.getLogger(UploadPipelineService.class.getName());
+    private static final String BUCKET_NAME = "extract-a-trackbucket";
+
+    /**
+     * The stages in dependency order; a stage lists the stages it needs, and waits only for those that are enabled.
+     * A stage is skipped when one of its dependencies fails, but only waits for its optional dependencies.
+     * PROBE checks the local copy and loads the track, and always runs.
+     */
+    public enum Stage {
+        PROBE,
+        WAVEFORM(PROBE),
+        MP3(PROBE),
+        ANALYSIS(PROBE),
+        // Cut where the analysis found the loudest stretch; without a successful analysis it scans the file for it
+        PREVIEW(List.of(PROBE), List.of(ANALYSIS)),
+        SEPARATION(PROBE);
+
+        private final List<Stage> dependencies;
+        private final List<Stage> optionalDependencies;
+
+        Stage(Stage... dependencies) {
+            this(List.of(dependencies), List.of());
+        }
+
+        Stage(List<Stage> dependencies, List<Stage> optionalDependencies) {
+            this.dependencies = dependencies;
+            this.optionalDependencies = optionalDependencies;
+        }
+
+        public List<Stage> getDependencies() {
+            return dependencies;
+        }
+
+        public List<Stage> getOptionalDependencies() {
+            return optionalDependencies;
+        }
+    }
+
+    @Autowired
+    private TracksRepository tracksRepository;
+
+    @Autowired
+    private TrackAnalysisRepository trackAnalysisRepository;
+
+    @Autowired
+    private PipelineStageRepository pipelineStageRepository;
+
+    @Autowired
+    private WaveformService waveformService;
+
+    @Autowired
+    private StreamingTranscoder streamingTranscoder;
+
+    @Autowired
+    private LibrosaService librosaService;
+
+    @Autowired
+    private SpleeterService spleeterService;
+
+    @Autowired
+    private PreviewService previewService;
+
+    // Comma-separated stages run after each upload besides probe: waveform, mp3, analysis, preview, separation
+    @Value("${pipeline.stages:waveform,mp3,analysis,preview}")
+    private String stageNames;
+
+    @Value("${pipeline.separation-stems:2}")
+    private int separationStems;
+
+    // Stages running at once across all uploads; ffmpeg, librosa and Spleeter are also capped by ProcessGovernor
+    @Value("${pipeline.threads:4}")
+    private int threadCount;
+
+    private Set<Stage> enabledStages;
+    private ExecutorService executor;
+
+    // What one run works on; track is set by PROBE
+    private static final class Run {
+        private final Long trackId;
+        private final Long userId;
+        private final Path wavFile;
+        private final AtomicReference<Tracks> track = new AtomicReference<>();
+
+        Run(Long trackId, Long userId, Path wavFile) {
+            this.trackId = trackId;
+            this.userId = userId;
+            this.wavFile = wavFile;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        enabledStages = EnumSet.of(Stage.PROBE);
+        for (String name : stageNames.split(",")) {
+            if (!name.isBlank()) {
+                enabledStages.add(Stage.valueOf(name.trim().toUpperCase()));
+            }
+        }
+        AtomicInteger threadCounter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, threadCount), runnable -> {
+            Thread thread = new Thread(runnable, "upload-pipeline-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts processing a track whose WAV is in S3. The pipeline takes over wavFile, a local copy of that WAV, and
+     * deletes it when the last stage is done.
+     */
+    public void start(Long trackId, Long userId, Path wavFile) {
+        Run run = new Run(trackId, userId, wavFile);
+        pipelineStageRepository.deleteByTrackId(trackId);
+        Map<Stage, PipelineStage> records = new EnumMap<>(Stage.class);
+        for (Stage stage : enabledStages) {
+            records.put(stage, pipelineStageRepository.save(new PipelineStage(trackId, stage.name().toLowerCase())));
+        }
+
+        long startedAt = System.currentTimeMillis();
+        Map<Stage, CompletableFuture<Boolean>> outcomes = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            if (!enabledStages.contains(stage)) {
+                continue;
+            }
+            List<CompletableFuture<Boolean>> dependencies = new ArrayList<>();
+            for (Stage dependency : stage.getDependencies()) {
+                if (outcomes.containsKey(dependency)) {
+                    dependencies.add(outcomes.get(dependency));
+                }
+            }
+            List<CompletableFuture<Boolean>> awaited = new ArrayList<>(dependencies);
+            for (Stage dependency : stage.getOptionalDependencies()) {
+                if (outcomes.containsKey(dependency)) {
+                    awaited.add(outcomes.get(dependency));
+                }
+            }
+            outcomes.put(stage, CompletableFuture.allOf(awaited.toArray(new CompletableFuture[0]))
+                    .thenApplyAsync(ignored -> {
+                        if (!dependencies.stream().allMatch(CompletableFuture::join)) {
+                            finish(records.get(stage), PipelineStage.SKIPPED, null);
+                            return false;
+                        }
+                        return runStage(stage, run, records.get(stage));
+                    }, executor));
+        }
+
+        CompletableFuture.allOf(outcomes.values().toArray(new CompletableFuture[0])).whenComplete((ignored, error) -> {
+            try {
+                Files.deleteIfExists(wavFile);
+            } catch (IOException e) {
+                logger.warning("Could not delete pipeline copy " + wavFile + ": " + e.getMessage());
+            }
+            logger.info("Upload pipeline for track ID " + trackId + " finished in " + (System.currentTimeMillis() - startedAt) + " ms");
+        });
+    }
+
+    /**
+     * Same as above from an upload still held by the request: it is copied to a temp file first, since the
+     * request's own copy goes away with the request. Failing to start only costs the derived files, which the
+     * track page can still produce one by one, so this logs instead of throwing.
+     */
+    public void startFromUpload(Long trackId, Long userId, MultipartFile upload) {
+        try {
+            Path wavFile = Files.createTempFile("upload-" + trackId + "-", ".wav");
+            try (InputStream in = upload.getInputStream()) {
+                Files.copy(in, wavFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            start(trackId, userId, wavFile);
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.SEVERE, "Could not start the upload pipeline for track ID " + trackId, e);
+        }
+    }
+
+    public List<PipelineStage> getStages(Long trackId) {
+        return pipelineStageRepository.findByTrackIdOrderById(trackId);
+    }
+
+    public void deleteStages(Long trackId) {
+        pipelineStageRepository.deleteByTrackId(trackId);
+    }
+
+    private boolean runStage(Stage stage, Run run, PipelineStage record) {
+        record.setStatus(PipelineStage.RUNNING);
+        record.setStartedAt(new Date());
+        pipelineStageRepository.save(record);
+        try {
+            switch (stage) {
+                case PROBE: probe(run); break;
+                case WAVEFORM: waveform(run); break;
+                case MP3: mp3(run); break;
+                case ANALYSIS: analyze(run); break;
+                case PREVIEW: preview(run); break;
+                case SEPARATION: separate(run); break;
+            }
+            finish(record, PipelineStage.COMPLETED, null);
+            return true;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Upload pipeline stage " + stage + " failed for track ID " + run.trackId, e);
+            finish(record, PipelineStage.FAILED, e.getMessage() != null ? e.getMessage() : e.toString());
+            return false;
+        }
+    }
+
+    private void finish(PipelineStage record, String status, String error) {
+        record.setStatus(status);
+        record.setError(error != null && error.length() > 1000 ? error.substring(0, 1000) : error);
+        record.setFinishedAt(new Date());
+        pipelineStageRepository.save(record);
+    }
+
+    // Checks that the local copy is the WAV that was accepted, and loads the instance the other stages share
+    private void probe(Run run) throws IOException {
+        try (InputStream in = Files.newInputStream(run.wavFile)) {
+            WavProbe.probe(in, Files.size(run.wavFile));
+        }
+        Tracks track = tracksRepository.findById(run.trackId)
+                .orElseThrow(() -> new IllegalStateException("Track " + run.trackId + " no longer exists."));
+        if (track.getS3Key() == null) {
+            throw new IllegalStateException("Track " + run.trackId + " has no WAV in S3.");
+        }
+        run.track.set(track);
+    }
+
+    private void waveform(Run run) throws Exception {
+        waveformService.generate(run.track.get().getS3Key(), () -> Files.newInputStream(run.wavFile));
+    }
+
+    private void mp3(Run run) throws IOException, InterruptedException {
+        Tracks track = run.track.get();
+        String s3Key = track.getS3Key();
+        String mp3S3Key = s3Key.substring(0, s3Key.lastIndexOf("/original/")) + "/mp3/"
+                + track.getFileName().replace(".wav", ".mp3");
+        streamingTranscoder.transcode(run.wavFile, BUCKET_NAME, mp3S3Key, TranscodeProfile.MP3_192, percent -> {});
+        synchronized (track) {
+            track.setMp3S3Key(mp3S3Key);
+            tracksRepository.updateMp3S3Key(track.getId(), mp3S3Key);
+        }
+    }
+
+    // Analyzes into a scratch instance, so the shared one only changes while locked
+    private void analyze(Run run) {
+        Tracks track = run.track.get();
+        Tracks results = new Tracks();
+        results.setId(track.getId());
+        TrackAnalysis analysis = librosaService.analyzeLocalFile(run.wavFile.toString(), results, (stage, percent) -> {});
+        synchronized (track) {
+            track.setTempo(results.getTempo());
+            track.setSpectralCentroid(results.getSpectralCentroid());
+            track.setRms(results.getRms());
+            track.setSongKey(results.getSongKey());
+            track.setPreviewStartSeconds(results.getPreviewStartSeconds());
+            tracksRepository.updateAnalysis(track.getId(), track.getTempo(), track.getSpectralCentroid(), track.getRms(),
+                    track.getSongKey(), track.getPreviewStartSeconds());
+        }
+        trackAnalysisRepository.save(analysis);
+    }
+
+    // Runs after the analysis whether or not it succeeded; previewStartSeconds stays null if it did not
+    private void preview(Run run) throws IOException, InterruptedException {
+        Tracks track = run.track.get();
+        Double startSeconds;
+        synchronized (track) {
+            startSeconds = track.getPreviewStartSeconds();
+        }
+        previewService.generate(track, PreviewService.ORIGINAL, run.wavFile, startSeconds);
+    }
+
+    private void separate(Run run) throws Exception {
+        spleeterService.separateLocalCopyToS3(run.track.get(), separationStems, run.userId, run.wavFile, percent -> {});
+    }
+}
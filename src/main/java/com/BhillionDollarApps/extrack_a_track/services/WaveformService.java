@@ -0,0 +1,96 @@
+package com.BhillionDollarApps.extrack_a_track.services;
+
+import com.BhillionDollarApps.extrack_a_track.audio.WaveformPeaks;
+import com.BhillionDollarApps.extrack_a_track.models.Tracks;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Waveform peaks of a track (see WaveformPeaks), stored as a small S3 object in the track folder next to original/,
+ * so the track page can draw a waveform from a few kilobytes instead of the whole WAV.
+ */
+@Service
+public class WaveformService {
+
+    private static final Logger logger = Logger.getLogger(WaveformService.class.getName());
+    private static final String BUCKET_NAME = "extract-a-trackbucket";
+
+    @Autowired
+    private S3Client s3Client;
+
+    // Samples per peak bucket at each zoom level, finest first
+    @Value("${waveform.levels:256,1024,4096}")
+    private int[] levels;
+
+    /**
+     * S3 key of the peaks object of a track, e.g. user-uploads/1/song/waveform/peaks.bin for .../song/original/song.wav.
+     */
+    public String getPeaksKey(String wavS3Key) {
+        return wavS3Key.substring(0, wavS3Key.lastIndexOf("/original/")) + "/waveform/peaks.bin";
+    }
+
+    /**
+     * Builds the peaks from WAV content (e.g. the uploaded file) in one pass and stores them in S3.
+     */
+    public byte[] generate(String wavS3Key, Callable<InputStream> wavContent) throws Exception {
+        byte[] peaks;
+        try (InputStream in = new BufferedInputStream(wavContent.call(), 1 << 16)) {
+            peaks = WaveformPeaks.build(in, levels).toBytes();
+        }
+        s3Client.putObject(PutObjectRequest.builder()
+                .bucket(BUCKET_NAME)
+                .key(getPeaksKey(wavS3Key))
+                .contentType("application/octet-stream")
+                .build(), RequestBody.fromBytes(peaks));
+        logger.info("Stored " + peaks.length + " bytes of waveform peaks for " + wavS3Key);
+        return peaks;
+    }
+
+    /**
+     * Same as above, logging instead of failing: a missing waveform is rebuilt the first time it is requested.
+     */
+    public void generateQuietly(String wavS3Key, Callable<InputStream> wavContent) {
+        try {
+            generate(wavS3Key, wavContent);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to build waveform peaks for " + wavS3Key, e);
+        }
+    }
+
+    /**
+     * The track's peaks, built from the WAV in S3 if they were never stored (tracks uploaded before waveforms).
+     */
+    public byte[] getPeaks(Tracks track) throws Exception {
+        String wavS3Key = track.getS3Key();
+        try {
+            return s3Client.getObjectAsBytes(GetObjectRequest.builder()
+                    .bucket(BUCKET_NAME)
+                    .key(getPeaksKey(wavS3Key))
+                    .build()).asByteArray();
+        } catch (NoSuchKeyException e) {
+            logger.info("No waveform peaks stored for " + wavS3Key + ", building them from the WAV.");
+            return generate(wavS3Key, () -> openWav(wavS3Key));
+        }
+    }
+
+    private ResponseInputStream<GetObjectResponse> openWav(String wavS3Key) {
+        return s3Client.getObject(GetObjectRequest.builder()
+                .bucket(BUCKET_NAME)
+                .key(wavS3Key)
+                .build());
+    }
+}
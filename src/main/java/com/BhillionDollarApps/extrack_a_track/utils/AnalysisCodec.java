@@ -0,0 +1,83 @@
+package com.BhillionDollarApps.extrack_a_track.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Binary encodings for the per-track analysis arrays stored in track_analysis.
+ * Float vectors are plain little-endian float32, so they can be read through a FloatBuffer view of the blob
+ * without copying or boxing. Beat frames are increasing integers, so they are stored as zigzag varint deltas,
+ * which takes one or two bytes per beat instead of four.
+ */
+public final class AnalysisCodec {
+
+    private static final FloatBuffer EMPTY_FLOATS = FloatBuffer.allocate(0).asReadOnlyBuffer();
+
+    private AnalysisCodec() {}
+
+    public static byte[] encodeFloats(float[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(values);
+        return buffer.array();
+    }
+
+    /**
+     * Read-only view of a blob written by encodeFloats; empty when the blob is null.
+     */
+    public static FloatBuffer floatView(byte[] blob) {
+        if (blob == null || blob.length == 0) {
+            return EMPTY_FLOATS;
+        }
+        if (blob.length % Float.BYTES != 0) {
+            throw new IllegalArgumentException("Float blob length is not a multiple of 4: " + blob.length);
+        }
+        return ByteBuffer.wrap(blob).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().asReadOnlyBuffer();
+    }
+
+    public static byte[] encodeBeatFrames(int[] frames) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(frames.length * 2);
+        int previous = 0;
+        for (int frame : frames) {
+            int delta = frame - previous;
+            previous = frame;
+            // Zigzag keeps an out-of-order frame from costing five bytes
+            int value = (delta << 1) ^ (delta >> 31);
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+        return out.toByteArray();
+    }
+
+    public static int[] decodeBeatFrames(byte[] blob) {
+        if (blob == null || blob.length == 0) {
+            return new int[0];
+        }
+        // Every value ends in a byte without the continuation bit, so the blob length bounds the count
+        int[] frames = new int[blob.length];
+        int count = 0;
+        int previous = 0;
+        int position = 0;
+        while (position < blob.length) {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (position == blob.length || shift > 28) {
+                    throw new IllegalArgumentException("Malformed beat frame blob at byte " + position);
+                }
+                b = blob[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            previous += (value >>> 1) ^ -(value & 1);
+            frames[count++] = previous;
+        }
+        return Arrays.copyOf(frames, count);
+    }
+}
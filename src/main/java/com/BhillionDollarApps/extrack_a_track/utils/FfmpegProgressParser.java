@@ -0,0 +1,49 @@
+package com.BhillionDollarApps.extrack_a_track.utils;
+
+import java.util.OptionalInt;
+
+/**
+ * Turns the key=value lines ffmpeg writes with "-progress pipe:1" into a completion percentage.
+ */
+public class FfmpegProgressParser {
+
+    private final long totalMicros;
+
+    /**
+     * @param durationSeconds length of the input, used as 100%
+     */
+    public FfmpegProgressParser(double durationSeconds) {
+        this.totalMicros = (long) (durationSeconds * 1_000_000);
+    }
+
+    /**
+     * Percentage reported by this line, or empty if the line carries no position.
+     */
+    public OptionalInt parse(String line) {
+        if (line == null) {
+            return OptionalInt.empty();
+        }
+        if (line.equals("progress=end")) {
+            return OptionalInt.of(100);
+        }
+
+        // out_time_ms is in microseconds as well, despite its name
+        String value = null;
+        if (line.startsWith("out_time_us=")) {
+            value = line.substring("out_time_us=".length());
+        } else if (line.startsWith("out_time_ms=")) {
+            value = line.substring("out_time_ms=".length());
+        }
+        if (value == null || totalMicros <= 0) {
+            return OptionalInt.empty();
+        }
+
+        try {
+            long position = Long.parseLong(value.trim());
+            return OptionalInt.of((int) Math.max(0, Math.min(99, position * 100 / totalMicros)));
+        } catch (NumberFormatException e) {
+            // "N/A" before the first frame is decoded
+            return OptionalInt.empty();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.BhillionDollarApps.extrack_a_track.utils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Kills external processes together with everything they spawned, and enforces wall-clock deadlines on them.
+ * Destroying only the direct child is not enough for "bash -c ..." commands: the shell dies and ffmpeg or
+ * Python keeps running as an orphan.
+ */
+public final class ProcessTree {
+
+    private static final Logger logger = Logger.getLogger(ProcessTree.class.getName());
+    private static final Duration GRACE_PERIOD = Duration.ofSeconds(3);
+
+    private static final ScheduledExecutorService watchdogs = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "process-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ProcessTree() {}
+
+    /**
+     * Asks the process and all of its descendants to exit, then force-kills whatever is left after a grace period.
+     */
+    public static void destroy(ProcessHandle root) {
+        // Collect the tree first: once the root is gone its children are re-parented and can't be found from it
+        List<ProcessHandle> tree = root.descendants().collect(Collectors.toList());
+        tree.add(root);
+
+        tree.forEach(ProcessHandle::destroy);
+        long deadline = System.nanoTime() + GRACE_PERIOD.toNanos();
+        for (ProcessHandle handle : tree) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0) {
+                try {
+                    handle.onExit().get(remaining, TimeUnit.NANOSECONDS);
+                } catch (Exception e) {
+                    // Still running after the grace period; killed below
+                }
+            }
+        }
+        tree.stream().filter(ProcessHandle::isAlive).forEach(ProcessHandle::destroyForcibly);
+    }
+
+    public static void destroy(Process process) {
+        destroy(process.toHandle());
+    }
+
+    /**
+     * Waits for the process to exit. On timeout or interruption the whole tree is killed.
+     * @throws IOException if the deadline passed
+     */
+    public static int waitFor(Process process, Duration timeout) throws IOException, InterruptedException {
+        try {
+            if (!process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                destroy(process);
+                throw new IOException("Process " + process.pid() + " timed out after " + timeout.toSeconds() + "s and was killed.");
+            }
+            return process.exitValue();
+        } catch (InterruptedException e) {
+            destroy(process);
+            throw e;
+        }
+    }
+
+    /**
+     * Kills the process tree when the deadline passes. For callers that block reading the process output,
+     * where waitFor with a timeout is never reached: killing the process closes the pipe and unblocks them.
+     */
+    public static Watchdog watch(Process process, Duration timeout) {
+        return new Watchdog(process, timeout);
+    }
+
+    public static final class Watchdog implements AutoCloseable {
+        private final Process process;
+        private final Duration timeout;
+        private final ScheduledFuture<?> kill;
+        private volatile boolean fired;
+
+        private Watchdog(Process process, Duration timeout) {
+            this.process = process;
+            this.timeout = timeout;
+            this.kill = watchdogs.schedule(() -> {
+                fired = true;
+                logger.warning("Process " + process.pid() + " exceeded its " + timeout.toSeconds() + "s deadline, killing it.");
+                destroy(process);
+            }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Throws if the deadline killed the process, so the caller doesn't mistake it for an ordinary failure.
+         */
+        public void checkDeadline() throws IOException {
+            if (fired) {
+                throw new IOException("Process " + process.pid() + " timed out after " + timeout.toSeconds() + "s and was killed.");
+            }
+        }
+
+        @Override
+        public void close() {
+            kill.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.BhillionDollarApps.extrack_a_track.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A long-lived Python process that speaks newline-delimited JSON over stdin/stdout.
+ *
+ * Each request is a single JSON object with an "id". The worker may emit any number of
+ * event lines ({"event": ...}) before the final response line carrying the same "id" and a "status".
+ * The worker announces itself with {"event": "ready"} once its models are loaded.
+ */
+public class PythonWorkerProcess {
+
+    private static final Logger logger = Logger.getLogger(PythonWorkerProcess.class.getName());
+    private static final Map<String, Object> EOF = Map.of("event", "eof");
+
+    private final String name;
+    private final List<String> command;
+    private final File workingDirectory;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BlockingQueue<Map<String, Object>> messages = new LinkedBlockingQueue<>();
+
+    private Process process;
+    private BufferedWriter stdin;
+
+    public PythonWorkerProcess(String name, List<String> command, File workingDirectory) {
+        this.name = name;
+        this.command = command;
+        this.workingDirectory = workingDirectory;
+    }
+
+// Starts the process and blocks until the worker reports it is ready
+    public void start(Duration startupTimeout) throws IOException, InterruptedException {
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        if (workingDirectory != null) {
+            processBuilder.directory(workingDirectory);
+        }
+        process = processBuilder.start();
+        stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+
+        startDaemon(name + "-stdout", this::readProtocol);
+        startDaemon(name + "-stderr", this::drainStderr);
+
+        Map<String, Object> ready = messages.poll(startupTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        if (ready == null || !"ready".equals(ready.get("event"))) {
+            destroy();
+            throw new IOException("Worker " + name + " did not become ready within " + startupTimeout.toSeconds() + "s.");
+        }
+        logger.info("Worker " + name + " is ready (pid " + process.pid() + ").");
+    }
+
+// Sends a request and waits for its response, forwarding intermediate events to the listener
+    public synchronized Map<String, Object> request(Map<String, Object> payload,
+                                                    Consumer<Map<String, Object>> eventListener,
+                                                    Duration timeout) throws IOException, InterruptedException {
+        if (!isAlive()) {
+            throw new IOException("Worker " + name + " is not running.");
+        }
+
+        String requestId = UUID.randomUUID().toString();
+        Map<String, Object> message = new HashMap<>(payload);
+        message.put("id", requestId);
+
+        messages.clear();
+        stdin.write(objectMapper.writeValueAsString(message));
+        stdin.newLine();
+        stdin.flush();
+
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            Map<String, Object> response;
+            try {
+                response = remaining > 0 ? messages.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            } catch (InterruptedException e) {
+                // The caller gave up (job cancelled): the worker is still busy with this request, so it can't be reused
+                destroy();
+                throw e;
+            }
+            if (response == null) {
+                destroy();
+                throw new IOException("Worker " + name + " timed out after " + timeout.toSeconds() + "s.");
+            }
+            if (response == EOF) {
+                throw new IOException("Worker " + name + " exited while processing a request.");
+            }
+            if (response.containsKey("event")) {
+                if (eventListener != null) {
+                    eventListener.accept(response);
+                }
+                continue;
+            }
+            if (requestId.equals(response.get("id"))) {
+                if ("error".equals(response.get("status"))) {
+                    throw new IOException("Worker " + name + " failed: " + response.get("error"));
+                }
+                return response;
+            }
+            logger.warning("Worker " + name + " sent an unexpected message: " + response);
+        }
+    }
+
+// Health check: the worker must answer a ping within the timeout
+    public boolean ping(Duration timeout) {
+        try {
+            return "pong".equals(request(Map.of("cmd", "ping"), null, timeout).get("status"));
+        } catch (Exception e) {
+            logger.warning("Health check failed for worker " + name + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public boolean isAlive() {
+        return process != null && process.isAlive();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+// Kills the worker and anything it spawned
+    public void destroy() {
+        if (process == null) {
+            return;
+        }
+        ProcessTree.destroy(process);
+    }
+
+    private void readProtocol() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    messages.put(objectMapper.readValue(line, Map.class));
+                } catch (IOException e) {
+                    logger.warning("Worker " + name + " wrote a non-JSON line: " + line);
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Worker " + name + " stdout closed.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            messages.offer(EOF);
+        }
+    }
+
+    private void drainStderr() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                logger.fine(name + ": " + line);
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Worker " + name + " stderr closed.", e);
+        }
+    }
+
+    private void startDaemon(String threadName, Runnable task) {
+        Thread thread = new Thread(task, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
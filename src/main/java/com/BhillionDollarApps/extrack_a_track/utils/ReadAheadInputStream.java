@@ -0,0 +1,140 @@
+package com.BhillionDollarApps.extrack_a_track.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Reads a slow source (e.g. an S3 object body) on a background thread into a small bounded queue of chunks,
+ * so the network transfer keeps going while the consumer is busy processing the previous chunk.
+ * Memory is bounded by the queue: at most chunkCount chunks are buffered ahead of the reader.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    private static final byte[] EOF = new byte[0];
+
+    private final InputStream source;
+    private final BlockingQueue<byte[]> chunks;
+    private final Thread reader;
+    private final LongConsumer progressListener;
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    private byte[] current = new byte[0];
+    private int position;
+    private long consumed;
+    private boolean finished;
+
+    public ReadAheadInputStream(InputStream source, int chunkSize, int chunkCount, String threadName) {
+        this(source, chunkSize, chunkCount, threadName, bytes -> {});
+    }
+
+    /**
+     * @param progressListener called with the total number of bytes handed to the consumer so far
+     */
+    public ReadAheadInputStream(InputStream source, int chunkSize, int chunkCount, String threadName,
+                                LongConsumer progressListener) {
+        this.source = source;
+        this.chunks = new ArrayBlockingQueue<>(chunkCount);
+        this.progressListener = progressListener;
+        this.reader = new Thread(() -> readAhead(chunkSize), threadName);
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    private void readAhead(int chunkSize) {
+        try {
+            while (!closed) {
+                byte[] chunk = new byte[chunkSize];
+                int read = source.readNBytes(chunk, 0, chunkSize);
+                if (read == 0) {
+                    break;
+                }
+                chunks.put(read == chunkSize ? chunk : Arrays.copyOf(chunk, read));
+                if (read < chunkSize) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            chunks.put(EOF);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        consumed++;
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, count);
+        position += count;
+        consumed += count;
+        progressListener.accept(consumed);
+        return count;
+    }
+
+    // Makes sure the current chunk has unread bytes; false at the end of the stream
+    private boolean fill() throws IOException {
+        while (position == current.length) {
+            if (finished) {
+                return false;
+            }
+            byte[] next;
+            try {
+                next = chunks.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for data.");
+            }
+            if (next == null) {
+                if (!reader.isAlive() && chunks.isEmpty()) {
+                    finished = true;
+                }
+                continue;
+            }
+            if (next == EOF) {
+                finished = true;
+                if (failure != null) {
+                    throw failure;
+                }
+                return false;
+            }
+            current = next;
+            position = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        reader.interrupt();
+        chunks.clear();
+        source.close();
+    }
+}
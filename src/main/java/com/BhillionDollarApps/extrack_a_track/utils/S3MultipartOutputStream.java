@@ -0,0 +1,196 @@
+package com.BhillionDollarApps.extrack_a_track.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Writes an S3 object of unknown length as a multipart upload: bytes fill a part buffer, and each full part is
+ * uploaded on the given executor while the writer fills the next one. Only a fixed set of part buffers exists,
+ * so a writer that outpaces S3 blocks instead of buffering more; memory stays at (partsInFlight + 1) parts.
+ *
+ * close() uploads the last part and completes the object; abort() (or any failed part) discards the upload, so
+ * a half-written object never appears under the key.
+ */
+public class S3MultipartOutputStream extends OutputStream {
+
+    // S3's minimum size for every part but the last
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private static final Logger logger = Logger.getLogger(S3MultipartOutputStream.class.getName());
+
+    private final S3Client s3Client;
+    private final String bucket;
+    private final String key;
+    private final String uploadId;
+    private final Executor executor;
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+    private byte[] buffer;
+    private int count;
+    private long bytesWritten;
+    private boolean closed;
+
+    public S3MultipartOutputStream(S3Client s3Client, String bucket, String key, String contentType,
+                                   int partSize, int partsInFlight, Executor executor) {
+        if (partSize < MIN_PART_SIZE) {
+            throw new IllegalArgumentException("Parts must be at least " + MIN_PART_SIZE + " bytes");
+        }
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.key = key;
+        this.executor = executor;
+        this.freeBuffers = new ArrayBlockingQueue<>(partsInFlight + 1);
+        for (int i = 0; i <= partsInFlight; i++) {
+            freeBuffers.add(new byte[partSize]);
+        }
+        this.buffer = freeBuffers.poll();
+        this.uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .contentType(contentType)
+                .build()).uploadId();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) {
+            sendPart();
+        }
+        buffer[count++] = (byte) b;
+        bytesWritten++;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (count == buffer.length) {
+                sendPart();
+            }
+            int chunk = Math.min(length, buffer.length - count);
+            System.arraycopy(bytes, offset, buffer, count, chunk);
+            count += chunk;
+            offset += chunk;
+            length -= chunk;
+            bytesWritten += chunk;
+        }
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Uploads the last part and completes the object. Throws, after aborting the upload, if any part failed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (count > 0 || parts.isEmpty()) {
+            sendPart();
+        }
+        List<CompletedPart> completed = new ArrayList<>(parts.size());
+        try {
+            for (CompletableFuture<CompletedPart> part : parts) {
+                completed.add(part.join());
+            }
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completed).build())
+                    .build());
+        } catch (CompletionException e) {
+            abort();
+            throw new IOException("Failed to upload a part of s3://" + bucket + "/" + key, e.getCause());
+        } catch (RuntimeException e) {
+            abort();
+            throw new IOException("Failed to complete the upload of s3://" + bucket + "/" + key, e);
+        }
+        closed = true;
+    }
+
+    /**
+     * Discards the upload and every part sent so far. Safe to call more than once and after a failed close.
+     */
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        parts.forEach(part -> part.cancel(true));
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (RuntimeException e) {
+            // S3 drops the parts of an abandoned upload after the bucket's lifecycle period anyway
+            logger.log(Level.WARNING, "Failed to abort multipart upload of s3://" + bucket + "/" + key, e);
+        }
+    }
+
+    // Hands the current buffer to an upload and takes the next free one, waiting while all are in flight
+    private void sendPart() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        for (CompletableFuture<CompletedPart> part : parts) {
+            if (part.isCompletedExceptionally()) {
+                try {
+                    part.join();
+                } catch (CompletionException e) {
+                    abort();
+                    throw new IOException("Failed to upload a part of s3://" + bucket + "/" + key, e.getCause());
+                }
+            }
+        }
+
+        byte[] full = buffer;
+        int length = count;
+        int partNumber = parts.size() + 1;
+        parts.add(CompletableFuture.supplyAsync(() -> uploadPart(partNumber, full, length), executor)
+                .whenComplete((part, error) -> freeBuffers.add(full)));
+        try {
+            buffer = freeBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+            throw new InterruptedIOException("Interrupted while waiting for a part upload");
+        }
+        count = 0;
+    }
+
+    private CompletedPart uploadPart(int partNumber, byte[] bytes, int length) {
+        String eTag = s3Client.uploadPart(UploadPartRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength((long) length)
+                .build(), RequestBody.fromInputStream(new ByteArrayInputStream(bytes, 0, length), length)).eTag();
+        return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+    }
+}
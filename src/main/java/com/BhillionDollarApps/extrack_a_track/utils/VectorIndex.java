@@ -0,0 +1,428 @@
+package com.BhillionDollarApps.extrack_a_track.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * k-nearest-neighbour index over unit-length float vectors, scored by cosine similarity (their dot product).
+ *
+ * Vectors are rows of one direct (off-heap) float buffer, so a large index adds no garbage-collected objects per
+ * vector. Below graphThreshold live vectors a query is an exact scan of all rows; from then on an HNSW graph
+ * (hierarchical navigable small world, Malkov and Yashunin) is kept next to the rows and queries visit only a
+ * few hundred of them. A query restricted to one owner's vectors scans when that owner has only a small share
+ * of the index, since the graph would mostly visit other owners' rows.
+ *
+ * Replacing or removing a vector leaves a tombstone: the row stays in the graph for navigation but is never
+ * returned. When tombstones outnumber live rows, the rows and the graph are rebuilt without them.
+ * Not thread-safe; callers serialize writes against reads.
+ */
+public final class VectorIndex {
+
+    // Graph links per node on the upper layers, and on layer 0 where every node lives
+    private static final int M = 16;
+    private static final int M0 = 2 * M;
+    private static final int EF_CONSTRUCTION = 100;
+    private static final int EF_SEARCH = 64;
+    private static final double LEVEL_MULTIPLIER = 1 / Math.log(M);
+    private static final int INITIAL_ROWS = 256;
+    // An owner-filtered query scans instead when the owner has less than this share of the vectors
+    private static final int SCAN_FRACTION = 8;
+
+    private final int dimension;
+    private final int graphThreshold;
+    private final Random random = new Random(42);
+
+    private FloatBuffer vectors;
+    private long[] ids;
+    private long[] owners;
+    private final BitSet deleted = new BitSet();
+    private final Map<Long, Integer> rowById = new HashMap<>();
+    private final Map<Long, Integer> liveByOwner = new HashMap<>();
+    private int rows;
+
+    // links[row][layer] = {count, neighbour rows...}; null until the graph is built
+    private int[][][] links;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    /**
+     * A result: the id a vector was stored under and its cosine similarity to the query.
+     */
+    public static final class Match {
+        private final long id;
+        private final float score;
+
+        Match(long id, float score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        public long getId() { return id; }
+        public float getScore() { return score; }
+    }
+
+    // A row and its distance (1 - similarity) to the vector being searched or inserted
+    private static final class Candidate {
+        private final int row;
+        private final float distance;
+
+        Candidate(int row, float distance) {
+            this.row = row;
+            this.distance = distance;
+        }
+    }
+
+    private static final Comparator<Candidate> NEAREST_FIRST = Comparator.comparingDouble(c -> c.distance);
+    private static final Comparator<Candidate> FARTHEST_FIRST = NEAREST_FIRST.reversed();
+
+    public VectorIndex(int dimension, int graphThreshold) {
+        this.dimension = dimension;
+        this.graphThreshold = graphThreshold;
+        this.vectors = ByteBuffer.allocateDirect(INITIAL_ROWS * dimension * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        this.ids = new long[INITIAL_ROWS];
+        this.owners = new long[INITIAL_ROWS];
+    }
+
+    public int size() {
+        return rowById.size();
+    }
+
+    public boolean hasGraph() {
+        return links != null;
+    }
+
+    public boolean contains(long id) {
+        return rowById.containsKey(id);
+    }
+
+    /**
+     * Adds the vector of an id, replacing any earlier one. The vector must be unit length.
+     */
+    public void put(long id, long owner, float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected a vector of " + dimension + " values but got " + vector.length);
+        }
+        Integer previous = rowById.remove(id);
+        if (previous != null) {
+            delete(previous);
+        }
+        int row = append(id, owner, vector);
+        rowById.put(id, row);
+        liveByOwner.merge(owner, 1, Integer::sum);
+        if (links != null) {
+            insertIntoGraph(row);
+        } else if (rowById.size() >= graphThreshold) {
+            buildGraph();
+        }
+        compactIfNeeded();
+    }
+
+    public boolean remove(long id) {
+        Integer row = rowById.remove(id);
+        if (row == null) {
+            return false;
+        }
+        delete(row);
+        compactIfNeeded();
+        return true;
+    }
+
+    private void delete(int row) {
+        deleted.set(row);
+        liveByOwner.computeIfPresent(owners[row], (owner, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * A copy of the stored vector of an id, or null.
+     */
+    public float[] getVector(long id) {
+        Integer row = rowById.get(id);
+        if (row == null) {
+            return null;
+        }
+        float[] vector = new float[dimension];
+        vectors.get(row * dimension, vector);
+        return vector;
+    }
+
+    /**
+     * The k stored vectors most similar to the query, best first, leaving out excludeId and, when owner is not
+     * null, every vector of another owner.
+     */
+    public List<Match> search(float[] query, int k, Long owner, long excludeId) {
+        if (k <= 0 || rowById.isEmpty()) {
+            return List.of();
+        }
+        if (links == null || (owner != null && liveByOwner.getOrDefault(owner, 0) * SCAN_FRACTION < rowById.size())) {
+            return scan(query, k, owner, excludeId);
+        }
+        // The graph search doesn't know the filter, so widen it until enough matches survive
+        for (int ef = Math.max(EF_SEARCH, k); ; ef *= 4) {
+            if (ef >= rows) {
+                return scan(query, k, owner, excludeId);
+            }
+            List<Match> matches = new ArrayList<>(k);
+            for (Candidate candidate : searchGraph(query, ef)) {
+                if (accepts(candidate.row, owner, excludeId)) {
+                    matches.add(new Match(ids[candidate.row], 1 - candidate.distance));
+                    if (matches.size() == k) {
+                        return matches;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean accepts(int row, Long owner, long excludeId) {
+        return !deleted.get(row) && ids[row] != excludeId && (owner == null || owners[row] == owner);
+    }
+
+    // Exact search: every live row that passes the filter, keeping the best k in a min-heap
+    private List<Match> scan(float[] query, int k, Long owner, long excludeId) {
+        PriorityQueue<Candidate> best = new PriorityQueue<>(k + 1, FARTHEST_FIRST);
+        for (int row = 0; row < rows; row++) {
+            if (!accepts(row, owner, excludeId)) {
+                continue;
+            }
+            float distance = distance(query, row);
+            if (best.size() < k) {
+                best.add(new Candidate(row, distance));
+            } else if (distance < best.peek().distance) {
+                best.poll();
+                best.add(new Candidate(row, distance));
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(best);
+        sorted.sort(NEAREST_FIRST);
+        List<Match> matches = new ArrayList<>(sorted.size());
+        for (Candidate candidate : sorted) {
+            matches.add(new Match(ids[candidate.row], 1 - candidate.distance));
+        }
+        return matches;
+    }
+
+    // Greedy descent through the upper layers, then a beam of width ef on layer 0; nearest first
+    private List<Candidate> searchGraph(float[] query, int ef) {
+        Candidate nearest = new Candidate(entryPoint, distance(query, entryPoint));
+        for (int layer = maxLevel; layer > 0; layer--) {
+            nearest = greedyClosest(query, nearest, layer);
+        }
+        return searchLayer(query, List.of(nearest), ef, 0);
+    }
+
+    private Candidate greedyClosest(float[] query, Candidate start, int layer) {
+        Candidate current = start;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = links[current.row][layer];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                float distance = distance(query, neighbours[i]);
+                if (distance < current.distance) {
+                    current = new Candidate(neighbours[i], distance);
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    private List<Candidate> searchLayer(float[] query, List<Candidate> entries, int ef, int layer) {
+        BitSet visited = new BitSet(rows);
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(NEAREST_FIRST);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(FARTHEST_FIRST);
+        for (Candidate entry : entries) {
+            visited.set(entry.row);
+            candidates.add(entry);
+            results.add(entry);
+        }
+        while (results.size() > ef) {
+            results.poll();
+        }
+
+        while (!candidates.isEmpty()) {
+            Candidate closest = candidates.poll();
+            if (results.size() >= ef && closest.distance > results.peek().distance) {
+                break;
+            }
+            int[] neighbours = links[closest.row][layer];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float distance = distance(query, neighbour);
+                if (results.size() < ef || distance < results.peek().distance) {
+                    Candidate candidate = new Candidate(neighbour, distance);
+                    candidates.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(NEAREST_FIRST);
+        return sorted;
+    }
+
+    private void buildGraph() {
+        links = new int[ids.length][][];
+        entryPoint = -1;
+        maxLevel = -1;
+        for (int row = 0; row < rows; row++) {
+            if (!deleted.get(row)) {
+                insertIntoGraph(row);
+            }
+        }
+    }
+
+    private void insertIntoGraph(int row) {
+        int level = (int) (-Math.log(1 - random.nextDouble()) * LEVEL_MULTIPLIER);
+        links[row] = new int[level + 1][];
+        for (int layer = 0; layer <= level; layer++) {
+            links[row][layer] = new int[1 + (layer == 0 ? M0 : M)];
+        }
+        if (entryPoint < 0) {
+            entryPoint = row;
+            maxLevel = level;
+            return;
+        }
+
+        float[] vector = new float[dimension];
+        vectors.get(row * dimension, vector);
+        Candidate nearest = new Candidate(entryPoint, distance(vector, entryPoint));
+        for (int layer = maxLevel; layer > level; layer--) {
+            nearest = greedyClosest(vector, nearest, layer);
+        }
+        List<Candidate> entries = List.of(nearest);
+        for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+            List<Candidate> found = searchLayer(vector, entries, EF_CONSTRUCTION, layer);
+            for (Candidate neighbour : selectNeighbours(found, M)) {
+                link(row, neighbour.row, layer);
+                link(neighbour.row, row, layer);
+            }
+            entries = found;
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = row;
+        }
+    }
+
+    // Adds a link, pruning the node's list back to capacity with the same heuristic when it is full
+    private void link(int from, int to, int layer) {
+        int[] neighbours = links[from][layer];
+        int capacity = neighbours.length - 1;
+        if (neighbours[0] < capacity) {
+            neighbours[++neighbours[0]] = to;
+            return;
+        }
+        float[] vector = new float[dimension];
+        vectors.get(from * dimension, vector);
+        List<Candidate> candidates = new ArrayList<>(capacity + 1);
+        for (int i = 1; i <= capacity; i++) {
+            candidates.add(new Candidate(neighbours[i], distance(vector, neighbours[i])));
+        }
+        candidates.add(new Candidate(to, distance(vector, to)));
+        candidates.sort(NEAREST_FIRST);
+        List<Candidate> kept = selectNeighbours(candidates, capacity);
+        neighbours[0] = kept.size();
+        for (int i = 0; i < kept.size(); i++) {
+            neighbours[i + 1] = kept.get(i).row;
+        }
+    }
+
+    // Heuristic neighbour selection: skip a candidate that is closer to an already selected neighbour than to
+    // the node itself, so links spread in different directions instead of all pointing into one cluster
+    private List<Candidate> selectNeighbours(List<Candidate> nearestFirst, int count) {
+        List<Candidate> selected = new ArrayList<>(count);
+        float[] vector = new float[dimension];
+        for (Candidate candidate : nearestFirst) {
+            if (selected.size() == count) {
+                break;
+            }
+            vectors.get(candidate.row * dimension, vector);
+            boolean diverse = true;
+            for (Candidate chosen : selected) {
+                if (distance(vector, chosen.row) < candidate.distance) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            }
+        }
+        return selected;
+    }
+
+    private float distance(float[] query, int row) {
+        int base = row * dimension;
+        float dot = 0f;
+        for (int i = 0; i < dimension; i++) {
+            dot += query[i] * vectors.get(base + i);
+        }
+        return 1 - dot;
+    }
+
+    private int append(long id, long owner, float[] vector) {
+        if (rows == ids.length) {
+            grow(rows * 2);
+        }
+        vectors.put(rows * dimension, vector);
+        ids[rows] = id;
+        owners[rows] = owner;
+        return rows++;
+    }
+
+    private void grow(int capacity) {
+        FloatBuffer larger = ByteBuffer.allocateDirect(capacity * dimension * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        larger.put(0, vectors, 0, rows * dimension);
+        vectors = larger;
+        ids = Arrays.copyOf(ids, capacity);
+        owners = Arrays.copyOf(owners, capacity);
+        if (links != null) {
+            links = Arrays.copyOf(links, capacity);
+        }
+    }
+
+    // Rewrites the live rows contiguously and rebuilds the graph once tombstones outnumber them
+    private void compactIfNeeded() {
+        int tombstones = rows - rowById.size();
+        if (tombstones < INITIAL_ROWS || tombstones <= rowById.size()) {
+            return;
+        }
+        int live = 0;
+        for (int row = 0; row < rows; row++) {
+            if (deleted.get(row)) {
+                continue;
+            }
+            if (live != row) {
+                vectors.put(live * dimension, vectors, row * dimension, dimension);
+                ids[live] = ids[row];
+                owners[live] = owners[row];
+            }
+            rowById.put(ids[live], live);
+            live++;
+        }
+        rows = live;
+        deleted.clear();
+        links = null;
+        if (rows >= graphThreshold) {
+            buildGraph();
+        }
+    }
+}
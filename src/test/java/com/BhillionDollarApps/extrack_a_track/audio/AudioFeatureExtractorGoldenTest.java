@@ -0,0 +1,151 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Runs the Java engine end to end on the small WAVs in src/test/resources/audio/golden, which make_golden.py in
+ * that folder synthesizes. matchesTheSynthesizedSignals checks the answers the signals were built to have and
+ * always runs. matchesLibrosa compares with librosa_api.py's output for each WAV, the golden JSON make_golden.py
+ * writes where librosa is installed; WAVs without one are skipped, and so is that test until the files exist.
+ */
+class AudioFeatureExtractorGoldenTest {
+
+    private static final List<String> NOTES = List.of("C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B");
+    private static final int HOP_LENGTH = 512;
+
+    @Test
+    void matchesTheSynthesizedSignals() throws Exception {
+        Path folder = goldenFolder();
+
+        // A major triad under clicks every 11025 samples (120 BPM) from sample 2756
+        Path clicks = folder.resolve("a_major_clicks_120.wav");
+        Map<String, Object> clickResults = AudioFeatureExtractor.analyze(clicks).toMap();
+        // Tempo comes off librosa's lag grid, where 120 BPM falls between lags of 22 and 21 frames
+        double tempo = ((Number) clickResults.get("tempo")).doubleValue();
+        double slowerLag = 60.0 * 22050 / (HOP_LENGTH * 22);
+        double fasterLag = 60.0 * 22050 / (HOP_LENGTH * 21);
+        assertTrue(Math.abs(tempo - slowerLag) < 1e-3 || Math.abs(tempo - fasterLag) < 1e-3, "tempo " + tempo);
+        List<?> beats = (List<?>) clickResults.get("beats");
+        assertTrue(beats.size() >= 5, "beats " + beats);
+        for (Object beat : beats) {
+            double frame = ((Number) beat).doubleValue();
+            double clickFrame = (2756.25 + Math.round((frame * HOP_LENGTH - 2756.25) / 11025) * 11025) / HOP_LENGTH;
+            assertEquals(clickFrame, frame, 2.0, "beat " + beat + " of " + beats);
+        }
+        assertChordTones(clickResults, Set.of("A", "C#", "E"), "a_major_clicks_120.wav");
+        // The clicks make the frame RMS uneven, so its mean sits a little under the RMS of the whole signal
+        double clicksRms = signalRms(clicks);
+        assertEquals(clicksRms, ((Number) clickResults.get("rms")).doubleValue(), clicksRms * 0.02, "clicks rms");
+
+        // Equal-level C, E and G sines at 0.5 full scale
+        Path chord = folder.resolve("c_major_chord.wav");
+        Map<String, Object> chordResults = AudioFeatureExtractor.analyze(chord).toMap();
+        assertChordTones(chordResults, Set.of("C", "E", "G"), "c_major_chord.wav");
+        // Mean frame RMS of the sum: 0.5 / 3 * sqrt(3 / 2), a little lower for the padded edge frames
+        double chordRms = 0.5 / 3 * Math.sqrt(1.5);
+        assertEquals(chordRms, ((Number) chordResults.get("rms")).doubleValue(), chordRms * 0.02, "chord rms");
+        // Equal magnitudes put the centroid at their mean frequency, raised a little by window leakage
+        double meanFrequency = (261.63 + 329.63 + 392.0) / 3;
+        assertEquals(meanFrequency, ((Number) chordResults.get("spectral_centroid")).doubleValue(), meanFrequency * 0.05,
+                "chord spectral centroid");
+    }
+
+    // The three strongest chroma bins, and so the key's tonic, are the notes of the chord
+    private static void assertChordTones(Map<String, Object> results, Set<String> chordTones, String name) {
+        List<?> chroma = (List<?>) results.get("melody");
+        List<String> strongest = IntStream.range(0, chroma.size()).boxed()
+                .sorted((a, b) -> Double.compare(((Number) chroma.get(b)).doubleValue(), ((Number) chroma.get(a)).doubleValue()))
+                .limit(3)
+                .map(NOTES::get)
+                .toList();
+        assertEquals(chordTones, Set.copyOf(strongest), name + " chroma " + chroma);
+        String tonic = results.get("key").toString().split(" ")[0];
+        assertTrue(chordTones.contains(tonic), name + " key " + results.get("key"));
+    }
+
+    private static double signalRms(Path wav) throws IOException {
+        float[] samples = WavFile.readSamples(wav)[0];
+        double sum = 0;
+        for (float sample : samples) {
+            sum += sample * sample;
+        }
+        return Math.sqrt(sum / samples.length);
+    }
+
+    @Test
+    void matchesLibrosa() throws Exception {
+        Path folder = goldenFolder();
+        List<Path> wavs;
+        try (var files = Files.list(folder)) {
+            wavs = files.filter(path -> path.toString().endsWith(".wav"))
+                    .filter(path -> Files.exists(golden(path)))
+                    .sorted()
+                    .toList();
+        }
+        assumeTrue(!wavs.isEmpty(), "No golden librosa results; run make_golden.py with librosa installed");
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (Path wav : wavs) {
+            Map<String, Object> expected = objectMapper.readValue(golden(wav).toFile(), Map.class);
+            Map<String, Object> actual = AudioFeatureExtractor.analyze(wav).toMap();
+            String name = wav.getFileName().toString();
+
+            assertRelative(expected, actual, "tempo", 0.02, name);
+            assertRelative(expected, actual, "spectral_centroid", 0.03, name);
+            assertRelative(expected, actual, "rms", 0.02, name);
+            assertEquals(expected.get("key"), actual.get("key"), name + " key");
+            assertVector(expected, actual, "melody", 0.05, name);
+            assertVector(expected, actual, "mfcc", 1.5, name);
+
+            List<?> expectedBeats = (List<?>) expected.get("beats");
+            List<?> actualBeats = (List<?>) actual.get("beats");
+            assertTrue(Math.abs(expectedBeats.size() - actualBeats.size()) <= 1,
+                    name + " beats: librosa " + expectedBeats + ", java " + actualBeats);
+        }
+    }
+
+    private static Path goldenFolder() throws URISyntaxException, IOException {
+        var resource = AudioFeatureExtractorGoldenTest.class.getResource("/audio/golden");
+        assumeTrue(resource != null, "Golden audio folder is not on the test classpath");
+        return Paths.get(resource.toURI());
+    }
+
+    private static Path golden(Path wav) {
+        String name = wav.getFileName().toString();
+        return wav.resolveSibling(name.substring(0, name.length() - ".wav".length()) + ".json");
+    }
+
+    private static void assertRelative(Map<String, Object> expected, Map<String, Object> actual, String feature,
+                                       double tolerance, String name) {
+        double expectedValue = ((Number) expected.get(feature)).doubleValue();
+        double actualValue = ((Number) actual.get(feature)).doubleValue();
+        assertEquals(expectedValue, actualValue, Math.abs(expectedValue) * tolerance, name + " " + feature);
+    }
+
+    private static void assertVector(Map<String, Object> expected, Map<String, Object> actual, String feature,
+                                     double tolerance, String name) {
+        List<?> expectedValues = (List<?>) expected.get(feature);
+        List<?> actualValues = (List<?>) actual.get(feature);
+        assertEquals(expectedValues.size(), actualValues.size(), name + " " + feature + " length");
+        for (int i = 0; i < expectedValues.size(); i++) {
+            assertEquals(((Number) expectedValues.get(i)).doubleValue(), ((Number) actualValues.get(i)).doubleValue(),
+                    tolerance, name + " " + feature + "[" + i + "]");
+        }
+    }
+}
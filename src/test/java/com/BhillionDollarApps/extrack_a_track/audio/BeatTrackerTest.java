@@ -0,0 +1,48 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class BeatTrackerTest {
+
+    private static final int SAMPLE_RATE = 22050;
+    private static final int HOP_LENGTH = 512;
+    private static final double FRAME_RATE = (double) SAMPLE_RATE / HOP_LENGTH;
+
+    @Test
+    void followsClickTracks() {
+        // Tempos whose period is close to a whole number of frames; in between, the onsets alternate between
+        // two spacings and librosa's autocorrelation (and this port of it) may settle on half the tempo
+        for (double bpm : new double[] {90, 100, 120}) {
+            double period = FRAME_RATE * 60 / bpm;
+            int length = (int) (FRAME_RATE * 20);
+            float[] onsets = new float[length];
+            for (double t = period / 2; t < length; t += period) {
+                onsets[(int) Math.round(t)] = 1f;
+            }
+
+            BeatTracker.Result result = BeatTracker.track(onsets, length, SAMPLE_RATE, HOP_LENGTH);
+
+            // The tempo is 60 * frame rate / a whole lag, so it can be off by the rounding of the period
+            double lagError = Math.abs(60 * FRAME_RATE / result.getTempo() - period);
+            assertTrue(lagError <= 1.0, bpm + " BPM detected as " + result.getTempo());
+            int[] beats = result.getBeatFrames();
+            assertTrue(beats.length >= 20 * bpm / 60 - 3, bpm + " BPM: only " + beats.length + " beats");
+            for (int beat : beats) {
+                double phase = (beat - period / 2) / period;
+                assertTrue(Math.abs(phase - Math.rint(phase)) * period <= 1.0, bpm + " BPM: beat at frame " + beat + " is off the clicks");
+            }
+            double meanGap = (beats[beats.length - 1] - beats[0]) / (double) (beats.length - 1);
+            assertEquals(period, meanGap, 0.5, bpm + " BPM beat spacing");
+        }
+    }
+
+    @Test
+    void silenceHasNoBeats() {
+        BeatTracker.Result result = BeatTracker.track(new float[500], 500, SAMPLE_RATE, HOP_LENGTH);
+        assertEquals(0.0, result.getTempo());
+        assertEquals(0, result.getBeatFrames().length);
+    }
+}
@@ -0,0 +1,54 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class ChromaFilterbankTest {
+
+    private static final int SAMPLE_RATE = 22050;
+    private static final int FFT_SIZE = 4096;
+    private static final int A = 9;
+
+    @Test
+    void weightsMatchLibrosa() {
+        // Weights of the A row (chroma 9 here) that librosa's documentation prints for
+        // librosa.filters.chroma(sr=22050, n_fft=4096): the first two bins and the last two
+        int[] bins = {0, 1, 2047, 2048};
+        double[] expected = {1.689e-05, 3.024e-04, 4.639e-17, 5.327e-17};
+        ChromaFilterbank chroma = new ChromaFilterbank(SAMPLE_RATE, FFT_SIZE);
+        for (int i = 0; i < bins.length; i++) {
+            double actual = weights(chroma, bins[i])[A];
+            assertEquals(expected[i], actual, expected[i] * 1e-3, "A weight of bin " + bins[i]);
+        }
+    }
+
+    @Test
+    void pureTonesLandOnTheirPitchClass() {
+        ChromaFilterbank chroma = new ChromaFilterbank(SAMPLE_RATE, FFT_SIZE);
+        double[] frequencies = {261.63, 293.66, 329.63, 349.23, 392.0, 440.0, 493.88};
+        int[] pitchClasses = {0, 2, 4, 5, 7, 9, 11};
+        for (int i = 0; i < frequencies.length; i++) {
+            int bin = (int) Math.round(frequencies[i] * FFT_SIZE / SAMPLE_RATE);
+            assertEquals(pitchClasses[i], argmax(weights(chroma, bin)), frequencies[i] + " Hz");
+        }
+    }
+
+    private static float[] weights(ChromaFilterbank chroma, int bin) {
+        float[] spectrum = new float[FFT_SIZE / 2 + 1];
+        spectrum[bin] = 1f;
+        float[] out = new float[ChromaFilterbank.CHROMA_BINS];
+        chroma.apply(spectrum, out);
+        return out;
+    }
+
+    private static int argmax(float[] values) {
+        int best = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+}
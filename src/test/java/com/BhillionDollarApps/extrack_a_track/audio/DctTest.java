@@ -0,0 +1,52 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class DctTest {
+
+    @Test
+    void matchesScipyOrthonormalDct() {
+        // scipy.fftpack.dct([1, 2, 3, 4], type=2, norm="ortho")
+        float[] out = new float[4];
+        new Dct(4, 4).apply(new float[] {1, 2, 3, 4}, out);
+        assertArrayEquals(new float[] {5f, -2.2304425f, 0f, -0.15851267f}, out, 1e-5f);
+    }
+
+    @Test
+    void keepsOnlyTheFirstCoefficients() {
+        float[] input = new float[128];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (float) Math.sin(i * 0.1);
+        }
+        float[] all = new float[128];
+        float[] first = new float[13];
+        new Dct(128, 128).apply(input, all);
+        new Dct(128, 13).apply(input, first);
+        for (int k = 0; k < first.length; k++) {
+            assertEquals(all[k], first[k], 1e-6f, "coefficient " + k);
+        }
+    }
+
+    @Test
+    void preservesEnergy() {
+        Random random = new Random(7);
+        float[] input = new float[128];
+        double energy = 0;
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (float) random.nextGaussian();
+            energy += input[i] * input[i];
+        }
+        float[] out = new float[128];
+        new Dct(128, 128).apply(input, out);
+        double transformedEnergy = 0;
+        for (float value : out) {
+            transformedEnergy += value * value;
+        }
+        assertEquals(energy, transformedEnergy, energy * 1e-5);
+    }
+}
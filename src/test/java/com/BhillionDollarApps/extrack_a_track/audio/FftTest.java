@@ -0,0 +1,64 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class FftTest {
+
+    @Test
+    void matchesDirectDft() {
+        Random random = new Random(42);
+        for (int size = 4; size <= 4096; size <<= 1) {
+            float[] input = new float[size];
+            for (int i = 0; i < size; i++) {
+                input[i] = (float) (random.nextGaussian() * 0.5);
+            }
+            Fft fft = new Fft(size);
+            float[] re = new float[fft.getBinCount()];
+            float[] im = new float[fft.getBinCount()];
+            fft.forward(input, re, im);
+
+            // Float output; the error of a well-behaved FFT grows with sqrt(n log n)
+            double tolerance = 1e-5 * Math.sqrt(size) * (Math.log(size) / Math.log(2));
+            for (int k = 0; k <= size / 2; k++) {
+                double expectedRe = 0;
+                double expectedIm = 0;
+                for (int n = 0; n < size; n++) {
+                    double angle = -2 * Math.PI * ((long) k * n % size) / size;
+                    expectedRe += input[n] * Math.cos(angle);
+                    expectedIm += input[n] * Math.sin(angle);
+                }
+                assertEquals(expectedRe, re[k], tolerance, "re[" + k + "] of size " + size);
+                assertEquals(expectedIm, im[k], tolerance, "im[" + k + "] of size " + size);
+            }
+        }
+    }
+
+    @Test
+    void sineLandsInItsBin() {
+        int size = 1024;
+        float[] input = new float[size];
+        for (int n = 0; n < size; n++) {
+            input[n] = (float) Math.cos(2 * Math.PI * 37 * n / size);
+        }
+        Fft fft = new Fft(size);
+        float[] re = new float[fft.getBinCount()];
+        float[] im = new float[fft.getBinCount()];
+        fft.forward(input, re, im);
+
+        for (int k = 0; k <= size / 2; k++) {
+            double magnitude = Math.hypot(re[k], im[k]);
+            assertEquals(k == 37 ? size / 2.0 : 0.0, magnitude, 1e-2, "bin " + k);
+        }
+    }
+
+    @Test
+    void rejectsSizesThatAreNotPowersOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new Fft(1000));
+        assertThrows(IllegalArgumentException.class, () -> new Fft(2));
+    }
+}
@@ -0,0 +1,60 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class MelFilterbankTest {
+
+    private static final int SAMPLE_RATE = 22050;
+    private static final int FFT_SIZE = 2048;
+
+    @Test
+    void slaneyMelScaleMatchesLibrosa() {
+        // librosa.hz_to_mel(60) == 0.9, librosa.mel_to_hz(3) == 200, and the scale turns logarithmic at 1 kHz = 15 mel
+        assertEquals(0.9, MelFilterbank.hzToMel(60), 1e-9);
+        assertEquals(200.0, MelFilterbank.melToHz(3), 1e-9);
+        assertEquals(15.0, MelFilterbank.hzToMel(1000), 1e-9);
+        for (double hz = 10; hz < SAMPLE_RATE / 2.0; hz *= 1.5) {
+            assertEquals(hz, MelFilterbank.melToHz(MelFilterbank.hzToMel(hz)), hz * 1e-12);
+        }
+    }
+
+    @Test
+    void firstFilterMatchesLibrosa() {
+        // librosa's documentation prints librosa.filters.mel(sr=22050, n_fft=2048) starting [[0., 0.016, ...
+        MelFilterbank mel = filterbank();
+        assertEquals(0.0, weight(mel, 0, 0), 1e-9);
+        assertEquals(0.016, weight(mel, 0, 1), 5e-4);
+        // Its upper edge is around 52 Hz, below bin 5
+        assertEquals(0.0, weight(mel, 0, 5), 1e-9);
+    }
+
+    @Test
+    void filtersHaveUnitArea() {
+        // norm="slaney" scales every triangle to an area of 1 in Hz; sampled on the bin grid the sum of the weights
+        // times the bin spacing comes out at 1 for filters that span enough bins, like those of the upper half
+        MelFilterbank mel = filterbank();
+        double binHz = (double) SAMPLE_RATE / FFT_SIZE;
+        for (int m = mel.getMelCount() / 2; m < mel.getMelCount(); m++) {
+            double area = 0;
+            for (int bin = 0; bin <= FFT_SIZE / 2; bin++) {
+                area += weight(mel, m, bin) * binHz;
+            }
+            assertEquals(1.0, area, 0.01, "area of filter " + m);
+        }
+    }
+
+    private static MelFilterbank filterbank() {
+        return new MelFilterbank(SAMPLE_RATE, FFT_SIZE, 128, 0, SAMPLE_RATE / 2.0);
+    }
+
+    // Weight of one bin in one filter, read back by applying the bank to a unit spectrum
+    private static float weight(MelFilterbank mel, int filter, int bin) {
+        float[] spectrum = new float[FFT_SIZE / 2 + 1];
+        spectrum[bin] = 1f;
+        float[] out = new float[mel.getMelCount()];
+        mel.apply(spectrum, out);
+        return out[filter];
+    }
+}
@@ -0,0 +1,107 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class ResamplerTest {
+
+    private static final int[] INPUT_RATES = {44100, 48000, 96000};
+    private static final int OUTPUT_RATE = 22050;
+
+    @Test
+    void outputLengthMatchesLibrosa() {
+        // librosa.resample returns ceil(n * target_sr / orig_sr) samples
+        for (int inputRate : INPUT_RATES) {
+            for (int n : new int[] {1, 2, 3, 999, inputRate, inputRate + 7}) {
+                float[] output = resample(new float[n], inputRate, 4096);
+                long expected = ((long) n * OUTPUT_RATE + inputRate - 1) / inputRate;
+                assertEquals(expected, output.length, inputRate + " Hz, " + n + " samples");
+            }
+        }
+    }
+
+    @Test
+    void passesToneBelowTheCutoff() {
+        for (int inputRate : INPUT_RATES) {
+            for (double frequency : new double[] {440, 1000, 5000, 9000}) {
+                double gain = rms(resample(sine(frequency, inputRate, inputRate), inputRate, 4096)) / Math.sqrt(0.125);
+                // Within 0.1 dB
+                assertEquals(1.0, gain, 0.012, inputRate + " Hz input, " + frequency + " Hz tone");
+            }
+        }
+    }
+
+    @Test
+    void removesToneAboveTheOutputNyquist() {
+        // Without the filter these would fold back into the band as full-level tones
+        for (int inputRate : INPUT_RATES) {
+            for (double frequency : new double[] {12500, 15000, 20000}) {
+                if (frequency >= inputRate / 2.0) {
+                    continue;
+                }
+                double gain = rms(resample(sine(frequency, inputRate, inputRate), inputRate, 4096)) / Math.sqrt(0.125);
+                double db = 20 * Math.log10(gain);
+                assertTrue(db < -80, inputRate + " Hz input, " + frequency + " Hz tone only down " + db + " dB");
+            }
+        }
+    }
+
+    @Test
+    void blockSizeDoesNotChangeTheOutput() {
+        float[] input = sine(3000, 48000, 20000);
+        float[] whole = resample(input, 48000, input.length);
+        for (int blockSize : new int[] {1, 17, 1000, 8193}) {
+            assertArrayEquals(whole, resample(input, 48000, blockSize), "block size " + blockSize);
+        }
+    }
+
+    // Half-amplitude sine, so its RMS is sqrt(0.125)
+    private static float[] sine(double frequency, int sampleRate, int length) {
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (float) (0.5 * Math.sin(2 * Math.PI * frequency * i / sampleRate));
+        }
+        return samples;
+    }
+
+    private static float[] resample(float[] input, int inputRate, int blockSize) {
+        Collector collector = new Collector();
+        Resampler resampler = new Resampler(inputRate, OUTPUT_RATE, collector);
+        for (int offset = 0; offset < input.length; offset += blockSize) {
+            resampler.accept(input, offset, Math.min(blockSize, input.length - offset));
+        }
+        resampler.finish();
+        assertEquals(collector.length, resampler.getOutputCount());
+        return Arrays.copyOf(collector.samples, collector.length);
+    }
+
+    // RMS of the middle half, away from the filter's edges
+    private static double rms(float[] samples) {
+        int from = samples.length / 4;
+        int to = samples.length - from;
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += samples[i] * samples[i];
+        }
+        return Math.sqrt(sum / (to - from));
+    }
+
+    private static class Collector implements WavFile.MonoSink {
+        private float[] samples = new float[1024];
+        private int length;
+
+        @Override
+        public void accept(float[] block, int offset, int count) {
+            if (length + count > samples.length) {
+                samples = Arrays.copyOf(samples, Math.max(samples.length * 2, length + count));
+            }
+            System.arraycopy(block, offset, samples, length, count);
+            length += count;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.BhillionDollarApps.extrack_a_track.audio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+class SegmentStitcherTest {
+
+    // One step of the 16-bit PCM the stitcher writes
+    private static final float PCM_STEP = 1f / 32768;
+
+    @Test
+    void crossfadeOfIdenticalSegmentsSumsToUnity() throws IOException {
+        // Three 1000-frame segments every 700 frames: two 300-frame overlaps of the same constant signal
+        float[][] output = stitch(2, new long[] {0, 700, 1400}, 1000, (segment, frame) -> 0.5f);
+        assertEquals(2400, output[0].length);
+        for (float[] channel : output) {
+            for (int i = 0; i < channel.length; i++) {
+                assertEquals(0.5f, channel[i], 2 * PCM_STEP, "frame " + i);
+            }
+        }
+    }
+
+    @Test
+    void crossfadeMovesFromOneSegmentToTheNext() throws IOException {
+        // Segment 0 holds 0.5, segment 1 holds -0.5; the 400-frame overlap starts at frame 600
+        float[][] output = stitch(1, new long[] {0, 600}, 1000, (segment, frame) -> segment == 0 ? 0.5f : -0.5f);
+        float[] mono = output[0];
+        assertEquals(1600, mono.length);
+        assertEquals(0.5f, mono[599], PCM_STEP);
+        assertEquals(-0.5f, mono[1000], PCM_STEP);
+        // Raised cosine: symmetric around the middle of the overlap and never overshooting either side
+        assertEquals(0f, mono[799] + mono[800], 2 * PCM_STEP);
+        for (int i = 600; i < 1000; i++) {
+            assertTrue(mono[i] <= mono[i - 1] + PCM_STEP, "frame " + i);
+            assertTrue(mono[i] <= 0.5f + PCM_STEP && mono[i] >= -0.5f - PCM_STEP, "frame " + i);
+        }
+    }
+
+    @Test
+    void padsTheGapBeforeALaterSegment() throws IOException {
+        // The first segment ends 200 frames before the second one starts
+        float[][] output = stitch(1, new long[] {0, 1200}, 1000, (segment, frame) -> 0.25f);
+        float[] mono = output[0];
+        assertEquals(2200, mono.length);
+        assertEquals(0.25f, mono[999], PCM_STEP);
+        assertEquals(0f, mono[1100], 0f);
+        assertEquals(0.25f, mono[1200], PCM_STEP);
+    }
+
+    @Test
+    void rejectsASegmentThatDoesNotLineUp() throws IOException {
+        Path output = Files.createTempFile("stitch-", ".wav");
+        try (SegmentStitcher stitcher = new SegmentStitcher(output, 1, 44100)) {
+            stitcher.append(new float[1][1000], 0, 700);
+            assertThrows(IllegalArgumentException.class, () -> stitcher.append(new float[1][1000], 800, -1));
+        } finally {
+            Files.deleteIfExists(output);
+        }
+    }
+
+    private interface Signal {
+        float at(int segment, int frame);
+    }
+
+    // Stitches equally long segments starting at the given frames and reads the result back
+    private static float[][] stitch(int channels, long[] starts, int length, Signal signal) throws IOException {
+        Path output = Files.createTempFile("stitch-", ".wav");
+        try {
+            try (SegmentStitcher stitcher = new SegmentStitcher(output, channels, 44100)) {
+                for (int s = 0; s < starts.length; s++) {
+                    float[][] segment = new float[channels][length];
+                    for (float[] channel : segment) {
+                        for (int i = 0; i < length; i++) {
+                            channel[i] = signal.at(s, i);
+                        }
+                    }
+                    stitcher.append(segment, starts[s], s + 1 < starts.length ? starts[s + 1] : -1);
+                }
+            }
+            return WavFile.readSamples(output);
+        } finally {
+            Files.deleteIfExists(output);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.BhillionDollarApps.extrack_a_track.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.FloatBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import org.junit.jupiter.api.Test;
+
+class AnalysisCodecTest {
+
+    @Test
+    void floatsRoundTripBitForBit() {
+        float[] values = {0f, -0f, 1f, -1.5f, 3.1415927f, Float.MIN_VALUE, Float.MAX_VALUE, Float.NaN,
+                Float.NEGATIVE_INFINITY};
+        byte[] blob = AnalysisCodec.encodeFloats(values);
+        assertEquals(values.length * 4, blob.length);
+
+        FloatBuffer view = AnalysisCodec.floatView(blob);
+        float[] decoded = new float[view.remaining()];
+        view.get(decoded);
+        assertArrayEquals(values, decoded, "decoded floats");
+    }
+
+    @Test
+    void floatsAreLittleEndian() {
+        // 1.0f is 0x3F800000
+        assertArrayEquals(new byte[] {0, 0, (byte) 0x80, 0x3F}, AnalysisCodec.encodeFloats(new float[] {1f}));
+    }
+
+    @Test
+    void emptyAndMissingFloatBlobsReadAsEmpty() {
+        assertEquals(0, AnalysisCodec.encodeFloats(new float[0]).length);
+        assertEquals(0, AnalysisCodec.floatView(new byte[0]).remaining());
+        assertEquals(0, AnalysisCodec.floatView(null).remaining());
+    }
+
+    @Test
+    void floatViewIsReadOnly() {
+        FloatBuffer view = AnalysisCodec.floatView(AnalysisCodec.encodeFloats(new float[] {1f, 2f}));
+        assertThrows(ReadOnlyBufferException.class, () -> view.put(0, 5f));
+    }
+
+    @Test
+    void rejectsATruncatedFloatBlob() {
+        assertThrows(IllegalArgumentException.class, () -> AnalysisCodec.floatView(new byte[] {1, 2, 3, 4, 5}));
+    }
+
+    @Test
+    void beatFramesRoundTrip() {
+        int[] frames = {0, 11, 22, 34, 45, 57, 68, 1000, 100000};
+        assertArrayEquals(frames, AnalysisCodec.decodeBeatFrames(AnalysisCodec.encodeBeatFrames(frames)));
+    }
+
+    @Test
+    void smallDeltasTakeOneByte() {
+        // Zigzag deltas below 64 fit in the seven bits of a single varint byte
+        int[] frames = new int[200];
+        for (int i = 1; i < frames.length; i++) {
+            frames[i] = frames[i - 1] + 1 + i % 60;
+        }
+        assertEquals(frames.length, AnalysisCodec.encodeBeatFrames(frames).length);
+    }
+
+    @Test
+    void negativeDeltasRoundTrip() {
+        // Out-of-order frames give negative deltas, which zigzag keeps short
+        int[] frames = {50, 40, 41, 0, 7, -3, 12};
+        byte[] blob = AnalysisCodec.encodeBeatFrames(frames);
+        assertEquals(frames.length, blob.length);
+        assertArrayEquals(frames, AnalysisCodec.decodeBeatFrames(blob));
+    }
+
+    @Test
+    void extremeFramesRoundTrip() {
+        // Deltas between these overflow an int; the decoder wraps around the same way
+        int[] frames = {Integer.MAX_VALUE, Integer.MIN_VALUE, 0, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        assertArrayEquals(frames, AnalysisCodec.decodeBeatFrames(AnalysisCodec.encodeBeatFrames(frames)));
+    }
+
+    @Test
+    void emptyAndMissingBeatBlobsDecodeToNoFrames() {
+        byte[] blob = AnalysisCodec.encodeBeatFrames(new int[0]);
+        assertEquals(0, blob.length);
+        assertArrayEquals(new int[0], AnalysisCodec.decodeBeatFrames(blob));
+        assertArrayEquals(new int[0], AnalysisCodec.decodeBeatFrames(null));
+    }
+
+    @Test
+    void rejectsMalformedBeatBlobs() {
+        // A value cut off after a continuation byte
+        assertThrows(IllegalArgumentException.class, () -> AnalysisCodec.decodeBeatFrames(new byte[] {2, (byte) 0x80}));
+        // A varint longer than five bytes
+        byte[] tooLong = {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 1};
+        assertThrows(IllegalArgumentException.class, () -> AnalysisCodec.decodeBeatFrames(tooLong));
+    }
+}
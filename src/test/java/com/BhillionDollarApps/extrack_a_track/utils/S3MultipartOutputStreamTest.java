@@ -0,0 +1,223 @@
+package com.BhillionDollarApps.extrack_a_track.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+class S3MultipartOutputStreamTest {
+
+    private static final int PART_SIZE = S3MultipartOutputStream.MIN_PART_SIZE;
+
+    @Test
+    void splitsTheStreamIntoFullPartsAndARemainder() throws IOException {
+        FakeS3 s3 = new FakeS3();
+        byte[] data = randomBytes(2 * PART_SIZE + 12345);
+        try (S3MultipartOutputStream out = new S3MultipartOutputStream(s3, "bucket", "key", "audio/wav",
+                PART_SIZE, 2, Runnable::run)) {
+            // Odd chunk sizes, so writes straddle the part boundaries
+            int offset = 0;
+            for (int chunk = 1; offset < data.length; chunk = chunk * 3 + 1) {
+                int length = Math.min(chunk, data.length - offset);
+                out.write(data, offset, length);
+                offset += length;
+            }
+            assertEquals(data.length, out.getBytesWritten());
+        }
+
+        assertEquals(List.of(PART_SIZE, PART_SIZE, 12345), s3.partSizes());
+        assertEquals(List.of(1, 2, 3), s3.completedPartNumbers);
+        assertArrayEquals(data, s3.object());
+        assertFalse(s3.aborted);
+    }
+
+    @Test
+    void uploadsPartsInParallelInOrder() throws IOException {
+        FakeS3 s3 = new FakeS3();
+        byte[] data = randomBytes(4 * PART_SIZE + 1);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try (S3MultipartOutputStream out = new S3MultipartOutputStream(s3, "bucket", "key", "audio/wav",
+                PART_SIZE, 3, executor)) {
+            for (byte b : Arrays.copyOf(data, 100)) {
+                out.write(b);
+            }
+            out.write(data, 100, data.length - 100);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(List.of(1, 2, 3, 4, 5), s3.completedPartNumbers);
+        assertArrayEquals(data, s3.object());
+    }
+
+    @Test
+    void emptyStreamUploadsOneEmptyPart() throws IOException {
+        FakeS3 s3 = new FakeS3();
+        new S3MultipartOutputStream(s3, "bucket", "key", "audio/wav", PART_SIZE, 1, Runnable::run).close();
+
+        // S3 refuses to complete an upload without parts, and the last part may be empty
+        assertEquals(List.of(0), s3.partSizes());
+        assertEquals(List.of(1), s3.completedPartNumbers);
+        assertEquals(0, s3.object().length);
+    }
+
+    @Test
+    void failedPartAbortsTheUpload() throws IOException {
+        FakeS3 s3 = new FakeS3();
+        s3.failingPart = 2;
+        S3MultipartOutputStream out = new S3MultipartOutputStream(s3, "bucket", "key", "audio/wav", PART_SIZE, 1,
+                Runnable::run);
+        byte[] data = randomBytes(PART_SIZE);
+        out.write(data);
+        out.write(data);
+        // Part 2 fails as the third write sends it off; the stream notices at its next hand-off, the close
+        IOException error = assertThrows(IOException.class, () -> {
+            out.write(data);
+            out.close();
+        });
+        assertTrue(error.getCause() instanceof S3Exception);
+        assertTrue(s3.aborted);
+        assertNull(s3.completedPartNumbers);
+
+        // The stream is finished: closing again does nothing, writing fails
+        out.close();
+        assertThrows(IOException.class, () -> out.write(data));
+        assertNull(s3.completedPartNumbers);
+    }
+
+    @Test
+    void failedCompletionAbortsTheUpload() {
+        FakeS3 s3 = new FakeS3();
+        s3.failCompletion = true;
+        S3MultipartOutputStream out = new S3MultipartOutputStream(s3, "bucket", "key", "audio/wav", PART_SIZE, 1,
+                Runnable::run);
+        assertThrows(IOException.class, out::close);
+        assertTrue(s3.aborted);
+    }
+
+    @Test
+    void abortDiscardsTheUpload() throws IOException {
+        FakeS3 s3 = new FakeS3();
+        S3MultipartOutputStream out = new S3MultipartOutputStream(s3, "bucket", "key", "audio/wav", PART_SIZE, 1,
+                Runnable::run);
+        out.write(randomBytes(1000));
+        out.abort();
+        out.abort();
+        out.close();
+
+        assertTrue(s3.aborted);
+        assertEquals(1, s3.abortCount);
+        assertNull(s3.completedPartNumbers);
+    }
+
+    @Test
+    void rejectsPartsBelowTheS3Minimum() {
+        assertThrows(IllegalArgumentException.class, () -> new S3MultipartOutputStream(new FakeS3(), "bucket", "key",
+                "audio/wav", PART_SIZE - 1, 1, Runnable::run));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    // Keeps the parts of one multipart upload in memory; every other S3 call is unsupported
+    private static class FakeS3 implements S3Client {
+        private final Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+        private volatile List<Integer> completedPartNumbers;
+        private volatile boolean aborted;
+        private volatile int abortCount;
+        private volatile int failingPart = -1;
+        private volatile boolean failCompletion;
+
+        @Override
+        public CreateMultipartUploadResponse createMultipartUpload(CreateMultipartUploadRequest request) {
+            return CreateMultipartUploadResponse.builder().uploadId("upload-1").build();
+        }
+
+        @Override
+        public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody body) {
+            if (request.partNumber() == failingPart) {
+                throw S3Exception.builder().message("Part " + failingPart + " failed").statusCode(500).build();
+            }
+            try (InputStream in = body.contentStreamProvider().newStream()) {
+                byte[] bytes = in.readAllBytes();
+                assertEquals(request.contentLength().longValue(), bytes.length);
+                parts.put(request.partNumber(), bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build();
+        }
+
+        @Override
+        public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            if (failCompletion) {
+                throw S3Exception.builder().message("Completion failed").statusCode(500).build();
+            }
+            List<CompletedPart> completed = request.multipartUpload().parts();
+            for (CompletedPart part : completed) {
+                assertEquals("etag-" + part.partNumber(), part.eTag());
+            }
+            completedPartNumbers = completed.stream().map(CompletedPart::partNumber).toList();
+            return CompleteMultipartUploadResponse.builder().build();
+        }
+
+        @Override
+        public AbortMultipartUploadResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+            aborted = true;
+            abortCount++;
+            return AbortMultipartUploadResponse.builder().build();
+        }
+
+        List<Integer> partSizes() {
+            return parts.keySet().stream().sorted().map(number -> parts.get(number).length).toList();
+        }
+
+        // The object the completed parts make up
+        byte[] object() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            completedPartNumbers.forEach(number -> out.writeBytes(parts.get(number)));
+            return out.toByteArray();
+        }
+
+        @Override
+        public String serviceName() {
+            return "s3";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
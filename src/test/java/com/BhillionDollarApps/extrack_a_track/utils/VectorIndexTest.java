@@ -0,0 +1,198 @@
+package com.BhillionDollarApps.extrack_a_track.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class VectorIndexTest {
+
+    private static final int DIMENSION = 24;
+    // Large enough that the index never builds a graph
+    private static final int NO_GRAPH = Integer.MAX_VALUE;
+
+    @Test
+    void scanReturnsTheExactNearestBestFirst() {
+        Random random = new Random(1);
+        VectorIndex index = new VectorIndex(DIMENSION, NO_GRAPH);
+        float[][] vectors = new float[300][];
+        for (int id = 0; id < vectors.length; id++) {
+            vectors[id] = unitVector(random);
+            index.put(id, 0, vectors[id]);
+        }
+        assertFalse(index.hasGraph());
+
+        float[] query = unitVector(random);
+        List<VectorIndex.Match> matches = index.search(query, 5, null, -1);
+        assertEquals(5, matches.size());
+        assertEquals(bruteForce(vectors, query, 5), ids(matches));
+        for (int i = 0; i < matches.size(); i++) {
+            VectorIndex.Match match = matches.get(i);
+            assertEquals(dot(query, vectors[(int) match.getId()]), match.getScore(), 1e-5);
+            if (i > 0) {
+                assertTrue(match.getScore() <= matches.get(i - 1).getScore());
+            }
+        }
+    }
+
+    @Test
+    void graphRecallAgainstExactScan() {
+        Random random = new Random(2);
+        VectorIndex graph = new VectorIndex(DIMENSION, 1000);
+        VectorIndex exact = new VectorIndex(DIMENSION, NO_GRAPH);
+        for (int id = 0; id < 5000; id++) {
+            float[] vector = unitVector(random);
+            graph.put(id, id % 3, vector);
+            exact.put(id, id % 3, vector);
+        }
+        assertTrue(graph.hasGraph());
+
+        int found = 0;
+        int wanted = 0;
+        for (int q = 0; q < 200; q++) {
+            float[] query = unitVector(random);
+            Set<Long> truth = new HashSet<>(ids(exact.search(query, 10, null, -1)));
+            for (long id : ids(graph.search(query, 10, null, -1))) {
+                if (truth.contains(id)) {
+                    found++;
+                }
+            }
+            wanted += truth.size();
+        }
+        double recall = (double) found / wanted;
+        assertTrue(recall >= 0.95, "recall@10 was " + recall);
+    }
+
+    @Test
+    void filtersByOwnerAndExcludedId() {
+        Random random = new Random(3);
+        VectorIndex index = new VectorIndex(DIMENSION, 500);
+        for (int id = 0; id < 2000; id++) {
+            // Owner 7 holds a tenth of the vectors, so its queries scan; owner 1 holds half and uses the graph
+            index.put(id, id % 10 == 0 ? 7 : id % 2, unitVector(random));
+        }
+        float[] query = index.getVector(40);
+        for (long owner : new long[] {7, 1}) {
+            List<VectorIndex.Match> matches = index.search(query, 20, owner, 40);
+            assertEquals(20, matches.size());
+            for (VectorIndex.Match match : matches) {
+                assertTrue(match.getId() != 40);
+                long id = match.getId();
+                assertEquals(owner, id % 10 == 0 ? 7L : id % 2);
+            }
+        }
+        // Without the exclusion the query vector finds itself first
+        assertEquals(40L, index.search(query, 1, 7L, -1).get(0).getId());
+    }
+
+    @Test
+    void replacedAndRemovedVectorsAreNeverReturned() {
+        Random random = new Random(4);
+        VectorIndex index = new VectorIndex(DIMENSION, 100);
+        for (int id = 0; id < 200; id++) {
+            index.put(id, 0, unitVector(random));
+        }
+        float[] replacement = unitVector(random);
+        float[] old = index.getVector(5);
+        index.put(5, 0, replacement);
+        assertTrue(index.remove(6));
+        assertFalse(index.remove(6));
+
+        assertEquals(199, index.size());
+        assertArrayEquals(replacement, index.getVector(5), 0f);
+        assertNull(index.getVector(6));
+        assertFalse(index.contains(6));
+        // The tombstone of the old vector stays in the graph but must not come back
+        VectorIndex.Match best = index.search(old, 1, null, -1).get(0);
+        assertTrue(best.getScore() < 0.999f);
+        assertEquals(5L, index.search(replacement, 1, null, -1).get(0).getId());
+        assertFalse(ids(index.search(index.getVector(7), 199, null, -1)).contains(6L));
+    }
+
+    @Test
+    void compactionKeepsTheLiveVectors() {
+        Random random = new Random(5);
+        VectorIndex index = new VectorIndex(DIMENSION, 100);
+        float[][] vectors = new float[700][];
+        for (int id = 0; id < vectors.length; id++) {
+            vectors[id] = unitVector(random);
+            index.put(id, id % 2, vectors[id]);
+        }
+        // Compacts once tombstones outnumber the live rows, around the 351st removal
+        for (int id = 0; id < 500; id++) {
+            index.remove(id);
+        }
+        assertEquals(200, index.size());
+        assertTrue(index.hasGraph());
+        for (int id = 0; id < vectors.length; id++) {
+            assertEquals(id >= 500, index.contains(id));
+            if (id >= 500) {
+                assertArrayEquals(vectors[id], index.getVector(id), 0f);
+            }
+        }
+
+        float[][] live = new float[vectors.length][];
+        System.arraycopy(vectors, 500, live, 500, 200);
+        for (int q = 0; q < 20; q++) {
+            float[] query = unitVector(random);
+            List<Long> expected = bruteForce(live, query, 5);
+            assertEquals(expected, ids(index.search(query, 5, null, -1)));
+        }
+        // Still usable after the rebuild
+        index.put(1000, 0, vectors[0]);
+        assertEquals(1000L, index.search(vectors[0], 1, null, -1).get(0).getId());
+    }
+
+    @Test
+    void rejectsAVectorOfTheWrongDimension() {
+        VectorIndex index = new VectorIndex(DIMENSION, NO_GRAPH);
+        assertThrows(IllegalArgumentException.class, () -> index.put(1, 0, new float[DIMENSION + 1]));
+        assertEquals(List.of(), index.search(new float[DIMENSION], 3, null, -1));
+    }
+
+    private static float[] unitVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        double norm = 0;
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] /= (float) Math.sqrt(norm);
+        }
+        return vector;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float dot = 0f;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+
+    // Ids (array positions) of the k vectors most similar to the query; null entries are skipped
+    private static List<Long> bruteForce(float[][] vectors, float[] query, int k) {
+        return IntStream.range(0, vectors.length)
+                .filter(id -> vectors[id] != null)
+                .boxed()
+                .sorted((a, b) -> Float.compare(dot(query, vectors[b]), dot(query, vectors[a])))
+                .limit(k)
+                .map(Integer::longValue)
+                .toList();
+    }
+
+    private static List<Long> ids(List<VectorIndex.Match> matches) {
+        return matches.stream().map(VectorIndex.Match::getId).toList();
+    }
+}
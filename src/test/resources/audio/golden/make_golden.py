@@ -0,0 +1,72 @@
+"""Builds the WAVs AudioFeatureExtractorGoldenTest compares against librosa, and their golden results.
+
+The WAVs are synthesized with the standard library only, so they are reproducible byte for byte. The golden
+JSON files are what librosa_api.analyze_file returns for each WAV; they are only written when librosa is
+installed, e.g. with the librosa environment the app uses:
+
+    /home/ubuntu/librosa_env/bin/python src/test/resources/audio/golden/make_golden.py
+
+Without the JSON files only the librosa comparison is skipped; the checks against the signal design still run.
+"""
+import json
+import math
+import os
+import struct
+import sys
+import wave
+
+HERE = os.path.dirname(os.path.abspath(__file__))
+SAMPLE_RATE = 22050
+
+
+def write_wav(name, samples):
+    with wave.open(os.path.join(HERE, name), "wb") as out:
+        out.setnchannels(1)
+        out.setsampwidth(2)
+        out.setframerate(SAMPLE_RATE)
+        out.writeframes(b"".join(struct.pack("<h", int(round(max(-1.0, min(1.0, s)) * 32767))) for s in samples))
+
+
+def tone(frequencies, seconds, level):
+    count = int(seconds * SAMPLE_RATE)
+    return [level * sum(math.sin(2 * math.pi * f * i / SAMPLE_RATE) for f in frequencies) / len(frequencies)
+            for i in range(count)]
+
+
+def add_clicks(samples, bpm, level):
+    period = SAMPLE_RATE * 60.0 / bpm
+    t = period / 4
+    while t < len(samples):
+        start = int(t)
+        for i in range(min(400, len(samples) - start)):
+            samples[start + i] += level * math.exp(-i / 60.0) * math.sin(2 * math.pi * 1500 * i / SAMPLE_RATE)
+        t += period
+    return samples
+
+
+def build_wavs():
+    # A major triad under clicks at 120 BPM: tempo, beats, key and chroma
+    write_wav("a_major_clicks_120.wav", add_clicks(tone([440.0, 554.37, 659.26], 4.0, 0.3), 120, 0.6))
+    # C major triad, no transients: key, chroma, MFCCs and spectral shape
+    write_wav("c_major_chord.wav", tone([261.63, 329.63, 392.0], 3.0, 0.5))
+
+
+def build_golden():
+    sys.path.insert(0, os.path.abspath(os.path.join(HERE, "..", "..", "..", "..", "..")))
+    import librosa_api
+
+    for name in sorted(os.listdir(HERE)):
+        if name.endswith(".wav"):
+            result = librosa_api.analyze_file(os.path.join(HERE, name), lambda percent, stage: None)
+            with open(os.path.join(HERE, name[:-4] + ".json"), "w") as out:
+                json.dump(result, out, indent=1)
+
+
+if __name__ == "__main__":
+    build_wavs()
+    try:
+        import librosa  # noqa: F401
+    except ImportError:
+        print("librosa is not installed; WAVs written, golden JSON not generated.")
+        sys.exit(0)
+    build_golden()